@@ -21,6 +21,9 @@ import com.rti.dds.infrastructure.StringSeq;
 import com.rti.dds.subscription.Subscriber;
 /**
  * Tracks the data instances associated with one device.
+ * <p>
+ * The readers come from the {@link SharedReaderPool} so that monitoring many devices shares
+ * one reader per topic instead of creating filtered readers for each device.
  * 
  * @author Jeff Plourde
  *
@@ -64,11 +67,41 @@ public class DeviceDataMonitor {
     
     public DeviceDataMonitor(final String udi) {
         this.udi = udi;
-        this.idModel = new DeviceIdentityInstanceModelImpl(ice.DeviceIdentityTopic.VALUE);
-        this.connModel = new DeviceConnectivityInstanceModelImpl(ice.DeviceConnectivityTopic.VALUE);
-        this.numModel = new NumericInstanceModelImpl(ice.NumericTopic.VALUE);
-        this.saModel = new SampleArrayInstanceModelImpl(ice.SampleArrayTopic.VALUE);
-        this.isModel = new InfusionStatusInstanceModelImpl(ice.InfusionStatusTopic.VALUE);
+        this.idModel = new PooledDeviceIdentityModel(udi);
+        this.connModel = new PooledDeviceConnectivityModel(udi);
+        this.numModel = new PooledNumericModel(udi);
+        this.saModel = new PooledSampleArrayModel(udi);
+        this.isModel = new PooledInfusionStatusModel(udi);
+    }
+
+    private static class PooledDeviceIdentityModel extends PooledInstanceModel<ice.DeviceIdentity, ice.DeviceIdentityDataReader> implements DeviceIdentityInstanceModel {
+        PooledDeviceIdentityModel(String udi) {
+            super(ice.DeviceIdentityTopic.VALUE, udi, () -> new DeviceIdentityInstanceModelImpl(ice.DeviceIdentityTopic.VALUE), d -> d.unique_device_identifier);
+        }
+    }
+
+    private static class PooledDeviceConnectivityModel extends PooledInstanceModel<ice.DeviceConnectivity, ice.DeviceConnectivityDataReader> implements DeviceConnectivityInstanceModel {
+        PooledDeviceConnectivityModel(String udi) {
+            super(ice.DeviceConnectivityTopic.VALUE, udi, () -> new DeviceConnectivityInstanceModelImpl(ice.DeviceConnectivityTopic.VALUE), d -> d.unique_device_identifier);
+        }
+    }
+
+    private static class PooledNumericModel extends PooledInstanceModel<ice.Numeric, ice.NumericDataReader> implements NumericInstanceModel {
+        PooledNumericModel(String udi) {
+            super(ice.NumericTopic.VALUE, udi, () -> new NumericInstanceModelImpl(ice.NumericTopic.VALUE), d -> d.unique_device_identifier);
+        }
+    }
+
+    private static class PooledSampleArrayModel extends PooledInstanceModel<ice.SampleArray, ice.SampleArrayDataReader> implements SampleArrayInstanceModel {
+        PooledSampleArrayModel(String udi) {
+            super(ice.SampleArrayTopic.VALUE, udi, () -> new SampleArrayInstanceModelImpl(ice.SampleArrayTopic.VALUE), d -> d.unique_device_identifier);
+        }
+    }
+
+    private static class PooledInfusionStatusModel extends PooledInstanceModel<ice.InfusionStatus, ice.InfusionStatusDataReader> implements InfusionStatusInstanceModel {
+        PooledInfusionStatusModel(String udi) {
+            super(ice.InfusionStatusTopic.VALUE, udi, () -> new InfusionStatusInstanceModelImpl(ice.InfusionStatusTopic.VALUE), d -> d.unique_device_identifier);
+        }
     }
 
     
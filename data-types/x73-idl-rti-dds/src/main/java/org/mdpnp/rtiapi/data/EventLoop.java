@@ -13,9 +13,17 @@
 package org.mdpnp.rtiapi.data;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +37,28 @@ import com.rti.dds.infrastructure.WaitSet;
 import com.rti.dds.infrastructure.WaitSetProperty_t;
 
 /**
+ * Services a WaitSet and calls the ConditionHandler registered for each triggered
+ * Condition.
+ * <p>
+ * By default handlers run one after another on the thread calling
+ * {@link #waitAndHandle(ConditionSeq, Duration_t)}. When constructed with shards (or with
+ * the system property <code>org.mdpnp.rtiapi.data.EventLoop.shards</code>) each handler
+ * is assigned round-robin to one of that many worker threads instead and the service
+ * thread only dispatches. A condition is detached from the WaitSet while its handler is
+ * queued or running, so invocations for any one condition never overlap and stay in
+ * order, while a slow handler delays only the handlers sharing its shard. The
+ * EventLoop's own conditions (handler mutations and {@link #doLater(Runnable)} work)
+ * always run on the service thread.
+ * <p>
+ * Invocation counts, service time and queueing delay (from the WaitSet waking to the
+ * handler starting) are kept per registered condition; see {@link #getHandlerStatistics()}.
+ * <p>
+ * {@link #removeHandler(Condition)} normally returns once the handler for the condition
+ * has finished, so the caller may delete the condition. Called from a handler on a worker
+ * thread it returns as soon as the condition is detached instead, since the handler it
+ * would wait for may be the caller itself or queued behind it; any invocation still
+ * queued for the condition is then skipped.
+ *
  * @author Jeff Plourde
  *
  */
@@ -36,31 +66,75 @@ public class EventLoop {
 
     private static final Logger log = LoggerFactory.getLogger(EventLoop.class);
 
+    private static final String PROPERTY_PREFIX = EventLoop.class.getName() + ".";
+
+    public static final int DEFAULT_SHARDS = Integer.getInteger(PROPERTY_PREFIX + "shards", 0);
+
     public interface ConditionHandler {
         void conditionChanged(Condition condition);
     }
 
-    private final Map<Condition, ConditionHandler> conditionHandlers = new HashMap<Condition, ConditionHandler>();
+    private static final class Registration {
+        private final ConditionHandler handler;
+        private final HandlerStatistics statistics;
+        // -1 to run on the service thread
+        private final int shard;
+        private volatile boolean removed;
+
+        Registration(ConditionHandler handler, HandlerStatistics statistics, int shard) {
+            this.handler = handler;
+            this.statistics = statistics;
+            this.shard = shard;
+        }
+    }
+
+    // Only accessed by the service thread
+    private final Map<Condition, Registration> conditionHandlers = new HashMap<Condition, Registration>();
+    private final Set<Condition> dispatched = new HashSet<Condition>();
+    private final Map<Condition, Mutation> removalsAwaitingHandler = new HashMap<Condition, Mutation>();
+    private int nextShard;
+
+    private final Map<Condition, HandlerStatistics> statistics = new ConcurrentHashMap<Condition, HandlerStatistics>();
     private final List<Mutation> queuedMutations = new ArrayList<Mutation>();
     private final List<Runnable> queuedRunnables = new ArrayList<Runnable>();
+    private final List<Condition> queuedReattachments = new ArrayList<Condition>();
     private final WaitSet waitSet;
     private final GuardCondition mutate = new GuardCondition();
     private final GuardCondition runnable = new GuardCondition();
+    private final GuardCondition reattach = new GuardCondition();
+    private final ExecutorService[] shards;
+    private final Set<Thread> shardThreads = ConcurrentHashMap.newKeySet();
 
     protected void handleMutation(Mutation m) {
+        final Condition c = m.getCondition();
         if (m.isAdd()) {
             // log.debug("Handling an add mutation for " + m.getCondition());
-            conditionHandlers.put(m.getCondition(), m.getConditionHandler());
-            waitSet.attach_condition(m.getCondition());
+            int shard = null == shards ? -1 : (nextShard++ % shards.length);
+            HandlerStatistics stats = new HandlerStatistics(m.getConditionHandler());
+            conditionHandlers.put(c, new Registration(m.getConditionHandler(), stats, shard));
+            statistics.put(c, stats);
+            if (!dispatched.contains(c)) {
+                waitSet.attach_condition(c);
+            }
         } else {
             // log.debug("Handling a remove mutation for " + m.getCondition());
-            if (null == conditionHandlers.remove(m.getCondition())) {
-                log.warn("Attempt to detach unknown condition:" + m.getCondition());
+            Registration r = conditionHandlers.remove(c);
+            if (null == r) {
+                log.warn("Attempt to detach unknown condition:" + c);
                 for (int i = 0; i < m.getTrace().length; i++) {
                     log.warn("\tat " + m.getTrace()[i]);
                 }
             } else {
-                waitSet.detach_condition(m.getCondition());
+                statistics.remove(c);
+                r.removed = true;
+                if (!dispatched.contains(c)) {
+                    waitSet.detach_condition(c);
+                } else if (!m.isFromShard()) {
+                    // the caller may delete the condition once this returns so wait for the handler
+                    removalsAwaitingHandler.put(c, m);
+                    return;
+                }
+                // otherwise already detached and the handler may be the caller, so the reattach step only forgets it
             }
         }
         m.done();
@@ -97,19 +171,48 @@ public class EventLoop {
         }
     };
 
+    private final ConditionHandler reattachHandler = new ConditionHandler() {
+        public void conditionChanged(Condition condition) {
+            Condition[] conditions = new Condition[0];
+            synchronized (queuedReattachments) {
+                conditions = queuedReattachments.toArray(conditions);
+                queuedReattachments.clear();
+                ((GuardCondition) condition).set_trigger_value(false);
+            }
+            for (Condition c : conditions) {
+                dispatched.remove(c);
+                Mutation removal = removalsAwaitingHandler.remove(c);
+                if (null != removal) {
+                    // detached when dispatched
+                    removal.done();
+                } else if (!conditionHandlers.containsKey(c)) {
+                    // removed while dispatched and never attached since
+                } else {
+                    waitSet.attach_condition(c);
+                }
+            }
+        }
+    };
+
     private static class Mutation {
         private final boolean add;
         private final Condition condition;
         private final ConditionHandler conditionHandler;
         private final StackTraceElement[] trace;
+        private final boolean fromShard;
 
         private boolean done = false;
 
-        public Mutation(boolean add, Condition condition, ConditionHandler conditionHandler) {
+        public Mutation(boolean add, Condition condition, ConditionHandler conditionHandler, boolean fromShard) {
             this.add = add;
             this.condition = condition;
             this.conditionHandler = conditionHandler;
             this.trace = Thread.currentThread().getStackTrace();
+            this.fromShard = fromShard;
+        }
+
+        public boolean isFromShard() {
+            return fromShard;
         }
 
         public boolean isAdd() {
@@ -148,11 +251,97 @@ public class EventLoop {
     }
 
     public EventLoop(WaitSetProperty_t properties) {
+        this(properties, DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param shards number of worker threads handlers are spread across, or 0 to run
+     *            handlers on the service thread
+     */
+    public EventLoop(WaitSetProperty_t properties, int shards) {
         waitSet = null == properties ? new WaitSet() : new WaitSet(properties);
         waitSet.attach_condition(mutate);
         waitSet.attach_condition(runnable);
-        conditionHandlers.put(mutate, mutateHandler);
-        conditionHandlers.put(runnable, runnableHandler);
+        conditionHandlers.put(mutate, new Registration(mutateHandler, new HandlerStatistics(mutateHandler), -1));
+        conditionHandlers.put(runnable, new Registration(runnableHandler, new HandlerStatistics(runnableHandler), -1));
+        if (shards > 0) {
+            this.shards = new ExecutorService[shards];
+            for (int i = 0; i < shards; i++) {
+                final String name = "EventLoop-shard-" + i;
+                this.shards[i] = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    shardThreads.add(t);
+                    return t;
+                });
+            }
+            waitSet.attach_condition(reattach);
+            conditionHandlers.put(reattach, new Registration(reattachHandler, new HandlerStatistics(reattachHandler), -1));
+        } else {
+            this.shards = null;
+        }
+    }
+
+    /**
+     * @return worker threads handlers are dispatched to, 0 if handlers run on the service thread
+     */
+    public int getShards() {
+        return null == shards ? 0 : shards.length;
+    }
+
+    /**
+     * Stops the worker threads, if any, once they finish handlers already dispatched.
+     */
+    public void shutdown() {
+        if (null != shards) {
+            for (ExecutorService e : shards) {
+                e.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the currently registered conditions and the statistics of their handlers
+     */
+    public Map<Condition, HandlerStatistics> getHandlerStatistics() {
+        return Collections.unmodifiableMap(new HashMap<Condition, HandlerStatistics>(statistics));
+    }
+
+    private boolean isShardThread() {
+        return shardThreads.contains(Thread.currentThread());
+    }
+
+    private void invoke(Condition c, Registration r, long woken) {
+        long s = System.nanoTime();
+        try {
+            r.handler.conditionChanged(c);
+        } finally {
+            long elapsed = System.nanoTime() - s;
+            r.statistics.record(s - woken, elapsed);
+            if (elapsed >= WARNING_ELAPSED_TIME_NANOSECONDS) {
+                log.warn(elapsed + "ns to service " + r.handler);
+            }
+        }
+    }
+
+    private void dispatch(final Condition c, final Registration r, final long woken) {
+        dispatched.add(c);
+        // detached until the handler completes so the WaitSet doesn't wake again for it
+        waitSet.detach_condition(c);
+        shards[r.shard].execute(() -> {
+            try {
+                if (!r.removed) {
+                    invoke(c, r, woken);
+                }
+            } catch (Throwable t) {
+                log.error("Unexpected in ConditionHandler " + r.handler, t);
+            } finally {
+                synchronized (queuedReattachments) {
+                    queuedReattachments.add(c);
+                    reattach.set_trigger_value(true);
+                }
+            }
+        });
     }
     
     private static final long WARNING_ELAPSED_TIME_NANOSECONDS = 100000000L;
@@ -184,15 +373,15 @@ public class EventLoop {
         condSeq.clear();
         try {
             waitSet.wait(condSeq, dur);
+            final long woken = System.nanoTime();
             for (int i = 0; i < condSeq.size(); i++) {
                 Condition c = (Condition) condSeq.get(i);
-                ConditionHandler ch = conditionHandlers.get(c);
-                if (null != ch) {
-                    long s = System.nanoTime();
-                    ch.conditionChanged(c);
-                    long elapsed = System.nanoTime() - s;
-                    if(elapsed >= WARNING_ELAPSED_TIME_NANOSECONDS) {
-                        log.warn(elapsed + "ns to service " + ch);
+                Registration r = conditionHandlers.get(c);
+                if (null != r) {
+                    if (r.shard < 0) {
+                        invoke(c, r, woken);
+                    } else if (!dispatched.contains(c)) {
+                        dispatch(c, r, woken);
                     }
                 } else {
                     log.warn("No ConditionHandler for Condition " + c);
@@ -214,7 +403,7 @@ public class EventLoop {
     }
 
     public void addHandler(Condition condition, ConditionHandler conditionHandler) {
-        Mutation m = new Mutation(true, condition, conditionHandler);
+        Mutation m = new Mutation(true, condition, conditionHandler, isShardThread());
         if (isCurrentServiceThread()) {
             handleMutation(m);
         } else {
@@ -230,7 +419,7 @@ public class EventLoop {
 
     public void removeHandler(Condition condition) {
 
-        Mutation m = new Mutation(false, condition, null);
+        Mutation m = new Mutation(false, condition, null, isShardThread());
         if (isCurrentServiceThread()) {
             handleMutation(m);
         } else {
@@ -291,4 +480,104 @@ public class EventLoop {
             }
         }
     }
+
+    /**
+     * Per registration invocation counts with service time and queueing delay distributions.
+     */
+    public static final class HandlerStatistics {
+        private final ConditionHandler handler;
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LatencyHistogram queueingDelay = new LatencyHistogram();
+
+        HandlerStatistics(ConditionHandler handler) {
+            this.handler = handler;
+        }
+
+        public ConditionHandler getHandler() {
+            return handler;
+        }
+
+        void record(long queuedNanos, long serviceNanos) {
+            queueingDelay.record(queuedNanos);
+            serviceTime.record(serviceNanos);
+        }
+
+        public long getInvocations() {
+            return serviceTime.getCount();
+        }
+
+        public LatencyHistogram getServiceTime() {
+            return serviceTime;
+        }
+
+        public LatencyHistogram getQueueingDelay() {
+            return queueingDelay;
+        }
+
+        @Override
+        public String toString() {
+            return "invocations=" + getInvocations() + " service[" + serviceTime + "] queued[" + queueingDelay + "]";
+        }
+    }
+
+    /**
+     * Histogram of nanosecond durations in power of two buckets; percentiles are reported
+     * as the upper bound of the bucket they fall in so are accurate to within a factor of two.
+     */
+    public static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0L) {
+                nanos = 0L;
+            }
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1L));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long m;
+            while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+                // retry
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public long getMeanNanos() {
+            long n = count.get();
+            return 0L == n ? 0L : total.get() / n;
+        }
+
+        /**
+         * @param fraction between 0 and 1, for instance 0.99
+         */
+        public long getPercentileNanos(double fraction) {
+            long n = count.get();
+            if (0L == n) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0L;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(i == 62 ? Long.MAX_VALUE : (2L << i) - 1L, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + getCount() + " mean=" + getMeanNanos() + "ns p99=" + getPercentileNanos(0.99) + "ns max=" + getMaxNanos() + "ns";
+        }
+    }
 }
@@ -1,9 +1,10 @@
 package org.mdpnp.rtiapi.data;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mdpnp.rtiapi.data.ListenerList.Dispatcher;
 import org.slf4j.Logger;
@@ -40,7 +41,8 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
     implements ReaderInstanceModel<D,R>,
                WriterInstanceModel<D,W> {
     private final ListenerList<InstanceModelListener<D, R>> listeners = new ListenerList<InstanceModelListener<D,R>>(InstanceModelListener.class);
-    private final List<InstanceHandle_t> instances = new java.util.concurrent.CopyOnWriteArrayList<InstanceHandle_t>();
+    // keyed by the bytes of the handle; a copy on write list was copied on every add and remove
+    private final Set<InstanceHandle_t> instances = ConcurrentHashMap.newKeySet();
     
     @Override
     public void addListener(InstanceModelListener<D, R> listener) {
@@ -85,16 +87,15 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
                         listener.instanceSample(this, reader, (D)sa_seq.get(i), (SampleInfo) info_seq.get(i));
                     }
                 }
-            } catch (Exception e) {
-                if(!(e.getCause() instanceof RETCODE_NO_DATA)) {
-                    log.error("read_instance", e);
-                }
-                
+            } catch (RETCODE_NO_DATA noData) {
+                // the instance has no samples left
+            } catch (Throwable t) {
+                log.error("read_instance", t);
             } finally {
                 try {
                     returnLoan.invoke(reader, sa_seq, info_seq);
-                } catch (Exception e) {
-                    log.error("return_loan", e);
+                } catch (Throwable t) {
+                    log.error("return_loan", t);
                 }
             }
         }
@@ -229,11 +230,7 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
                             getKeyValue.invoke(reader, d, sampleInfo.instance_handle);
                         }
                         fireInstanceNotAlive(d, sampleInfo);
-                        int idx = instances.indexOf(sampleInfo.instance_handle);
-                        if(idx>=0) {
-                            instances.remove(idx);
-                            // TODO Fire removal of element at idx
-                        } else {
+                        if(!instances.remove(sampleInfo.instance_handle)) {
                             log.warn("Unable to find instance for removal:"+sampleInfo.instance_handle);
                         }
                     } else {
@@ -241,27 +238,21 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
                             fireInstanceAlive(d, sampleInfo);
                         }
                         fireInstanceSample(d, sampleInfo);
-                        int idx = instances.indexOf(sampleInfo.instance_handle);
-                        if(idx>=0) {
-                            // TODO fire element update of element at idx
-                        } else {
+                        if(!instances.contains(sampleInfo.instance_handle)) {
                             instances.add(new InstanceHandle_t(sampleInfo.instance_handle));
-                            // TODO fire element inserted at instances.size()-1
                         }
                     }
                     lastHandle = sampleInfo.instance_handle;
                 }
-            } catch (InvocationTargetException ite) {
-                if(!(ite.getCause() instanceof RETCODE_NO_DATA)) {
-                    log.error("reading", ite);
-                }
-            } catch (Exception e) {
-                log.error("reading ", e);
+            } catch (RETCODE_NO_DATA noData) {
+                // another handler already took the samples
+            } catch (Throwable t) {
+                log.error("reading ", t);
             } finally {
                 try {
                     returnLoan.invoke(reader, sa_seq, info_seq);
-                } catch (Exception e) {
-                    log.error("return_loan", e);
+                } catch (Throwable t) {
+                    log.error("return_loan", t);
                 }
             }
         }
@@ -273,7 +264,9 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
     protected final Class<? extends TypeSupport> typeSupportClass;
     protected final Class<? extends Sequence> sequenceClass;
     
-    protected final Method getKeyValue, returnLoan, readWCondition, readInstance, write;
+    // Resolved once against the concrete reader and writer; Method.invoke allocated an
+    // argument array and boxed the int masks on every read and write
+    protected final MethodHandle getKeyValue, returnLoan, readWCondition, readInstance, write;
     
     private final LogEntityStatus logEntityStatus;
     
@@ -284,11 +277,12 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
         this.sequenceClass = sequenceClass;
         this.logEntityStatus = new LogEntityStatus(log, topicName);
         try {
-            getKeyValue = readerClass.getMethod("get_key_value", dataClass, InstanceHandle_t.class);
-            returnLoan = readerClass.getMethod("return_loan", sequenceClass, SampleInfoSeq.class);
-            readWCondition = readerClass.getMethod("read_w_condition", sequenceClass, SampleInfoSeq.class, int.class, ReadCondition.class);
-            readInstance = readerClass.getMethod("read_instance", sequenceClass, SampleInfoSeq.class, int.class, InstanceHandle_t.class, int.class, int.class, int.class);
-            write = writerClass.getMethod("write", dataClass, InstanceHandle_t.class);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getKeyValue = lookup.unreflect(readerClass.getMethod("get_key_value", dataClass, InstanceHandle_t.class));
+            returnLoan = lookup.unreflect(readerClass.getMethod("return_loan", sequenceClass, SampleInfoSeq.class));
+            readWCondition = lookup.unreflect(readerClass.getMethod("read_w_condition", sequenceClass, SampleInfoSeq.class, int.class, ReadCondition.class));
+            readInstance = lookup.unreflect(readerClass.getMethod("read_instance", sequenceClass, SampleInfoSeq.class, int.class, InstanceHandle_t.class, int.class, int.class, int.class));
+            write = lookup.unreflect(writerClass.getMethod("write", dataClass, InstanceHandle_t.class));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -472,8 +466,8 @@ public class InstanceModelImpl<D extends Copyable, R extends DataReader, W exten
     public void write(D data) {
         try {
             write.invoke(writer, data, InstanceHandle_t.HANDLE_NIL);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-            log.error("write error", e);
+        } catch (Throwable t) {
+            log.error("write error", t);
         }
     }
 }
\ No newline at end of file
@@ -42,6 +42,14 @@ public class ListenerList<L> {
             }
         }
     }
+    public synchronized boolean isEmpty() {
+        for(L l : listeners) {
+            if(l != null) {
+                return false;
+            }
+        }
+        return true;
+    }
     public void fire(Dispatcher<L> dispatcher) {
         L[] listeners = this.listeners;
         for(L l : listeners) {
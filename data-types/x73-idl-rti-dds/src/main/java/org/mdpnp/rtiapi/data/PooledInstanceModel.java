@@ -0,0 +1,214 @@
+package org.mdpnp.rtiapi.data;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.mdpnp.rtiapi.data.ListenerList.Dispatcher;
+
+import com.rti.dds.infrastructure.Copyable;
+import com.rti.dds.infrastructure.InstanceHandle_t;
+import com.rti.dds.infrastructure.ResourceLimitsQosPolicy;
+import com.rti.dds.infrastructure.StringSeq;
+import com.rti.dds.subscription.DataReader;
+import com.rti.dds.subscription.SampleInfo;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * The instances of one device on a reader from the {@link SharedReaderPool}. Listeners see
+ * this model as the source of their samples, as they would with a content filtered
+ * {@link InstanceModelImpl}; the filter expression passed to startReader is ignored because
+ * the device is fixed at construction.
+ */
+public class PooledInstanceModel<D extends Copyable, R extends DataReader> implements ReaderInstanceModel<D, R>, InstanceModelListener<D, R> {
+    private final String topic;
+    private final String udi;
+    private final Supplier<? extends ReaderInstanceModel<D, R>> factory;
+    private final Function<D, String> udiOf;
+
+    private final ListenerList<InstanceModelListener<D, R>> listeners = new ListenerList<InstanceModelListener<D, R>>(InstanceModelListener.class);
+    private final Set<InstanceHandle_t> instances = ConcurrentHashMap.newKeySet();
+
+    private volatile SharedReaderPool.Entry<D, R> entry;
+
+    /**
+     * @param factory creates the shared reader when this is the first model of the topic
+     * @param udiOf the unique_device_identifier of a sample or key holder
+     */
+    public PooledInstanceModel(String topic, String udi, Supplier<? extends ReaderInstanceModel<D, R>> factory, Function<D, String> udiOf) {
+        this.topic = topic;
+        this.udi = udi;
+        this.factory = factory;
+        this.udiOf = udiOf;
+    }
+
+    public String getUniqueDeviceIdentifier() {
+        return udi;
+    }
+
+    @Override
+    public void addListener(InstanceModelListener<D, R> listener) {
+        listeners.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(InstanceModelListener<D, R> listener) {
+        listeners.removeListener(listener);
+    }
+
+    @Override
+    public void iterateAndAddListener(InstanceModelListener<D, R> listener) {
+        iterateAndAddListener(listener, ResourceLimitsQosPolicy.LENGTH_UNLIMITED);
+    }
+
+    @Override
+    public void iterateAndAddListener(InstanceModelListener<D, R> listener, int maxSamples) {
+        addListener(listener);
+        iterate(listener, maxSamples);
+    }
+
+    @Override
+    public void iterate(InstanceModelListener<D, R> listener) {
+        iterate(listener, ResourceLimitsQosPolicy.LENGTH_UNLIMITED);
+    }
+
+    private void iterate(final InstanceModelListener<D, R> listener, int maxSamples) {
+        SharedReaderPool.Entry<D, R> entry = this.entry;
+        if (null == entry) {
+            return;
+        }
+        // Catching up walks the instances of every device on the shared reader
+        entry.getModel().iterate(new InstanceModelListener<D, R>() {
+            @Override
+            public void instanceAlive(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+                if (udi.equals(udiOf.apply(data))) {
+                    listener.instanceAlive(PooledInstanceModel.this, reader, data, sampleInfo);
+                }
+            }
+
+            @Override
+            public void instanceNotAlive(ReaderInstanceModel<D, R> model, R reader, D keyHolder, SampleInfo sampleInfo) {
+                if (udi.equals(udiOf.apply(keyHolder))) {
+                    listener.instanceNotAlive(PooledInstanceModel.this, reader, keyHolder, sampleInfo);
+                }
+            }
+
+            @Override
+            public void instanceSample(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+                if (udi.equals(udiOf.apply(data))) {
+                    listener.instanceSample(PooledInstanceModel.this, reader, data, sampleInfo);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop, String expression, StringSeq params, String qosLibrary, String qosProfile) {
+        startReader(subscriber, eventLoop, qosLibrary, qosProfile);
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop, String qosLibrary, String qosProfile) {
+        if (null != entry) {
+            throw new IllegalStateException("Reader for " + topic + " " + udi + " already started");
+        }
+        SharedReaderPool.Entry<D, R> entry = SharedReaderPool.acquire(subscriber, eventLoop, topic, qosLibrary, qosProfile, factory, udiOf);
+        entry.addListener(udi, this);
+        this.entry = entry;
+    }
+
+    @Override
+    public void startReader(Subscriber subscriber, EventLoop eventLoop) {
+        startReader(subscriber, eventLoop, null, null);
+    }
+
+    @Override
+    public void stopReader() {
+        SharedReaderPool.Entry<D, R> entry = this.entry;
+        if (null != entry) {
+            this.entry = null;
+            entry.removeListener(udi, this);
+            SharedReaderPool.release(entry);
+            instances.clear();
+        }
+    }
+
+    @Override
+    public R getReader() {
+        SharedReaderPool.Entry<D, R> entry = this.entry;
+        return null == entry ? null : entry.getModel().getReader();
+    }
+
+    @Override
+    public EventLoop getEventLoop() {
+        SharedReaderPool.Entry<D, R> entry = this.entry;
+        return null == entry ? null : entry.getModel().getEventLoop();
+    }
+
+    /**
+     * Only instances sampled since this model joined the pool are counted. Those the shared
+     * reader already held are visited by {@link #iterate(InstanceModelListener)} but are not
+     * counted until their next sample arrives.
+     *
+     * @return the instances of this device seen since this model joined the pool
+     */
+    @Override
+    public int size() {
+        return instances.size();
+    }
+
+    // Called from the shared reader on the event loop thread, so the dispatchers are reused
+    private abstract class AbstractDispatcher implements Dispatcher<InstanceModelListener<D, R>> {
+        protected R reader;
+        protected D data;
+        protected SampleInfo sampleInfo;
+
+        AbstractDispatcher set(R reader, D data, SampleInfo sampleInfo) {
+            this.reader = reader;
+            this.data = data;
+            this.sampleInfo = sampleInfo;
+            return this;
+        }
+    }
+
+    private final AbstractDispatcher instanceAlive = new AbstractDispatcher() {
+        @Override
+        public void dispatch(InstanceModelListener<D, R> l) {
+            l.instanceAlive(PooledInstanceModel.this, reader, data, sampleInfo);
+        }
+    };
+
+    private final AbstractDispatcher instanceNotAlive = new AbstractDispatcher() {
+        @Override
+        public void dispatch(InstanceModelListener<D, R> l) {
+            l.instanceNotAlive(PooledInstanceModel.this, reader, data, sampleInfo);
+        }
+    };
+
+    private final AbstractDispatcher instanceSample = new AbstractDispatcher() {
+        @Override
+        public void dispatch(InstanceModelListener<D, R> l) {
+            l.instanceSample(PooledInstanceModel.this, reader, data, sampleInfo);
+        }
+    };
+
+    @Override
+    public void instanceAlive(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+        listeners.fire(instanceAlive.set(reader, data, sampleInfo));
+    }
+
+    @Override
+    public void instanceNotAlive(ReaderInstanceModel<D, R> model, R reader, D keyHolder, SampleInfo sampleInfo) {
+        instances.remove(sampleInfo.instance_handle);
+        listeners.fire(instanceNotAlive.set(reader, keyHolder, sampleInfo));
+    }
+
+    @Override
+    public void instanceSample(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+        if (!instances.contains(sampleInfo.instance_handle)) {
+            instances.add(new InstanceHandle_t(sampleInfo.instance_handle));
+        }
+        listeners.fire(instanceSample.set(reader, data, sampleInfo));
+    }
+}
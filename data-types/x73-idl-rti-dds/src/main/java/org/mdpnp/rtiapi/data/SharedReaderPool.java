@@ -0,0 +1,208 @@
+package org.mdpnp.rtiapi.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.mdpnp.rtiapi.data.ListenerList.Dispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rti.dds.infrastructure.Copyable;
+import com.rti.dds.subscription.DataReader;
+import com.rti.dds.subscription.SampleInfo;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * Reference counted readers shared by everyone watching a topic with the same QoS profile
+ * through the same subscriber. Each reader is unfiltered and its samples are handed to the
+ * listeners registered for their unique_device_identifier with one hash lookup, so watching
+ * one more device costs a map insertion instead of a content filtered topic and a reader.
+ *
+ * @see PooledInstanceModel
+ */
+public class SharedReaderPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedReaderPool.class);
+
+    private static final Map<Key, Entry<?, ?>> entries = new HashMap<Key, Entry<?, ?>>();
+
+    private static final class Key {
+        private final Subscriber subscriber;
+        private final String topic, qosLibrary, qosProfile;
+
+        Key(Subscriber subscriber, String topic, String qosLibrary, String qosProfile) {
+            this.subscriber = subscriber;
+            this.topic = topic;
+            this.qosLibrary = qosLibrary;
+            this.qosProfile = qosProfile;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return subscriber == k.subscriber && topic.equals(k.topic) && Objects.equals(qosLibrary, k.qosLibrary)
+                    && Objects.equals(qosProfile, k.qosProfile);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(subscriber), topic, qosLibrary, qosProfile);
+        }
+
+        @Override
+        public String toString() {
+            return topic + " " + qosLibrary + "::" + qosProfile;
+        }
+    }
+
+    /**
+     * One shared reader and the listeners of each device reading from it.
+     */
+    public static final class Entry<D extends Copyable, R extends DataReader> implements InstanceModelListener<D, R> {
+        private final Key key;
+        private final ReaderInstanceModel<D, R> model;
+        private final Function<D, String> udiOf;
+        private final Map<String, ListenerList<InstanceModelListener<D, R>>> byUdi = new ConcurrentHashMap<String, ListenerList<InstanceModelListener<D, R>>>();
+        private int references;
+
+        private Entry(Key key, ReaderInstanceModel<D, R> model, Function<D, String> udiOf) {
+            this.key = key;
+            this.model = model;
+            this.udiOf = udiOf;
+        }
+
+        public ReaderInstanceModel<D, R> getModel() {
+            return model;
+        }
+
+        public void addListener(String udi, InstanceModelListener<D, R> listener) {
+            byUdi.compute(udi, (k, listeners) -> {
+                if (null == listeners) {
+                    listeners = new ListenerList<InstanceModelListener<D, R>>(InstanceModelListener.class);
+                }
+                listeners.addListener(listener);
+                return listeners;
+            });
+        }
+
+        public void removeListener(String udi, InstanceModelListener<D, R> listener) {
+            byUdi.computeIfPresent(udi, (k, listeners) -> {
+                listeners.removeListener(listener);
+                return listeners.isEmpty() ? null : listeners;
+            });
+        }
+
+        /**
+         * @return the number of devices with listeners
+         */
+        public int getDeviceCount() {
+            return byUdi.size();
+        }
+
+        // Samples arrive on the single event loop thread so the dispatchers are reused
+        private abstract class AbstractDispatcher implements Dispatcher<InstanceModelListener<D, R>> {
+            protected R reader;
+            protected D data;
+            protected SampleInfo sampleInfo;
+
+            AbstractDispatcher set(R reader, D data, SampleInfo sampleInfo) {
+                this.reader = reader;
+                this.data = data;
+                this.sampleInfo = sampleInfo;
+                return this;
+            }
+        }
+
+        private final AbstractDispatcher instanceAlive = new AbstractDispatcher() {
+            @Override
+            public void dispatch(InstanceModelListener<D, R> l) {
+                l.instanceAlive(model, reader, data, sampleInfo);
+            }
+        };
+
+        private final AbstractDispatcher instanceNotAlive = new AbstractDispatcher() {
+            @Override
+            public void dispatch(InstanceModelListener<D, R> l) {
+                l.instanceNotAlive(model, reader, data, sampleInfo);
+            }
+        };
+
+        private final AbstractDispatcher instanceSample = new AbstractDispatcher() {
+            @Override
+            public void dispatch(InstanceModelListener<D, R> l) {
+                l.instanceSample(model, reader, data, sampleInfo);
+            }
+        };
+
+        private void fire(AbstractDispatcher dispatcher, R reader, D data, SampleInfo sampleInfo) {
+            ListenerList<InstanceModelListener<D, R>> listeners = byUdi.get(udiOf.apply(data));
+            if (null != listeners) {
+                listeners.fire(dispatcher.set(reader, data, sampleInfo));
+            }
+        }
+
+        @Override
+        public void instanceAlive(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+            fire(instanceAlive, reader, data, sampleInfo);
+        }
+
+        @Override
+        public void instanceNotAlive(ReaderInstanceModel<D, R> model, R reader, D keyHolder, SampleInfo sampleInfo) {
+            fire(instanceNotAlive, reader, keyHolder, sampleInfo);
+        }
+
+        @Override
+        public void instanceSample(ReaderInstanceModel<D, R> model, R reader, D data, SampleInfo sampleInfo) {
+            fire(instanceSample, reader, data, sampleInfo);
+        }
+    }
+
+    /**
+     * Returns the shared reader for the topic, starting it with the factory if nobody holds it.
+     * Every call must be balanced with {@link #release(Entry)}.
+     *
+     * @param udiOf the unique_device_identifier of a sample or key holder
+     */
+    @SuppressWarnings("unchecked")
+    public static <D extends Copyable, R extends DataReader> Entry<D, R> acquire(Subscriber subscriber, EventLoop eventLoop, String topic,
+            String qosLibrary, String qosProfile, Supplier<? extends ReaderInstanceModel<D, R>> factory, Function<D, String> udiOf) {
+        Key key = new Key(subscriber, topic, qosLibrary, qosProfile);
+        synchronized (entries) {
+            Entry<D, R> entry = (Entry<D, R>) entries.get(key);
+            if (null == entry) {
+                ReaderInstanceModel<D, R> model = factory.get();
+                entry = new Entry<D, R>(key, model, udiOf);
+                model.addListener(entry);
+                model.startReader(subscriber, eventLoop, qosLibrary, qosProfile);
+                entries.put(key, entry);
+                log.debug("Started shared reader for " + key);
+            } else if (eventLoop != entry.model.getEventLoop()) {
+                log.warn("Shared reader for " + key + " is serviced by a different EventLoop");
+            }
+            entry.references++;
+            return entry;
+        }
+    }
+
+    /**
+     * Stops the shared reader once the last holder releases it.
+     */
+    public static <D extends Copyable, R extends DataReader> void release(Entry<D, R> entry) {
+        synchronized (entries) {
+            if (--entry.references > 0) {
+                return;
+            }
+            entries.remove(entry.key);
+        }
+        entry.model.stopReader();
+        entry.model.removeListener(entry);
+        log.debug("Stopped shared reader for " + entry.key);
+    }
+}
@@ -0,0 +1,144 @@
+package org.mdpnp.rtiapi.data;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rti.dds.infrastructure.Condition;
+import com.rti.dds.infrastructure.ConditionSeq;
+import com.rti.dds.infrastructure.Duration_t;
+import com.rti.dds.infrastructure.GuardCondition;
+
+public class EventLoopTest {
+
+    private EventLoop eventLoop;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private Thread serviceThread;
+
+    private void start(int shards) {
+        eventLoop = new EventLoop(null, shards);
+        serviceThread = new Thread(() -> {
+            ConditionSeq seq = new ConditionSeq();
+            Duration_t timeout = new Duration_t(0, 100000000);
+            while (running.get()) {
+                eventLoop.waitAndHandle(seq, timeout);
+            }
+        }, "EventLoopTest");
+        serviceThread.setDaemon(true);
+        serviceThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        running.set(false);
+        serviceThread.join(5000L);
+        eventLoop.shutdown();
+    }
+
+    @Test
+    public void testHandlersRunOnShards() throws InterruptedException {
+        start(2);
+        final GuardCondition condition = new GuardCondition();
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        final CountDownLatch handled = new CountDownLatch(3);
+        eventLoop.addHandler(condition, c -> {
+            thread.set(Thread.currentThread().getName());
+            condition.set_trigger_value(false);
+            handled.countDown();
+        });
+        for (int i = 0; i < 3; i++) {
+            condition.set_trigger_value(true);
+            // reattached only once the handler is done, so invocations don't overlap
+            while (condition.get_trigger_value()) {
+                Thread.sleep(1L);
+            }
+        }
+        Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(thread.get().startsWith("EventLoop-shard-"));
+        eventLoop.removeHandler(condition);
+    }
+
+    @Test
+    public void testRemoveHandlerFromOwnHandler() throws InterruptedException {
+        start(1);
+        final GuardCondition condition = new GuardCondition();
+        final CountDownLatch removed = new CountDownLatch(1);
+        eventLoop.addHandler(condition, c -> {
+            condition.set_trigger_value(false);
+            eventLoop.removeHandler(c);
+            removed.countDown();
+        });
+        condition.set_trigger_value(true);
+        Assert.assertTrue(removed.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(eventLoop.getHandlerStatistics().containsKey(condition));
+
+        // the condition is forgotten rather than reattached
+        condition.set_trigger_value(true);
+        final GuardCondition other = new GuardCondition();
+        final CountDownLatch otherHandled = new CountDownLatch(1);
+        eventLoop.addHandler(other, c -> {
+            other.set_trigger_value(false);
+            otherHandled.countDown();
+        });
+        other.set_trigger_value(true);
+        Assert.assertTrue(otherHandled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRemoveWaitsForRunningHandler() throws InterruptedException {
+        start(1);
+        final GuardCondition condition = new GuardCondition();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        eventLoop.addHandler(condition, c -> {
+            condition.set_trigger_value(false);
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        condition.set_trigger_value(true);
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch removed = new CountDownLatch(1);
+        Thread remover = new Thread(() -> {
+            eventLoop.removeHandler(condition);
+            removed.countDown();
+        });
+        remover.start();
+        Assert.assertFalse(removed.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertTrue(removed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStatisticsPerCondition() throws InterruptedException {
+        start(0);
+        final GuardCondition first = new GuardCondition(), second = new GuardCondition();
+        final CountDownLatch handled = new CountDownLatch(2);
+        EventLoop.ConditionHandler handler = c -> {
+            ((GuardCondition) c).set_trigger_value(false);
+            handled.countDown();
+        };
+        eventLoop.addHandler(first, handler);
+        eventLoop.addHandler(second, handler);
+        first.set_trigger_value(true);
+        second.set_trigger_value(true);
+        Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+
+        eventLoop.removeHandler(first);
+        Map<Condition, EventLoop.HandlerStatistics> statistics = eventLoop.getHandlerStatistics();
+        Assert.assertFalse(statistics.containsKey(first));
+        Assert.assertEquals(1L, statistics.get(second).getInvocations());
+        Assert.assertSame(handler, statistics.get(second).getHandler());
+        eventLoop.removeHandler(second);
+    }
+}
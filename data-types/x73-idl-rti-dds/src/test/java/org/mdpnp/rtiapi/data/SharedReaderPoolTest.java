@@ -0,0 +1,275 @@
+package org.mdpnp.rtiapi.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.rti.dds.infrastructure.Copyable;
+import com.rti.dds.infrastructure.StringSeq;
+import com.rti.dds.subscription.DataReader;
+import com.rti.dds.subscription.SampleInfo;
+import com.rti.dds.subscription.Subscriber;
+
+public class SharedReaderPoolTest {
+
+    private static final class Sample implements Copyable {
+        String udi;
+
+        Sample(String udi) {
+            this.udi = udi;
+        }
+
+        @Override
+        public Object copy_from(Object src) {
+            udi = ((Sample) src).udi;
+            return this;
+        }
+    }
+
+    private static final Function<Sample, String> UDI_OF = s -> s.udi;
+
+    /**
+     * Stands in for the shared InstanceModelImpl, keeping the samples it has "read" so that
+     * iterate can replay them.
+     */
+    private static final class FakeModel implements ReaderInstanceModel<Sample, DataReader> {
+        final ListenerList<InstanceModelListener<Sample, DataReader>> listeners = new ListenerList<InstanceModelListener<Sample, DataReader>>(InstanceModelListener.class);
+        final List<Sample> held = new ArrayList<Sample>();
+        int started, stopped;
+
+        void sample(Sample data, SampleInfo sampleInfo) {
+            held.add(data);
+            listeners.fire(l -> l.instanceSample(this, null, data, sampleInfo));
+        }
+
+        void notAlive(Sample keyHolder, SampleInfo sampleInfo) {
+            held.remove(keyHolder);
+            listeners.fire(l -> l.instanceNotAlive(this, null, keyHolder, sampleInfo));
+        }
+
+        @Override
+        public void addListener(InstanceModelListener<Sample, DataReader> listener) {
+            listeners.addListener(listener);
+        }
+
+        @Override
+        public void iterateAndAddListener(InstanceModelListener<Sample, DataReader> listener) {
+            addListener(listener);
+            iterate(listener);
+        }
+
+        @Override
+        public void iterate(InstanceModelListener<Sample, DataReader> listener) {
+            for (Sample s : held) {
+                listener.instanceSample(this, null, s, new SampleInfo());
+            }
+        }
+
+        @Override
+        public void iterateAndAddListener(InstanceModelListener<Sample, DataReader> listener, int maxSamples) {
+            iterateAndAddListener(listener);
+        }
+
+        @Override
+        public void removeListener(InstanceModelListener<Sample, DataReader> listener) {
+            listeners.removeListener(listener);
+        }
+
+        @Override
+        public void startReader(Subscriber subscriber, EventLoop eventLoop, String expression, StringSeq params, String qosLibrary, String qosProfile) {
+            startReader(subscriber, eventLoop, qosLibrary, qosProfile);
+        }
+
+        @Override
+        public void startReader(Subscriber subscriber, EventLoop eventLoop, String qosLibrary, String qosProfile) {
+            started++;
+        }
+
+        @Override
+        public void startReader(Subscriber subscriber, EventLoop eventLoop) {
+            startReader(subscriber, eventLoop, null, null);
+        }
+
+        @Override
+        public void stopReader() {
+            stopped++;
+        }
+
+        @Override
+        public DataReader getReader() {
+            return null;
+        }
+
+        @Override
+        public EventLoop getEventLoop() {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return held.size();
+        }
+    }
+
+    private static final class Factory implements Supplier<FakeModel> {
+        final List<FakeModel> created = new ArrayList<FakeModel>();
+
+        @Override
+        public FakeModel get() {
+            FakeModel model = new FakeModel();
+            created.add(model);
+            return model;
+        }
+    }
+
+    private static final class Recorder implements InstanceModelListener<Sample, DataReader> {
+        final List<String> events = new ArrayList<String>();
+        ReaderInstanceModel<Sample, DataReader> source;
+
+        @Override
+        public void instanceAlive(ReaderInstanceModel<Sample, DataReader> model, DataReader reader, Sample data, SampleInfo sampleInfo) {
+            source = model;
+            events.add("alive " + data.udi);
+        }
+
+        @Override
+        public void instanceNotAlive(ReaderInstanceModel<Sample, DataReader> model, DataReader reader, Sample keyHolder, SampleInfo sampleInfo) {
+            source = model;
+            events.add("notAlive " + keyHolder.udi);
+        }
+
+        @Override
+        public void instanceSample(ReaderInstanceModel<Sample, DataReader> model, DataReader reader, Sample data, SampleInfo sampleInfo) {
+            source = model;
+            events.add("sample " + data.udi);
+        }
+    }
+
+    private static PooledInstanceModel<Sample, DataReader> model(String topic, String udi, Factory factory) {
+        return new PooledInstanceModel<Sample, DataReader>(topic, udi, factory, UDI_OF);
+    }
+
+    @Test
+    public void testSamplesRoutedByUdi() {
+        Factory factory = new Factory();
+        PooledInstanceModel<Sample, DataReader> a = model("testSamplesRoutedByUdi", "A", factory);
+        PooledInstanceModel<Sample, DataReader> b = model("testSamplesRoutedByUdi", "B", factory);
+        Recorder ra = new Recorder(), rb = new Recorder();
+        a.addListener(ra);
+        b.addListener(rb);
+        a.startReader(null, null);
+        b.startReader(null, null);
+
+        Assert.assertEquals(1, factory.created.size());
+        FakeModel shared = factory.created.get(0);
+        Assert.assertEquals(1, shared.started);
+
+        shared.sample(new Sample("A"), new SampleInfo());
+        shared.sample(new Sample("C"), new SampleInfo());
+        shared.notAlive(new Sample("B"), new SampleInfo());
+
+        Assert.assertEquals(1, ra.events.size());
+        Assert.assertEquals("sample A", ra.events.get(0));
+        Assert.assertSame(a, ra.source);
+        Assert.assertEquals(1, rb.events.size());
+        Assert.assertEquals("notAlive B", rb.events.get(0));
+        Assert.assertSame(b, rb.source);
+
+        a.stopReader();
+        b.stopReader();
+    }
+
+    @Test
+    public void testSharedReaderReleasedByLastModel() {
+        Factory factory = new Factory();
+        PooledInstanceModel<Sample, DataReader> a = model("testSharedReaderReleasedByLastModel", "A", factory);
+        PooledInstanceModel<Sample, DataReader> b = model("testSharedReaderReleasedByLastModel", "B", factory);
+        a.startReader(null, null);
+        b.startReader(null, null);
+        FakeModel shared = factory.created.get(0);
+
+        a.stopReader();
+        Assert.assertEquals(0, shared.stopped);
+        Assert.assertNull(a.getEventLoop());
+        // a stopped model no longer hears of its device
+        Recorder ra = new Recorder();
+        a.addListener(ra);
+        shared.sample(new Sample("A"), new SampleInfo());
+        Assert.assertTrue(ra.events.isEmpty());
+
+        b.stopReader();
+        Assert.assertEquals(1, shared.stopped);
+        Assert.assertTrue(shared.listeners.isEmpty());
+
+        // stopping again does not release the reader a second time
+        b.stopReader();
+        Assert.assertEquals(1, shared.stopped);
+
+        // the next model to start gets a new shared reader
+        a.startReader(null, null);
+        Assert.assertEquals(2, factory.created.size());
+        Assert.assertEquals(1, factory.created.get(1).started);
+        a.stopReader();
+        Assert.assertEquals(1, factory.created.get(1).stopped);
+    }
+
+    @Test
+    public void testSeparateTopicsSeparateReaders() {
+        Factory factory = new Factory();
+        PooledInstanceModel<Sample, DataReader> a = model("testSeparateTopicsSeparateReaders1", "A", factory);
+        PooledInstanceModel<Sample, DataReader> b = model("testSeparateTopicsSeparateReaders2", "A", factory);
+        a.startReader(null, null);
+        b.startReader(null, null);
+        Assert.assertEquals(2, factory.created.size());
+        a.stopReader();
+        Assert.assertEquals(1, factory.created.get(0).stopped);
+        Assert.assertEquals(0, factory.created.get(1).stopped);
+        b.stopReader();
+    }
+
+    @Test
+    public void testSizeCountsInstancesSeenAfterJoining() {
+        Factory factory = new Factory();
+        PooledInstanceModel<Sample, DataReader> a = model("testSizeCountsInstancesSeenAfterJoining", "A", factory);
+        PooledInstanceModel<Sample, DataReader> b = model("testSizeCountsInstancesSeenAfterJoining", "B", factory);
+        a.startReader(null, null);
+        FakeModel shared = factory.created.get(0);
+        shared.sample(new Sample("B"), new SampleInfo());
+
+        b.startReader(null, null);
+        Recorder rb = new Recorder();
+        b.iterateAndAddListener(rb);
+        // the instance held before b joined is replayed but not counted
+        Assert.assertEquals(1, rb.events.size());
+        Assert.assertEquals(0, b.size());
+
+        shared.sample(new Sample("B"), new SampleInfo());
+        shared.sample(new Sample("B"), new SampleInfo());
+        Assert.assertEquals(1, b.size());
+        Assert.assertEquals(0, a.size());
+
+        shared.notAlive(new Sample("B"), new SampleInfo());
+        Assert.assertEquals(0, b.size());
+        shared.sample(new Sample("B"), new SampleInfo());
+        Assert.assertEquals(1, b.size());
+
+        b.stopReader();
+        Assert.assertEquals(0, b.size());
+        a.stopReader();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartTwice() {
+        PooledInstanceModel<Sample, DataReader> a = model("testStartTwice", "A", new Factory());
+        a.startReader(null, null);
+        try {
+            a.startReader(null, null);
+        } finally {
+            a.stopReader();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer/single-consumer ring of float samples used to re-time a
+ * bursty sample stream into fixed size emission windows.
+ * <p>
+ * One thread calls {@link #write(float[], int, int)} as samples arrive and
+ * one other thread periodically calls {@link #emit(float[])} to copy the
+ * next window out. Neither side takes a lock. The consumer retains up to
+ * {@code targetDepth} samples beyond the window to absorb arrival jitter;
+ * anything beyond that is discarded oldest-first and counted as overrun.
+ * When fewer samples than a full window are available the tail of the
+ * previous window is repeated to make up the shortfall and counted as
+ * underrun.
+ *
+ */
+public final class SampleJitterBuffer {
+    private final float[] ring;
+    private final int mask;
+    private final int targetDepth;
+
+    // writeIndex is only advanced by the producer, readIndex only by the consumer
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+
+    /**
+     * @param capacity minimum number of samples the ring may hold; rounded up to a power of two
+     * @param targetDepth samples retained past each emitted window to absorb jitter
+     */
+    public SampleJitterBuffer(int capacity, int targetDepth) {
+        if (capacity < 1 || targetDepth < 0) {
+            throw new IllegalArgumentException("capacity=" + capacity + " targetDepth=" + targetDepth);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new float[size];
+        this.mask = size - 1;
+        this.targetDepth = targetDepth;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public int getTargetDepth() {
+        return targetDepth;
+    }
+
+    /**
+     * @return samples written but not yet emitted
+     */
+    public int available() {
+        return (int) (writeIndex.get() - readIndex.get());
+    }
+
+    /**
+     * Producer side. Samples that do not fit are dropped and counted as overrun.
+     * @return number of samples accepted
+     */
+    public int write(float[] src, int offset, int length) {
+        long w = writeIndex.get();
+        int free = ring.length - (int) (w - readIndex.get());
+        int n = length > free ? free : length;
+        if (n < length) {
+            overruns.addAndGet(length - n);
+        }
+        int start = (int) (w & mask);
+        int first = Math.min(n, ring.length - start);
+        System.arraycopy(src, offset, ring, start, first);
+        System.arraycopy(src, offset + first, ring, 0, n - first);
+        writeIndex.lazySet(w + n);
+        return n;
+    }
+
+    /**
+     * Consumer side. Fills {@code window} (its full length is one emission) with the
+     * oldest buffered samples.
+     * @return false if no new samples arrived since the previous emission, in which case
+     *         {@code window} is untouched
+     */
+    public boolean emit(float[] window) {
+        final int n = window.length;
+        long r = readIndex.get();
+        int avail = (int) (writeIndex.get() - r);
+        if (0 == avail) {
+            underruns.addAndGet(n);
+            return false;
+        }
+        int excess = avail - n - targetDepth;
+        if (excess > 0) {
+            overruns.addAndGet(excess);
+            r += excess;
+            avail -= excess;
+        }
+        int take = avail < n ? avail : n;
+        if (take < n) {
+            underruns.addAndGet(n - take);
+            // repeat the tail of the previous window; zeros on the first emission
+            System.arraycopy(window, take, window, 0, n - take);
+        }
+        int start = (int) (r & mask);
+        int first = Math.min(take, ring.length - start);
+        System.arraycopy(ring, start, window, n - take, first);
+        System.arraycopy(ring, 0, window, n - take + first, take - first);
+        readIndex.lazySet(r + take);
+        return true;
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    public long getUnderruns() {
+        return underruns.get();
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer byte ring for handing a stream from one
+ * thread to another in bulk.
+ * <p>
+ * Neither side takes a lock. A side that must wait parks, and the other side
+ * unparks it only when it has published that it is waiting, so a steady stream
+ * of chunks costs no wakeups at all while the consumer keeps up.
+ *
+ */
+public final class SpscByteRing {
+    private final byte[] ring;
+    private final int mask;
+
+    // writeIndex is only advanced by the producer, readIndex only by the consumer
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    private volatile Thread waitingReader, waitingWriter;
+    private volatile boolean writerClosed, readerClosed;
+
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = single;
+            return read(one, 0, 1) < 0 ? -1 : (0xFF & one[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return SpscByteRing.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return SpscByteRing.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeReader();
+        }
+    };
+    // only touched by the consumer
+    private final byte[] single = new byte[1];
+
+    /**
+     * @param capacity minimum number of bytes the ring may hold; rounded up to a power of two
+     */
+    public SpscByteRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity=" + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new byte[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return bytes written but not yet read
+     */
+    public int available() {
+        return (int) (writeIndex.get() - readIndex.get());
+    }
+
+    /**
+     * Producer side. Blocks while the ring is full.
+     * @throws IOException if the consumer has closed its side
+     */
+    public void write(byte[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            if (readerClosed) {
+                throw new IOException("Reading side of the ring is closed");
+            }
+            long w = writeIndex.get();
+            int free = ring.length - (int) (w - readIndex.get());
+            if (0 == free) {
+                awaitSpace();
+                continue;
+            }
+            int n = len < free ? len : free;
+            int start = (int) (w & mask);
+            int first = Math.min(n, ring.length - start);
+            System.arraycopy(src, off, ring, start, first);
+            System.arraycopy(src, off + first, ring, 0, n - first);
+            // a full volatile write so that the check of waitingReader below cannot be reordered before it
+            writeIndex.set(w + n);
+            Thread reader = waitingReader;
+            if (null != reader) {
+                LockSupport.unpark(reader);
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Consumer side. Blocks until at least one byte is available.
+     * @return number of bytes read or -1 if the producer has closed and every byte has been read
+     */
+    public int read(byte[] dst, int off, int len) throws IOException {
+        if (0 == len) {
+            return 0;
+        }
+        long r = readIndex.get();
+        int avail;
+        while (0 == (avail = (int) (writeIndex.get() - r))) {
+            if (writerClosed) {
+                // the producer may have written just before closing
+                if (0 == (avail = (int) (writeIndex.get() - r))) {
+                    return -1;
+                }
+                break;
+            }
+            awaitData(r);
+        }
+        int n = avail < len ? avail : len;
+        int start = (int) (r & mask);
+        int first = Math.min(n, ring.length - start);
+        System.arraycopy(ring, start, dst, off, first);
+        System.arraycopy(ring, 0, dst, off + first, n - first);
+        readIndex.set(r + n);
+        Thread writer = waitingWriter;
+        if (null != writer) {
+            LockSupport.unpark(writer);
+        }
+        return n;
+    }
+
+    private void awaitData(long r) throws InterruptedIOException {
+        waitingReader = Thread.currentThread();
+        try {
+            if (writeIndex.get() == r && !writerClosed) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingReader = null;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void awaitSpace() throws InterruptedIOException {
+        waitingWriter = Thread.currentThread();
+        try {
+            if (writeIndex.get() - readIndex.get() == ring.length && !readerClosed) {
+                LockSupport.park(this);
+            }
+        } finally {
+            waitingWriter = null;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Producer side end of stream; the consumer reads -1 once the ring is drained.
+     */
+    public void close() {
+        writerClosed = true;
+        Thread reader = waitingReader;
+        if (null != reader) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    private void closeReader() {
+        readerClosed = true;
+        Thread writer = waitingWriter;
+        if (null != writer) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return the consumer side of the ring as an InputStream
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+}
@@ -12,12 +12,36 @@
  ******************************************************************************/
 package org.mdpnp.devices.math;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
+ * Orthonormal DCT-II ({@link #dct}) and its inverse, the DCT-III ({@link #idct}).
+ * <p>
+ * Transforms are computed in O(N log N) by reordering the input into an N-point complex
+ * DFT (Makhoul). Power of two lengths use a radix-2 FFT directly and other lengths go
+ * through Bluestein's chirp-z transform. Twiddle, chirp and cosine tables are computed once
+ * per length and shared; scratch space is held per thread so a transform into a caller
+ * supplied buffer does not allocate.
+ *
  * @author Jeff Plourde
  *
  */
 public class DCT {
 
+    // below this length the tabled direct sum beats the FFT
+    private static final int DIRECT_MAX = 16;
+
+    private static final ConcurrentMap<Integer, Plan> plans = new ConcurrentHashMap<Integer, Plan>();
+    private static final ConcurrentMap<Integer, Fft> ffts = new ConcurrentHashMap<Integer, Fft>();
+
+    private static final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
     public static double[] idct(double[] coeffs, double[] results) {
         return idct(coeffs, 0, coeffs.length, results, 0, results.length);
     }
@@ -26,6 +50,12 @@ public class DCT {
         return idct(coeffs, coff, clen, results, 0, results.length);
     }
 
+    /**
+     * Inverse of {@link #dct(double[], double[])}; the {@code clen} coefficients are
+     * treated as the leading coefficients of an {@code rlen} point transform. As it
+     * always has, this clears all of {@code results} before writing {@code rlen} values
+     * at {@code roff}.
+     */
     public static double[] idct(double[] coeffs, int coff, int clen, double[] results, int roff, int rlen) {
         if (null == results) {
             results = new double[coeffs.length];
@@ -34,13 +64,43 @@ public class DCT {
                 results[i] = 0.0;
             }
         }
+        if (rlen <= 0) {
+            return results;
+        }
+        Workspace w = workspace.get();
+        double[] in = w.input(rlen);
+        for (int j = 0; j < rlen; j++) {
+            in[j] = j < clen ? coeffs[coff + j] : 0.0;
+        }
+        double[] out = w.output(rlen);
+        inverse(plan(rlen), in, coeffs, coff, clen, out, w);
+        System.arraycopy(out, 0, results, roff, rlen);
+        return results;
+    }
 
+    /**
+     * Float variant of {@link #idct(double[], int, int, double[], int, int)} that writes
+     * only the {@code rlen} values at {@code roff}.
+     */
+    public static float[] idct(float[] coeffs, int coff, int clen, float[] results, int roff, int rlen) {
+        if (null == results) {
+            results = new float[roff + rlen];
+        }
+        if (rlen <= 0) {
+            return results;
+        }
+        Workspace w = workspace.get();
+        double[] in = w.input(Math.max(rlen, clen));
+        for (int j = 0; j < clen; j++) {
+            in[j] = coeffs[coff + j];
+        }
+        for (int j = clen; j < rlen; j++) {
+            in[j] = 0.0;
+        }
+        double[] out = w.output(rlen);
+        inverse(plan(rlen), in, in, 0, clen, out, w);
         for (int i = 0; i < rlen; i++) {
-            double cc = Math.sqrt(1.0 / 2.0);
-            for (int j = 0; j < clen; j++) {
-                results[roff + i] += Math.sqrt(2.0 / rlen) * cc * coeffs[coff + j] * Math.cos(Math.PI * j * (i + 0.5) / rlen);
-                cc = Math.sqrt(1.0 / 1.0);
-            }
+            results[roff + i] = (float) out[i];
         }
         return results;
     }
@@ -57,14 +117,14 @@ public class DCT {
                 r[i] = 0.0;
             }
         }
-        double cc = Math.sqrt(1.0 / d.length);
-        for (int i = 0; i < d.length; i++) {
-            for (int j = 0; j < d.length; j++) {
-                r[i] += d[j] * Math.cos(Math.PI * (j + 0.5) * i / d.length);
-            }
-            r[i] *= cc;
-            cc = Math.sqrt(2.0 / d.length);
+        final int n = d.length;
+        if (n == 0) {
+            return r;
         }
+        Workspace w = workspace.get();
+        double[] out = w.output(n);
+        forward(plan(n), d, 0, out, w);
+        System.arraycopy(out, 0, r, 0, n);
         return r;
     }
 
@@ -72,6 +132,10 @@ public class DCT {
         return dct(d, start, r, d.length);
     }
 
+    /**
+     * Transforms all of {@code d}, read circularly beginning at {@code start}, and keeps
+     * the first {@code count} coefficients.
+     */
     public static float[] dct(float[] d, int start, float[] r, int count) {
         if (null == r) {
             r = new float[d.length];
@@ -80,14 +144,298 @@ public class DCT {
                 r[i] = 0f;
             }
         }
-        double cc = Math.sqrt(1.0 / d.length);
+        final int n = d.length;
+        if (n == 0) {
+            return r;
+        }
+        Workspace w = workspace.get();
+        double[] in = w.input(n);
+        for (int j = 0; j < n; j++) {
+            in[j] = d[(start + j) % n];
+        }
+        double[] out = w.output(n);
+        forward(plan(n), in, 0, out, w);
         for (int i = 0; i < count; i++) {
-            for (int j = 0; j < d.length; j++) {
-                r[i] += d[(start + j) % d.length] * Math.cos(Math.PI * (j + 0.5) * i / d.length);
-            }
-            r[i] *= cc;
-            cc = Math.sqrt(2.0 / d.length);
+            r[i] = (float) out[i];
         }
         return r;
     }
+
+    private static void forward(Plan p, double[] x, int off, double[] out, Workspace w) {
+        final int n = p.n;
+        if (n <= DIRECT_MAX) {
+            final double[] cos4n = p.cos4n();
+            for (int k = 0; k < n; k++) {
+                double sum = 0.0;
+                for (int j = 0; j < n; j++) {
+                    sum += x[off + j] * cos4n[(int) (((long) k * (2 * j + 1)) % (4 * n))];
+                }
+                out[k] = sum * (k == 0 ? p.scale0 : p.scale);
+            }
+            return;
+        }
+        double[] re = w.re(n), im = w.im(n);
+        // even samples ascending followed by odd samples descending
+        for (int j = 0, half = (n + 1) / 2; j < half; j++) {
+            re[j] = x[off + 2 * j];
+        }
+        for (int j = 0, half = n / 2; j < half; j++) {
+            re[n - 1 - j] = x[off + 2 * j + 1];
+        }
+        for (int j = 0; j < n; j++) {
+            im[j] = 0.0;
+        }
+        dft(p, re, im, w);
+        for (int k = 0; k < n; k++) {
+            out[k] = (p.twCos[k] * re[k] + p.twSin[k] * im[k]) * (k == 0 ? p.scale0 : p.scale);
+        }
+    }
+
+    /**
+     * @param a the first {@code min(clen, n)} coefficients, zero padded to {@code n}
+     * @param coeffs the original coefficients, only consulted when {@code clen > n}
+     */
+    private static void inverse(Plan p, double[] a, double[] coeffs, int coff, int clen, double[] out, Workspace w) {
+        final int n = p.n;
+        if (n <= DIRECT_MAX || clen > n) {
+            // beyond n the coefficients alias onto lower frequencies; sum them directly
+            final int m4 = 4 * n;
+            final double[] cos4n = p.cos4n();
+            for (int i = 0; i < n; i++) {
+                double sum = 0.0;
+                for (int j = 0; j < clen; j++) {
+                    sum += (j == 0 ? p.scale0 : p.scale) * coeffs[coff + j] * cos4n[(int) (((long) j * (2 * i + 1)) % m4)];
+                }
+                out[i] = sum;
+            }
+            return;
+        }
+        double[] re = w.re(n), im = w.im(n);
+        // V[k] = e^(i pi k / 2n) (X[k] - i X[n-k]) with X[0] doubled and X[n] = 0
+        for (int k = 0; k < n; k++) {
+            double xr = k == 0 ? 2.0 * p.scale0 * a[0] : p.scale * a[k];
+            double xi = k == 0 ? 0.0 : -p.scale * a[n - k];
+            // conjugated so that the forward DFT computes the inverse
+            re[k] = p.twCos[k] * xr - p.twSin[k] * xi;
+            im[k] = -(p.twSin[k] * xr + p.twCos[k] * xi);
+        }
+        dft(p, re, im, w);
+        for (int j = 0, half = (n + 1) / 2; j < half; j++) {
+            out[2 * j] = 0.5 * re[j];
+        }
+        for (int j = 0, half = n / 2; j < half; j++) {
+            out[2 * j + 1] = 0.5 * re[n - 1 - j];
+        }
+    }
+
+    /**
+     * In place forward DFT of length p.n
+     */
+    private static void dft(Plan p, double[] re, double[] im, Workspace w) {
+        if (null == p.chirpCos) {
+            p.fft.transform(re, im);
+            return;
+        }
+        // Bluestein: X[k] = w[k] * sum a[j] w[j] conj(w[k - j]) where w[j] = e^(-i pi j^2 / n)
+        final int n = p.n, m = p.fft.n;
+        double[] br = w.bluesteinRe(m), bi = w.bluesteinIm(m);
+        for (int j = 0; j < n; j++) {
+            double c = p.chirpCos[j], s = p.chirpSin[j];
+            br[j] = re[j] * c - im[j] * s;
+            bi[j] = re[j] * s + im[j] * c;
+        }
+        for (int j = n; j < m; j++) {
+            br[j] = 0.0;
+            bi[j] = 0.0;
+        }
+        p.fft.transform(br, bi);
+        for (int j = 0; j < m; j++) {
+            double r = br[j] * p.filterRe[j] - bi[j] * p.filterIm[j];
+            double i = br[j] * p.filterIm[j] + bi[j] * p.filterRe[j];
+            // conjugate in and out of the forward transform to invert it
+            br[j] = r;
+            bi[j] = -i;
+        }
+        p.fft.transform(br, bi);
+        final double inv = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double r = br[k] * inv, i = -bi[k] * inv;
+            double c = p.chirpCos[k], s = p.chirpSin[k];
+            re[k] = r * c - i * s;
+            im[k] = r * s + i * c;
+        }
+    }
+
+    private static Plan plan(int n) {
+        Plan p = plans.get(n);
+        if (null == p) {
+            p = new Plan(n);
+            Plan existing = plans.putIfAbsent(n, p);
+            if (null != existing) {
+                p = existing;
+            }
+        }
+        return p;
+    }
+
+    private static Fft fft(int n) {
+        Fft f = ffts.get(n);
+        if (null == f) {
+            f = new Fft(n);
+            Fft existing = ffts.putIfAbsent(n, f);
+            if (null != existing) {
+                f = existing;
+            }
+        }
+        return f;
+    }
+
+    private static final class Plan {
+        final int n;
+        final double scale0, scale;
+        // cos(pi m / 2n) for 0 <= m < 4n; only the direct sums need it
+        private volatile double[] cos4n;
+        // e^(-i pi k / 2n)
+        final double[] twCos, twSin;
+        // null for powers of two
+        final double[] chirpCos, chirpSin, filterRe, filterIm;
+        final Fft fft;
+
+        Plan(int n) {
+            this.n = n;
+            this.scale0 = Math.sqrt(1.0 / n);
+            this.scale = Math.sqrt(2.0 / n);
+            if (n <= DIRECT_MAX) {
+                twCos = twSin = chirpCos = chirpSin = filterRe = filterIm = null;
+                fft = null;
+                return;
+            }
+            twCos = new double[n];
+            twSin = new double[n];
+            for (int k = 0; k < n; k++) {
+                double theta = Math.PI * k / (2.0 * n);
+                twCos[k] = Math.cos(theta);
+                twSin[k] = Math.sin(theta);
+            }
+            if (Integer.bitCount(n) == 1) {
+                fft = fft(n);
+                chirpCos = chirpSin = filterRe = filterIm = null;
+            } else {
+                int m = Integer.highestOneBit(2 * n - 1) << 1;
+                fft = fft(m);
+                chirpCos = new double[n];
+                chirpSin = new double[n];
+                final long mod = 2L * n;
+                for (int j = 0; j < n; j++) {
+                    // reduce j^2 modulo 2n to keep the angle accurate
+                    double theta = Math.PI * (((long) j * j) % mod) / n;
+                    chirpCos[j] = Math.cos(theta);
+                    chirpSin[j] = -Math.sin(theta);
+                }
+                filterRe = new double[m];
+                filterIm = new double[m];
+                filterRe[0] = chirpCos[0];
+                filterIm[0] = -chirpSin[0];
+                for (int j = 1; j < n; j++) {
+                    filterRe[j] = filterRe[m - j] = chirpCos[j];
+                    filterIm[j] = filterIm[m - j] = -chirpSin[j];
+                }
+                fft.transform(filterRe, filterIm);
+            }
+        }
+
+        double[] cos4n() {
+            double[] c = cos4n;
+            if (null == c) {
+                c = new double[4 * n];
+                for (int m = 0; m < c.length; m++) {
+                    c[m] = Math.cos(Math.PI * m / (2.0 * n));
+                }
+                cos4n = c;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Iterative radix-2 forward FFT of a power of two length
+     */
+    private static final class Fft {
+        final int n;
+        final double[] cos, sin;
+        final int[] reverse;
+
+        Fft(int n) {
+            this.n = n;
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                double theta = 2.0 * Math.PI * k / n;
+                cos[k] = Math.cos(theta);
+                sin[k] = -Math.sin(theta);
+            }
+            reverse = new int[n];
+            int bits = Integer.numberOfTrailingZeros(n);
+            for (int i = 0; i < n; i++) {
+                reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+            }
+        }
+
+        void transform(double[] re, double[] im) {
+            for (int i = 0; i < n; i++) {
+                int j = reverse[i];
+                if (j > i) {
+                    double t = re[i];
+                    re[i] = re[j];
+                    re[j] = t;
+                    t = im[i];
+                    im[i] = im[j];
+                    im[j] = t;
+                }
+            }
+            for (int size = 2; size <= n; size <<= 1) {
+                int half = size >> 1, step = n / size;
+                for (int i = 0; i < n; i += size) {
+                    for (int j = i, k = 0; j < i + half; j++, k += step) {
+                        int l = j + half;
+                        double tr = re[l] * cos[k] - im[l] * sin[k];
+                        double ti = re[l] * sin[k] + im[l] * cos[k];
+                        re[l] = re[j] - tr;
+                        im[l] = im[j] - ti;
+                        re[j] += tr;
+                        im[j] += ti;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Workspace {
+        private double[] input = new double[0], output = new double[0], re = new double[0], im = new double[0], bre = new double[0],
+                bim = new double[0];
+
+        double[] input(int n) {
+            return input.length >= n ? input : (input = new double[n]);
+        }
+
+        double[] output(int n) {
+            return output.length >= n ? output : (output = new double[n]);
+        }
+
+        double[] re(int n) {
+            return re.length >= n ? re : (re = new double[n]);
+        }
+
+        double[] im(int n) {
+            return im.length >= n ? im : (im = new double[n]);
+        }
+
+        double[] bluesteinRe(int n) {
+            return bre.length >= n ? bre : (bre = new double[n]);
+        }
+
+        double[] bluesteinIm(int n) {
+            return bim.length >= n ? bim : (bim = new double[n]);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for loops that carry thousands of short timers.  Adding a
+ * task is O(1) and each tick only visits the tasks hashed to that tick's bucket,
+ * at the cost of up to one tick of additional lateness and a wakeup every tick
+ * while any task is scheduled.
+ * <p>
+ * Tasks further out than one revolution of the wheel share buckets with nearer
+ * tasks and are simply left in place until their scheduled time arrives.
+ *
+ */
+public class HashedWheelTaskQueue extends TaskQueue {
+    public static final long DEFAULT_TICK_MS = Long.getLong("org.mdpnp.devices.net.HashedWheelTaskQueue.tickMs", 10L);
+    public static final int DEFAULT_WHEEL_SIZE = Integer.getInteger("org.mdpnp.devices.net.HashedWheelTaskQueue.wheelSize", 512);
+
+    private final long tickMs;
+    private final List<Task<?>>[] buckets;
+    private final int mask;
+    private int size;
+    // Every tick up to and including this one has been processed
+    private long lastTick;
+
+    public HashedWheelTaskQueue() {
+        this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickMs resolution of the wheel in milliseconds
+     * @param wheelSize number of buckets; rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTaskQueue(long tickMs, int wheelSize) {
+        if (tickMs < 1L || wheelSize < 1) {
+            throw new IllegalArgumentException("tickMs=" + tickMs + " wheelSize=" + wheelSize);
+        }
+        int n = Integer.highestOneBit(wheelSize);
+        if (n < wheelSize) {
+            n <<= 1;
+        }
+        this.tickMs = tickMs;
+        this.buckets = new List[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new ArrayList<Task<?>>();
+        }
+        this.mask = n - 1;
+        this.lastTick = System.currentTimeMillis() / tickMs - 1L;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public int getWheelSize() {
+        return buckets.length;
+    }
+
+    @Override
+    public synchronized void add(Task<?> task) {
+        // Never hash into a tick that has already been processed
+        long tick = Math.max(task.getScheduledTime() / tickMs, lastTick + 1L);
+        buckets[(int) (tick & mask)].add(task);
+        size++;
+    }
+
+    @Override
+    protected void pollExpired(long now, List<Task<?>> expired) {
+        // Only ticks that have entirely elapsed are processed
+        long nowTick = now / tickMs - 1L;
+        if (0 == size) {
+            lastTick = Math.max(lastTick, nowTick);
+            return;
+        }
+        // After a long idle spell a single revolution visits every bucket
+        long from = Math.max(lastTick + 1L, nowTick - mask);
+        for (long tick = from; tick <= nowTick; tick++) {
+            List<Task<?>> bucket = buckets[(int) (tick & mask)];
+            for (int i = 0; i < bucket.size();) {
+                Task<?> t = bucket.get(i);
+                if (t.getScheduledTime() <= now) {
+                    // order within a bucket does not matter so swap-remove
+                    int last = bucket.size() - 1;
+                    bucket.set(i, bucket.get(last));
+                    bucket.remove(last);
+                    expired.add(t);
+                    size--;
+                } else {
+                    i++;
+                }
+            }
+        }
+        lastTick = Math.max(lastTick, nowTick);
+    }
+
+    @Override
+    public synchronized long timeToNextTask(long now) {
+        if (0 == size) {
+            return 0L;
+        } else {
+            // the next unprocessed tick may be processed once it has ended
+            long delta = (lastTick + 2L) * tickMs - now;
+            return delta <= 0L ? -1L : delta;
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (List<Task<?>> bucket : buckets) {
+            bucket.clear();
+        }
+        size = 0;
+    }
+}
@@ -19,15 +19,32 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Runs one Selector on one thread. Channels registered or unregistered from another thread
+ * are queued for the loop thread, which applies them before its next select, so the loop
+ * never stops for a registration. To spread many connections over several selector threads
+ * see {@link NetworkLoopGroup}.
+ *
  * @author Jeff Plourde
  *
  */
 public class NetworkLoop implements Runnable {
+    /**
+     * Upper bounds (inclusive, in microseconds) of the select latency histogram buckets;
+     * the final bucket of {@link #getSelectLatencyHistogram()} counts everything longer.
+     */
+    public static final long[] SELECT_LATENCY_BUCKETS_US = new long[] { 10L, 50L, 100L, 500L, 1000L, 2000L, 5000L, 10000L, 50000L, 100000L };
+
     public enum LoopState {
         /**
          * No thread has invoked runLoop
@@ -39,15 +56,21 @@ public class NetworkLoop implements Runnable {
         Resumed,
         /**
          * The interrupt has concluded, processing may continue
+         * @deprecated no longer entered; registrations are queued for the loop thread
          */
+        @Deprecated
         Resuming,
         /**
          * Processing has been successfully interrupted
+         * @deprecated no longer entered; registrations are queued for the loop thread
          */
+        @Deprecated
         Paused,
         /**
          * Interrupt of processing is requested
+         * @deprecated no longer entered; registrations are queued for the loop thread
          */
+        @Deprecated
         Pausing,
         /**
          * Termination of runLoop has been requested
@@ -60,93 +83,118 @@ public class NetworkLoop implements Runnable {
     }
 
     private final Selector select;
-    private final TaskQueue taskQueue = new TaskQueue();
-    private LoopState loopState = LoopState.New;
+    private final TaskQueue taskQueue;
+    private volatile LoopState loopState = LoopState.New;
+
+    private volatile Thread myThread;
 
-    private Thread myThread;
+    // Registrations and cancellations from other threads, run by the loop thread before select
+    private final Queue<FutureTask<SelectionKey>> pending = new ConcurrentLinkedQueue<FutureTask<SelectionKey>>();
+
+    private final AtomicLongArray selectLatency = new AtomicLongArray(SELECT_LATENCY_BUCKETS_US.length + 1);
+    private volatile long maxSelectLatencyNanos;
+    private volatile double utilization;
+    private volatile int readyKeys, connections;
+    private long lastSelected, windowStart, windowSelectNanos;
 
     private static final Logger log = LoggerFactory.getLogger(NetworkLoop.class);
 
     public NetworkLoop() throws IOException {
-        select = Selector.open();
+        this(Selector.open());
     }
 
     public NetworkLoop(Selector select) {
+        this(select, new TaskQueue());
+    }
+
+    /**
+     * @param taskQueue for instance a {@link HashedWheelTaskQueue} when the loop
+     *                  will carry many short timers
+     */
+    public NetworkLoop(TaskQueue taskQueue) throws IOException {
+        this(Selector.open(), taskQueue);
+    }
+
+    public NetworkLoop(Selector select, TaskQueue taskQueue) {
         this.select = select;
+        this.taskQueue = taskQueue;
     }
 
-    private synchronized void pause(String action) {
-        long start = System.currentTimeMillis();
-        if (!Thread.currentThread().equals(myThread)) {
-            while (!LoopState.Paused.equals(loopState)) {
-                long now = System.currentTimeMillis();
-                switch (loopState) {
-                case New:
-                    if (now >= (start + 5000L)) {
-                        throw new IllegalStateException("RunLoop not started after five seconds, unable to register connection");
-                    }
-                    break;
-                case Terminating:
-                case Terminated:
-                    throw new IllegalStateException("Cannot " + action + "; runLoop is " + loopState);
-                case Resuming:
-                case Pausing:
-                case Paused:
-                    break;
-                case Resumed:
-                    loopState = LoopState.Pausing;
-                    select.wakeup();
-                    break;
-                }
+    private boolean isLoopThread() {
+        return Thread.currentThread().equals(myThread);
+    }
 
-                try {
-                    this.wait(250L);
-                } catch (InterruptedException e) {
-                    log.error("Interrupted", e);
+    /**
+     * Runs the registration change here if the loop is not yet running or this is the loop
+     * thread; otherwise queues it for the loop thread and waits for it.
+     */
+    private SelectionKey onLoop(FutureTask<SelectionKey> change, String action) throws ClosedChannelException {
+        if (isLoopThread()) {
+            change.run();
+        } else {
+            boolean queue;
+            synchronized (this) {
+                queue = !LoopState.New.equals(loopState);
+                if (!queue) {
+                    // holding the monitor keeps runLoop from starting and blocking in select,
+                    // which would block channel.register until select returned
+                    change.run();
+                }
+            }
+            if (queue) {
+                pending.add(change);
+                select.wakeup();
+                // the loop drains what is pending as it ends, but this may have come too late
+                LoopState state = loopState;
+                if (LoopState.Terminating.equals(state) || LoopState.Terminated.equals(state)) {
+                    change.cancel(false);
                 }
             }
         }
+        try {
+            return change.get();
+        } catch (CancellationException e) {
+            throw new IllegalStateException("Cannot " + action + "; runLoop is " + loopState);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting to " + action, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ClosedChannelException) {
+                throw (ClosedChannelException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new IllegalStateException("Unable to " + action, e.getCause());
+            }
+        }
     }
 
-    private synchronized void resume() {
-        loopState = LoopState.Resuming;
-        this.notifyAll();
+    private void runPending() {
+        FutureTask<SelectionKey> change;
+        while (null != (change = pending.poll())) {
+            change.run();
+        }
     }
 
-    public SelectionKey register(NetworkConnection conn, SelectableChannel channel) throws ClosedChannelException {
-        SelectionKey key = null;
-        synchronized (this) {
-            if (LoopState.New.equals(loopState)) {
-                key = channel.register(select, SelectionKey.OP_READ, conn);
-            }
-        }
-        if (null != key) {
+    public SelectionKey register(final NetworkConnection conn, final SelectableChannel channel) throws ClosedChannelException {
+        return onLoop(new FutureTask<SelectionKey>(() -> {
+            SelectionKey key = channel.register(select, SelectionKey.OP_READ, conn);
+            connections = select.keys().size();
             conn.registered(this, key);
             return key;
-        } else {
-            pause("register a new connection");
-            key = channel.register(select, SelectionKey.OP_READ, conn);
-            conn.registered(this, key);
-            resume();
-            return key;
-        }
+        }), "register a new connection");
     }
 
-    public void unregister(SelectionKey key, NetworkConnection conn) {
-        boolean canceled = false;
-        synchronized (this) {
-            if (LoopState.New.equals(loopState)) {
+    public void unregister(final SelectionKey key, final NetworkConnection conn) {
+        try {
+            onLoop(new FutureTask<SelectionKey>(() -> {
                 key.cancel();
-                canceled = true;
-            }
-        }
-        if (canceled) {
-            conn.unregistered(this, key);
-        } else {
-            pause("unregister a connection");
-            key.cancel();
-            conn.unregistered(this, key);
-            resume();
+                conn.unregistered(this, key);
+                return key;
+            }), "unregister a connection");
+        } catch (ClosedChannelException e) {
+            // canceling a key does not throw this
+            throw new IllegalStateException(e);
         }
     }
 
@@ -247,40 +295,24 @@ public class NetworkLoop implements Runnable {
 
         try {
             while (true) {
-                synchronized (this) {
-                    while (!LoopState.Resumed.equals(loopState)) {
-                        switch (loopState) {
-                        case New:
-                        case Terminated:
-                            throw new IllegalStateException();
-                        case Terminating:
-                            log.info("runLoop in Terminating state; runLoop will end");
-                            return;
-                        case Pausing:
-                            loopState = LoopState.Paused;
-                            this.notifyAll();
-                            break;
-                        case Resuming:
-                            loopState = LoopState.Resumed;
-                            this.notifyAll();
-                            continue;
-                        case Paused:
-                        case Resumed:
-                        }
-                        try {
-                            this.wait();
-                        } catch (InterruptedException e) {
-                            log.error("Interrupted", e);
-                        }
-                    }
+                if (LoopState.Terminating.equals(loopState)) {
+                    log.info("runLoop in Terminating state; runLoop will end");
+                    return;
                 }
 
+                runPending();
+                long timeout = taskQueue.doExpiredTasks(System.currentTimeMillis());
+                long selectStart = System.nanoTime();
+                recordBusy(selectStart);
                 try {
-                    select(taskQueue.doExpiredTasks(System.currentTimeMillis()));
+                    readyKeys = select(timeout);
                 } catch (IOException e) {
                     log.error("in select", e);
                     break;
                 }
+                lastSelected = System.nanoTime();
+                windowSelectNanos += lastSelected - selectStart;
+                connections = select.keys().size();
 
                 java.util.Set<SelectionKey> keys = select.selectedKeys();
                 for (SelectionKey sk : keys) {
@@ -341,6 +373,7 @@ public class NetworkLoop implements Runnable {
                     // }
                     // }
                 }
+                keys.clear();
             }
         } catch(Throwable t) {
             log.error("NetworkLoop.runLoop exiting on uncaught Throwable; this should not happen", t);
@@ -350,32 +383,68 @@ public class NetworkLoop implements Runnable {
                 loopState = LoopState.Terminated;
                 this.notifyAll();
             }
+            FutureTask<SelectionKey> change;
+            while (null != (change = pending.poll())) {
+                change.cancel(false);
+            }
         }
     }
 
-    public synchronized void cancelThread() {
-        while (!LoopState.Resumed.equals(loopState)) {
-            switch (loopState) {
-            case New:
-                throw new IllegalStateException("runLoop has not been started");
-            case Paused:
-            case Pausing:
-            case Resuming:
-            case Resumed:
-                break;
-            case Terminating:
-            case Terminated:
-                return;
+    /**
+     * Records how long the loop was busy between select returning and the next select and,
+     * once a second, the share of the time not spent waiting in select.  Only the loop
+     * thread gets here.
+     */
+    private void recordBusy(long now) {
+        if (0L == windowStart) {
+            windowStart = now;
+        } else {
+            long latency = now - lastSelected;
+            int bucket = 0;
+            while (bucket < SELECT_LATENCY_BUCKETS_US.length && latency > 1000L * SELECT_LATENCY_BUCKETS_US[bucket]) {
+                bucket++;
             }
-
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                log.error("Interrupted", e);
+            selectLatency.incrementAndGet(bucket);
+            if (latency > maxSelectLatencyNanos) {
+                maxSelectLatencyNanos = latency;
             }
         }
-        this.loopState = LoopState.Terminating;
-        select.wakeup();
+        if (now - windowStart >= 1000000000L) {
+            utilization = 1.0 - (double) windowSelectNanos / (now - windowStart);
+            windowStart = now;
+            windowSelectNanos = 0L;
+        }
+    }
+
+    public synchronized void cancelThread() {
+        switch (loopState) {
+        case New:
+            throw new IllegalStateException("runLoop has not been started");
+        case Terminating:
+        case Terminated:
+            return;
+        default:
+            this.loopState = LoopState.Terminating;
+            select.wakeup();
+        }
+    }
+
+    public LoopState getLoopState() {
+        return loopState;
+    }
+
+    /**
+     * Waits for a thread to begin running this loop.
+     *
+     * @return false if none did within the timeout
+     */
+    public synchronized boolean awaitStarted(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long now;
+        while (LoopState.New.equals(loopState) && (now = System.currentTimeMillis()) < deadline) {
+            this.wait(deadline - now);
+        }
+        return !LoopState.New.equals(loopState);
     }
 
     public void cancelThreadAndWait() {
@@ -405,6 +474,67 @@ public class NetworkLoop implements Runnable {
         select.wakeup();
     }
 
+    public int getTaskCount() {
+        return taskQueue.size();
+    }
+
+    public long getTasksRun() {
+        return taskQueue.getTasksRun();
+    }
+
+    public double getTasksPerSecond() {
+        return taskQueue.getTasksPerSecond();
+    }
+
+    public long getMaxTaskExecutionNanos() {
+        return taskQueue.getMaxExecutionNanos();
+    }
+
+    /**
+     * @see TaskQueue#getLatenessHistogram()
+     */
+    public long[] getTaskLatenessHistogram() {
+        return taskQueue.getLatenessHistogram();
+    }
+
+    /**
+     * @return share of the last second the loop thread spent on anything but waiting in select
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+
+    /**
+     * @return count of passes that took at most {@link #SELECT_LATENCY_BUCKETS_US}[i] microseconds
+     *         from select returning to the next select, which is how long a channel becoming
+     *         ready meanwhile waits; the extra final element counts the remainder
+     */
+    public long[] getSelectLatencyHistogram() {
+        long[] counts = new long[selectLatency.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = selectLatency.get(i);
+        }
+        return counts;
+    }
+
+    public long getMaxSelectLatencyNanos() {
+        return maxSelectLatencyNanos;
+    }
+
+    /**
+     * @return channels ready at the last select plus registration changes waiting for the loop
+     */
+    public int getBacklog() {
+        return readyKeys + pending.size();
+    }
+
+    /**
+     * @return channels registered as of the last select
+     */
+    public int getConnectionCount() {
+        return connections;
+    }
+
     @Override
     public void run() {
         runLoop();
@@ -0,0 +1,174 @@
+package org.mdpnp.devices.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shards connections across several {@link NetworkLoop}s, each running its own Selector on
+ * its own thread, so that the reads and timers of many devices do not all wait on one
+ * thread. A connection stays on the loop it was registered with; anything else done for it
+ * (timers, further registrations) should go to that same loop so that it never needs
+ * locking against itself.
+ */
+public class NetworkLoopGroup {
+
+    private static final String PROPERTY_PREFIX = NetworkLoopGroup.class.getName() + ".";
+
+    /**
+     * Loops in a group created without an explicit count
+     */
+    public static final int LOOPS = Integer.getInteger(PROPERTY_PREFIX + "loops", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final Logger log = LoggerFactory.getLogger(NetworkLoopGroup.class);
+
+    private final String name;
+    private final NetworkLoop[] loops;
+    private final Thread[] threads;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private boolean started;
+
+    public NetworkLoopGroup(String name) throws IOException {
+        this(name, LOOPS);
+    }
+
+    public NetworkLoopGroup(String name, int count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("A NetworkLoopGroup needs at least one loop, not " + count);
+        }
+        this.name = name;
+        this.loops = new NetworkLoop[count];
+        this.threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            loops[i] = new NetworkLoop();
+        }
+    }
+
+    /**
+     * Starts one daemon thread per loop.
+     *
+     * @param group for the threads, may be null
+     */
+    public synchronized void start(ThreadGroup group) {
+        if (started) {
+            throw new IllegalStateException(name + " already started");
+        }
+        started = true;
+        for (int i = 0; i < loops.length; i++) {
+            final NetworkLoop loop = loops[i];
+            threads[i] = new Thread(group, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loop.runLoop();
+                    } finally {
+                        log.info("NetworkLoop.runLoop ended");
+                    }
+                }
+            }, name + " " + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Ends every loop and waits for its thread.
+     */
+    public synchronized void cancelThreadAndWait() {
+        for (NetworkLoop loop : loops) {
+            if (started) {
+                try {
+                    if (loop.awaitStarted(5000L)) {
+                        loop.cancelThread();
+                    } else {
+                        log.warn(name + " loop not started after five seconds");
+                    }
+                } catch (InterruptedException e) {
+                    log.error("Interrupted", e);
+                }
+            }
+        }
+        for (Thread t : threads) {
+            if (null != t) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    log.error("Interrupted", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the loop with the fewest connections, taking the loops in turn among equals so
+     *         that connections made together still spread out
+     */
+    public NetworkLoop next() {
+        int start = Math.floorMod(nextLoop.getAndIncrement(), loops.length);
+        NetworkLoop best = loops[start];
+        int fewest = best.getConnectionCount() + best.getBacklog();
+        for (int i = 1; i < loops.length && fewest > 0; i++) {
+            NetworkLoop loop = loops[(start + i) % loops.length];
+            int n = loop.getConnectionCount() + loop.getBacklog();
+            if (n < fewest) {
+                best = loop;
+                fewest = n;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the loop always chosen for this key, for instance a device address
+     */
+    public NetworkLoop loopFor(Object key) {
+        int h = key.hashCode();
+        // spread the low bits, as HashMap does
+        return loops[Math.floorMod(h ^ (h >>> 16), loops.length)];
+    }
+
+    /**
+     * Registers the channel on the loop chosen for the connection.
+     */
+    public SelectionKey register(NetworkConnection conn, SelectableChannel channel) throws ClosedChannelException {
+        return loopFor(conn).register(conn, channel);
+    }
+
+    public int size() {
+        return loops.length;
+    }
+
+    public NetworkLoop getLoop(int i) {
+        return loops[i];
+    }
+
+    public List<NetworkLoop> getLoops() {
+        return Collections.unmodifiableList(Arrays.asList(loops));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return one line per loop with its connections, utilization, select latency and backlog
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        for (int i = 0; i < loops.length; i++) {
+            NetworkLoop loop = loops[i];
+            sb.append(String.format("%n%d connections=%d utilization=%.1f%% maxSelectLatency=%dus backlog=%d tasks=%d", i, loop.getConnectionCount(),
+                    100.0 * loop.getUtilization(), loop.getMaxSelectLatencyNanos() / 1000L, loop.getBacklog(), loop.getTaskCount()));
+        }
+        return sb.toString();
+    }
+}
@@ -13,54 +13,140 @@
 package org.mdpnp.devices.net;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Tasks ordered by scheduled time in a binary heap so that adding a task and
+ * removing an expired one are both O(log n).  Subclasses may substitute another
+ * structure (see {@link HashedWheelTaskQueue}) by overriding {@link #add(Task)},
+ * {@link #pollExpired(long, List)}, {@link #timeToNextTask(long)}, {@link #size()}
+ * and {@link #clear()}.
+ *
  * @author Jeff Plourde
  *
  */
 public class TaskQueue {
+    /**
+     * Upper bounds (inclusive, in milliseconds) of the lateness histogram buckets;
+     * the final bucket of {@link #getLatenessHistogram()} counts everything later.
+     */
+    public static final long[] LATENESS_BUCKETS_MS = new long[] { 0L, 1L, 2L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L };
+
     private final ThreadLocal<List<Task<?>>> tasksToDo = new ThreadLocal<List<Task<?>>>() {
         protected java.util.List<TaskQueue.Task<?>> initialValue() {
             return new ArrayList<Task<?>>();
         }
     };
 
+    private final AtomicLong tasksRun = new AtomicLong();
+    private final AtomicLongArray lateness = new AtomicLongArray(LATENESS_BUCKETS_MS.length + 1);
+    private volatile long maxExecutionNanos;
+    private volatile double tasksPerSecond;
+    private long windowStart, windowTasks;
+
     public long doExpiredTasks(long now) {
         List<Task<?>> tasksToDo = this.tasksToDo.get();
 
         tasksToDo.clear();
 
         synchronized (this) {
-            for (Task<?> t : queue) {
-                if (t.getScheduledTime() <= now) {
-                    tasksToDo.add(t);
-                }
-            }
-            queue.removeAll(tasksToDo);
+            pollExpired(now, tasksToDo);
             this.notifyAll();
         }
-        if (!tasksToDo.isEmpty()) {
-            for (Task<?> t : tasksToDo) {
-                t.execute(this);
-            }
+        for (int i = 0; i < tasksToDo.size(); i++) {
+            Task<?> t = tasksToDo.get(i);
+            // execute reschedules recurrent tasks so capture this first
+            long late = now - t.getScheduledTime();
+            long start = System.nanoTime();
+            t.execute(this);
+            recordExecution(late, System.nanoTime() - start);
         }
+        updateRate(now, tasksToDo.size());
+        tasksToDo.clear();
         return timeToNextTask(now);
     }
 
-    public final synchronized long timeToNextTask(long now) {
+    /**
+     * Moves every task scheduled at or before now into expired.  Called with
+     * the monitor of this queue held.
+     */
+    protected void pollExpired(long now, List<Task<?>> expired) {
+        Task<?> t;
+        while (null != (t = queue.peek()) && t.getScheduledTime() <= now) {
+            expired.add(queue.poll());
+        }
+    }
+
+    /**
+     * @return milliseconds until the next task is due, 0L if there are no tasks
+     *         (wait indefinitely) or a negative value if a task is already due
+     */
+    public synchronized long timeToNextTask(long now) {
         if (queue.isEmpty()) {
             return 0L;
         } else {
-            return queue.first().getScheduledTime() - now;
+            long delta = queue.peek().getScheduledTime() - now;
+            // 0L would mean wait indefinitely
+            return delta <= 0L ? -1L : delta;
+        }
+    }
+
+    private void recordExecution(long lateMs, long executionNanos) {
+        tasksRun.incrementAndGet();
+        int bucket = 0;
+        while (bucket < LATENESS_BUCKETS_MS.length && lateMs > LATENESS_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        lateness.incrementAndGet(bucket);
+        if (executionNanos > maxExecutionNanos) {
+            maxExecutionNanos = executionNanos;
         }
     }
 
+    private void updateRate(long now, int tasks) {
+        // only the thread running the queue gets here
+        if (0L == windowStart) {
+            windowStart = now;
+        }
+        windowTasks += tasks;
+        if (now - windowStart >= 1000L) {
+            tasksPerSecond = 1000.0 * windowTasks / (now - windowStart);
+            windowStart = now;
+            windowTasks = 0L;
+        }
+    }
+
+    public long getTasksRun() {
+        return tasksRun.get();
+    }
+
+    public double getTasksPerSecond() {
+        return tasksPerSecond;
+    }
+
+    public long getMaxExecutionNanos() {
+        return maxExecutionNanos;
+    }
+
+    /**
+     * @return count of tasks whose start was at most {@link #LATENESS_BUCKETS_MS}[i] milliseconds
+     *         after their scheduled time; the extra final element counts the remainder
+     */
+    public long[] getLatenessHistogram() {
+        long[] counts = new long[lateness.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = lateness.get(i);
+        }
+        return counts;
+    }
+
     public interface Task<T> extends Comparable<Task<T>> {
         long getScheduledTime();
 
@@ -109,7 +195,14 @@ public class TaskQueue {
                 T t = doExecute(queue);
                 synchronized (this) {
                     if (isRecurrent()) {
-                        setScheduledTime(System.currentTimeMillis() + getInterval());
+                        // Keep to the original cadence rather than drifting by the execution time
+                        long next = getScheduledTime() + getInterval();
+                        long now = System.currentTimeMillis();
+                        if (next <= now) {
+                            // Fell behind; skip the missed runs instead of bursting to catch up
+                            next = now + getInterval();
+                        }
+                        setScheduledTime(next);
                         queue.add(this);
                     }
                     this.t = t;
@@ -169,12 +262,24 @@ public class TaskQueue {
 
     }
 
-    private final SortedSet<Task<?>> queue = new TreeSet<Task<?>>();
+    protected static final Comparator<Task<?>> BY_SCHEDULED_TIME = new Comparator<Task<?>>() {
+        @Override
+        public int compare(Task<?> o1, Task<?> o2) {
+            long t1 = o1.getScheduledTime(), t2 = o2.getScheduledTime();
+            return t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
+        }
+    };
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<Task<?>>(16, BY_SCHEDULED_TIME);
 
     public synchronized void add(Task<?> task) {
         queue.add(task);
     }
 
+    public synchronized int size() {
+        return queue.size();
+    }
+
     public synchronized void clear() {
         queue.clear();
     }
@@ -0,0 +1,89 @@
+package org.mdpnp.devices.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestSampleJitterBuffer {
+
+    private static float[] range(int from, int to) {
+        float[] f = new float[to - from];
+        for (int i = 0; i < f.length; i++) {
+            f[i] = from + i;
+        }
+        return f;
+    }
+
+    @Test
+    public void testCapacityIsPowerOfTwo() {
+        assertEquals(16, new SampleJitterBuffer(9, 0).capacity());
+        assertEquals(16, new SampleJitterBuffer(16, 0).capacity());
+    }
+
+    @Test
+    public void testEmptyEmit() {
+        SampleJitterBuffer b = new SampleJitterBuffer(16, 0);
+        float[] window = new float[4];
+        assertFalse(b.emit(window));
+        assertEquals(4L, b.getUnderruns());
+    }
+
+    @Test
+    public void testExactWindows() {
+        SampleJitterBuffer b = new SampleJitterBuffer(16, 4);
+        float[] window = new float[4];
+        b.write(range(0, 8), 0, 8);
+        assertTrue(b.emit(window));
+        assertArrayEquals(range(0, 4), window, 0f);
+        assertTrue(b.emit(window));
+        assertArrayEquals(range(4, 8), window, 0f);
+        assertEquals(0L, b.getOverruns());
+        assertEquals(0L, b.getUnderruns());
+    }
+
+    @Test
+    public void testWrapAround() {
+        SampleJitterBuffer b = new SampleJitterBuffer(8, 8);
+        float[] window = new float[5];
+        for (int i = 0; i < 10; i++) {
+            b.write(range(5 * i, 5 * i + 5), 0, 5);
+            assertTrue(b.emit(window));
+            assertArrayEquals(range(5 * i, 5 * i + 5), window, 0f);
+        }
+    }
+
+    @Test
+    public void testUnderrunRepeatsPreviousTail() {
+        SampleJitterBuffer b = new SampleJitterBuffer(16, 0);
+        float[] window = new float[4];
+        b.write(range(0, 2), 0, 2);
+        assertTrue(b.emit(window));
+        assertArrayEquals(new float[] { 0f, 0f, 0f, 1f }, window, 0f);
+        b.write(range(2, 5), 0, 3);
+        assertTrue(b.emit(window));
+        assertArrayEquals(new float[] { 1f, 2f, 3f, 4f }, window, 0f);
+        assertEquals(3L, b.getUnderruns());
+    }
+
+    @Test
+    public void testOverrunBeyondTargetDepth() {
+        SampleJitterBuffer b = new SampleJitterBuffer(32, 2);
+        float[] window = new float[4];
+        b.write(range(0, 10), 0, 10);
+        assertTrue(b.emit(window));
+        // 10 available, 4 emitted and 2 retained so the 4 oldest are dropped
+        assertArrayEquals(range(4, 8), window, 0f);
+        assertEquals(4L, b.getOverruns());
+        assertEquals(2, b.available());
+    }
+
+    @Test
+    public void testProducerDropsWhenFull() {
+        SampleJitterBuffer b = new SampleJitterBuffer(8, 0);
+        assertEquals(8, b.write(range(0, 10), 0, 10));
+        assertEquals(2L, b.getOverruns());
+    }
+}
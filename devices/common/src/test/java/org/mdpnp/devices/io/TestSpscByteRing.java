@@ -0,0 +1,75 @@
+package org.mdpnp.devices.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class TestSpscByteRing {
+
+    @Test
+    public void testWrapAround() throws IOException {
+        SpscByteRing ring = new SpscByteRing(8);
+        byte[] out = new byte[5];
+        for (int i = 0; i < 10; i++) {
+            byte[] in = new byte[] { (byte) i, (byte) (i + 1), (byte) (i + 2), (byte) (i + 3), (byte) (i + 4) };
+            ring.write(in, 0, in.length);
+            assertEquals(5, ring.read(out, 0, out.length));
+            assertArrayEquals(in, out);
+        }
+    }
+
+    @Test
+    public void testEndOfStream() throws IOException {
+        SpscByteRing ring = new SpscByteRing(16);
+        ring.write(new byte[] { 1, 2, 3 }, 0, 3);
+        ring.close();
+        InputStream is = ring.getInputStream();
+        assertEquals(1, is.read());
+        byte[] out = new byte[8];
+        assertEquals(2, is.read(out, 0, out.length));
+        assertEquals(-1, is.read(out, 0, out.length));
+        assertEquals(-1, is.read());
+    }
+
+    @Test(timeout = 10000L)
+    public void testProducerConsumer() throws Exception {
+        final SpscByteRing ring = new SpscByteRing(64);
+        final int total = 1 << 20;
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] chunk = new byte[37];
+                int next = 0;
+                try {
+                    while (next < total) {
+                        int n = Math.min(chunk.length, total - next);
+                        for (int i = 0; i < n; i++) {
+                            chunk[i] = (byte) (next + i);
+                        }
+                        ring.write(chunk, 0, n);
+                        next += n;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    ring.close();
+                }
+            }
+        });
+        producer.start();
+        InputStream is = ring.getInputStream();
+        byte[] buf = new byte[100];
+        int expected = 0, n;
+        while ((n = is.read(buf, 0, buf.length)) >= 0) {
+            for (int i = 0; i < n; i++) {
+                assertEquals((byte) expected++, buf[i]);
+            }
+        }
+        assertEquals(total, expected);
+        producer.join();
+    }
+}
@@ -0,0 +1,138 @@
+package org.mdpnp.devices.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestDCT {
+
+    private static final int[] SIZES = { 1, 2, 3, 5, 8, 16, 17, 31, 60, 64, 97, 128, 300, 1000, 1024 };
+
+    // The O(N^2) definitions the transforms used to compute directly
+    private static double[] referenceIdct(double[] coeffs, int coff, int clen, int rlen) {
+        double[] results = new double[rlen];
+        for (int i = 0; i < rlen; i++) {
+            double cc = Math.sqrt(1.0 / 2.0);
+            for (int j = 0; j < clen; j++) {
+                results[i] += Math.sqrt(2.0 / rlen) * cc * coeffs[coff + j] * Math.cos(Math.PI * j * (i + 0.5) / rlen);
+                cc = 1.0;
+            }
+        }
+        return results;
+    }
+
+    private static double[] referenceDct(double[] d) {
+        double[] r = new double[d.length];
+        double cc = Math.sqrt(1.0 / d.length);
+        for (int i = 0; i < d.length; i++) {
+            for (int j = 0; j < d.length; j++) {
+                r[i] += d[j] * Math.cos(Math.PI * (j + 0.5) * i / d.length);
+            }
+            r[i] *= cc;
+            cc = Math.sqrt(2.0 / d.length);
+        }
+        return r;
+    }
+
+    private static double[] random(Random random, int n) {
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = 1000.0 * random.nextGaussian();
+        }
+        return d;
+    }
+
+    private static double tolerance(double[] d) {
+        double max = 0.0;
+        for (double v : d) {
+            max = Math.max(max, Math.abs(v));
+        }
+        return 1e-9 * Math.max(1.0, max) * Math.sqrt(d.length);
+    }
+
+    @Test
+    public void testDctMatchesDefinition() {
+        Random random = new Random(0);
+        for (int n : SIZES) {
+            double[] d = random(random, n);
+            double[] expected = referenceDct(d);
+            assertArrayEquals("n=" + n, expected, DCT.dct(d), tolerance(expected));
+        }
+    }
+
+    @Test
+    public void testIdctMatchesDefinition() {
+        Random random = new Random(1);
+        for (int n : SIZES) {
+            double[] c = random(random, n);
+            double[] expected = referenceIdct(c, 0, n, n);
+            assertArrayEquals("n=" + n, expected, DCT.idct(c, new double[n]), tolerance(expected));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(2);
+        for (int n : SIZES) {
+            double[] d = random(random, n);
+            assertArrayEquals("n=" + n, d, DCT.idct(DCT.dct(d), new double[n]), tolerance(d));
+        }
+    }
+
+    @Test
+    public void testIdctFewerCoefficients() {
+        Random random = new Random(3);
+        double[] c = random(random, 100);
+        double[] expected = referenceIdct(c, 5, 60, 300);
+        double[] results = new double[310];
+        results[0] = 1.0;
+        DCT.idct(c, 5, 60, results, 10, 300);
+        assertEquals(0.0, results[0], 0.0);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(expected[i], results[10 + i], tolerance(expected));
+        }
+    }
+
+    @Test
+    public void testIdctMoreCoefficients() {
+        Random random = new Random(4);
+        double[] c = random(random, 90);
+        double[] expected = referenceIdct(c, 0, 90, 40);
+        double[] results = new double[40];
+        DCT.idct(c, 0, 90, results);
+        assertArrayEquals(expected, results, tolerance(expected));
+    }
+
+    @Test
+    public void testFloatVariants() {
+        Random random = new Random(5);
+        int n = 250, start = 77, count = 40;
+        float[] d = new float[n];
+        double[] rotated = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = (float) random.nextGaussian();
+        }
+        for (int i = 0; i < n; i++) {
+            rotated[i] = d[(start + i) % n];
+        }
+        double[] expected = referenceDct(rotated);
+        float[] r = DCT.dct(d, start, new float[n], count);
+        for (int i = 0; i < n; i++) {
+            assertEquals(i < count ? expected[i] : 0.0, r[i], 1e-4);
+        }
+
+        float[] coeffs = new float[count];
+        double[] dcoeffs = new double[count];
+        for (int i = 0; i < count; i++) {
+            dcoeffs[i] = coeffs[i] = r[i];
+        }
+        double[] expectedInverse = referenceIdct(dcoeffs, 0, count, n);
+        float[] inverse = DCT.idct(coeffs, 0, count, new float[n + 3], 3, n);
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedInverse[i], inverse[3 + i], 1e-4);
+        }
+    }
+}
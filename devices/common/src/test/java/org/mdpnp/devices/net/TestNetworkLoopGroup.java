@@ -0,0 +1,143 @@
+package org.mdpnp.devices.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNetworkLoopGroup {
+
+    private static final class Reader implements NetworkConnection {
+        private final ByteBuffer buffer = ByteBuffer.allocate(64);
+        private final CountDownLatch read = new CountDownLatch(1);
+        private final CountDownLatch unregistered = new CountDownLatch(1);
+        private volatile Thread registeredOn;
+
+        @Override
+        public void read(SelectionKey sk) throws IOException {
+            if (((ReadableByteChannel) sk.channel()).read(buffer) > 0) {
+                read.countDown();
+            }
+        }
+
+        @Override
+        public void write(SelectionKey sk) throws IOException {
+        }
+
+        @Override
+        public void registered(NetworkLoop networkLoop, SelectionKey sk) {
+            registeredOn = Thread.currentThread();
+        }
+
+        @Override
+        public void unregistered(NetworkLoop networkLoop, SelectionKey sk) {
+            unregistered.countDown();
+        }
+    }
+
+    private NetworkLoopGroup group;
+
+    @Before
+    public void setUp() throws IOException {
+        group = new NetworkLoopGroup("Test Network Loop", 3);
+        group.start(null);
+    }
+
+    @After
+    public void tearDown() {
+        group.cancelThreadAndWait();
+    }
+
+    private static Pipe pipe() throws IOException {
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        return pipe;
+    }
+
+    @Test
+    public void testRegisterWhileRunning() throws Exception {
+        NetworkLoop loop = group.getLoop(0);
+        assertTrue(loop.awaitStarted(5000L));
+        Reader reader = new Reader();
+        Pipe pipe = pipe();
+        SelectionKey key = loop.register(reader, pipe.source());
+        // the registration ran on the loop thread rather than pausing it
+        assertNotSame(Thread.currentThread(), reader.registeredOn);
+
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertTrue(reader.read.await(5, TimeUnit.SECONDS));
+
+        loop.unregister(key, reader);
+        assertEquals(0L, reader.unregistered.getCount());
+        assertTrue(!key.isValid());
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test
+    public void testAffinityAndSpread() throws Exception {
+        Object address = "192.168.1.10";
+        assertSame(group.loopFor(address), group.loopFor(address));
+
+        // connections registered together land on different loops
+        Pipe[] pipes = new Pipe[3];
+        NetworkLoop[] chosen = new NetworkLoop[3];
+        for (int i = 0; i < pipes.length; i++) {
+            pipes[i] = pipe();
+            chosen[i] = group.next();
+            chosen[i].register(new Reader(), pipes[i].source());
+        }
+        assertNotSame(chosen[0], chosen[1]);
+        assertNotSame(chosen[1], chosen[2]);
+        assertNotSame(chosen[0], chosen[2]);
+        for (Pipe pipe : pipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        NetworkLoop loop = group.getLoop(1);
+        assertTrue(loop.awaitStarted(5000L));
+        Reader reader = new Reader();
+        Pipe pipe = pipe();
+        loop.register(reader, pipe.source());
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+        assertTrue(reader.read.await(5, TimeUnit.SECONDS));
+        loop.wakeup();
+        Thread.sleep(100L);
+
+        long passes = 0L;
+        for (long n : loop.getSelectLatencyHistogram()) {
+            passes += n;
+        }
+        assertTrue(passes > 0L);
+        assertEquals(1, loop.getConnectionCount());
+        assertEquals(0, loop.getBacklog());
+        assertTrue(loop.getUtilization() >= 0.0 && loop.getUtilization() <= 1.0);
+        assertTrue(group.toString().contains("connections=1"));
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRegisterAfterCancel() throws Exception {
+        NetworkLoop loop = group.getLoop(2);
+        assertTrue(loop.awaitStarted(5000L));
+        loop.cancelThreadAndWait();
+        loop.register(new Reader(), pipe().source());
+    }
+}
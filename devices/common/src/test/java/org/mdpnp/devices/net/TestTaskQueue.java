@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestTaskQueue {
+
+    private static final class Recorder extends TaskQueue.TaskImpl<Object> {
+        private final List<Recorder> order;
+
+        Recorder(List<Recorder> order, long scheduledTime) {
+            this.order = order;
+            setScheduledTime(scheduledTime);
+        }
+
+        @Override
+        public Object doExecute(TaskQueue queue) {
+            order.add(this);
+            return this;
+        }
+    }
+
+    private static void testOrdering(TaskQueue queue) {
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        Recorder later = new Recorder(order, now + 10000L);
+        Recorder first = new Recorder(order, now - 200L);
+        Recorder second = new Recorder(order, now - 100L);
+        Recorder twin = new Recorder(order, now - 100L);
+        queue.add(later);
+        queue.add(second);
+        queue.add(first);
+        queue.add(twin);
+        assertEquals(4, queue.size());
+
+        assertTrue(queue.doExpiredTasks(now + 1000L) > 0L);
+        assertEquals(3, order.size());
+        assertTrue(order.contains(first) && order.contains(second) && order.contains(twin));
+        assertEquals(1, queue.size());
+
+        queue.doExpiredTasks(now + 20000L);
+        assertEquals(later, order.get(3));
+        assertEquals(0, queue.size());
+        assertEquals(0L, queue.timeToNextTask(now));
+        assertEquals(4L, queue.getTasksRun());
+    }
+
+    @Test
+    public void testHeapOrdering() {
+        TaskQueue queue = new TaskQueue();
+        testOrdering(queue);
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        Recorder a = new Recorder(order, now - 1L), b = new Recorder(order, now + 5L), c = new Recorder(order, now + 1L);
+        queue.add(a);
+        queue.add(b);
+        queue.add(c);
+        queue.doExpiredTasks(now + 5L);
+        assertEquals(a, order.get(0));
+        assertEquals(c, order.get(1));
+        assertEquals(b, order.get(2));
+    }
+
+    @Test
+    public void testWheelOrdering() {
+        testOrdering(new HashedWheelTaskQueue(10L, 8));
+    }
+
+    @Test
+    public void testWheelBeyondOneRevolution() {
+        HashedWheelTaskQueue queue = new HashedWheelTaskQueue(10L, 4);
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        // 4 buckets of 10ms so these share buckets with nearer ticks
+        Recorder far = new Recorder(order, now + 95L);
+        queue.add(far);
+        queue.doExpiredTasks(now + 50L);
+        assertEquals(0, order.size());
+        queue.doExpiredTasks(now + 200L);
+        assertEquals(1, order.size());
+    }
+
+    @Test
+    public void testRecurrentKeepsCadence() {
+        TaskQueue queue = new TaskQueue();
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        Recorder r = new Recorder(order, now);
+        r.setInterval(60000L);
+        queue.add(r);
+        queue.doExpiredTasks(now);
+        assertEquals(1, order.size());
+        assertEquals(now + 60000L, r.getScheduledTime());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testRecurrentSkipsMissedRuns() {
+        TaskQueue queue = new TaskQueue();
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        Recorder r = new Recorder(order, now - 10000L);
+        r.setInterval(100L);
+        queue.add(r);
+        queue.doExpiredTasks(now);
+        assertEquals(1, order.size());
+        assertTrue(r.getScheduledTime() >= now + 100L);
+        // not due again until the interval has elapsed
+        queue.doExpiredTasks(now + 50L);
+        assertEquals(1, order.size());
+    }
+
+    @Test
+    public void testLatenessHistogram() {
+        TaskQueue queue = new TaskQueue();
+        long now = System.currentTimeMillis();
+        List<Recorder> order = new ArrayList<Recorder>();
+        queue.add(new Recorder(order, now));
+        queue.add(new Recorder(order, now - 7L));
+        queue.add(new Recorder(order, now - 5000L));
+        queue.doExpiredTasks(now);
+        long[] histogram = queue.getLatenessHistogram();
+        assertEquals(TaskQueue.LATENESS_BUCKETS_MS.length + 1, histogram.length);
+        assertEquals(1L, histogram[0]);
+        // 7ms falls in the (5, 10] bucket
+        assertEquals(1L, histogram[4]);
+        assertEquals(1L, histogram[histogram.length - 1]);
+        assertTrue(queue.getMaxExecutionNanos() >= 0L);
+    }
+}
@@ -74,7 +74,12 @@ public class Medibus {
     private int versionMajor = 3;
     private int versionMinor = 0;
 
+    private final MedibusDemultiplexer demux;
     protected final InputStream slowIn;
+    // Slow bytes are taken from slowIn in chunks; kept here so that a receive()
+    // ended by an exception resumes where it left off
+    private final byte[] slowChunk = new byte[1024];
+    private int slowPos, slowLen;
     protected final ChecksumOutputStream out;
 
     /**
@@ -84,7 +89,8 @@ public class Medibus {
      * messages.
      * 
      * @param in
-     *            Source of data from Draeger device
+     *            Source of data from Draeger device; it is read on a daemon
+     *            thread until it ends or fails, so close it to release that thread
      * @param out
      *            Destination of data bound for Draeger device
      * @throws IOException 
@@ -92,48 +98,11 @@ public class Medibus {
     public Medibus(InputStream in, OutputStream out) throws IOException {
         // partition the slow and fast data
         // fast data have the high order bit set and slow data do not
-        InputStreamPartition isp = new InputStreamPartition(new InputStreamPartition.Filter[] { 
-                new InputStreamPartition.Filter() {
-
-                    @Override
-                    public boolean passes(int b) {
-                        if(0 != (b & 0x80)) {
-                            fastByte(b);
-                            return true;
-                        } else {
-                            return false;
-                        }
-
-                    }
-                    // This is an optimization.  Data will be handled in the passes call and there is 
-                    // not need to enqueue data onto a pipe
-                    public boolean createPipe() { return false; }
-
-                }, new InputStreamPartition.Filter() {
-
-            @Override
-            public boolean passes(int b) {
-                switch(b) {
-                case ASCIIByte.DC1:
-                    log.warn("DC1 (0x11) ignored in stream");
-                    return false;
-                case ASCIIByte.DC3:
-                    log.warn("DC3 (0x13) ignored in stream");
-                    return false;
-                }
-                return 0 == (b & 0x80);
-            }
-            
-            @Override
-            public boolean createPipe() {
-                return true;
-            }
-
-        },  }, in);
-        isp.getProcessingThread().setName("Medibus I/O Multiplexor");
-        this.slowIn = isp.getInputStream(1);
+        demux = new MedibusDemultiplexer(in, this);
+        this.slowIn = demux.getSlowInputStream();
         this.out = new ChecksumOutputStream(out);
         log.trace("Initialized Medibus");
+        demux.start();
     }
 
     protected void fastByte(int b) {
@@ -861,12 +830,17 @@ public class Medibus {
         Buffer topBuffer = null;
 
         while (true) {
-            leading = slowIn.read();
-            if (leading < 0) {
-                log.trace("receive got " + leading + " from slowIn.read");
-                // EOF
-                return false;
+            if (slowPos >= slowLen) {
+                slowPos = 0;
+                slowLen = slowIn.read(slowChunk, 0, slowChunk.length);
+                if (slowLen < 0) {
+                    log.trace("receive got " + slowLen + " from slowIn.read");
+                    slowLen = 0;
+                    // EOF
+                    return false;
+                }
             }
+            leading = 0xFF & slowChunk[slowPos++];
 
             switch (leading) {
             case ASCIIByte.SOH:
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.draeger.medibus;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.mdpnp.devices.ASCIIByte;
+import org.mdpnp.devices.io.SpscByteRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Separates the realtime (fast) bytes of a Medibus stream from the slow
+ * command/response bytes.
+ * 
+ * A daemon thread reads the device stream in chunks and partitions each chunk
+ * in a single pass. Fast bytes, which have the high order bit set, are handed
+ * to {@link Medibus#fastByte(int)} on that thread as they are encountered.
+ * Slow bytes are collected and written to a single-producer/single-consumer
+ * ring in bulk; {@link #getSlowInputStream()} is its reading side.
+ * 
+ * The thread runs until the device stream ends or fails, which is how the owner
+ * of the connection stops it: closing the stream (as the serial devices do on
+ * disconnect) ends the thread and then the slow stream.
+ */
+final class MedibusDemultiplexer implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(MedibusDemultiplexer.class);
+
+    private static final int CHUNK = 8192;
+
+    private final InputStream in;
+    private final Medibus medibus;
+    private final SpscByteRing slow = new SpscByteRing(4 * CHUNK);
+    private final Thread processingThread;
+
+    MedibusDemultiplexer(InputStream in, Medibus medibus) {
+        this.in = in;
+        this.medibus = medibus;
+        processingThread = new Thread(this, "Medibus I/O Multiplexor");
+        processingThread.setPriority(Thread.NORM_PRIORITY + 1);
+        processingThread.setDaemon(true);
+    }
+
+    void start() {
+        processingThread.start();
+    }
+
+    InputStream getSlowInputStream() {
+        return slow.getInputStream();
+    }
+
+    @Override
+    public void run() {
+        final byte[] chunk = new byte[CHUNK];
+        final byte[] slowBytes = new byte[CHUNK];
+        log.trace("MedibusDemultiplexer processing begins");
+        try {
+            int n;
+            while ((n = in.read(chunk, 0, chunk.length)) >= 0) {
+                int slowCount = 0;
+                for (int i = 0; i < n; i++) {
+                    int b = 0xFF & chunk[i];
+                    if (0 != (b & 0x80)) {
+                        medibus.fastByte(b);
+                    } else {
+                        switch (b) {
+                        case ASCIIByte.DC1:
+                            log.warn("DC1 (0x11) ignored in stream");
+                            break;
+                        case ASCIIByte.DC3:
+                            log.warn("DC3 (0x13) ignored in stream");
+                            break;
+                        default:
+                            slowBytes[slowCount++] = chunk[i];
+                            break;
+                        }
+                    }
+                }
+                if (slowCount > 0) {
+                    slow.write(slowBytes, 0, slowCount);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Reading the Medibus stream", e);
+        } finally {
+            log.trace("MedibusDemultiplexer processing ends");
+            // show love to those who are waiting for this defunct thread
+            slow.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.mdpnp.devices.draeger.medibus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class TestMedibusDemultiplexer {
+    @Test(timeout = 10000L)
+    public void testPartition() throws Exception {
+        final ByteArrayOutputStream fast = new ByteArrayOutputStream();
+        byte[] stream = new byte[] { 0x01, (byte) 0xD0, 'A', 0x11, (byte) 0x81, 'B', 0x13, 0x0D };
+        Medibus medibus = new Medibus(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()) {
+            @Override
+            protected void fastByte(int b) {
+                fast.write(b);
+            }
+        };
+        MedibusDemultiplexer demux = new MedibusDemultiplexer(new ByteArrayInputStream(stream), medibus);
+        demux.run();
+
+        assertArrayEquals(new byte[] { (byte) 0xD0, (byte) 0x81 }, fast.toByteArray());
+        InputStream slow = demux.getSlowInputStream();
+        byte[] buf = new byte[16];
+        assertEquals(4, slow.read(buf, 0, buf.length));
+        assertArrayEquals(new byte[] { 0x01, 'A', 'B', 0x0D }, java.util.Arrays.copyOf(buf, 4));
+        assertEquals(-1, slow.read());
+    }
+}
@@ -12,6 +12,7 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -64,4 +65,68 @@ public class OrdinalEnum {
         }
         return map;
     }
+
+    /**
+     * Sorted int ordinals searched without boxing; for the large enums that are
+     * looked up for every attribute decoded.
+     */
+    public static final class IntIndex<T extends IntType> {
+        private final int[] keys;
+        private final T[] values;
+
+        private IntIndex(int[] keys, T[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        public T get(int x) {
+            int i = Arrays.binarySearch(keys, x);
+            return i < 0 ? null : values[i];
+        }
+    }
+
+    public static final <T extends IntType> IntIndex<T> buildIntIndex(Class<T> cls) {
+        Map<Integer, T> map = buildInt(cls);
+        int[] keys = new int[map.size()];
+        int i = 0;
+        for (Integer k : map.keySet()) {
+            keys[i++] = k;
+        }
+        Arrays.sort(keys);
+        T[] values = Arrays.copyOf(cls.getEnumConstants(), keys.length);
+        for (i = 0; i < keys.length; i++) {
+            values[i] = map.get(keys[i]);
+        }
+        return new IntIndex<T>(keys, values);
+    }
+
+    public static final class LongIndex<T extends LongType> {
+        private final long[] keys;
+        private final T[] values;
+
+        private LongIndex(long[] keys, T[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        public T get(long x) {
+            int i = Arrays.binarySearch(keys, x);
+            return i < 0 ? null : values[i];
+        }
+    }
+
+    public static final <T extends LongType> LongIndex<T> buildLongIndex(Class<T> cls) {
+        Map<Long, T> map = buildLong(cls);
+        long[] keys = new long[map.size()];
+        int i = 0;
+        for (Long k : map.keySet()) {
+            keys[i++] = k;
+        }
+        Arrays.sort(keys);
+        T[] values = Arrays.copyOf(cls.getEnumConstants(), keys.length);
+        for (i = 0; i < keys.length; i++) {
+            values[i] = map.get(keys[i]);
+        }
+        return new LongIndex<T>(keys, values);
+    }
 }
@@ -30,7 +30,7 @@ import org.mdpnp.devices.philips.intellivue.util.Util;
  * @author Jeff Plourde
  *
  */
-public class ExtendedPollDataResultImpl implements ExtendedPollDataResult {
+public class ExtendedPollDataResultImpl implements ExtendedPollDataResult, Util.PrefixLengthShort.Builder<SingleContextPoll> {
     private int pollNumber;
     private int sequenceNumber;
     private final RelativeTime relativeTimestamp = new RelativeTime();
@@ -38,6 +38,12 @@ public class ExtendedPollDataResultImpl implements ExtendedPollDataResult {
     private final Type polledObjectType = new Type();
     private OIDType polledAttributeGroup = OIDType.lookup(0);
     private final List<SingleContextPoll> pollInfoList = new ArrayList<SingleContextPoll>();
+    private final List<SingleContextPoll> recycle = new ArrayList<SingleContextPoll>();
+
+    @Override
+    public SingleContextPoll build() {
+        return recycle.isEmpty() ? new SingleContextPollImpl() : recycle.remove(recycle.size() - 1);
+    }
 
     private ActionResult action;
 
@@ -68,7 +74,10 @@ public class ExtendedPollDataResultImpl implements ExtendedPollDataResult {
         absoluteTimestamp.parse(bb);
         polledObjectType.parse(bb);
         polledAttributeGroup = OIDType.parse(bb);
-        Util.PrefixLengthShort.read(bb, pollInfoList, !more, SingleContextPollImpl.class);
+        if (!more) {
+            recycle.addAll(pollInfoList);
+        }
+        Util.PrefixLengthShort.read(bb, pollInfoList, !more, this);
 
     }
 
@@ -25,9 +25,15 @@ import org.mdpnp.devices.philips.intellivue.util.Util;
  * @author Jeff Plourde
  *
  */
-public class SingleContextPollImpl implements SingleContextPoll {
+public class SingleContextPollImpl implements SingleContextPoll, Util.PrefixLengthShort.Builder<ObservationPoll> {
     private int mdsContext;
     private final List<ObservationPoll> pollInfo = new ArrayList<ObservationPoll>();
+    private final List<ObservationPoll> recycle = new ArrayList<ObservationPoll>();
+
+    @Override
+    public ObservationPoll build() {
+        return recycle.isEmpty() ? new ObservationPollImpl() : recycle.remove(recycle.size() - 1);
+    }
 
     @Override
     public int getMdsContext() {
@@ -42,7 +48,8 @@ public class SingleContextPollImpl implements SingleContextPoll {
     @Override
     public void parse(ByteBuffer bb) {
         mdsContext = Bits.getUnsignedShort(bb);
-        Util.PrefixLengthShort.read(bb, pollInfo, true, ObservationPollImpl.class);
+        recycle.addAll(pollInfo);
+        Util.PrefixLengthShort.read(bb, pollInfo, true, this);
     }
 
     @Override
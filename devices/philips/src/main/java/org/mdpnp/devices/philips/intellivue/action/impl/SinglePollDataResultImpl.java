@@ -30,13 +30,19 @@ import org.mdpnp.devices.philips.intellivue.util.Util;
  * @author Jeff Plourde
  *
  */
-public class SinglePollDataResultImpl implements SinglePollDataResult {
+public class SinglePollDataResultImpl implements SinglePollDataResult, Util.PrefixLengthShort.Builder<SingleContextPoll> {
     private int pollNumber;
     private final RelativeTime relativeTime = new RelativeTime();
     private final AbsoluteTime absoluteTime = new AbsoluteTime();
     private final Type polledObjectType = new Type();
     private OIDType polledAttrGroup;
     private final List<SingleContextPoll> pollInfoList = new ArrayList<SingleContextPoll>();
+    private final List<SingleContextPoll> recycle = new ArrayList<SingleContextPoll>();
+
+    @Override
+    public SingleContextPoll build() {
+        return recycle.isEmpty() ? new SingleContextPollImpl() : recycle.remove(recycle.size() - 1);
+    }
 
     private ActionResult action;
 
@@ -57,7 +63,10 @@ public class SinglePollDataResultImpl implements SinglePollDataResult {
         polledObjectType.parse(bb);
         polledAttrGroup = OIDType.parse(bb);
 
-        Util.PrefixLengthShort.read(bb, pollInfoList, !more, SingleContextPollImpl.class);
+        if (!more) {
+            recycle.addAll(pollInfoList);
+        }
+        Util.PrefixLengthShort.read(bb, pollInfoList, !more, this);
     }
 
     @Override
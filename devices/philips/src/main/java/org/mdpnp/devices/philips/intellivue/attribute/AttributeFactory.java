@@ -12,7 +12,10 @@
  ******************************************************************************/
 package org.mdpnp.devices.philips.intellivue.attribute;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.mdpnp.devices.philips.intellivue.data.AbsoluteTime;
 import org.mdpnp.devices.philips.intellivue.data.Altitude;
@@ -68,14 +71,109 @@ import org.mdpnp.devices.philips.intellivue.data.Type;
 import org.mdpnp.devices.philips.intellivue.data.UnitCode;
 import org.mdpnp.devices.philips.intellivue.data.Value;
 import org.mdpnp.devices.philips.intellivue.data.VisualGrid;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * Builds attributes for the value types we know how to decode.  The value type
+ * and a constructor for every known attribute id is registered once, up front,
+ * in a table indexed by the (unsigned short) attribute id so that decoding
+ * never has to go through reflection or a switch on {@link AttributeId}.
+ *
  * @author Jeff Plourde
  *
  */
 public class AttributeFactory {
+    private static final class Decoder {
+        private final Class<?> valueType;
+        private final Supplier<? extends Value> constructor;
+
+        Decoder(Class<?> valueType, Supplier<? extends Value> constructor) {
+            this.valueType = valueType;
+            this.constructor = constructor;
+        }
+    }
+
+    private static final Decoder[] decoders = new Decoder[0x10000];
+    private static final Map<Class<?>, Supplier<? extends Value>> constructors = new IdentityHashMap<Class<?>, Supplier<? extends Value>>();
+    // First constant of each enum type, used as the initial value of an EnumValue
+    private static final Map<Class<?>, Object> enumDefaults = new ConcurrentHashMap<Class<?>, Object>();
+
+    private static <T extends Value> void register(Class<T> valueType, Supplier<T> constructor, AttributeId... ids) {
+        constructors.put(valueType, constructor);
+        for (AttributeId id : ids) {
+            decoders[id.asInt()] = new Decoder(valueType, constructor);
+        }
+    }
+
+    private static <T extends Enum<T> & EnumMessage<T>> void registerEnum(final T initial, AttributeId... ids) {
+        Supplier<EnumValue<T>> constructor = () -> new EnumValueImpl<T>(initial);
+        enumDefaults.put(initial.getDeclaringClass(), initial);
+        for (AttributeId id : ids) {
+            decoders[id.asInt()] = new Decoder(initial.getDeclaringClass(), constructor);
+        }
+    }
+
+    static {
+        register(Type.class, Type::new, AttributeId.NOM_ATTR_ID_TYPE, AttributeId.NOM_ATTR_SYS_TYPE);
+        register(Handle.class, Handle::new, AttributeId.NOM_ATTR_ID_HANDLE);
+        register(NumericObservedValue.class, NumericObservedValue::new, AttributeId.NOM_ATTR_NU_VAL_OBS);
+        register(CompoundNumericObservedValue.class, CompoundNumericObservedValue::new, AttributeId.NOM_ATTR_NU_CMPD_VAL_OBS);
+        register(AbsoluteTime.class, AbsoluteTime::new, AttributeId.NOM_ATTR_TIME_STAMP_ABS, AttributeId.NOM_ATTR_TIME_ABS,
+                AttributeId.NOM_ATTR_PT_DOB);
+        register(RelativeTime.class, RelativeTime::new, AttributeId.NOM_ATTR_TIME_STAMP_REL, AttributeId.NOM_ATTR_TIME_PD_SAMP,
+                AttributeId.NOM_ATTR_TIME_REL, AttributeId.NOM_ATTR_TIME_PD_POLL);
+        register(TextId.class, TextId::new, AttributeId.NOM_ATTR_ID_LABEL);
+        register(DisplayResolution.class, DisplayResolution::new, AttributeId.NOM_ATTR_DISP_RES);
+        register(MetricSpecification.class, MetricSpecification::new, AttributeId.NOM_ATTR_METRIC_SPECN);
+        register(SampleArraySpecification.class, SampleArraySpecification::new, AttributeId.NOM_ATTR_SA_SPECN);
+        register(SampleArrayFixedValueSpecification.class, SampleArrayFixedValueSpecification::new, AttributeId.NOM_ATTR_SA_FIXED_VAL_SPECN);
+        register(MetricState.class, MetricState::new, AttributeId.NOM_ATTR_METRIC_STAT);
+        register(MeasureMode.class, MeasureMode::new, AttributeId.NOM_ATTR_MODE_MSMT);
+        register(org.mdpnp.devices.philips.intellivue.data.String.class, org.mdpnp.devices.philips.intellivue.data.String::new,
+                AttributeId.NOM_ATTR_METRIC_INFO_LABEL_STR, AttributeId.NOM_ATTR_ID_LABEL_STRING, AttributeId.NOM_ATTR_ID_BED_LABEL,
+                AttributeId.NOM_ATTR_PT_NAME_GIVEN, AttributeId.NOM_ATTR_PT_NAME_FAMILY, AttributeId.NOM_ATTR_PT_ID,
+                AttributeId.NOM_ATTR_PT_NOTES1, AttributeId.NOM_ATTR_PT_NOTES2);
+        register(ScaleAndRangeSpecification.class, ScaleAndRangeSpecification::new, AttributeId.NOM_ATTR_SCALE_SPECN_I16);
+        register(SampleArrayPhysiologicalRange.class, SampleArrayPhysiologicalRange::new, AttributeId.NOM_ATTR_SA_RANGE_PHYS_I16);
+        register(VisualGrid.class, VisualGrid::new, AttributeId.NOM_ATTR_GRID_VIS_I16);
+        register(SampleArrayObservedValue.class, SampleArrayObservedValue::new, AttributeId.NOM_ATTR_SA_VAL_OBS);
+        register(SampleArrayCompoundObservedValue.class, SampleArrayCompoundObservedValue::new, AttributeId.NOM_ATTR_SA_CMPD_VAL_OBS);
+        register(ProtocolSupport.class, ProtocolSupport::new, AttributeId.NOM_ATTR_PCOL_SUPPORT);
+        register(SystemLocalization.class, SystemLocalization::new, AttributeId.NOM_ATTR_LOCALIZN);
+        register(IPAddressInformation.class, IPAddressInformation::new, AttributeId.NOM_ATTR_NET_ADDR_INFO);
+        register(ByteArray.class, ByteArray::new, AttributeId.NOM_ATTR_SYS_ID);
+        register(InvokeId.class, InvokeId::new, AttributeId.NOM_ATTR_ID_ASSOC_NO);
+        register(SystemModel.class, SystemModel::new, AttributeId.NOM_ATTR_ID_MODEL);
+        register(NomenclatureVersion.class, NomenclatureVersion::new, AttributeId.NOM_ATTR_NOM_VERS);
+        register(OperatingMode.class, OperatingMode::new, AttributeId.NOM_ATTR_MODE_OP);
+        register(Altitude.class, Altitude::new, AttributeId.NOM_ATTR_ALTITUDE);
+        register(MDSGeneralSystemInfo.class, MDSGeneralSystemInfo::new, AttributeId.NOM_ATTR_MDS_GEN_INFO);
+        register(ProductionSpecification.class, ProductionSpecification::new, AttributeId.NOM_ATTR_ID_PROD_SPECN);
+        register(TextIdList.class, TextIdList::new, AttributeId.NOM_ATTR_POLL_RTSA_PRIO_LIST, AttributeId.NOM_ATTR_POLL_NU_PRIO_LIST,
+                AttributeId.NOM_ATTR_POLL_OBJ_PRIO_NUM);
+        register(PatientMeasurement.class, PatientMeasurement::new, AttributeId.NOM_ATTR_PT_WEIGHT, AttributeId.NOM_ATTR_PT_AGE,
+                AttributeId.NOM_ATTR_PT_HEIGHT, AttributeId.NOM_ATTR_PT_BSA);
+        register(SystemSpecification.class, SystemSpecification::new, AttributeId.NOM_ATTR_SYS_SPECN);
+        register(DeviceAlertCondition.class, DeviceAlertCondition::new, AttributeId.NOM_ATTR_DEV_AL_COND);
+        register(DevAlarmList.class, DevAlarmList::new, AttributeId.NOM_ATTR_AL_MON_T_AL_LIST, AttributeId.NOM_ATTR_AL_MON_P_AL_LIST);
+
+        registerEnum(SimpleColor.values()[0], AttributeId.NOM_ATTR_COLOR);
+        registerEnum(MetricModality.values()[0], AttributeId.NOM_ATTR_METRIC_MODALITY);
+        registerEnum(UnitCode.values()[0], AttributeId.NOM_ATTR_UNIT_CODE);
+        registerEnum(ApplicationArea.values()[0], AttributeId.NOM_ATTR_AREA_APPL);
+        registerEnum(LineFrequency.values()[0], AttributeId.NOM_ATTR_LINE_FREQ);
+        registerEnum(MDSStatus.values()[0], AttributeId.NOM_ATTR_VMS_MDS_STAT);
+        registerEnum(PatientDemographicState.values()[0], AttributeId.NOM_ATTR_PT_DEMOG_ST);
+        registerEnum(PatientType.values()[0], AttributeId.NOM_ATTR_PT_TYPE);
+        registerEnum(PatientPacedMode.values()[0], AttributeId.NOM_ATTR_PT_PACED_MODE);
+        registerEnum(PatientSex.values()[0], AttributeId.NOM_ATTR_PT_SEX);
+        registerEnum(PatientBSAFormula.values()[0], AttributeId.NOM_ATTR_PT_BSA_FORMULA);
+
+        // Used with private attribute ids
+        register(PollProfileExtensions.class, PollProfileExtensions::new);
+        register(PollProfileSupport.class, PollProfileSupport::new);
+        register(MdibObjectSupport.class, MdibObjectSupport::new);
+    }
+
     public static final Attribute<PollProfileExtensions> getPollProfileExtensions() {
         return getAttribute(0xF001, PollProfileExtensions.class);
     }
@@ -96,7 +194,13 @@ public class AttributeFactory {
         return getAttribute(aid.asOid(), valueClass);
     }
 
+    @SuppressWarnings("unchecked")
     public static final <T extends Value> Attribute<T> getAttribute(OIDType oid, Class<T> valueClass) {
+        Supplier<? extends Value> constructor = constructors.get(valueClass);
+        if (null != constructor) {
+            return new AttributeImpl<T>(oid, (T) constructor.get());
+        }
+        // Not a type we decode ourselves
         try {
             return new AttributeImpl<T>(oid, valueClass.newInstance());
         } catch (InstantiationException e) {
@@ -108,165 +212,31 @@ public class AttributeFactory {
 
     @SuppressWarnings("unchecked")
     public static final <T extends EnumMessage<T>> Attribute<EnumValue<T>> getEnumAttribute(OIDType oid, Class<T> enumClass) {
-
-        try {
-            return new AttributeImpl<EnumValue<T>>(oid, new EnumValueImpl<T>((T) ((Object[]) enumClass.getMethod("values", new Class<?>[0]).invoke(
-                    null))[0]));
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        } catch (SecurityException e) {
-            throw new RuntimeException(e);
+        Object initial = enumDefaults.get(enumClass);
+        if (null == initial) {
+            T[] constants = enumClass.getEnumConstants();
+            if (null == constants) {
+                throw new IllegalArgumentException(enumClass + " is not an enum");
+            }
+            initial = constants[0];
+            enumDefaults.put(enumClass, initial);
         }
+        return new AttributeImpl<EnumValue<T>>(oid, new EnumValueImpl<T>((T) initial));
     }
 
     public static Class<?> valueType(OIDType oid) {
-        AttributeId id = AttributeId.valueOf(oid.getType());
-        if (null == id) {
-            return null;
-        } else {
-            switch (id) {
-            case NOM_ATTR_ID_TYPE:
-                return Type.class;
-            case NOM_ATTR_ID_HANDLE:
-                return Handle.class;
-            case NOM_ATTR_NU_VAL_OBS:
-                return NumericObservedValue.class;
-            case NOM_ATTR_NU_CMPD_VAL_OBS:
-                return CompoundNumericObservedValue.class;
-            case NOM_ATTR_TIME_STAMP_ABS:
-                return AbsoluteTime.class;
-            case NOM_ATTR_TIME_STAMP_REL:
-                return RelativeTime.class;
-            case NOM_ATTR_ID_LABEL:
-                return TextId.class;
-            case NOM_ATTR_DISP_RES:
-                return DisplayResolution.class;
-            case NOM_ATTR_COLOR:
-                return SimpleColor.class;
-            case NOM_ATTR_METRIC_SPECN:
-                return MetricSpecification.class;
-            case NOM_ATTR_METRIC_MODALITY:
-                return MetricModality.class;
-            case NOM_ATTR_SA_SPECN:
-                return SampleArraySpecification.class;
-            case NOM_ATTR_SA_FIXED_VAL_SPECN:
-                return SampleArrayFixedValueSpecification.class;
-            case NOM_ATTR_TIME_PD_SAMP:
-                return RelativeTime.class;
-            case NOM_ATTR_METRIC_STAT:
-                return MetricState.class;
-            case NOM_ATTR_UNIT_CODE:
-                return UnitCode.class;
-            case NOM_ATTR_MODE_MSMT:
-                return MeasureMode.class;
-            case NOM_ATTR_METRIC_INFO_LABEL_STR:
-            case NOM_ATTR_ID_LABEL_STRING:
-            case NOM_ATTR_ID_BED_LABEL:
-            case NOM_ATTR_PT_NAME_GIVEN:
-                // case NOM_ATTR_PT_NAME_MIDDLE:
-            case NOM_ATTR_PT_NAME_FAMILY:
-            case NOM_ATTR_PT_ID:
-                // case NOM_ATTR_PT_ENCOUNTER_ID:
-            case NOM_ATTR_PT_NOTES1:
-            case NOM_ATTR_PT_NOTES2:
-                return org.mdpnp.devices.philips.intellivue.data.String.class;
-            case NOM_ATTR_SCALE_SPECN_I16:
-                return ScaleAndRangeSpecification.class;
-            case NOM_ATTR_SA_RANGE_PHYS_I16:
-                return SampleArrayPhysiologicalRange.class;
-            case NOM_ATTR_GRID_VIS_I16:
-                return VisualGrid.class;
-            case NOM_ATTR_SA_VAL_OBS:
-                return SampleArrayObservedValue.class;
-            case NOM_ATTR_SA_CMPD_VAL_OBS:
-                return SampleArrayCompoundObservedValue.class;
-            case NOM_ATTR_SYS_TYPE:
-                return Type.class;
-            case NOM_ATTR_PCOL_SUPPORT:
-                return ProtocolSupport.class;
-            case NOM_ATTR_LOCALIZN:
-                return SystemLocalization.class;
-            case NOM_ATTR_NET_ADDR_INFO:
-                return IPAddressInformation.class;
-            case NOM_ATTR_SYS_ID:
-                return ByteArray.class;
-            case NOM_ATTR_ID_ASSOC_NO:
-                return InvokeId.class;
-            case NOM_ATTR_ID_MODEL:
-                return SystemModel.class;
-            case NOM_ATTR_NOM_VERS:
-                return NomenclatureVersion.class;
-            case NOM_ATTR_MODE_OP:
-                return OperatingMode.class;
-            case NOM_ATTR_AREA_APPL:
-                return ApplicationArea.class;
-            case NOM_ATTR_LINE_FREQ:
-                return LineFrequency.class;
-            case NOM_ATTR_TIME_REL:
-                return RelativeTime.class;
-            case NOM_ATTR_TIME_ABS:
-            case NOM_ATTR_PT_DOB:
-                return AbsoluteTime.class;
-            case NOM_ATTR_ALTITUDE:
-                return Altitude.class;
-            case NOM_ATTR_VMS_MDS_STAT:
-                return MDSStatus.class;
-            case NOM_ATTR_MDS_GEN_INFO:
-                return MDSGeneralSystemInfo.class;
-            case NOM_ATTR_ID_PROD_SPECN:
-                return ProductionSpecification.class;
-            case NOM_ATTR_TIME_PD_POLL:
-                return RelativeTime.class;
-            case NOM_ATTR_POLL_RTSA_PRIO_LIST:
-            case NOM_ATTR_POLL_NU_PRIO_LIST:
-            case NOM_ATTR_POLL_OBJ_PRIO_NUM:
-                return TextIdList.class;
-            case NOM_ATTR_PT_DEMOG_ST:
-                return PatientDemographicState.class;
-            case NOM_ATTR_PT_TYPE:
-                return PatientType.class;
-            case NOM_ATTR_PT_PACED_MODE:
-                return PatientPacedMode.class;
-            case NOM_ATTR_PT_SEX:
-                return PatientSex.class;
-            case NOM_ATTR_PT_WEIGHT:
-            case NOM_ATTR_PT_AGE:
-            case NOM_ATTR_PT_HEIGHT:
-            case NOM_ATTR_PT_BSA:
-                return PatientMeasurement.class;
-            case NOM_ATTR_PT_BSA_FORMULA:
-                return PatientBSAFormula.class;
-            case NOM_ATTR_SYS_SPECN:
-                return SystemSpecification.class;
-            case NOM_ATTR_DEV_AL_COND:
-                return DeviceAlertCondition.class;
-            case NOM_ATTR_AL_MON_T_AL_LIST:
-            case NOM_ATTR_AL_MON_P_AL_LIST:
-                return DevAlarmList.class;
-            default:
-                return null;
-            }
-        }
-
+        int type = oid.getType();
+        Decoder decoder = type >= 0 && type < decoders.length ? decoders[type] : null;
+        return null == decoder ? null : decoder.valueType;
     }
 
-    private static final Logger log = LoggerFactory.getLogger(AttributeFactory.class);
-
-    @SuppressWarnings("unchecked")
-    public static final <T extends EnumMessage<T>> Attribute<?> getAttribute(OIDType oid) {
-        Class<?> valueType = valueType(oid);
-        if (null == valueType) {
-            return null;
-        } else if (valueType.isEnum()) {
-            return getEnumAttribute(oid, (Class<T>) valueType);
-        } else {
-            return getAttribute(oid, ((Class<Value>) valueType(oid)));
-        }
+    /**
+     * @return a new attribute of the registered value type for oid or null if the
+     *         attribute id is not one we decode
+     */
+    public static final Attribute<?> getAttribute(OIDType oid) {
+        int type = oid.getType();
+        Decoder decoder = type >= 0 && type < decoders.length ? decoders[type] : null;
+        return null == decoder ? null : new AttributeImpl<Value>(oid, decoder.constructor.get());
     }
 }
@@ -25,6 +25,8 @@ import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
 public class AttributeValueAssertion implements Value, Attribute<ByteArray> {
     private OIDType oidType;
     private ByteArray value;
+    // true when value was allocated by parse and may be parsed over again
+    private boolean reusable;
 
     public AttributeValueAssertion() {
 
@@ -44,8 +46,11 @@ public class AttributeValueAssertion implements Value, Attribute<ByteArray> {
         oidType = OIDType.lookup(Bits.getUnsignedShort(bb));
         int length = Bits.getUnsignedShort(bb);
         bb.position(pos);
-        // TODO this could be a memory issue
-        value = new ByteArray(new byte[length + 4]);
+        // Recycled assertions usually see the same attribute at the same length
+        if (!reusable || value.getArray().length != length + 4) {
+            value = new ByteArray(new byte[length + 4]);
+            reusable = true;
+        }
         value.parse(bb);
     }
 
@@ -55,6 +60,7 @@ public class AttributeValueAssertion implements Value, Attribute<ByteArray> {
 
     public void setValue(byte[] b) {
         this.value = new ByteArray(b);
+        this.reusable = false;
     }
 
     @Override
@@ -34,6 +34,9 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
     private final List<Attribute<?>> list = new java.util.ArrayList<Attribute<?>>();
     private final List<AttributeValueAssertion> recycle = new java.util.ArrayList<AttributeValueAssertion>();
     private final Map<OIDType, Attribute<?>> map = new java.util.HashMap<OIDType, Attribute<?>>();
+    // Attributes this list built for getAttribute callers that did not supply one;
+    // they are parsed over again when the same attribute appears after a reset
+    private final Map<OIDType, Attribute<?>> pool = new java.util.HashMap<OIDType, Attribute<?>>();
 
     @Override
     public Attribute<?> build() {
@@ -44,7 +47,7 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
         if (recycle.isEmpty()) {
             return new AttributeValueAssertion();
         } else {
-            return recycle.remove(0);
+            return recycle.remove(recycle.size() - 1);
         }
     }
 
@@ -120,7 +123,15 @@ public class AttributeValueList implements Parseable, Formatable, Util.PrefixLen
         if (a != null && valueClass.isInstance(a.getValue())) {
             return (Attribute<T>) a;
         } else {
-            attr = null == attr ? AttributeFactory.getAttribute(oid, valueClass) : attr;
+            if (null == attr) {
+                Attribute<?> pooled = pool.get(oid);
+                if (null != pooled && valueClass.isInstance(pooled.getValue())) {
+                    attr = (Attribute<T>) pooled;
+                } else {
+                    attr = AttributeFactory.getAttribute(oid, valueClass);
+                    pool.put(oid, attr);
+                }
+            }
             return get(oid, attr) ? attr : null;
         }
     }
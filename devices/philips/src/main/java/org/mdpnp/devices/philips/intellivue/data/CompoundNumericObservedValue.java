@@ -22,9 +22,15 @@ import org.mdpnp.devices.philips.intellivue.util.Util;
  * @author Jeff Plourde
  *
  */
-public class CompoundNumericObservedValue implements Value {
+public class CompoundNumericObservedValue implements Value, Util.PrefixLengthShort.Builder<NumericObservedValue> {
 
     private final List<NumericObservedValue> list = new ArrayList<NumericObservedValue>();
+    private final List<NumericObservedValue> recycle = new ArrayList<NumericObservedValue>();
+
+    @Override
+    public NumericObservedValue build() {
+        return recycle.isEmpty() ? new NumericObservedValue() : recycle.remove(recycle.size() - 1);
+    }
 
     @Override
     public void format(ByteBuffer bb) {
@@ -33,7 +39,8 @@ public class CompoundNumericObservedValue implements Value {
 
     @Override
     public void parse(ByteBuffer bb) {
-        Util.PrefixLengthShort.read(bb, list, true, NumericObservedValue.class);
+        recycle.addAll(list);
+        Util.PrefixLengthShort.read(bb, list, true, this);
     }
 
     @Override
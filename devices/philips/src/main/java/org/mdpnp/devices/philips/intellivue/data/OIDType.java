@@ -26,14 +26,25 @@ import org.mdpnp.devices.philips.intellivue.Formatable;
 public class OIDType implements Formatable {
     private final int type;
 
+    // OIDs on the wire are unsigned shorts; racing threads may each create an
+    // instance for the same type but equals and hashCode are by value
+    private static final OIDType[] shortValues = new OIDType[0x10000];
     private static final Map<Integer, OIDType> values = new HashMap<Integer, OIDType>();
 
     public static OIDType lookup(int type) {
-        if (values.containsKey(type)) {
-            return values.get(type);
-        } else {
-            OIDType t = new OIDType(type);
-            values.put(type, t);
+        if (type >= 0 && type < shortValues.length) {
+            OIDType t = shortValues[type];
+            if (null == t) {
+                shortValues[type] = t = new OIDType(type);
+            }
+            return t;
+        }
+        synchronized (values) {
+            OIDType t = values.get(type);
+            if (null == t) {
+                t = new OIDType(type);
+                values.put(type, t);
+            }
             return t;
         }
     }
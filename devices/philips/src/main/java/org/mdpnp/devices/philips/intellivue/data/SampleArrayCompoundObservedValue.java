@@ -31,11 +31,19 @@ public class SampleArrayCompoundObservedValue implements Value {
         int count = Bits.getUnsignedShort(bb);
         @SuppressWarnings("unused")
         int length = Bits.getUnsignedShort(bb);
-        list.clear();
+        // Parse over the values from last time; each keeps its sample buffer
+        while (list.size() > count) {
+            list.remove(list.size() - 1);
+        }
         for (int i = 0; i < count; i++) {
-            SampleArrayObservedValue ov = new SampleArrayObservedValue();
+            SampleArrayObservedValue ov;
+            if (i < list.size()) {
+                ov = list.get(i);
+            } else {
+                ov = new SampleArrayObservedValue();
+                list.add(ov);
+            }
             ov.parse(bb);
-            list.add(ov);
         }
 
     }
@@ -22,6 +22,11 @@ public interface DataExportProtocol extends Protocol {
 
     void format(DataExportMessage message, ByteBuffer bb);
 
+    /**
+     * Result and linked result messages, and the attributes beneath them, are
+     * parsed over again by later calls on the same protocol instance so they
+     * must not be retained beyond handling.
+     */
     @Override
     DataExportMessage parse(ByteBuffer bb);
 
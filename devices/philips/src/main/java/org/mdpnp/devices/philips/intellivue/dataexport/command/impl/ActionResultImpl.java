@@ -42,9 +42,12 @@ public class ActionResultImpl implements ActionResult {
     @Override
     public void parse(ByteBuffer bb) {
         managedObject.parse(bb);
+        OIDType previousActionType = actionType;
         actionType = OIDType.parse(bb);
         int length = Bits.getUnsignedShort(bb);
-        action = ActionFactory.buildAction(actionType, false);
+        if (null == action || !actionType.equals(previousActionType)) {
+            action = ActionFactory.buildAction(actionType, false);
+        }
         if (null == action) {
             log.warn("Unknown action type:" + actionType);
 
@@ -29,6 +29,24 @@ import org.slf4j.LoggerFactory;
 public class DataExportLinkedResultImpl extends DataExportResultImpl implements DataExportLinkedResult {
     private RemoteOperationLinkedState state;
     private short count;
+    // whether a First has been parsed since this was recycled; until then the command
+    // still holds the fragments of the previous invoke
+    private boolean first;
+
+    /**
+     * Prepares a finished result to be parsed for another invoke. The command is kept for
+     * reuse but fragments are not added to it until a First arrives.
+     */
+    public void recycle() {
+        first = false;
+    }
+
+    /**
+     * @return whether the First fragment of this invoke has been parsed
+     */
+    public boolean hasFirst() {
+        return first;
+    }
 
     @Override
     public RemoteOperationLinkedState getLinkedState() {
@@ -62,6 +80,7 @@ public class DataExportLinkedResultImpl extends DataExportResultImpl implements
         count = Bits.getUnsignedByte(bb);
         invokeId = Bits.getUnsignedShort(bb);
         int cmdType;
+        CommandType previousCommandType = commandType;
         commandType = CommandType.valueOf(cmdType = Bits.getUnsignedShort(bb));
         int length = Bits.getUnsignedShort(bb);
         if (commandType == null) {
@@ -71,17 +90,20 @@ public class DataExportLinkedResultImpl extends DataExportResultImpl implements
         } else {
             switch (state) {
             case First:
-                command = CommandFactory.buildCommand(commandType, true);
+                if (null == command || commandType != previousCommandType) {
+                    command = CommandFactory.buildCommand(commandType, true);
+                }
                 if (null == command) {
                     log.warn("Unable to build command for CommandType=" + commandType);
                     advanceOrEnd(bb, length);
                 } else {
                     command.setMessage(this);
                     command.parse(bb);
+                    first = true;
                 }
                 break;
             case NotFirstNotLast:
-                if (null == command) {
+                if (!first) {
                     log.warn("Received a command of type " + commandType + " with NotFirstNotLastState but no previous First");
                     advanceOrEnd(bb, length);
                 } else {
@@ -89,7 +111,7 @@ public class DataExportLinkedResultImpl extends DataExportResultImpl implements
                 }
                 break;
             case Last:
-                if (null == command) {
+                if (!first) {
                     log.warn("Received a command of type " + commandType + " with Last but no previous First");
                     advanceOrEnd(bb, length);
                 } else {
@@ -24,6 +24,8 @@ import org.mdpnp.devices.philips.intellivue.dataexport.DataExportProtocol;
 import org.mdpnp.devices.philips.intellivue.dataexport.Header;
 import org.mdpnp.devices.philips.intellivue.dataexport.RemoteOperation;
 import org.mdpnp.devices.philips.intellivue.util.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author Jeff Plourde
@@ -31,6 +33,8 @@ import org.mdpnp.devices.philips.intellivue.util.Util;
  */
 public class DataExportProtocolImpl implements DataExportProtocol {
 
+    private static final Logger log = LoggerFactory.getLogger(DataExportProtocolImpl.class);
+
     private final Header header = new Header();
 
     @Override
@@ -40,6 +44,10 @@ public class DataExportProtocolImpl implements DataExportProtocol {
 
     private final Map<Integer, DataExportLinkedResult> linked = new HashMap<Integer, DataExportLinkedResult>();
 
+    // Decoded results are reused from one message to the next on this connection
+    private final DataExportResultImpl result = new DataExportResultImpl();
+    private DataExportLinkedResultImpl spareLinkedResult;
+
     @SuppressWarnings("unused")
     @Override
     public DataExportMessage parse(ByteBuffer bb) {
@@ -65,12 +73,19 @@ public class DataExportProtocolImpl implements DataExportProtocol {
             invokeId = DataExportResultImpl.peekInvokeId(bb);
             if (linked.containsKey(invokeId)) {
                 DataExportLinkedResult r = linked.remove(invokeId);
+                if (r instanceof DataExportLinkedResultImpl) {
+                    spareLinkedResult = (DataExportLinkedResultImpl) r;
+                    if (!spareLinkedResult.hasFirst()) {
+                        log.warn("Received the Result of invoke " + invokeId + " but no previous First");
+                        bb.position(Math.min(bb.limit(), bb.position() + length));
+                        return null;
+                    }
+                }
                 r.parseMore(bb);
                 return r;
             } else {
-                message = new DataExportResultImpl();
-                message.parse(bb);
-                return message;
+                result.parse(bb);
+                return result;
             }
         case LinkedResult:
             invokeId = DataExportLinkedResultImpl.peekInvokeId(bb);
@@ -79,7 +94,10 @@ public class DataExportProtocolImpl implements DataExportProtocol {
                 linked.get(invokeId).parse(bb);
                 return null;
             } else {
-                message = new DataExportLinkedResultImpl();
+                DataExportLinkedResultImpl r = null == spareLinkedResult ? new DataExportLinkedResultImpl() : spareLinkedResult;
+                spareLinkedResult = null;
+                r.recycle();
+                message = r;
                 message.parse(bb);
                 linked.put(message.getInvoke(), (DataExportLinkedResult) message);
 
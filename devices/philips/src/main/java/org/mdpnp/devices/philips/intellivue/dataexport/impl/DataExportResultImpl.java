@@ -55,9 +55,12 @@ public class DataExportResultImpl implements DataExportResult {
     @Override
     public void parse(ByteBuffer bb) {
         invokeId = Bits.getUnsignedShort(bb);
+        CommandType previousCommandType = commandType;
         commandType = CommandType.valueOf(Bits.getUnsignedShort(bb));
         int length = Bits.getUnsignedShort(bb);
-        command = CommandFactory.buildCommand(commandType, true);
+        if (null == command || commandType != previousCommandType) {
+            command = CommandFactory.buildCommand(commandType, true);
+        }
         command.setMessage(this);
         command.parse(bb);
     }
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue.attribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.mdpnp.devices.philips.intellivue.action.impl.ObservationPollImpl;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.EnumValue;
+import org.mdpnp.devices.philips.intellivue.data.OIDType;
+import org.mdpnp.devices.philips.intellivue.data.RelativeTime;
+import org.mdpnp.devices.philips.intellivue.data.UnitCode;
+
+public class AttributeFactoryTest {
+    @Test
+    public void testRegisteredTypes() {
+        for (AttributeId id : AttributeId.values()) {
+            Class<?> valueType = AttributeFactory.valueType(id.asOid());
+            Attribute<?> a = AttributeFactory.getAttribute(id.asOid());
+            if (null == valueType) {
+                assertNull(a);
+            } else if (valueType.isEnum()) {
+                assertTrue(a.getValue() instanceof EnumValue);
+                assertSame(valueType, ((EnumValue<?>) a.getValue()).getEnum().getClass());
+            } else {
+                assertSame(valueType, a.getValue().getClass());
+            }
+        }
+        assertSame(RelativeTime.class, AttributeFactory.valueType(AttributeId.NOM_ATTR_TIME_PD_SAMP.asOid()));
+        assertSame(UnitCode.class, AttributeFactory.valueType(AttributeId.NOM_ATTR_UNIT_CODE.asOid()));
+        assertNull(AttributeFactory.valueType(OIDType.lookup(0xFFFF)));
+    }
+
+    @Test
+    public void testEnumAttribute() {
+        Attribute<EnumValue<UnitCode>> a = AttributeFactory.getEnumAttribute(AttributeId.NOM_ATTR_UNIT_CODE.asOid(), UnitCode.class);
+        assertSame(UnitCode.values()[0], a.getValue().getEnum());
+    }
+
+    private static ByteBuffer observation(int handle, long period) {
+        Attribute<RelativeTime> rt = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        rt.getValue().setRelativeTime(period);
+        ObservationPollImpl op = new ObservationPollImpl();
+        op.getHandle().setHandle(handle);
+        op.getAttributes().add(rt);
+        ByteBuffer bb = ByteBuffer.allocate(256).order(ByteOrder.BIG_ENDIAN);
+        op.format(bb);
+        bb.flip();
+        return bb;
+    }
+
+    @Test
+    public void testValuesReusedAcrossParses() {
+        ObservationPollImpl op = new ObservationPollImpl();
+
+        op.parse(observation(1, 8000L));
+        Attribute<RelativeTime> first = op.getAttributes().getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        assertNotNull(first);
+        assertEquals(8000L, first.getValue().getRelativeTime());
+
+        op.parse(observation(2, 16000L));
+        Attribute<RelativeTime> second = op.getAttributes().getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        assertSame(first, second);
+        assertEquals(2, op.getHandle().getHandle());
+        assertEquals(16000L, second.getValue().getRelativeTime());
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices.philips.intellivue.dataexport.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+import org.mdpnp.devices.philips.intellivue.dataexport.CommandType;
+import org.mdpnp.devices.philips.intellivue.dataexport.DataExportLinkedResult;
+import org.mdpnp.devices.philips.intellivue.dataexport.DataExportMessage;
+import org.mdpnp.devices.philips.intellivue.dataexport.RemoteOperation;
+import org.mdpnp.devices.philips.intellivue.dataexport.RemoteOperationLinkedState;
+import org.mdpnp.devices.philips.intellivue.dataexport.command.GetResult;
+
+public class DataExportProtocolImplTest {
+
+    // A Get result naming only a managed object; the handle tells the fragments apart
+    private static ByteBuffer getResult(RemoteOperationLinkedState state, int invokeId, int handle) {
+        ByteBuffer body = ByteBuffer.allocate(32).order(ByteOrder.BIG_ENDIAN);
+        if (null != state) {
+            body.put((byte) state.asShort());
+            body.put((byte) 1);
+        }
+        body.putShort((short) invokeId);
+        body.putShort((short) CommandType.Get.asInt());
+        body.putShort((short) 10);
+        body.putShort((short) 0); // oid type
+        body.putShort((short) 0); // mds context
+        body.putShort((short) handle);
+        body.putShort((short) 0); // attribute count
+        body.putShort((short) 0); // attribute length
+        body.flip();
+
+        ByteBuffer bb = ByteBuffer.allocate(64).order(ByteOrder.BIG_ENDIAN);
+        bb.putShort((short) 0xE100);
+        bb.putShort((short) 2);
+        bb.putShort((short) (null == state ? RemoteOperation.Result : RemoteOperation.LinkedResult).asInt());
+        bb.putShort((short) body.remaining());
+        bb.put(body);
+        bb.flip();
+        return bb;
+    }
+
+    private static int handle(DataExportMessage message) {
+        return ((GetResult) ((DataExportLinkedResult) message).getCommand()).getManagedObject().getGlobalHandle().getHandle();
+    }
+
+    @Test
+    public void testLinkedResult() {
+        DataExportProtocolImpl protocol = new DataExportProtocolImpl();
+        assertNull(protocol.parse(getResult(RemoteOperationLinkedState.First, 1, 10)));
+        assertNull(protocol.parse(getResult(RemoteOperationLinkedState.Last, 1, 11)));
+        DataExportMessage message = protocol.parse(getResult(null, 1, 12));
+        assertEquals(1, message.getInvoke());
+        assertEquals(12, handle(message));
+    }
+
+    @Test
+    public void testLastWithoutFirstOnRecycledResult() {
+        DataExportProtocolImpl protocol = new DataExportProtocolImpl();
+        protocol.parse(getResult(RemoteOperationLinkedState.First, 1, 10));
+        DataExportMessage previous = protocol.parse(getResult(null, 1, 11));
+        assertEquals(11, handle(previous));
+
+        // the First of invoke 2 was lost so its fragments must not land in invoke 1's command
+        assertNull(protocol.parse(getResult(RemoteOperationLinkedState.Last, 2, 20)));
+        assertEquals(11, handle(previous));
+        assertNull(protocol.parse(getResult(null, 2, 21)));
+        assertEquals(11, handle(previous));
+
+        // the next complete invoke is decoded again, reusing the same result
+        assertNull(protocol.parse(getResult(RemoteOperationLinkedState.First, 3, 30)));
+        DataExportMessage message = protocol.parse(getResult(null, 3, 31));
+        assertSame(previous, message);
+        assertEquals(3, message.getInvoke());
+        assertEquals(31, handle(message));
+    }
+}
@@ -32,6 +32,8 @@ public class SimulatedCapnometer {
     private static final Logger log = LoggerFactory.getLogger(SimulatedCapnometer.class);
 
     private int count;
+    // index by which the capnogram is shifted for the current phase
+    private int offset;
 
     protected int postIncrCount() {
         int count = this.count;
@@ -40,7 +42,7 @@ public class SimulatedCapnometer {
     }
 
     private final class DataPublisher implements Runnable {
-        private final Number[] values = new Number[SAMPLES_PER_UPDATE];
+        private final float[] values = new float[SAMPLES_PER_UPDATE];
 
         public DataPublisher() {
         }
@@ -49,7 +51,7 @@ public class SimulatedCapnometer {
         public void run() {
 
             for (int i = 0; i < values.length; i++) {
-                values[i] = SimulatedCapnometer.this.co2[postIncrCount()];
+                values[i] = (float) SimulatedCapnometer.this.co2[postIncrCount()];
             }
 
             DeviceClock.Reading  t = deviceClock.instant();
@@ -62,7 +64,7 @@ public class SimulatedCapnometer {
 
     };
 
-    protected void receiveCO2(DeviceClock.Reading time, Number[] co2, int respiratoryRate, int etCO2, int frequency) {
+    protected void receiveCO2(DeviceClock.Reading time, float[] co2, int respiratoryRate, int etCO2, int frequency) {
 
     }
 
@@ -101,12 +103,25 @@ public class SimulatedCapnometer {
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
+        connect(executor, 0.0);
+    }
+
+    /**
+     * As {@link #connect(ScheduledExecutorService)} but shifted by a fraction (0 to 1) of the capnogram
+     * and of the update period, so that many simulators started together do not publish the
+     * same values at the same instant.
+     */
+    public void connect(ScheduledExecutorService executor, double phase) {
         if (task != null) {
             task.cancel(false);
             task = null;
         }
+        // move by the change in phase only, so reconnecting does not shift the wave again
+        int offset = (int) (phase * co2.length);
+        count = Math.floorMod(count + offset - this.offset, co2.length);
+        this.offset = offset;
         long now = System.currentTimeMillis();
-        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD, UPDATE_PERIOD, TimeUnit.MILLISECONDS);
+        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD + (long) (phase * UPDATE_PERIOD), UPDATE_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     public void disconnect() {
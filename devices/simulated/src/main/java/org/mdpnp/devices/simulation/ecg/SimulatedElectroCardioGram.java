@@ -32,6 +32,8 @@ public class SimulatedElectroCardioGram {
     private static final Logger log = LoggerFactory.getLogger(SimulatedElectroCardioGram.class);
 
     private int counti = 0, countii = 0, countiii = 0;
+    // fraction of each lead by which it is shifted for the current phase
+    private double phase;
 
     protected int postIncrCounti() {
         int counti = this.counti;
@@ -52,9 +54,9 @@ public class SimulatedElectroCardioGram {
     }
 
     private final class DataPublisher implements Runnable {
-        private final Number[] iValues = new Number[samplesPerUpdate];
-        private final Number[] iiValues = new Number[samplesPerUpdate];
-        private final Number[] iiiValues = new Number[samplesPerUpdate];
+        private final float[] iValues = new float[samplesPerUpdate];
+        private final float[] iiValues = new float[samplesPerUpdate];
+        private final float[] iiiValues = new float[samplesPerUpdate];
 
         public DataPublisher() {
         }
@@ -63,13 +65,13 @@ public class SimulatedElectroCardioGram {
         public void run() {
 
             for (int i = 0; i < iValues.length; i++) {
-                iValues[i] = SimulatedElectroCardioGram.this.i[postIncrCounti()];
+                iValues[i] = (float) SimulatedElectroCardioGram.this.i[postIncrCounti()];
             }
             for (int i = 0; i < iiValues.length; i++) {
-                iiValues[i] = ii[postIncrCountii()];
+                iiValues[i] = (float) ii[postIncrCountii()];
             }
             for (int i = 0; i < iiiValues.length; i++) {
-                iiiValues[i] = iii[postIncrCountiii()];
+                iiiValues[i] = (float) iii[postIncrCountiii()];
             }
 
             DeviceClock.Reading  t = deviceClock.instant();
@@ -82,7 +84,7 @@ public class SimulatedElectroCardioGram {
 
     }
 
-    protected void receiveECG(DeviceClock.Reading sampleTime, Number[] i, Number[] ii, Number[] iii, int heartRate, int respiratoryRate, int frequency) {
+    protected void receiveECG(DeviceClock.Reading sampleTime, float[] i, float[] ii, float[] iii, int heartRate, int respiratoryRate, int frequency) {
 
     }
 
@@ -211,13 +213,27 @@ public class SimulatedElectroCardioGram {
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
+        connect(executor, 0.0);
+    }
+
+    /**
+     * As {@link #connect(ScheduledExecutorService)} but shifted by a fraction (0 to 1) of the leads
+     * and of the update period, so that many simulators started together do not publish the
+     * same values at the same instant.
+     */
+    public void connect(ScheduledExecutorService executor, double phase) {
         if (task != null) {
             task.cancel(false);
             task = null;
         }
+        // move by the change in phase only, so reconnecting does not shift the leads again
+        counti = Math.floorMod(counti + (int) (phase * i.length) - (int) (this.phase * i.length), i.length);
+        countii = Math.floorMod(countii + (int) (phase * ii.length) - (int) (this.phase * ii.length), ii.length);
+        countiii = Math.floorMod(countiii + (int) (phase * iii.length) - (int) (this.phase * iii.length), iii.length);
+        this.phase = phase;
         long now = System.currentTimeMillis();
         task = executor.scheduleAtFixedRate(new DataPublisher(),
-                                            updatePeriod - now % updatePeriod,  // initialDelay
+                                            updatePeriod - now % updatePeriod + (long) (phase * updatePeriod),  // initialDelay
                                             updatePeriod,                       // period
                                             TimeUnit.MILLISECONDS);             // time unit
     }
@@ -28,6 +28,8 @@ import org.slf4j.LoggerFactory;
  */
 public class SimulatedInvasiveBloodPressure {
     private int count = 0;
+    // index by which the wave is shifted for the current phase
+    private int offset;
     private static final Logger log = LoggerFactory.getLogger(SimulatedInvasiveBloodPressure.class);
 
     protected int postIncrCount() {
@@ -37,7 +39,7 @@ public class SimulatedInvasiveBloodPressure {
     }
 
     private final class DataPublisher implements Runnable {
-        private final Number[] waveValues = new Number[SAMPLES_PER_UPDATE];
+        private final float[] waveValues = new float[SAMPLES_PER_UPDATE];
 
         public DataPublisher() {
         }
@@ -46,7 +48,7 @@ public class SimulatedInvasiveBloodPressure {
         public void run() {
             try {
                 for (int i = 0; i < waveValues.length; i++) {
-                    waveValues[i] = wave[postIncrCount()];
+                    waveValues[i] = (float) wave[postIncrCount()];
                 }
 
                 int val[] = nextDraw();
@@ -62,7 +64,7 @@ public class SimulatedInvasiveBloodPressure {
 
     };
 
-    protected void receivePressure(DeviceClock.Reading timestamp, int systolic, int diastolic, Number[] waveValues, int frequency) {
+    protected void receivePressure(DeviceClock.Reading timestamp, int systolic, int diastolic, float[] waveValues, int frequency) {
 
     }
 
@@ -81,12 +83,25 @@ public class SimulatedInvasiveBloodPressure {
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
+        connect(executor, 0.0);
+    }
+
+    /**
+     * As {@link #connect(ScheduledExecutorService)} but shifted by a fraction (0 to 1) of the pressure wave
+     * and of the update period, so that many simulators started together do not publish the
+     * same values at the same instant.
+     */
+    public void connect(ScheduledExecutorService executor, double phase) {
         if (task != null) {
             task.cancel(false);
             task = null;
         }
+        // move by the change in phase only, so reconnecting does not shift the wave again
+        int offset = (int) (phase * wave.length);
+        count = Math.floorMod(count + offset - this.offset, wave.length);
+        this.offset = offset;
         long now = System.currentTimeMillis();
-        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD, UPDATE_PERIOD, TimeUnit.MILLISECONDS);
+        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD + (long) (phase * UPDATE_PERIOD), UPDATE_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     public void disconnect() {
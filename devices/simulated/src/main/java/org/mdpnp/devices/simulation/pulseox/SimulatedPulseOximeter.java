@@ -29,6 +29,8 @@ import org.slf4j.LoggerFactory;
  */
 public class SimulatedPulseOximeter {
     private int count = 0;
+    // index by which the plethysmogram is shifted for the current phase
+    private int offset;
     private static final Logger log = LoggerFactory.getLogger(SimulatedPulseOximeter.class);
 
     protected int postIncrCount() {
@@ -38,7 +40,7 @@ public class SimulatedPulseOximeter {
     }
 
     private final class DataPublisher implements Runnable {
-        private final Number[] plethValues = new Number[SAMPLES_PER_UPDATE];
+        private final float[] plethValues = new float[SAMPLES_PER_UPDATE];
 
         public DataPublisher(){}
         
@@ -47,7 +49,7 @@ public class SimulatedPulseOximeter {
         public void run() {
             try {
                 for (int i = 0; i < plethValues.length; i++) {
-                    plethValues[i] = pleth[postIncrCount()];
+                    plethValues[i] = (float) pleth[postIncrCount()];
                 }
 
                 int val[] = nextDraw();
@@ -63,7 +65,7 @@ public class SimulatedPulseOximeter {
 
     };
 
-    protected void receivePulseOx(DeviceClock.Reading timestamp, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+    protected void receivePulseOx(DeviceClock.Reading timestamp, int heartRate, int SpO2, float[] plethValues, int frequency) {
 
     }
 
@@ -94,12 +96,25 @@ public class SimulatedPulseOximeter {
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
+        connect(executor, 0.0);
+    }
+
+    /**
+     * As {@link #connect(ScheduledExecutorService)} but shifted by a fraction (0 to 1) of the plethysmogram
+     * and of the update period, so that many simulators started together do not publish the
+     * same values at the same instant.
+     */
+    public void connect(ScheduledExecutorService executor, double phase) {
         if (task != null) {
             task.cancel(false);
             task = null;
         }
+        // move by the change in phase only, so reconnecting does not shift the wave again
+        int offset = (int) (phase * pleth.length);
+        count = Math.floorMod(count + offset - this.offset, pleth.length);
+        this.offset = offset;
         long now = System.currentTimeMillis();
-        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD, UPDATE_PERIOD, TimeUnit.MILLISECONDS);
+        task = executor.scheduleAtFixedRate(new DataPublisher(), UPDATE_PERIOD - now % UPDATE_PERIOD + (long) (phase * UPDATE_PERIOD), UPDATE_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     public void disconnect() {
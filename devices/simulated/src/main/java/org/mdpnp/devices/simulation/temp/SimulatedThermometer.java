@@ -70,11 +70,19 @@ public class SimulatedThermometer /*implements GlobalSimulationObjectiveListener
     private ScheduledFuture<?> task;
 
     public void connect(ScheduledExecutorService executor) {
+        connect(executor, 0.0);
+    }
+
+    /**
+     * As {@link #connect(ScheduledExecutorService)} but delayed by a fraction (0 to 1) of the
+     * update period, so that many simulators started together do not publish at the same instant.
+     */
+    public void connect(ScheduledExecutorService executor, double phase) {
         if (task != null) {
             task.cancel(false);
             task = null;
         }
-        task = executor.scheduleAtFixedRate(new MyTask(), 0L, UPDATE_PERIOD, TimeUnit.MILLISECONDS);
+        task = executor.scheduleAtFixedRate(new MyTask(), (long) (phase * UPDATE_PERIOD), UPDATE_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     public void disconnect() {
@@ -1,5 +1,6 @@
 package org.mdpnp.devices.simulation.ecg;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.mdpnp.devices.DeviceClock;
 import org.slf4j.Logger;
@@ -38,7 +39,7 @@ public class SimulatedElectroCardioGramTest {
         SimulatedElectroCardioGram srv = new SimulatedElectroCardioGram(referenceClock, 1000L, msPerSample, SimulatedElectroCardioGram.TimestampType.metronome, 0) {
 
             @Override
-            protected void receiveECG(DeviceClock.Reading sampleTime, Number[] i, Number[] ii, Number[] iii, int heartRate, int respiratoryRate, int frequency) {
+            protected void receiveECG(DeviceClock.Reading sampleTime, float[] i, float[] ii, float[] iii, int heartRate, int respiratoryRate, int frequency) {
 
                 Date dt = new Date(sampleTime.getTime().toEpochMilli());
                 log.info(dateFormat.format(dt) + " data size=" + i.length + " heartRate=" + heartRate + " respiratoryRate=" + respiratoryRate + " frequency=" + frequency);
@@ -54,6 +55,25 @@ public class SimulatedElectroCardioGramTest {
 
     }
 
+    @Test
+    public void testReconnectKeepsPhase() throws Exception {
+
+        SimulatedElectroCardioGram srv = new SimulatedElectroCardioGram(referenceClock, 1000L, 5, SimulatedElectroCardioGram.TimestampType.metronome, 0);
+
+        // the phase also delays the first update by half a period, so nothing is published in between
+        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor();
+        srv.connect(ses, 0.5);
+        srv.disconnect();
+        int first = srv.postIncrCounti();
+        srv.connect(ses, 0.5);
+        srv.disconnect();
+        Assert.assertEquals(first + 1, srv.postIncrCounti());
+        srv.connect(ses, 0.0);
+        srv.disconnect();
+        Assert.assertEquals(2, srv.postIncrCounti());
+        ses.shutdown();
+    }
+
     @Test
     public void testPublishSchedulerWithDrift() throws Exception {
 
@@ -62,7 +82,7 @@ public class SimulatedElectroCardioGramTest {
         SimulatedElectroCardioGram srv = new SimulatedElectroCardioGram(referenceClock, 1000L, 5, SimulatedElectroCardioGram.TimestampType.realtime, 10) {
 
             @Override
-            protected void receiveECG(DeviceClock.Reading sampleTime, Number[] i, Number[] ii, Number[] iii, int heartRate, int respiratoryRate, int frequency) {
+            protected void receiveECG(DeviceClock.Reading sampleTime, float[] i, float[] ii, float[] iii, int heartRate, int respiratoryRate, int frequency) {
 
                 Date dt = new Date(sampleTime.getTime().toEpochMilli());
                 log.info(dateFormat.format(dt) + " data size=" + i.length + " heartRate=" + heartRate + " respiratoryRate=" + respiratoryRate + " frequency=" + frequency);
@@ -0,0 +1,57 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of numeric and sample array events into CSV lines as done by CSVPersister,
+ * using a reused line buffer the way the persister's writer thread does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVPersisterBenchmark {
+
+    @Param({ "64", "500" })
+    public int samples;
+
+    private final CSVLine line = new CSVLine();
+    private NumericsDataCollector.NumericSampleEvent numeric;
+    private SampleArrayDataCollector.SampleArrayEvent sampleArray;
+    private long time;
+
+    @Setup
+    public void setup() {
+        Double[] values = new Double[samples];
+        for (int i = 0; i < samples; i++) {
+            values[i] = 100.0 * Math.sin(2.0 * Math.PI * i / samples);
+        }
+        time = 1400000000000L;
+        numeric = NumericsDataCollector.toEvent("DEVICE0", "METRIC0", 0, time, 13.31);
+        sampleArray = SampleArrayDataCollector.toEvent("DEVICE0", "METRIC1", 0, time, values);
+    }
+
+    @Benchmark
+    public int numericLine() {
+        return CSVPersister.toCSVLine(line.reset(), numeric).length();
+    }
+
+    @Benchmark
+    public int sampleArrayLine() {
+        return CSVPersister.toCSVLine(line.reset(), sampleArray).length();
+    }
+}
@@ -0,0 +1,60 @@
+package org.mdpnp.devices;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ice.SampleArray;
+
+/**
+ * Copying a block of waveform values into the sample array instance before it is published,
+ * from primitive floats and from the boxed containers most device adapters hand in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleArrayFillBenchmark {
+
+    @Param({ "64", "500" })
+    public int samples;
+
+    private final SampleArray data = new SampleArray();
+    private float[] floats;
+    private AbstractDevice.ArrayContainer<Number> boxed;
+
+    @Setup
+    public void setup() {
+        floats = new float[samples];
+        Number[] numbers = new Number[samples];
+        for (int i = 0; i < samples; i++) {
+            floats[i] = (float) (100.0 * Math.sin(2.0 * Math.PI * i / samples));
+            numbers[i] = floats[i];
+        }
+        boxed = new AbstractDevice.ArrayContainer<Number>(numbers);
+    }
+
+    @Benchmark
+    public int fillFloats() {
+        AbstractDevice.fill(data, floats, 0, floats.length);
+        return data.values.userData.size();
+    }
+
+    @Benchmark
+    public int fillBoxed() {
+        AbstractDevice.fill(data, boxed);
+        return data.values.userData.size();
+    }
+}
@@ -0,0 +1,128 @@
+package org.mdpnp.devices.draeger.medibus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Realtime Medibus traffic: three traces of two byte samples, each group led by a sync
+ * byte, with a slow command/response byte interleaved now and then.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MedibusBenchmark {
+
+    private static final int STREAM_BYTES = 64 * 1024;
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private static final class Sink extends RTMedibus {
+        private Blackhole blackhole;
+
+        Sink() throws IOException {
+            // the stream the superclass reads ends at once; benchmarks drive the decoding
+            super(new ByteArrayInputStream(new byte[0]), DISCARD);
+        }
+
+        @Override
+        public void receiveDataValue(RTDataConfig config, int multiplier, int streamIndex, Object realtimeData, double data) {
+            blackhole.consume(data);
+        }
+    }
+
+    private Sink medibus;
+    private byte[] stream;
+    private int[] fast;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws IOException {
+        medibus = new Sink();
+        medibus.blackhole = blackhole;
+        RTMedibus.RTTransmit[] transmits = new RTMedibus.RTTransmit[3];
+        for (int i = 0; i < transmits.length; i++) {
+            RTMedibus.RTDataConfig config = new RTMedibus.RTDataConfig();
+            config.realtimeData = i;
+            config.min = -100;
+            config.max = 100;
+            config.maxbin = 4095;
+            transmits[i] = new RTMedibus.RTTransmit(i, 1, config);
+        }
+        medibus.sendRTTransmissionCommand(transmits);
+
+        Random random = new Random(0);
+        stream = new byte[STREAM_BYTES];
+        int n = 0;
+        while (n < stream.length - 8) {
+            // sync byte announcing streams 0, 1 and 2 then a sample for each
+            stream[n++] = (byte) 0xD7;
+            for (int t = 0; t < 3; t++) {
+                stream[n++] = (byte) (0x80 | random.nextInt(0x40));
+                stream[n++] = (byte) (0x80 | random.nextInt(0x40));
+            }
+            if (random.nextInt(32) == 0) {
+                stream[n++] = (byte) ('0' + random.nextInt(10));
+            }
+        }
+        stream = Arrays.copyOf(stream, n);
+        fast = new int[n];
+        int f = 0;
+        for (int i = 0; i < n; i++) {
+            if (0 != (0x80 & stream[i])) {
+                fast[f++] = 0xFF & stream[i];
+            }
+        }
+        fast = Arrays.copyOf(fast, f);
+    }
+
+    /**
+     * Partitions 64KiB of device stream into fast and slow bytes, decoding the fast ones
+     * as it goes. Includes the fixed cost of the demultiplexer's buffers.
+     */
+    @Benchmark
+    public void partition() throws IOException {
+        MedibusDemultiplexer demux = new MedibusDemultiplexer(new ByteArrayInputStream(stream), medibus);
+        demux.run();
+        InputStream slow = demux.getSlowInputStream();
+        while (slow.read() >= 0) {
+            // drain
+        }
+    }
+
+    /**
+     * Decodes the realtime bytes of the same stream into receiveDataValue calls.
+     */
+    @Benchmark
+    public void receiveDataValue() {
+        for (int b : fast) {
+            medibus.fastByte(b);
+        }
+    }
+}
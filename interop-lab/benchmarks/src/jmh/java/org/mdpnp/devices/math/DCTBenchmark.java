@@ -0,0 +1,62 @@
+package org.mdpnp.devices.math;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Waveform synthesis as the simulated devices do it; 60 coefficients into a period
+ * of a few hundred samples, plus a power of two and a larger odd length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DCTBenchmark {
+
+    @Param({ "300", "1024", "1999" })
+    public int length;
+
+    private double[] coeffs;
+    private double[] results;
+    private float[] samples;
+    private float[] spectrum;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        coeffs = new double[length];
+        for (int i = 0; i < 60; i++) {
+            coeffs[i] = 1000.0 * random.nextGaussian();
+        }
+        results = new double[length];
+        samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) random.nextGaussian();
+        }
+        spectrum = new float[length];
+    }
+
+    @Benchmark
+    public double[] idct() {
+        return DCT.idct(coeffs, 0, 60, results);
+    }
+
+    @Benchmark
+    public float[] dctFloat() {
+        return DCT.dct(samples, 17, spectrum, 60);
+    }
+}
@@ -0,0 +1,117 @@
+package org.mdpnp.devices.philips.intellivue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataResult;
+import org.mdpnp.devices.philips.intellivue.action.ObservationPoll;
+import org.mdpnp.devices.philips.intellivue.action.SingleContextPoll;
+import org.mdpnp.devices.philips.intellivue.action.impl.ExtendedPollDataResultImpl;
+import org.mdpnp.devices.philips.intellivue.action.impl.ObservationPollImpl;
+import org.mdpnp.devices.philips.intellivue.action.impl.SingleContextPollImpl;
+import org.mdpnp.devices.philips.intellivue.attribute.Attribute;
+import org.mdpnp.devices.philips.intellivue.attribute.AttributeFactory;
+import org.mdpnp.devices.philips.intellivue.data.AttributeId;
+import org.mdpnp.devices.philips.intellivue.data.CompoundNumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.NumericObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.ObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.RelativeTime;
+import org.mdpnp.devices.philips.intellivue.data.SampleArrayCompoundObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.SampleArrayObservedValue;
+import org.mdpnp.devices.philips.intellivue.data.SampleArraySpecification;
+import org.mdpnp.devices.philips.intellivue.data.UnitCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes the body of an extended poll result like the ones a monitor sends every
+ * 256ms. The buffer is formatted the way the simulated monitor formats its poll
+ * results, with {@code objects} observation polls each carrying a sample array
+ * specification, a sample period, a compound numeric and a compound sample array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtendedPollDataResultBenchmark {
+
+    @Param({ "1", "16" })
+    public int objects;
+
+    private ByteBuffer captured;
+    private final ExtendedPollDataResult result = new ExtendedPollDataResultImpl();
+
+    static ObservationPoll observationPoll(int handle) {
+        ObservationPoll op = new ObservationPollImpl();
+        op.getHandle().setHandle(handle);
+
+        Attribute<SampleArraySpecification> spec = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_SPECN, SampleArraySpecification.class);
+        spec.getValue().setArraySize(64);
+        spec.getValue().setSampleSize((short) Short.SIZE);
+        spec.getValue().setSignificantBits((short) Short.SIZE);
+        Attribute<RelativeTime> period = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_TIME_PD_SAMP, RelativeTime.class);
+        period.getValue().fromMicroseconds(4000L);
+
+        Attribute<CompoundNumericObservedValue> cnov = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_NU_CMPD_VAL_OBS,
+                CompoundNumericObservedValue.class);
+        NumericObservedValue pulse = new NumericObservedValue();
+        pulse.setPhysioId(ObservedValue.NOM_PLETH_PULS_RATE.asOID());
+        pulse.setUnitCode(UnitCode.NOM_DIM_BEAT_PER_MIN.asOID());
+        NumericObservedValue spo2 = new NumericObservedValue();
+        spo2.setPhysioId(ObservedValue.NOM_PULS_OXIM_SAT_O2.asOID());
+        spo2.setUnitCode(UnitCode.NOM_DIM_PERCENT.asOID());
+        cnov.getValue().getList().add(pulse);
+        cnov.getValue().getList().add(spo2);
+
+        Attribute<SampleArrayCompoundObservedValue> sacov = AttributeFactory.getAttribute(AttributeId.NOM_ATTR_SA_CMPD_VAL_OBS,
+                SampleArrayCompoundObservedValue.class);
+        SampleArrayObservedValue pleth = new SampleArrayObservedValue();
+        pleth.setPhysioId(ObservedValue.NOM_PLETH.asOID());
+        short[] values = new short[2 * 64];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (short) (0xFF & (i * 37));
+        }
+        pleth.setValue(values);
+        pleth.setLength(values.length);
+        sacov.getValue().getList().add(pleth);
+
+        op.getAttributes().add(spec);
+        op.getAttributes().add(period);
+        op.getAttributes().add(cnov);
+        op.getAttributes().add(sacov);
+        return op;
+    }
+
+    @Setup
+    public void setup() {
+        ExtendedPollDataResultImpl source = new ExtendedPollDataResultImpl();
+        source.setPolledAttributeGroup(AttributeId.NOM_ATTR_GRP_METRIC_VAL_OBS.asOid());
+        SingleContextPoll scp = new SingleContextPollImpl();
+        for (int i = 0; i < objects; i++) {
+            scp.getPollInfo().add(observationPoll(i + 1));
+        }
+        source.getPollInfoList().add(scp);
+        ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+        source.format(bb);
+        bb.flip();
+        captured = bb.asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public ExtendedPollDataResult parse() {
+        ByteBuffer bb = captured.duplicate();
+        result.parse(bb);
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package org.mdpnp.devices.philips.intellivue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mdpnp.devices.io.MergeBytesInputStream;
+import org.mdpnp.devices.io.SplitBytesOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Intellivue serial (MIB/RS232) framing applied by RS232Adapter: frame check sequence
+ * over the payload, escaping of the frame delimiters on the way out and merging of escape
+ * sequences on the way in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialFramingBenchmark {
+
+    private static final int BOF = 0xC0, EOF = 0xC1, ESC = 0x7D;
+
+    @Param({ "1500" })
+    public int frameBytes;
+
+    private byte[] payload;
+    private byte[] escaped;
+    private byte[] readBuffer;
+    private ByteArrayOutputStream sink;
+    private SplitBytesOutputStream split;
+    private FCSOutputStream fcs;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(0);
+        payload = new byte[frameBytes];
+        random.nextBytes(payload);
+        sink = new ByteArrayOutputStream(2 * frameBytes + 16);
+        split = new SplitBytesOutputStream(sink, new IntellivueByteSplitter());
+        fcs = new FCSOutputStream(split);
+        writeFrame();
+        escaped = sink.toByteArray();
+        readBuffer = new byte[escaped.length];
+    }
+
+    private void writeFrame() throws IOException {
+        sink.reset();
+        fcs.resetFCS();
+        split.writeProtected(BOF);
+        fcs.write(payload, 0, payload.length);
+        fcs.writeFCS();
+        split.writeProtected(EOF);
+    }
+
+    @Benchmark
+    public int pppfcs() {
+        return FCSOutputStream.pppfcs(FCSOutputStream.INITIAL_FCS_VALUE, payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public int writeFrameEscaped() throws IOException {
+        writeFrame();
+        return sink.size();
+    }
+
+    @Benchmark
+    public int readFrameMerged() throws IOException {
+        MergeBytesInputStream in = new MergeBytesInputStream(new ByteArrayInputStream(escaped), BOF, EOF, ESC, new MergeBytesInputStream.Merger() {
+            @Override
+            public byte merge(byte b1, byte b2) {
+                return (byte) (0x20 ^ b2);
+            }
+        });
+        // Like RS232Adapter the frame markers are read singly and the body (with its FCS) by known length
+        final int length = payload.length + 2;
+        if (in.read() != MergeBytesInputStream.BEGIN_FRAME) {
+            throw new IllegalStateException("expected beginning of frame");
+        }
+        int total = 0, n;
+        while (total < length && (n = in.read(readBuffer, total, length - total)) > 0) {
+            total += n;
+        }
+        if (in.read() != MergeBytesInputStream.END_FRAME) {
+            throw new IllegalStateException("expected end of frame");
+        }
+        return total;
+    }
+}
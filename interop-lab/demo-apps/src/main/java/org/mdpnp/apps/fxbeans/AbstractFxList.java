@@ -1,10 +1,13 @@
 package org.mdpnp.apps.fxbeans;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javafx.application.Platform;
 import javafx.collections.ModifiableObservableListBase;
@@ -59,7 +62,10 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
     protected final Sequence dataSequence;
     protected final SampleInfoSeq sampleInfoSequence = new SampleInfoSeq();
 
-    protected final Method getKeyValue, returnLoan, readWCondition, readInstance;
+    // Bound in the constructor for the reasons given in InstanceModelImpl; the constructors
+    // replace Class.newInstance for each sample and Fx bean created while reading
+    protected final MethodHandle getKeyValue, returnLoan, readWCondition, readInstance;
+    private final MethodHandle newData, newFx;
 
     private final LogEntityStatus logEntityStatus;
 
@@ -75,11 +81,14 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
         this.logEntityStatus = new LogEntityStatus(log, topicName);
         try {
             this.dataSequence = sequenceClass.newInstance();
-            getKeyValue = readerClass.getMethod("get_key_value", dataClass, InstanceHandle_t.class);
-            returnLoan = readerClass.getMethod("return_loan", sequenceClass, SampleInfoSeq.class);
-            readWCondition = readerClass.getMethod("read_w_condition", sequenceClass, SampleInfoSeq.class, int.class, ReadCondition.class);
-            readInstance = readerClass.getMethod("read_instance", sequenceClass, SampleInfoSeq.class, int.class, InstanceHandle_t.class, int.class,
-                    int.class, int.class);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getKeyValue = lookup.unreflect(readerClass.getMethod("get_key_value", dataClass, InstanceHandle_t.class));
+            returnLoan = lookup.unreflect(readerClass.getMethod("return_loan", sequenceClass, SampleInfoSeq.class));
+            readWCondition = lookup.unreflect(readerClass.getMethod("read_w_condition", sequenceClass, SampleInfoSeq.class, int.class, ReadCondition.class));
+            readInstance = lookup.unreflect(readerClass.getMethod("read_instance", sequenceClass, SampleInfoSeq.class, int.class, InstanceHandle_t.class, int.class,
+                    int.class, int.class));
+            newData = lookup.findConstructor(dataClass, MethodType.methodType(void.class));
+            newFx = lookup.findConstructor(fxClass, MethodType.methodType(void.class));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -94,76 +103,161 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
     private Topic readerTopic;
     private ContentFilteredTopic filteredTopic;
 
+    /**
+     * The latest sample read for an instance and not yet applied on the FX thread.
+     * Recycled once applied.
+     */
+    private static final class Pending<D> {
+        final InstanceHandle_t handle = new InstanceHandle_t(InstanceHandle_t.HANDLE_NIL);
+        final SampleInfo sampleInfo = new SampleInfo();
+        final D data;
+        boolean alive;
+
+        Pending(D data) {
+            this.data = data;
+        }
+    }
+
+    // Samples are collected by the EventLoop thread and applied in one FX pulse; guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private List<Pending<D>> pending = new ArrayList<>();
+    private final Map<InstanceHandle_t, Pending<D>> pendingByHandle = new HashMap<>();
+    private final ArrayDeque<Pending<D>> free = new ArrayDeque<>();
+    private boolean pulseScheduled;
+    private long coalescedUpdates;
+
+    // FX thread only
+    private List<Pending<D>> applying = new ArrayList<>();
+    private final Map<InstanceHandle_t, F> rowIndex = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private Pending<D> obtain() throws Throwable {
+        Pending<D> p = free.poll();
+        return null == p ? new Pending<D>((D) newData.invoke()) : p;
+    }
+
     private final EventLoop.ConditionHandler handler = new EventLoop.ConditionHandler() {
         @SuppressWarnings("unchecked")
         @Override
         public void conditionChanged(Condition condition) {
+            boolean schedule = false;
             try {
                 readWCondition.invoke(reader, dataSequence, sampleInfoSequence, ResourceLimitsQosPolicy.LENGTH_UNLIMITED, (ReadCondition) condition);
 
                 final int sz = sampleInfoSequence.size();
 
-                for (int i = 0; i < sz; i++) {
-                    SampleInfo sampleInfo = (SampleInfo) sampleInfoSequence.get(i);
-                    D d = (D) dataSequence.get(i);
-                    if (0 != (sampleInfo.instance_state & InstanceStateKind.NOT_ALIVE_INSTANCE_STATE)) {
+                synchronized (pendingLock) {
+                    for (int i = 0; i < sz; i++) {
+                        SampleInfo sampleInfo = (SampleInfo) sampleInfoSequence.get(i);
+                        boolean alive = 0 == (sampleInfo.instance_state & InstanceStateKind.NOT_ALIVE_INSTANCE_STATE);
                         // Keeping a history of samples makes the death of an instance immaterial
-                        if(!keepHistory) {
-                            InstanceHandle_t removeHandle = new InstanceHandle_t(sampleInfo.instance_handle);
-                            Platform.runLater(() -> {
-                                Iterator<F> itr = iterator();
-                                while (itr.hasNext()) {
-                                    if (itr.next().getHandle().equals(removeHandle)) {
-                                        itr.remove();
-                                    }
-                                }
-                            });
+                        if (!alive && keepHistory) {
+                            continue;
                         }
-                    } else {
-                        final InstanceHandle_t addUpdateHandle = new InstanceHandle_t(sampleInfo.instance_handle);
-                        final SampleInfo si = new SampleInfo();
-                        si.copy_from(sampleInfo);
-                        final D sample = dataClass.newInstance();
-                        sample.copy_from(d);
-
-                        Platform.runLater(() -> {
-                            // Keeping a history means never updating any existing row; only add new rows
-                            if(!keepHistory) {
-                                Iterator<F> itr = iterator();
-                                while (itr.hasNext()) {
-                                    Updatable<D> x = itr.next();
-                                    if (x.getHandle().equals(addUpdateHandle)) {
-                                        x.update(d, si);
-                                        return;
-                                    }
-                                }
+                        // Keeping a history means every sample becomes a row so none are coalesced
+                        Pending<D> p = keepHistory ? null : pendingByHandle.get(sampleInfo.instance_handle);
+                        if (null == p) {
+                            p = obtain();
+                            p.handle.copy_from(sampleInfo.instance_handle);
+                            pending.add(p);
+                            if (!keepHistory) {
+                                pendingByHandle.put(p.handle, p);
                             }
-                            try {
-                                F x = fxClass.newInstance();
-                                x.update(d, si);
-                                add(0, x);
-                            } catch (Exception e) {
-                                log.error("Unable to create a new instance of fx object", e);
-                            }
-                        });
+                        } else {
+                            coalescedUpdates++;
+                        }
+                        p.alive = alive;
+                        p.sampleInfo.copy_from(sampleInfo);
+                        if (alive) {
+                            p.data.copy_from((D) dataSequence.get(i));
+                        }
+                    }
+                    if (!pulseScheduled && !pending.isEmpty()) {
+                        pulseScheduled = schedule = true;
                     }
                 }
-            } catch (InvocationTargetException ite) {
-                if (!(ite.getCause() instanceof RETCODE_NO_DATA)) {
-                    log.error("reading", ite);
-                }
-            } catch (Exception e) {
-                log.error("reading for " + topicName, e);
+            } catch (RETCODE_NO_DATA noData) {
+                // another handler already took the samples
+            } catch (Throwable t) {
+                log.error("reading for " + topicName, t);
             } finally {
                 try {
                     returnLoan.invoke(reader, dataSequence, sampleInfoSequence);
-                } catch (Exception e) {
-                    log.error("return_loan for " + topicName, e);
+                } catch (Throwable t) {
+                    log.error("return_loan for " + topicName, t);
                 }
             }
+            if (schedule) {
+                Platform.runLater(pulse);
+            }
+        }
+    };
+
+    private final Runnable pulse = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (pendingLock) {
+                List<Pending<D>> swap = applying;
+                applying = pending;
+                pending = swap;
+                pendingByHandle.clear();
+                pulseScheduled = false;
+            }
+            for (int i = 0; i < applying.size(); i++) {
+                apply(applying.get(i));
+            }
+            synchronized (pendingLock) {
+                free.addAll(applying);
+            }
+            applying.clear();
         }
     };
 
+    @SuppressWarnings("unchecked")
+    private void apply(Pending<D> p) {
+        if (!p.alive) {
+            F row = rowIndex.get(p.handle);
+            if (null != row) {
+                remove(row);
+            }
+            return;
+        }
+        // Keeping a history means never updating any existing row; only add new rows
+        if (!keepHistory) {
+            F row = rowIndex.get(p.handle);
+            if (null != row) {
+                row.update(p.data, p.sampleInfo);
+                return;
+            }
+        }
+        try {
+            F x = (F) newFx.invoke();
+            x.update(p.data, p.sampleInfo);
+            add(0, x);
+        } catch (Throwable t) {
+            log.error("Unable to create a new instance of fx object", t);
+        }
+    }
+
+    /**
+     * @return instances with a sample read from DDS and not yet applied to this list
+     */
+    public int getPendingUpdates() {
+        synchronized (pendingLock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return samples that were superseded by a newer sample of the same instance before
+     *         reaching the FX thread
+     */
+    public long getCoalescedUpdates() {
+        synchronized (pendingLock) {
+            return coalescedUpdates;
+        }
+    }
+
     protected boolean keepHistory = false;
     
     public void setKeepHistory(boolean keepHistory) {
@@ -232,6 +326,10 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
             reader.delete_readcondition(condition);
             condition = null;
         }
+        synchronized (pendingLock) {
+            pending.clear();
+            pendingByHandle.clear();
+        }
         if (subscriber != null) {
             if (reader != null) {
                 subscriber.delete_datareader(reader);
@@ -263,18 +361,37 @@ public class AbstractFxList<D extends Copyable, R extends DataReader, F extends
     @Override
     protected void doAdd(int index, F element) {
         data.add(index, element);
+        index(element);
     }
 
     @Override
     protected F doSet(int index, F element) {
         F f = data.set(index, element);
+        unindex(f);
+        index(element);
         return f;
     }
 
     @Override
     protected F doRemove(int index) {
         F f = data.remove(index);
+        unindex(f);
         return f;
     }
 
+    private void index(F element) {
+        InstanceHandle_t handle = element.getHandle();
+        if (null != handle && !handle.is_nil()) {
+            rowIndex.put(new InstanceHandle_t(handle), element);
+        }
+    }
+
+    private void unindex(F element) {
+        InstanceHandle_t handle = null == element ? null : element.getHandle();
+        // with history kept several rows share a handle; only the indexed one unindexes it
+        if (null != handle && rowIndex.get(handle) == element) {
+            rowIndex.remove(handle);
+        }
+    }
+
 }
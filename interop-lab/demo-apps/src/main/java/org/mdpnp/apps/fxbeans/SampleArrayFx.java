@@ -100,16 +100,21 @@ public class SampleArrayFx extends AbstractFx<ice.SampleArray> {
     }
     
     
-    private ObjectProperty<Number[]> values;
-    public ObjectProperty<Number[]> valuesProperty() {
+    private static final float[] EMPTY = new float[0];
+
+    private ObjectProperty<float[]> values;
+    public ObjectProperty<float[]> valuesProperty() {
         if(null == values) {
-            values = new SimpleObjectProperty<Number[]>(this, "values", new Number[0]);
+            values = new SimpleObjectProperty<float[]>(this, "values", EMPTY);
         }
         return values;
     }
-    public Number[] getValues() {
+    public float[] getValues() {
         return valuesProperty().get();
     }
+    public void setValues(float[] values) {
+        valuesProperty().set(values);
+    }
     
     private ObjectProperty<Date> device_time;
     public Date getDevice_time() {
@@ -150,11 +155,8 @@ public class SampleArrayFx extends AbstractFx<ice.SampleArray> {
         setInstance_id(v.instance_id);
         setUnit_id(v.unit_id);
         setFrequency(v.frequency);
-        Number[] values = new Number[v.values.userData.size()];
-        for(int i = 0; i < values.length; i++) {
-            values[i] = v.values.userData.getFloat(i);
-        }
-        valuesProperty().set(values);
+        // A fresh array per update; consumers such as the exporters hold on to the previous one
+        setValues(v.values.userData.toArrayFloat(new float[v.values.userData.size()]));
         setDevice_time(new Date(v.device_time.sec * 1000L + v.device_time.nanosec / 1000000L));
         setPresentation_time(new Date(v.presentation_time.sec * 1000L + v.presentation_time.nanosec / 1000000L));
         super.update(v, s);
@@ -91,11 +91,18 @@ public class Configuration {
     private final String               address;
     private final int                  domainId;
     private final String               fhirServerName;
+    private final String               farmSpec;
     private final Properties           cmdLineEnv = new Properties();
 
     public Configuration(boolean headless, Application application, int domainId, 
             DeviceDriverProvider deviceFactory, String address, String fhirServerName) {
+        this(headless, application, domainId, deviceFactory, address, fhirServerName, null);
+    }
+
+    public Configuration(boolean headless, Application application, int domainId,
+            DeviceDriverProvider deviceFactory, String address, String fhirServerName, String farmSpec) {
         this.headless = headless;
+        this.farmSpec = farmSpec;
         this.deviceFactory = deviceFactory;
         this.address = address;
         this.domainId = domainId;
@@ -143,6 +150,13 @@ public class Configuration {
         return address;
     }
 
+    /**
+     * @return the file listing the devices to run together, see {@link DeviceFarm}, or null
+     */
+    public String getFarmSpec() {
+        return farmSpec;
+    }
+
     private static final String APPLICATION           = "application";
     private static final String DOMAIN_ID             = "domainId";
     private static final String DEVICE_TYPE           = "deviceType";
@@ -295,12 +309,20 @@ public class Configuration {
                 .withDescription(ps.toString())
                 .create("address");
 
+        Option farmArg = OptionBuilder.withArgName("farm")
+                .hasArg()
+                .isRequired(false)
+                .withDescription("if Application is " + Application.ICE_Device_Interface.name()
+                        + " a file of 'count device [address]' lines to run many devices headless in this process instead of one")
+                .create("farm");
+
         Options options = new Options();
         options.addOption( appArg );
         options.addOption( domainArg );
         options.addOption( deviceArg );
         options.addOption( addressArg );
         options.addOption( fhirServerNameArg );
+        options.addOption( farmArg );
 
         CommandLine line = parseCommandLine("ICE", cmdLineArgs, options);
         if(line == null)
@@ -311,6 +333,7 @@ public class Configuration {
         DeviceDriverProvider deviceType = null;
         String address = null;
         String fhirServerName = "";
+        String farmSpec = null;
 
         String v = line.getOptionValue("app");
         try {
@@ -321,7 +344,9 @@ public class Configuration {
 
         v = line.getOptionValue("domain");
         domainId = Integer.parseInt(v);
-        if (Application.ICE_Device_Interface.equals(app)) {
+        if (Application.ICE_Device_Interface.equals(app) && line.hasOption("farm")) {
+            farmSpec = line.getOptionValue("farm");
+        } else if (Application.ICE_Device_Interface.equals(app)) {
             if(!line.hasOption("device"))
                 throw new IllegalArgumentException("Missing device specification");
             v = line.getOptionValue("device");
@@ -331,6 +356,8 @@ public class Configuration {
                 if(!line.hasOption("address"))
                     throw new IllegalArgumentException("Missing address specification");
                 address = line.getOptionValue("address");
+            } else if(line.hasOption("address")) {
+                address = line.getOptionValue("address");
             }
         }
         
@@ -342,8 +369,8 @@ public class Configuration {
         // if mdpnp.ui is set to true, force the system to come up in the UI mode regardless of
         // command line having arguments or not. If not set, default to headless==true.
         //
-        boolean headless=!Boolean.getBoolean("mdpnp.ui");
-        return new Configuration(headless, app, domainId, deviceType, address, fhirServerName);
+        boolean headless=!Boolean.getBoolean("mdpnp.ui") || null != farmSpec;
+        return new Configuration(headless, app, domainId, deviceType, address, fhirServerName, farmSpec);
     }
 
     public static Configuration searchAndLoadSettings(File[] fPath) throws IOException {
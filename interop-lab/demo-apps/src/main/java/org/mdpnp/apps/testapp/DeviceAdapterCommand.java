@@ -39,9 +39,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.support.AbstractApplicationContext;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.concurrent.CountDownLatch;
@@ -65,6 +69,10 @@ public class DeviceAdapterCommand implements Configuration.HeadlessCommand, Conf
 //            if(Platform.isFxApplicationThread())
 //                throw new IllegalStateException("Trying to start headless blocking device adapter on UI thread");
 
+        if(null != config.getFarmSpec()) {
+            return executeFarm(config);
+        }
+
         DeviceDriverProvider ddp = config.getDeviceFactory();
         if(null == ddp) {
             log.error("Unknown device type was specified");
@@ -90,6 +98,34 @@ public class DeviceAdapterCommand implements Configuration.HeadlessCommand, Conf
     }
 
 
+    /**
+     * Runs the devices listed in the farm spec in this VM until it is shut down.
+     */
+    private int executeFarm(final Configuration config) throws Exception
+    {
+        List<DeviceFarm.Entry> entries;
+        try (Reader reader = new InputStreamReader(new FileInputStream(config.getFarmSpec()), StandardCharsets.UTF_8)) {
+            entries = DeviceFarm.parse(reader);
+        }
+
+        final AbstractApplicationContext context = config.createContext("DeviceAdapterContext.xml");
+
+        final DeviceFarm farm = new DeviceFarm(context, entries);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                log.info("Stopping device farm from shutdown hook");
+                farm.stop();
+            }
+        }));
+
+        farm.start();
+        farm.run();
+
+        context.destroy();
+
+        return 0;
+    }
+
     @Override
     public IceApplication create(Configuration config) throws Exception {
 
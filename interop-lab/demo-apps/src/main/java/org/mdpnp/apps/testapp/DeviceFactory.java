@@ -12,6 +12,7 @@
  ******************************************************************************/
 package org.mdpnp.apps.testapp;
 
+import org.mdpnp.apps.testapp.export.WaveformArchiveRecording;
 import org.mdpnp.devices.AbstractDevice;
 import org.mdpnp.devices.DeviceDriverProvider;
 import org.mdpnp.devices.DeviceDriverProvider.SpringLoadedDriver;
@@ -40,6 +41,8 @@ import org.mdpnp.devices.simulation.pulseox.InitialEightSecIceSettableAvgSimPuls
 import org.mdpnp.devices.simulation.pulseox.InitialEightSecOperSettableAvgSimPulseOximeter;
 import org.mdpnp.devices.simulation.pulseox.SimPulseOximeter;
 import org.mdpnp.devices.simulation.pump.SimInfusionPump;
+import org.mdpnp.devices.simulation.replay.ReplayDevice;
+import org.mdpnp.devices.simulation.replay.ReplayScheduler;
 import org.mdpnp.devices.simulation.temp.SimThermometer;
 import org.mdpnp.devices.zephyr.biopatch.DemoBioPatch;
 import org.mdpnp.rtiapi.data.EventLoop;
@@ -266,6 +269,22 @@ public class DeviceFactory {
         }
     }
 
+    public static class ReplayProvider extends SpringLoadedDriver {
+
+        @Override
+        public DeviceType getDeviceType(){
+            return new DeviceType(ice.ConnectionType.Simulated, "ICE", "Recorded Session Replay", "Replay", 1);
+        }
+
+        @Override
+        public AbstractDevice newInstance(AbstractApplicationContext context) throws Exception {
+            EventLoop eventLoop = context.getBean("eventLoop", EventLoop.class);
+            Subscriber subscriber = context.getBean("subscriber", Subscriber.class);
+            Publisher publisher = context.getBean("publisher", Publisher.class);
+            return new ReplayDevice(subscriber, publisher, eventLoop, ReplayScheduler.getShared(), WaveformArchiveRecording::open);
+        }
+    }
+
     public static class CO2_SimulatorProvider extends SpringLoadedDriver {
 
         @Override
@@ -0,0 +1,251 @@
+package org.mdpnp.apps.testapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mdpnp.devices.AbstractDevice;
+import org.mdpnp.devices.DeviceDriverProvider;
+import org.mdpnp.devices.connected.AbstractConnectedDevice;
+import org.mdpnp.devices.simulation.AbstractSimulatedConnectedDevice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.AbstractApplicationContext;
+
+/**
+ * Runs many device adapters in one process for load testing. The devices are created straight
+ * from their DeviceDriverProvider with the participant, publisher, subscriber and event loop of
+ * the enclosing context instead of a driver context each, and all of them are scheduled on one
+ * small timer pool. Every device has its own random UDI, and simulators are given distinct
+ * phases so that their waveforms and publication times are spread out.
+ * <p>
+ * The spec file has one line per kind of device
+ * <pre>
+ *   # count alias [address]
+ *   200 Multiparameter
+ *   50  ECG_Simulator
+ *   10  Replay /data/bed12.csv,4
+ * </pre>
+ * Startup time and heap per device are logged once all devices are connected, then the
+ * numerics and waveform samples written per second periodically.
+ */
+public class DeviceFarm implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceFarm.class);
+
+    private static final String PROPERTY_PREFIX = DeviceFarm.class.getName() + ".";
+
+    /**
+     * Threads of the timer shared by all devices
+     */
+    public static final int THREADS = Integer.getInteger(PROPERTY_PREFIX + "threads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * ms between throughput reports in the log
+     */
+    public static final long REPORT_INTERVAL = Long.getLong(PROPERTY_PREFIX + "reportInterval", 10000L);
+
+    // successive multiples of the golden ratio fill [0,1) evenly for any number of devices
+    private static final double PHASE_STEP = 0.6180339887498949;
+
+    public static final class Entry {
+        private final int count;
+        private final String alias;
+        private final String address;
+
+        public Entry(int count, String alias, String address) {
+            this.count = count;
+            this.alias = alias;
+            this.address = address;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        @Override
+        public String toString() {
+            return count + " " + alias + (null == address ? "" : " " + address);
+        }
+    }
+
+    /**
+     * Reads a spec of "count alias [address]" lines; blank lines and lines starting with # are
+     * ignored.
+     */
+    public static List<Entry> parse(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while (null != (line = br.readLine())) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 3);
+            if (fields.length < 2) {
+                throw new IllegalArgumentException("line " + lineNumber + ": expected count alias [address]");
+            }
+            int count;
+            try {
+                count = Integer.parseInt(fields[0]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": bad count " + fields[0]);
+            }
+            if (count < 1) {
+                throw new IllegalArgumentException("line " + lineNumber + ": count must be positive");
+            }
+            entries.add(new Entry(count, fields[1], fields.length > 2 ? fields[2] : null));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the phase of the n-th device in [0,1)
+     */
+    static double phase(int n) {
+        double p = n * PHASE_STEP;
+        return p - Math.floor(p);
+    }
+
+    private final AbstractApplicationContext context;
+    private final List<Entry> entries;
+    private final List<AbstractDevice> devices = Collections.synchronizedList(new ArrayList<AbstractDevice>());
+    private final CountDownLatch stopOk = new CountDownLatch(1);
+    private ScheduledExecutorService timer;
+
+    private long lastReportNanos;
+    private long lastWritten;
+
+    /**
+     * @param context supplies the shared eventLoop, publisher and subscriber beans
+     */
+    public DeviceFarm(AbstractApplicationContext context, List<Entry> entries) {
+        this.context = context;
+        this.entries = entries;
+    }
+
+    public List<AbstractDevice> getDevices() {
+        synchronized (devices) {
+            return new ArrayList<AbstractDevice>(devices);
+        }
+    }
+
+    /**
+     * Creates and connects every device in the spec.
+     */
+    public void start() throws Exception {
+        timer = Executors.newScheduledThreadPool(THREADS, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Device Farm " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        final long heapBefore = usedHeap();
+        final long start = System.nanoTime();
+        int n = 0;
+        for (Entry entry : entries) {
+            DeviceDriverProvider ddp = DeviceFactory.getDeviceDriverProvider(entry.getAlias());
+            for (int i = 0; i < entry.getCount(); i++, n++) {
+                AbstractDevice device = ddp.newInstance(context);
+                device.setExecutor(timer);
+                if (device instanceof AbstractSimulatedConnectedDevice) {
+                    ((AbstractSimulatedConnectedDevice) device).setPhase(phase(n));
+                }
+                device.init();
+                devices.add(device);
+                if (device instanceof AbstractConnectedDevice && !((AbstractConnectedDevice) device).connect(entry.getAddress())) {
+                    log.warn("Unable to connect " + entry.getAlias() + " " + device.getUniqueDeviceIdentifier());
+                }
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long heapAfter = usedHeap();
+        log.info(String.format("Started %d devices in %dms (%.2fms per device), heap %dKB per device", n, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                0 == n ? 0.0 : elapsed / 1e6 / n, 0 == n ? 0L : (heapAfter - heapBefore) / n / 1024L));
+
+        lastReportNanos = System.nanoTime();
+        lastWritten = written();
+        timer.scheduleAtFixedRate(this::report, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private long written() {
+        long written = 0L;
+        for (AbstractDevice d : getDevices()) {
+            written += d.getNumericsWritten() + d.getSamplesWritten();
+        }
+        return written;
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long written = written();
+        double seconds = (now - lastReportNanos) / 1e9;
+        log.info(String.format("%d devices wrote %.0f samples/s", devices.size(), (written - lastWritten) / seconds));
+        lastReportNanos = now;
+        lastWritten = written;
+    }
+
+    /**
+     * Blocks until {@link #stop()} is called from another thread or a shutdown hook.
+     */
+    @Override
+    public void run() {
+        try {
+            stopOk.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        try {
+            for (AbstractDevice device : getDevices()) {
+                try {
+                    if (device instanceof AbstractConnectedDevice) {
+                        ((AbstractConnectedDevice) device).disconnect();
+                    }
+                    device.shutdown();
+                } catch (RuntimeException e) {
+                    log.error("Failed to stop " + device.getUniqueDeviceIdentifier(), e);
+                }
+            }
+            devices.clear();
+            if (null != timer) {
+                timer.shutdownNow();
+            }
+        } finally {
+            stopOk.countDown();
+        }
+    }
+}
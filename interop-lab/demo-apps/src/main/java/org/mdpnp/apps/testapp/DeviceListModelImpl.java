@@ -19,6 +19,7 @@ import ice.DeviceIdentityDataReader;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javafx.application.Platform;
 import javafx.beans.Observable;
@@ -122,23 +123,81 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
 
     }
     
+    private static final String PROPERTY_PREFIX = DeviceListModelImpl.class.getName() + ".";
+
+    /**
+     * Least ms between batches of synchronization results applied to the devices
+     */
+    public static final long SYNCHRONIZATION_REFRESH = Long.getLong(PROPERTY_PREFIX + "synchronizationRefresh", 1000L);
+
+    // Latest results by device, handed to the platform thread in one batch; guarded by synchronizationLock
+    private final Object synchronizationLock = new Object();
+    private Map<String, SynchronizationData> latestSynchronization = new HashMap<>();
+    private long lastSynchronizationBatch;
+    private boolean synchronizationBatchScheduled;
+
+    /**
+     * Results are kept until the refresh interval has passed since the last batch, then all
+     * of them are applied in one runnable. A result held back is applied when the interval
+     * ends even if no other result follows, since results arrive only when an estimate
+     * changes.
+     */
     @Override
     public void synchronization(String remote_udi, Duration_t latency, Duration_t clockDifference) {
         final long clockDifferenceMs = 1000L * clockDifference.sec + clockDifference.nanosec / 1000000L;
         final long roundtripLatencyMs = 1000L * latency.sec + latency.nanosec / 1000000L;
-        runLaterOnPlatform(new Runnable() {
-            public void run() {
-                Device device = findDevice(remote_udi);
+        final long now = currentTimeMillis();
+        final long wait;
+        synchronized(synchronizationLock) {
+            latestSynchronization.put(remote_udi, new SynchronizationData(clockDifferenceMs, roundtripLatencyMs));
+            if(synchronizationBatchScheduled) {
+                return;
+            }
+            synchronizationBatchScheduled = true;
+            wait = lastSynchronizationBatch + SYNCHRONIZATION_REFRESH - now;
+            if(wait <= 0L) {
+                lastSynchronizationBatch = now;
+            }
+        }
+        if(wait > 0L) {
+            runLater(trailingSynchronization, wait);
+        } else {
+            runLaterOnPlatform(applySynchronization);
+        }
+    }
+
+    // Hands over the results held back during the refresh interval once it ends
+    private final Runnable trailingSynchronization = new Runnable() {
+        public void run() {
+            synchronized(synchronizationLock) {
+                lastSynchronizationBatch = currentTimeMillis();
+            }
+            runLaterOnPlatform(applySynchronization);
+        }
+    };
+
+    private final Runnable applySynchronization = new Runnable() {
+        private Map<String, SynchronizationData> batch = new HashMap<>();
+
+        public void run() {
+            synchronized(synchronizationLock) {
+                Map<String, SynchronizationData> swap = batch;
+                batch = latestSynchronization;
+                latestSynchronization = swap;
+                synchronizationBatchScheduled = false;
+            }
+            for(Map.Entry<String, SynchronizationData> e : batch.entrySet()) {
+                Device device = findDevice(e.getKey());
                 if(null != device) {
-                    device.setClockDifference(clockDifferenceMs);
-                    device.setRoundtripLatency(roundtripLatencyMs);
+                    device.setClockDifference(e.getValue().clockDifference);
+                    device.setRoundtripLatency(e.getValue().roundtripLatency);
                 }
                 else
-                    pendingSynchronization.put(remote_udi, new SynchronizationData(clockDifferenceMs, roundtripLatencyMs));
+                    pendingSynchronization.put(e.getKey(), e.getValue());
             }
-        });
-
-    }
+            batch.clear();
+        }
+    };
 
     private static class SynchronizationData {
         final long clockDifference;
@@ -283,6 +342,14 @@ public class DeviceListModelImpl implements TimeManagerListener, DeviceListModel
         Platform.runLater(r);
     }
 
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    protected void runLater(Runnable r, long delayMs) {
+        timeManager.getExecutor().schedule(r, delayMs, TimeUnit.MILLISECONDS);
+    }
+
     private static final Logger log = LoggerFactory.getLogger(DeviceListModelImpl.class);
 
 
@@ -0,0 +1,232 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-rolling text file written through a direct buffer into a FileChannel.
+ *
+ * Rolling follows the log4j RollingFileAppender convention this replaces: once a record
+ * takes the file past <code>maxFileSize</code> the file is renamed to
+ * <code>file.1</code>, earlier backups shift up to <code>file.maxBackupIndex</code> and the
+ * oldest is deleted. Buffered records are written when the buffer fills, on {@link #close()}
+ * and at least every <code>flushIntervalMs</code>, by a shared timer when no further
+ * records arrive.
+ */
+public class CSVFileSink {
+
+    public enum Fsync {
+        /** leave it to the operating system */
+        Never,
+        /** force the file to disk before it is rolled or closed */
+        OnRoll,
+        /** force the file to disk every time the buffer is written */
+        OnFlush
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CSVFileSink.class);
+
+    private static final String PROPERTY_PREFIX = CSVFileSink.class.getName() + ".";
+
+    public static final int DEFAULT_BUFFER_SIZE = Integer.getInteger(PROPERTY_PREFIX + "bufferSize", 64 * 1024);
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = Long.getLong(PROPERTY_PREFIX + "flushIntervalMs", 1000L);
+    public static final Fsync DEFAULT_FSYNC = Fsync.valueOf(System.getProperty(PROPERTY_PREFIX + "fsync", Fsync.OnRoll.name()));
+
+    private final File file;
+    private final long maxFileSize;
+    private final int maxBackupIndex;
+    private final Fsync fsync;
+    private final long flushIntervalMs;
+    private final ByteBuffer buffer;
+
+    private FileChannel channel;
+    private long size;
+    private long lastFlush;
+    private ScheduledFuture<?> flushTask;
+
+    // One thread flushes idle buffers for every open sink
+    private static final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "CSVFileSink flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CSVFileSink(File file, long maxFileSize, int maxBackupIndex) {
+        this(file, maxFileSize, maxBackupIndex, DEFAULT_FSYNC, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CSVFileSink(File file, long maxFileSize, int maxBackupIndex, Fsync fsync, long flushIntervalMs, int bufferSize) {
+        if (maxFileSize < 1 || maxBackupIndex < 0 || bufferSize < 16) {
+            throw new IllegalArgumentException("maxFileSize=" + maxFileSize + " maxBackupIndex=" + maxBackupIndex + " bufferSize=" + bufferSize);
+        }
+        this.file = file.getAbsoluteFile();
+        this.maxFileSize = maxFileSize;
+        this.maxBackupIndex = maxBackupIndex;
+        this.fsync = null == fsync ? Fsync.OnRoll : fsync;
+        this.flushIntervalMs = flushIntervalMs;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Opens the file for appending; an existing non-empty file is rolled first so that each
+     * session starts a new file.
+     */
+    public synchronized void open() throws IOException {
+        if (null != channel) {
+            return;
+        }
+        if (file.exists() && file.length() != 0) {
+            rollFiles();
+        }
+        openChannel();
+        lastFlush = System.currentTimeMillis();
+        if (flushIntervalMs > 0L) {
+            flushTask = flushTimer.scheduleWithFixedDelay(this::flushIfDue, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    /**
+     * Appends the characters of one record followed by a line separator.
+     */
+    public synchronized void writeLine(char[] chars, int length) throws IOException {
+        if (null == channel) {
+            throw new IOException("Not open " + file);
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            char c = chars[i];
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint(c, chars[++i]);
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) '\n');
+        if (size + buffer.position() > maxFileSize) {
+            roll();
+        } else if (System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+            flush();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            size += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public synchronized void flush() throws IOException {
+        if (null == channel) {
+            return;
+        }
+        drain();
+        if (Fsync.OnFlush.equals(fsync)) {
+            channel.force(false);
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private synchronized void flushIfDue() {
+        if (null != channel && buffer.position() > 0 && System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+            try {
+                flush();
+            } catch (IOException e) {
+                log.error("Unable to flush " + file, e);
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        drain();
+        closeChannel();
+        rollFiles();
+        // the task scheduled by open() goes on to flush the new channel
+        openChannel();
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private void closeChannel() throws IOException {
+        try {
+            if (!Fsync.Never.equals(fsync)) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rollFiles() {
+        if (maxBackupIndex > 0) {
+            File oldest = new File(file.getPath() + "." + maxBackupIndex);
+            if (oldest.exists() && !oldest.delete()) {
+                log.warn("Unable to delete " + oldest);
+            }
+            for (int i = maxBackupIndex - 1; i >= 1; i--) {
+                File f = new File(file.getPath() + "." + i);
+                if (f.exists() && !f.renameTo(new File(file.getPath() + "." + (i + 1)))) {
+                    log.warn("Unable to rename " + f);
+                }
+            }
+            if (!file.renameTo(new File(file.getPath() + ".1"))) {
+                log.warn("Unable to rename " + file);
+            }
+        } else if (file.exists() && !file.delete()) {
+            log.warn("Unable to delete " + file);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (null != flushTask) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (null == channel) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            closeChannel();
+        }
+    }
+}
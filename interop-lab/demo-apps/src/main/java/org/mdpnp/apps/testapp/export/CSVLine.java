@@ -0,0 +1,257 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Reusable character buffer for building one CSV record at a time without allocating.
+ *
+ * The number and time formatters reproduce the output of the <code>java.text</code>
+ * formats CSVPersister historically used: <code>0.000E0</code> for waveform samples,
+ * 2 to 4 fraction digits without grouping for numerics and <code>yyyyMMddHHmmssZ</code>
+ * for time stamps. Values that the hand-written paths cannot reproduce exactly (rounding
+ * ties, very large magnitudes, NaN and infinities) are handed to the equivalent
+ * <code>java.text</code> format. Instances are not thread safe; keep one per thread.
+ */
+final class CSVLine implements CharSequence {
+
+    private static final double TIE_EPSILON = 1e-6;
+    private static final double MAX_FIXED = 1e14;
+
+    private char[] chars = new char[256];
+    private int length;
+
+    // Time stamps are formatted by caching the "yyyyMMddHHmm" prefix and zone of the current minute
+    private final Calendar calendar = Calendar.getInstance();
+    private long minuteStart = Long.MIN_VALUE;
+    private final char[] minutePrefix = new char[12];
+    private final char[] zone = new char[5];
+
+    private DecimalFormat scientificFallback;
+    private NumberFormat valueFallback;
+
+    public CSVLine reset() {
+        length = 0;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    char[] buffer() {
+        return chars;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensure(int additional) {
+        if (length + additional > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length << 1, length + additional));
+        }
+    }
+
+    public CSVLine append(char c) {
+        ensure(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public CSVLine append(String s) {
+        if (null == s) {
+            s = "null";
+        }
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    public CSVLine append(long v) {
+        if (v == Long.MIN_VALUE) {
+            return append(Long.toString(v));
+        }
+        if (v < 0) {
+            append('-');
+            v = -v;
+        }
+        ensure(19);
+        int start = length;
+        do {
+            chars[length++] = (char) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        reverse(start, length - 1);
+        return this;
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            char c = chars[from];
+            chars[from++] = chars[to];
+            chars[to--] = c;
+        }
+    }
+
+    private void appendDigits(long v, int width) {
+        ensure(width);
+        for (int i = length + width - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + (v % 10));
+            v /= 10;
+        }
+        length += width;
+    }
+
+    /**
+     * Same output as a NumberFormat with 2 to 4 fraction digits, HALF_EVEN rounding and no grouping.
+     */
+    public CSVLine appendValue(double v) {
+        double abs = Math.abs(v);
+        if (!(abs < MAX_FIXED)) {
+            return appendValueFallback(v);
+        }
+        double scaled = abs * 10000.0;
+        double frac = scaled - Math.floor(scaled);
+        if (Math.abs(frac - 0.5) < TIE_EPSILON) {
+            return appendValueFallback(v);
+        }
+        long units = (long) Math.rint(scaled);
+        if (v < 0 || (v == 0.0 && 1.0 / v < 0)) {
+            append('-');
+        }
+        append(units / 10000);
+        append('.');
+        int fraction = (int) (units % 10000);
+        int digits = 4;
+        while (digits > 2 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        appendDigits(fraction, digits);
+        return this;
+    }
+
+    private CSVLine appendValueFallback(double v) {
+        if (null == valueFallback) {
+            valueFallback = NumberFormat.getNumberInstance(Locale.US);
+            valueFallback.setMaximumFractionDigits(4);
+            valueFallback.setMinimumFractionDigits(2);
+            valueFallback.setGroupingUsed(false);
+            valueFallback.setRoundingMode(RoundingMode.HALF_EVEN);
+        }
+        return append(valueFallback.format(v));
+    }
+
+    /**
+     * Same output as <code>new DecimalFormat("0.000E0")</code>.
+     */
+    public CSVLine appendScientific(float f) {
+        double v = f;
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            return appendScientificFallback(v);
+        }
+        boolean negative = v < 0 || (v == 0.0 && 1.0 / v < 0);
+        v = Math.abs(v);
+        if (v == 0.0) {
+            return append(negative ? "-0.000E0" : "0.000E0");
+        }
+        int exponent = (int) Math.floor(Math.log10(v));
+        double scaled = v * Math.pow(10, 3 - exponent);
+        // log10 may land one off either side of a power of ten
+        if (scaled < 1000.0) {
+            exponent--;
+            scaled = v * Math.pow(10, 3 - exponent);
+        } else if (scaled >= 10000.0) {
+            exponent++;
+            scaled = v * Math.pow(10, 3 - exponent);
+        }
+        double frac = scaled - Math.floor(scaled);
+        if (Math.abs(frac - 0.5) < TIE_EPSILON) {
+            return appendScientificFallback(f);
+        }
+        long mantissa = (long) Math.rint(scaled);
+        if (mantissa >= 10000L) {
+            mantissa /= 10;
+            exponent++;
+        }
+        if (negative) {
+            append('-');
+        }
+        ensure(6);
+        chars[length++] = (char) ('0' + mantissa / 1000);
+        chars[length++] = '.';
+        appendDigits(mantissa % 1000, 3);
+        append('E');
+        return append(exponent);
+    }
+
+    private CSVLine appendScientificFallback(double v) {
+        if (null == scientificFallback) {
+            scientificFallback = new DecimalFormat("0.000E0", DecimalFormatSymbols.getInstance(Locale.US));
+        }
+        return append(scientificFallback.format(v));
+    }
+
+    /**
+     * Same output as <code>new SimpleDateFormat("yyyyMMddHHmmssZ")</code> in the default time zone.
+     */
+    public CSVLine appendTimestamp(long ms) {
+        long minute = Math.floorDiv(ms, 60000L) * 60000L;
+        if (minute != minuteStart) {
+            calendar.setTimeInMillis(minute);
+            int y = calendar.get(Calendar.YEAR);
+            int mo = calendar.get(Calendar.MONTH) + 1;
+            int d = calendar.get(Calendar.DAY_OF_MONTH);
+            int h = calendar.get(Calendar.HOUR_OF_DAY);
+            int mi = calendar.get(Calendar.MINUTE);
+            int offset = (calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET)) / 60000;
+            fill(minutePrefix, 0, y, 4);
+            fill(minutePrefix, 4, mo, 2);
+            fill(minutePrefix, 6, d, 2);
+            fill(minutePrefix, 8, h, 2);
+            fill(minutePrefix, 10, mi, 2);
+            zone[0] = offset < 0 ? '-' : '+';
+            offset = Math.abs(offset);
+            fill(zone, 1, offset / 60, 2);
+            fill(zone, 3, offset % 60, 2);
+            minuteStart = minute;
+        }
+        ensure(minutePrefix.length + 2 + zone.length);
+        System.arraycopy(minutePrefix, 0, chars, length, minutePrefix.length);
+        length += minutePrefix.length;
+        appendDigits((ms - minuteStart) / 1000L, 2);
+        System.arraycopy(zone, 0, chars, length, zone.length);
+        length += zone.length;
+        return this;
+    }
+
+    private static void fill(char[] dst, int offset, int v, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            dst[i] = (char) ('0' + (v % 10));
+            v /= 10;
+        }
+    }
+}
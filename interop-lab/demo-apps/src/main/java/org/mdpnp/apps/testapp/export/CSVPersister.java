@@ -2,11 +2,8 @@ package org.mdpnp.apps.testapp.export;
 
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.ResourceBundle;
 
 import com.google.common.eventbus.Subscribe;
@@ -17,14 +14,17 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.stage.FileChooser;
 
-import org.apache.log4j.Level;
-
+/**
+ * Exports collected data as CSV records through a {@link CSVFileSink}. Records are built
+ * in a reusable per-thread {@link CSVLine} so that exporting every waveform of a unit does
+ * not allocate per line or per sample.
+ */
 public class CSVPersister extends DataCollectorAppFactory.PersisterUIController implements Initializable {
 
-    static ThreadLocal<SimpleDateFormat> dateFormats = new ThreadLocal<SimpleDateFormat>()
+    static ThreadLocal<CSVLine> lines = new ThreadLocal<CSVLine>()
     {
-        protected SimpleDateFormat initialValue() {
-            return new SimpleDateFormat("yyyyMMddHHmmssZ");
+        protected CSVLine initialValue() {
+            return new CSVLine();
         }
     };
     
@@ -45,100 +45,88 @@ public class CSVPersister extends DataCollectorAppFactory.PersisterUIController
     }
 
     @Override
-    public boolean start() throws Exception {
-        appender.activateOptions();
-        final File f = new File(appender.getFile());
-        if(f.exists() && f.length() != 0)
-            appender.rollOver();
+    public synchronized boolean start() throws Exception {
+        sink.open();
+        started = true;
         return true;
     }
 
     @Override
-    public void stop() throws Exception {
-        final File f = new File(appender.getFile());
+    public synchronized void stop() throws Exception {
+        started = false;
+        sink.close();
+        final File f = sink.getFile();
         // test for canWrite just to be safe in case delete fails for whatever reason
         if(f.exists() && f.length()==0 && f.canWrite())
             f.delete();
     }
-    
-    private static NumberFormat valueFormat = NumberFormat.getNumberInstance();
-    static {
-        valueFormat.setMaximumFractionDigits(4);
-        valueFormat.setMinimumFractionDigits(2);
-        //Issue 14 - disable grouping to prevent additional , characters appearing in outputs.
-        valueFormat.setGroupingUsed(false);
-    }
-
-    // scientific notation, three decimal places, one exponent digit
-    private static DecimalFormat scientificFormat = new DecimalFormat("0.000E0");
 
-    static String toCSVLine(PatientAssessmentDataCollector.PatientAssessmentEvent value) {
-        StringBuilder sb = new StringBuilder();
-
-        long ms = value.getDevTime();
-        String devTime = rawDateFormat ? Long.toString(ms) : dateFormats.get().format(new Date(ms));
-        String mrn = value.getPatientId();
+    private static CSVLine appendTime(CSVLine line, long ms) {
+        return rawDateFormat ? line.append(ms) : line.appendTimestamp(ms);
+    }
 
-        sb.append(3).append(",").append(value.getUniqueDeviceIdentifier()).append(",")
-                .append(devTime).append(",").append(mrn).append(",").append(1).append(",")
-                .append(value.getValue().getKey()).append(",")
+    static CSVLine toCSVLine(CSVLine line, PatientAssessmentDataCollector.PatientAssessmentEvent value) {
+        line.append('3').append(',').append(value.getUniqueDeviceIdentifier()).append(',');
+        appendTime(line, value.getDevTime()).append(',').append(value.getPatientId()).append(',').append('1').append(',')
+                .append(value.getValue().getKey()).append(',')
                 .append(value.getValue().getValue());
-
-        return sb.toString();
+        return line;
     }
 
-    static String toCSVLine(SampleArrayDataCollector.SampleArrayEvent value) {
-        StringBuilder sb = new StringBuilder();
-
-        long ms = value.getDevTime();
-        String devTime = rawDateFormat ? Long.toString(ms) : dateFormats.get().format(new Date(ms));
-        Number v[] = value.getValues();
-        String mrn = value.getPatientId();
+    static CSVLine toCSVLine(CSVLine line, SampleArrayDataCollector.SampleArrayEvent value) {
+        float v[] = value.getValues();
 
-        sb.append(2).append(",").append(value.getUniqueDeviceIdentifier()).append(",")
-                .append(value.getMetricId()).append(",")
-                .append(value.getInstanceId()).append(",")
-                .append(devTime).append(",").append(mrn).append(",").append(v.length);
+        line.append('2').append(',').append(value.getUniqueDeviceIdentifier()).append(',')
+                .append(value.getMetricId()).append(',')
+                .append(value.getInstanceId()).append(',');
+        appendTime(line, value.getDevTime()).append(',').append(value.getPatientId()).append(',').append(v.length);
 
-        for(Number n : v) {
-            sb.append(",").append(scientificFormat.format(n.doubleValue()));
+        // scientific notation, three decimal places, one exponent digit
+        for(int i = 0; i < v.length; i++) {
+            line.append(',').appendScientific(v[i]);
         }
+        return line;
+    }
 
-        return sb.toString();
+    static CSVLine toCSVLine(CSVLine line, NumericsDataCollector.NumericSampleEvent value) {
+        line.append('1').append(',').append(value.getUniqueDeviceIdentifier()).append(',')
+            .append(value.getMetricId()).append(',')
+            .append(value.getInstanceId()).append(',');
+        //Issue 14 - no grouping to prevent additional , characters appearing in outputs.
+        appendTime(line, value.getDevTime()).append(',').append(value.getPatientId()).append(',').append('1').append(',')
+            .appendValue(value.getValue());
+        return line;
     }
 
-    static String toCSVLine(NumericsDataCollector.NumericSampleEvent value) {
-        StringBuilder sb = new StringBuilder();
+    static String toCSVLine(PatientAssessmentDataCollector.PatientAssessmentEvent value) {
+        return toCSVLine(lines.get().reset(), value).toString();
+    }
 
-        long ms = value.getDevTime();
-        String devTime = rawDateFormat ? Long.toString(ms) : dateFormats.get().format(new Date(ms));
-        String mrn = value.getPatientId();
+    static String toCSVLine(SampleArrayDataCollector.SampleArrayEvent value) {
+        return toCSVLine(lines.get().reset(), value).toString();
+    }
 
-        sb.append(1).append(",").append(value.getUniqueDeviceIdentifier()).append(",")
-            .append(value.getMetricId()).append(",")
-            .append(value.getInstanceId()).append(",")
-            .append(devTime).append(",").append(mrn).append(",").append(1).append(",")
-            .append(valueFormat.format(value.getValue()));
+    static String toCSVLine(NumericsDataCollector.NumericSampleEvent value) {
+        return toCSVLine(lines.get().reset(), value).toString();
+    }
 
-        return sb.toString();
+    private synchronized void write(CSVLine line) throws IOException {
+        sink.writeLine(line.buffer(), line.length());
     }
 
     @Subscribe
     public void handleDataSampleEvent(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
-        String s = toCSVLine(evt);
-        cat.info(s);
+        write(toCSVLine(lines.get().reset(), evt));
     }
 
     @Subscribe
     public void handleDataSampleEvent(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
-        String s = toCSVLine(evt);
-        cat.info(s);
+        write(toCSVLine(lines.get().reset(), evt));
     }
 
     @Subscribe
     public void handleDataSampleEvent(PatientAssessmentDataCollector.PatientAssessmentEvent evt) throws Exception {
-        String s = toCSVLine(evt);
-        cat.info(s);
+        write(toCSVLine(lines.get().reset(), evt));
     }
 
     public CSVPersister() {
@@ -147,17 +135,17 @@ public class CSVPersister extends DataCollectorAppFactory.PersisterUIController
     
     @FXML public void clickBackupIndex(ActionEvent evt) {
         String s = backupIndex.getSelectionModel().getSelectedItem();
-        if(appender != null) {
-            appender.setMaxBackupIndex(Integer.parseInt(s));
-            appender.activateOptions();
+        if(sink != null) {
+            maxBackupIndex = Integer.parseInt(s);
+            reconfigure();
         }
     }
     
     @FXML public void clickFSize(ActionEvent evt) {
         String s = fSize.getSelectionModel().getSelectedItem();
-        if(appender != null) {
-            appender.setMaxFileSize(s);
-            appender.activateOptions();
+        if(sink != null) {
+            maxFileSize = toFileSize(s);
+            reconfigure();
         }
     }
     
@@ -169,10 +157,47 @@ public class CSVPersister extends DataCollectorAppFactory.PersisterUIController
         File f = fc.showSaveDialog(null);
         if(null != f) {
             filePathLabel.setText(f.getAbsolutePath());
-            appender.setFile(f.getAbsolutePath());
-            appender.activateOptions();
+            file = f.getAbsoluteFile();
+            reconfigure();
         }
     }
+
+    /**
+     * Replaces the sink with one reflecting the current settings, reopening it if
+     * export is under way.
+     */
+    private synchronized void reconfigure() {
+        try {
+            if(started) {
+                sink.close();
+            }
+            sink = new CSVFileSink(file, maxFileSize, maxBackupIndex);
+            if(started) {
+                sink.open();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to reopen " + file, e);
+        }
+    }
+
+    /**
+     * Parses sizes such as "5MB" as log4j did for the appender this replaces.
+     */
+    static long toFileSize(String value) {
+        String s = value.trim().toUpperCase();
+        long multiplier = 1L;
+        if(s.endsWith("KB")) {
+            multiplier = 1024L;
+        } else if(s.endsWith("MB")) {
+            multiplier = 1024L * 1024L;
+        } else if(s.endsWith("GB")) {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if(multiplier > 1L) {
+            s = s.substring(0, s.length() - 2).trim();
+        }
+        return Long.parseLong(s) * multiplier;
+    }
     
     private File defaultLogFileName = new File("openicedataexport.csv");
 
@@ -227,19 +252,15 @@ public class CSVPersister extends DataCollectorAppFactory.PersisterUIController
 
 
         // add file size controls.
-        appender = new org.apache.log4j.RollingFileAppender();
-        appender.setFile(defaultLogFileName.getAbsolutePath());
-        appender.setMaxBackupIndex(maxBackupIndex);
-        appender.setMaxFileSize(maxFileSize);
-        appender.setAppend(true);
-        appender.setLayout(new org.apache.log4j.PatternLayout("%m%n"));
-        appender.setThreshold(Level.ALL);
-        cat.setAdditivity(false);
-        cat.setLevel(Level.ALL);
-        cat.addAppender(appender);
-
+        file = defaultLogFileName.getAbsoluteFile();
+        this.maxBackupIndex = maxBackupIndex;
+        this.maxFileSize = toFileSize(maxFileSize);
+        sink = new CSVFileSink(file, this.maxFileSize, this.maxBackupIndex);
     }
 
-    private org.apache.log4j.RollingFileAppender appender = null;
-    private org.apache.log4j.Category cat = org.apache.log4j.Logger.getLogger("OpenICEDataExport.CVS");
+    private File file;
+    private int maxBackupIndex;
+    private long maxFileSize;
+    private boolean started;
+    private CSVFileSink sink = null;
 }
@@ -53,6 +53,7 @@ public class DataCollectorAppFactory implements IceApplicationProvider {
                 CSVPersister.class.getResource("CSVPersister.fxml"),
                 JdbcPersister.class.getResource("JdbcPersister.fxml"),
                 VerilogVCDPersister.class.getResource("VerilogVCDPersister.fxml"),
+                WaveformArchivePersister.class.getResource("WaveformArchivePersister.fxml"),
                 MongoPersister.class.getResource("MongoPersister.fxml")
         };
 
@@ -4,6 +4,13 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.eventbus.Subscribe;
 import javafx.fxml.FXML;
@@ -12,18 +19,81 @@ import javafx.scene.control.TextField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Exports collected data to a JDBC database.
+ *
+ * Events are queued by the EventBus dispatch thread and written on a dedicated writer
+ * thread with JDBC batches; a transaction is committed every <code>batchSize</code> rows
+ * or <code>commitIntervalMs</code> milliseconds, whichever comes first. Waveforms are either
+ * expanded into one VITAL_VALUES row per sample (<code>Rows</code>, the historical layout) or
+ * stored as one WAVEFORM_VALUES row per SampleArrayEvent with the samples in an ARRAY column
+ * (<code>Array</code>); the WAVEFORM_SAMPLES view presents the latter one sample per row.
+ *
+ * Defaults may be overridden with the system properties
+ * <code>org.mdpnp.apps.testapp.export.JdbcPersister.batchSize</code>,
+ * <code>.commitIntervalMs</code>, <code>.capacity</code> and <code>.waveformStorage</code>.
+ */
 public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController {
 
     private static final Logger log = LoggerFactory.getLogger(JdbcPersister.class);
 
+    public enum WaveformStorage {
+        /** one VITAL_VALUES row per sample */
+        Rows,
+        /** one WAVEFORM_VALUES row per SampleArrayEvent */
+        Array
+    }
+
+    private static final String PROPERTY_PREFIX = JdbcPersister.class.getName() + ".";
+
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger(PROPERTY_PREFIX + "batchSize", 1000);
+    public static final long DEFAULT_COMMIT_INTERVAL_MS = Long.getLong(PROPERTY_PREFIX + "commitIntervalMs", 1000L);
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(PROPERTY_PREFIX + "capacity", 4096);
+    public static final WaveformStorage DEFAULT_WAVEFORM_STORAGE = WaveformStorage.valueOf(System.getProperty(PROPERTY_PREFIX + "waveformStorage", WaveformStorage.Rows.name()));
+
+    /**
+     * A unit of work for the writer thread. Exactly one of the value fields is meaningful
+     * depending upon the kind of event; a flush marker carries only the latch.
+     */
+    private static final class Pending {
+        final DataCollector.DataSampleEvent event;
+        final long ms;
+        final double value;
+        final String observation;
+        final float[] samples;
+        final CountDownLatch flushed;
+
+        Pending(DataCollector.DataSampleEvent event, long ms, double value, String observation, float[] samples, CountDownLatch flushed) {
+            this.event = event;
+            this.ms = ms;
+            this.value = value;
+            this.observation = observation;
+            this.samples = samples;
+            this.flushed = flushed;
+        }
+    }
+
+    private final int batchSize;
+    private final long commitIntervalMs;
+    private final WaveformStorage waveformStorage;
+    private final BlockingQueue<Pending> queue;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong eventsDropped = new AtomicLong();
+
     private Connection conn = null;
     private PreparedStatement insertVital = null;
     private PreparedStatement insertObservation = null;
+    private PreparedStatement insertWaveform = null;
+    private int uncommittedRows;
+
+    private volatile boolean running;
+    private volatile Thread writer;
 
     @FXML TextField fDriver, fURL, fUser;
     @FXML PasswordField fPassword;
 
-    void persistVital(DataCollector.DataSampleEvent value, long ms, double v) throws Exception {
+    void persistVital(DataCollector.DataSampleEvent value, long ms, double v) throws SQLException {
 
         if(insertVital != null) {
             insertVital.setString   (1, value.getUniqueDeviceIdentifier());
@@ -33,13 +103,12 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
             insertVital.setString   (5, value.getPatientId());
             insertVital.setDouble   (6, v);
 
-            insertVital.execute();
-
-            conn.commit();
+            insertVital.addBatch();
+            uncommittedRows++;
         }
     }
 
-    void persistObservation(DataCollector.DataSampleEvent value, long ms, String v) throws Exception {
+    void persistObservation(DataCollector.DataSampleEvent value, long ms, String v) throws SQLException {
 
         if(insertObservation != null) {
             insertObservation.setString   (1, value.getUniqueDeviceIdentifier());
@@ -47,33 +116,169 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
             insertObservation.setString   (3, value.getPatientId());
             insertObservation.setString   (4, v);
 
-            insertObservation.execute();
+            insertObservation.addBatch();
+            uncommittedRows++;
+        }
+    }
 
-            conn.commit();
+    void persistWaveform(SampleArrayDataCollector.SampleArrayEvent value, float[] samples) throws Exception {
+
+        if(WaveformStorage.Rows.equals(waveformStorage)) {
+            SampleArrayDataCollector.ArrayToNumeric.convert(value, samples, (DataCollector.DataSampleEvent meta, long ms, double v)->{
+                persistVital(meta, ms, v);
+            });
+        } else if(insertWaveform != null) {
+            long frequency = value.getFrequency();
+            if(frequency <= 0) {
+                log.warn("Invalid frequency " + frequency + " for " + value.getUniqueDeviceIdentifier() + " " + value.getMetricId());
+                return;
+            }
+            // The device time stamps the end of the array; see ArrayToNumeric
+            long startMs = value.getDevTime() - samples.length * (1000L / frequency);
+            Double[] boxed = new Double[samples.length];
+            for(int i = 0; i < samples.length; i++) {
+                boxed[i] = (double) samples[i];
+            }
+            java.sql.Array array = conn.createArrayOf("DOUBLE", boxed);
+
+            insertWaveform.setString   (1, value.getUniqueDeviceIdentifier());
+            insertWaveform.setString   (2, value.getMetricId());
+            insertWaveform.setInt      (3, value.getInstanceId());
+            insertWaveform.setTimestamp(4, new java.sql.Timestamp(startMs));
+            insertWaveform.setString   (5, value.getPatientId());
+            insertWaveform.setInt      (6, (int) frequency);
+            insertWaveform.setArray    (7, array);
+
+            insertWaveform.addBatch();
+            uncommittedRows++;
         }
     }
 
     @Subscribe
     public void handleDataSampleEvent(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
-        persistVital(evt, evt.getDevTime(), evt.getValue());
+        enqueue(new Pending(evt, evt.getDevTime(), evt.getValue(), null, null, null));
     }
 
     @Subscribe
     public void handleDataSampleEvent(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
-        SampleArrayDataCollector.ArrayToNumeric.convert(evt, (DataCollector.DataSampleEvent meta, long ms, double v)->{
-            persistVital(meta, ms, v);
-        });
+        // The event already holds its own copy of the metadata and an array that is replaced
+        // rather than refilled on update, so the writer thread can read both later
+        float[] values = evt.getValues();
+        enqueue(new Pending(evt, evt.getDevTime(), 0.0, null, null == values ? new float[0] : values, null));
     }
 
 
     @Subscribe
     public void handleDataSampleEvent(PatientAssessmentDataCollector.PatientAssessmentEvent evt) throws Exception {
-        persistObservation(evt, evt.getDevTime(), evt.getValue().getKey());
+        enqueue(new Pending(evt, evt.getDevTime(), 0.0, evt.getValue().getKey(), null, null));
+    }
+
+    private void enqueue(Pending p) {
+        // Never block the EventBus; a database that cannot keep up loses the newest events
+        if(!queue.offer(p)) {
+            if(0L == (eventsDropped.getAndIncrement() & 0x3FFL)) {
+                log.warn("Export queue full; " + eventsDropped.get() + " events dropped so far");
+            }
+        }
+    }
+
+    /**
+     * Blocks until everything enqueued before this call has been committed.
+     */
+    void flush() throws InterruptedException {
+        Thread w = writer;
+        if(w == null || !w.isAlive())
+            return;
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.put(new Pending(null, 0L, 0.0, null, null, latch));
+        latch.await();
+    }
+
+    private void write(Pending p) throws Exception {
+        if(p.event instanceof NumericsDataCollector.NumericSampleEvent) {
+            persistVital(p.event, p.ms, p.value);
+        } else if(p.event instanceof SampleArrayDataCollector.SampleArrayEvent) {
+            persistWaveform((SampleArrayDataCollector.SampleArrayEvent) p.event, p.samples);
+        } else if(p.event instanceof PatientAssessmentDataCollector.PatientAssessmentEvent) {
+            persistObservation(p.event, p.ms, p.observation);
+        }
     }
 
+    private void commit() {
+        if(uncommittedRows == 0)
+            return;
+        try {
+            if(insertVital != null) insertVital.executeBatch();
+            if(insertObservation != null) insertObservation.executeBatch();
+            if(insertWaveform != null) insertWaveform.executeBatch();
+            conn.commit();
+            rowsWritten.addAndGet(uncommittedRows);
+        } catch (SQLException e) {
+            log.error("Failed to write " + uncommittedRows + " rows", e);
+            try {
+                if(insertVital != null) insertVital.clearBatch();
+                if(insertObservation != null) insertObservation.clearBatch();
+                if(insertWaveform != null) insertWaveform.clearBatch();
+                conn.rollback();
+            } catch (SQLException e1) {
+                log.debug("rollback failed", e1);
+            }
+        } finally {
+            uncommittedRows = 0;
+        }
+    }
 
+    private void run() {
+        final List<Pending> drained = new ArrayList<Pending>(batchSize);
+        long lastCommit = System.currentTimeMillis();
+        while(running || !queue.isEmpty()) {
+            try {
+                Pending p = queue.poll(commitIntervalMs, TimeUnit.MILLISECONDS);
+                if(p != null) {
+                    drained.add(p);
+                    queue.drainTo(drained, batchSize - 1);
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts us; write whatever is left before exiting
+                queue.drainTo(drained);
+            }
+            for(Pending p : drained) {
+                if(p.flushed != null) {
+                    commit();
+                    lastCommit = System.currentTimeMillis();
+                    p.flushed.countDown();
+                    continue;
+                }
+                try {
+                    write(p);
+                } catch (Exception e) {
+                    log.error("Failed to stage " + p.event, e);
+                }
+                if(uncommittedRows >= batchSize) {
+                    commit();
+                    lastCommit = System.currentTimeMillis();
+                }
+            }
+            drained.clear();
+            long now = System.currentTimeMillis();
+            if(now - lastCommit >= commitIntervalMs || !running) {
+                commit();
+                lastCommit = now;
+            }
+        }
+    }
 
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
 
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
 
     static void createSchema(Connection conn) throws SQLException {
         conn.createStatement().execute( "CREATE TABLE VITAL_VALUES " +
@@ -89,8 +294,28 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
                                         "TIME_TICK TIMESTAMP, " +
                                         "PATIENT_ID VARCHAR(25), " +
                                         "OBSERVATION VARCHAR(255))");
+
+        conn.createStatement().execute( "CREATE TABLE WAVEFORM_VALUES " +
+                                        "(DEVICE_ID VARCHAR(25), " +
+                                        "METRIC_ID VARCHAR(25), " +
+                                        "INSTANCE_ID INTEGER, " +
+                                        "START_TICK TIMESTAMP, " +
+                                        "PATIENT_ID VARCHAR(25), " +
+                                        "FREQUENCY INTEGER, " +
+                                        "SAMPLES DOUBLE ARRAY)");
+
+        conn.createStatement().execute( WAVEFORM_SAMPLES_VIEW );
     }
 
+    /**
+     * Presents WAVEFORM_VALUES one sample per row; SAMPLE_INDEX is 1-based and OFFSET_MS is
+     * relative to START_TICK.
+     */
+    static final String WAVEFORM_SAMPLES_VIEW = "CREATE VIEW WAVEFORM_SAMPLES AS " +
+                                        "SELECT W.DEVICE_ID, W.METRIC_ID, W.INSTANCE_ID, W.START_TICK, W.PATIENT_ID, W.FREQUENCY, " +
+                                        "S.SAMPLE_INDEX, (S.SAMPLE_INDEX - 1) * 1000.0 / W.FREQUENCY AS OFFSET_MS, S.SAMPLE_VALUE " +
+                                        "FROM WAVEFORM_VALUES W, UNNEST(W.SAMPLES) WITH ORDINALITY AS S(SAMPLE_VALUE, SAMPLE_INDEX)";
+
     @Override
     public String getName() {
         return "sql";
@@ -100,17 +325,37 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
     public boolean start() throws Exception {
         conn = createConnection();
         if(conn != null) {
+            conn.setAutoCommit(false);
             insertVital = conn.prepareStatement("INSERT INTO VITAL_VALUES (DEVICE_ID, METRIC_ID, INSTANCE_ID, TIME_TICK, PATIENT_ID, VITAL_VALUE) VALUES(?,?,?,?,?,?)");
             insertObservation = conn.prepareStatement("INSERT INTO OBSERVATION_VALUES (MD_ID, TIME_TICK, PATIENT_ID, OBSERVATION) VALUES(?,?,?,?)");
+            if(WaveformStorage.Array.equals(waveformStorage)) {
+                insertWaveform = conn.prepareStatement("INSERT INTO WAVEFORM_VALUES (DEVICE_ID, METRIC_ID, INSTANCE_ID, START_TICK, PATIENT_ID, FREQUENCY, SAMPLES) VALUES(?,?,?,?,?,?,?)");
+            }
+            running = true;
+            writer = new Thread(this::run, "JdbcPersister");
+            writer.setDaemon(true);
+            writer.start();
         }
         return conn != null;
     }
 
     @Override
     public void stop() throws Exception {
+        Thread w = writer;
+        writer = null;
+        running = false;
+        if(w != null) {
+            w.interrupt();
+            // the writer uses the statements until it has written out the queue
+            w.join();
+        }
         if(insertVital != null) insertVital.close();
+        if(insertObservation != null) insertObservation.close();
+        if(insertWaveform != null) insertWaveform.close();
         if(conn != null) conn.close();
         insertVital = null;
+        insertObservation = null;
+        insertWaveform = null;
         conn = null;
     }
 
@@ -156,7 +401,20 @@ public class JdbcPersister extends DataCollectorAppFactory.PersisterUIController
     }
 
     public JdbcPersister() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL_MS, DEFAULT_CAPACITY, DEFAULT_WAVEFORM_STORAGE);
+    }
 
+    public JdbcPersister(int batchSize, long commitIntervalMs, int capacity, WaveformStorage waveformStorage) {
         super();
+        if(batchSize < 1 || commitIntervalMs < 1 || capacity < 1)
+            throw new IllegalArgumentException("batchSize, commitIntervalMs and capacity must be positive");
+        this.batchSize = batchSize;
+        this.commitIntervalMs = commitIntervalMs;
+        this.waveformStorage = waveformStorage == null ? WaveformStorage.Rows : waveformStorage;
+        this.queue = new ArrayBlockingQueue<Pending>(capacity);
+    }
+
+    public WaveformStorage getWaveformStorage() {
+        return waveformStorage;
     }
 }
\ No newline at end of file
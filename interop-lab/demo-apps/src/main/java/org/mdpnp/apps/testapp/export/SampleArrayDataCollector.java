@@ -96,8 +96,14 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
         }
 
         public static void convert(SampleArrayDataCollector.SampleArrayEvent evt, Handler h) throws Exception {
+            convert(evt, evt.getValues(), h);
+        }
+
+        /**
+         * As above but for a copy of the event's values taken at the time the event was fired.
+         */
+        public static void convert(SampleArrayDataCollector.SampleArrayEvent evt, float[] values, Handler h) throws Exception {
 
-            Number[] values = evt.getValues();
             long baseTime = evt.getDevTime();
 
             final int sz = values.length;
@@ -105,7 +111,7 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
                 int msPerSample = (int) (1000 / evt.getFrequency());
                 for (int j = 0; j < sz; j++) {
                     long tm = baseTime - (sz - j) * msPerSample;
-                    float value = values[j].floatValue();
+                    float value = values[j];
 
                     if (log.isTraceEnabled())
                         log.trace(DataCollector.dateFormats.get().format(new Date(tm)) + " " + evt.getMetricId() + "=" + value);
@@ -123,9 +129,14 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
     @SuppressWarnings("serial")
     public static class SampleArrayEvent extends DataCollector.DataSampleEvent {
 
+        // copied from the SampleArrayFx when the event is created, since that goes on to be
+        // updated with later samples while persisters may handle the event on other threads
+        private final String      udi;
+        private final String      metricId;
+        private final int         instanceId;
+        private final long        frequency;
         private final long        time;
-        private final Number[]    value;
-        private final SampleArrayFx data;
+        private final float[]     value;
 
         public SampleArrayEvent(SampleArrayFx data) {
             this(UNDEFINED, data);
@@ -133,28 +144,31 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
 
         public SampleArrayEvent(Patient p, SampleArrayFx v) {
             super(p);
-            data = v;
-            value = data.getValues();
-            time = data.getDevice_time().getTime();
+            udi = v.getUnique_device_identifier();
+            metricId = v.getMetric_id();
+            instanceId = v.getInstance_id();
+            frequency = v.getFrequency();
+            value = v.getValues();
+            time = v.getDevice_time().getTime();
         }
 
         public String getUniqueDeviceIdentifier() {
-            return data.getUnique_device_identifier();
+            return udi;
         }
         public String getMetricId() {
-            return data.getMetric_id();
+            return metricId;
         }
         public long getDevTime() {
             return time;
         }
         public int getInstanceId() {
-            return data.getInstance_id();
+            return instanceId;
         }
-        public Number[] getValues() {
+        public float[] getValues() {
             return value;
         }
         public long getFrequency() {
-            return data.getFrequency();
+            return frequency;
         }
     }
 
@@ -173,7 +187,11 @@ public class SampleArrayDataCollector extends DataCollector<SampleArrayFx> {
         v.setDevice_time(tMs);
         v.setPresentation_time(tMs);
         v.setFrequency(val.length);
-        v.valuesProperty().setValue(val);
+        float[] values = new float[val.length];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = val[i].floatValue();
+        }
+        v.setValues(values);
         return v;
     }
 }
@@ -2,14 +2,20 @@ package org.mdpnp.apps.testapp.export;
 
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.google.common.eventbus.Subscribe;
@@ -50,6 +56,18 @@ public class VerilogVCDPersister extends DataCollectorAppFactory.PersisterUICont
     public static final long FZ_1MB =1000000L;
     public static final long FZ_10MB=10000000L;
 
+    private static final String PROPERTY_PREFIX = VerilogVCDPersister.class.getName() + ".";
+
+    /**
+     * Files kept open at once; the one idle the longest is closed and later reopened for append.
+     */
+    static final int MAX_OPEN_FILES = Integer.getInteger(PROPERTY_PREFIX + "maxOpenFiles", 64);
+
+    /**
+     * Bytes buffered per open file before they are written to its channel.
+     */
+    static final int BUFFER_SIZE = Integer.getInteger(PROPERTY_PREFIX + "bufferSize", 64 * 1024);
+
     OneWavePerVCD controller = null;
     @FXML TextField filePathLabel, maxSizeLabel;
 
@@ -101,46 +119,67 @@ public class VerilogVCDPersister extends DataCollectorAppFactory.PersisterUICont
 
         final File baseDir;
         final long maxFileSize;
+        final int maxOpenFiles;
+
+        // Every wave seen so far, open or not
+        final Map<String, VCDFileHandler> cache = new HashMap<>();
 
-        Map<String, VCDFileHandler> cache = new HashMap<>();
+        // Waves with an open channel, least recently written first
+        private final LinkedHashMap<VCDFileHandler, Boolean> open = new LinkedHashMap<>(16, 0.75f, true);
+
+        // Write buffers of closed handlers, handed to the next one that opens
+        private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
 
         public OneWavePerVCD(File f, long sz) {
+            this(f, sz, MAX_OPEN_FILES);
+        }
+
+        public OneWavePerVCD(File f, long sz, int maxOpenFiles) {
             baseDir = f;
             maxFileSize = sz;
+            this.maxOpenFiles = Math.max(1, maxOpenFiles);
         }
 
         public boolean start() throws Exception {
             return true;
         }
 
-        public void stop() throws Exception {
-            for(VCDFileHandler swh : cache.values()) {
-                swh.stop();
+        public synchronized void stop() throws Exception {
+            for(VCDFileHandler swh : open.keySet()) {
+                release(swh.close());
             }
+            open.clear();
         }
 
-        public void persist(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
+        public synchronized void persist(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
 
             final VCDFileHandler fileHandler = getVcdFileHandler(evt);
 
-            if(fileHandler.getSize()<maxFileSize) {
-                long baseTime = evt.getDevTime();
-                double v =  evt.getValue();
-                fileHandler.persist(evt, baseTime, v);
-            }
+            long baseTime = evt.getDevTime();
+            double v =  evt.getValue();
+            persist(fileHandler, baseTime, v);
         }
 
-        public void persist(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
+        public synchronized void persist(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
 
             final VCDFileHandler fileHandler = getVcdFileHandler(evt);
 
-            if(fileHandler.getSize()<maxFileSize) {
-                SampleArrayDataCollector.ArrayToNumeric.convert(evt, (DataCollector.DataSampleEvent meta, long ms, double v) -> {
-                    fileHandler.persist(meta, ms, v);
-                });
-            }
+            SampleArrayDataCollector.ArrayToNumeric.convert(evt, (DataCollector.DataSampleEvent meta, long ms, double v) -> {
+                persist(fileHandler, ms, v);
+            });
         }
 
+        private void persist(VCDFileHandler fileHandler, long ms, double v) throws IOException {
+            if(fileHandler.getSize() >= maxFileSize) {
+                // Continue in the next numbered file rather than dropping the data
+                release(fileHandler.close());
+                open.remove(fileHandler);
+                fileHandler.nextPart();
+                log.info(fileHandler.key + " reached " + maxFileSize + " bytes, continuing in part " + fileHandler.roll);
+            }
+            ensureOpen(fileHandler);
+            fileHandler.persist(ms, v);
+        }
 
         private VCDFileHandler getVcdFileHandler(DataCollector.DataSampleEvent evt) throws IOException {
 
@@ -148,82 +187,220 @@ public class VerilogVCDPersister extends DataCollectorAppFactory.PersisterUICont
 
             VCDFileHandler fileHandler = cache.get(key);
             if (fileHandler == null) {
-
-                OutputStream os = makeStream(key);
-
-                fileHandler = new VCDFileHandler(os, key, evt.getDevTime());
+                fileHandler = new VCDFileHandler(key, evt.getDevTime());
                 cache.put(key, fileHandler);
             }
             return fileHandler;
         }
 
-        protected OutputStream makeStream(String key) throws IOException {
-            File f = new File(baseDir, key + ".vcd");
-            log.info("Opening File " + f.getAbsolutePath());
-            FileOutputStream fos = new FileOutputStream(f);
-            return fos;
+        private void ensureOpen(VCDFileHandler fileHandler) throws IOException {
+            if (open.get(fileHandler) != null) {
+                return;
+            }
+            // Make room by closing the handler that was idle the longest
+            Iterator<VCDFileHandler> eldest = open.keySet().iterator();
+            while (open.size() >= maxOpenFiles && eldest.hasNext()) {
+                release(eldest.next().close());
+                eldest.remove();
+            }
+            String name = 0 == fileHandler.roll ? fileHandler.key : fileHandler.key + "." + fileHandler.roll;
+            boolean append = fileHandler.getSize() > 0L;
+            fileHandler.open(openChannel(name, append), buffers.isEmpty() ? ByteBuffer.allocate(Math.max(256, BUFFER_SIZE)) : buffers.pop());
+            open.put(fileHandler, Boolean.TRUE);
+        }
+
+        private void release(ByteBuffer buffer) {
+            if (null != buffer) {
+                buffer.clear();
+                buffers.push(buffer);
+            }
+        }
+
+        /**
+         * @param name of the wave, with a part number once it was rolled over
+         * @param append true when reopening a file that was closed while idle
+         */
+        protected WritableByteChannel openChannel(String name, boolean append) throws IOException {
+            File f = new File(baseDir, name + ".vcd");
+            log.info((append ? "Reopening File " : "Opening File ") + f.getAbsolutePath());
+            return FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
         }
 
         static class VCDFileHandler {
 
-            final OutputStream os;
-            final PrintStream  ps;
-            final long firstTimeTic;
+            private static final byte[] SAMPLE_SUFFIX = " *\n".getBytes(StandardCharsets.US_ASCII);
+            private static final double TIE_EPSILON = 1e-6;
+            private static final double MAX_FIXED = 1e8;
+            private static final boolean ASCII_SYMBOLS;
 
-            VCDFileHandler(OutputStream out, String key, long t) {
+            static {
+                DecimalFormatSymbols symbols = floatFormats.get().getDecimalFormatSymbols();
+                ASCII_SYMBOLS = '.' == symbols.getDecimalSeparator() && '-' == symbols.getMinusSign() && '0' == symbols.getZeroDigit();
+            }
+
+            final String key;
+            final long firstTimeTic;
+            int roll;
 
-                os = out;
-                ps = new PrintStream(out);
+            private WritableByteChannel channel;
+            private ByteBuffer buffer;
+            // bytes in the current part, written or still buffered
+            private long size;
 
+            VCDFileHandler(String key, long t) {
+                this.key = key;
                 firstTimeTic = t;
+            }
 
-                ps.println("$date");
-                ps.println("\t\t" + dateFormats.get().format(new Date(firstTimeTic)));
-                ps.println("$end");
+            void open(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+                this.channel = channel;
+                this.buffer = buffer;
+                if (0L == size) {
+                    writeHeader();
+                }
+            }
 
-                ps.println("$version");
-                ps.println("\t\t" + "MDPNP V0.1 2015");
-                ps.println("$end");
+            private void writeHeader() throws IOException {
+                // Line endings as the PrintStream used to write them
+                final String nl = System.lineSeparator();
+                StringBuilder sb = new StringBuilder();
+                sb.append("$date").append(nl);
+                sb.append("\t\t").append(dateFormats.get().format(new Date(firstTimeTic))).append(nl);
+                sb.append("$end").append(nl);
 
-                ps.println("$timescale");
-                ps.println("\t\t" + "1ms");
-                ps.println("$end");
+                sb.append("$version").append(nl);
+                sb.append("\t\t").append("MDPNP V0.1 2015").append(nl);
+                sb.append("$end").append(nl);
 
-                ps.println("$scope module top $end");
+                sb.append("$timescale").append(nl);
+                sb.append("\t\t").append("1ms").append(nl);
+                sb.append("$end").append(nl);
+
+                sb.append("$scope module top $end").append(nl);
+
+                sb.append("$var real 32 ").append(" *").append(" ").append(key).append(" $end").append(nl);
+                put(sb.toString().getBytes());
+            }
+
+            /**
+             * Flushes and closes the channel, keeping what is needed to reopen it for append.
+             *
+             * @return the write buffer, which this handler no longer uses
+             */
+            ByteBuffer close() throws IOException {
+                if (null == channel) {
+                    return null;
+                }
+                ByteBuffer b = buffer;
+                try {
+                    flush();
+                } finally {
+                    channel.close();
+                    channel = null;
+                    buffer = null;
+                }
+                return b;
+            }
 
-                ps.print("$var real 32 ");
-                ps.print(" *");
-                ps.print(" ");
-                ps.print(key);
-                ps.println(" $end");
+            private void flush() throws IOException {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            long getSize() {
+                return size;
             }
 
-            synchronized public void stop() throws Exception {
-                ps.flush();
-                os.flush();
-                ps.close();
-                os.close();
+            /**
+             * Moves on to the next numbered file, which will be opened with a fresh header.
+             */
+            void nextPart() {
+                roll++;
+                size = 0L;
             }
 
-            synchronized long getSize() throws Exception {
-                if(os instanceof FileOutputStream) {
-                    long l = ((FileOutputStream)os).getChannel().size();
-                    return l;
+            void persist(long ms, double v) throws IOException {
+                // Room for the longest time stamp and DecimalFormat output of a float
+                if (buffer.remaining() < 128) {
+                    flush();
                 }
-                else {
-                    return 0;
+                int start = buffer.position();
+                buffer.put((byte) '#');
+                putLong(ms - firstTimeTic);
+                buffer.put((byte) '\n').put((byte) 'r');
+                if (!putFixed((float) v)) {
+                    buffer.put(floatFormats.get().format((float) v).getBytes());
                 }
+                buffer.put(SAMPLE_SUFFIX);
+                size += buffer.position() - start;
             }
 
-            void persist(DataCollector.DataSampleEvent evt, long ms, double v) throws Exception {
+            private void put(byte[] bytes) throws IOException {
+                int off = 0;
+                while (off < bytes.length) {
+                    if (!buffer.hasRemaining()) {
+                        flush();
+                    }
+                    int n = Math.min(buffer.remaining(), bytes.length - off);
+                    buffer.put(bytes, off, n);
+                    off += n;
+                }
+                size += bytes.length;
+            }
 
-                StringBuilder sb = new StringBuilder();
-                sb.append("#").append(ms - firstTimeTic).append("\n");;
-                String s = floatFormats.get().format((float)v);
-                sb.append("r").append(s).append(" *").append("\n");
+            private void putLong(long v) {
+                if (v < 0L) {
+                    buffer.put((byte) '-');
+                    if (Long.MIN_VALUE == v) {
+                        buffer.put(Long.toString(v).substring(1).getBytes(StandardCharsets.US_ASCII));
+                        return;
+                    }
+                    v = -v;
+                }
+                putDigits(v, 1);
+            }
+
+            private void putDigits(long v, int width) {
+                int start = buffer.position();
+                do {
+                    buffer.put((byte) ('0' + (int) (v % 10L)));
+                    v /= 10L;
+                    width--;
+                } while (v != 0L || width > 0);
+                // digits went in least significant first
+                for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+                    byte t = buffer.get(i);
+                    buffer.put(i, buffer.get(j));
+                    buffer.put(j, t);
+                }
+            }
 
-                ps.print(sb.toString());
-                ps.flush();
+            /**
+             * Same output as the "#0.0000000" DecimalFormat for values that are not within
+             * rounding error of a HALF_EVEN tie, which are left to the DecimalFormat.
+             */
+            private boolean putFixed(double v) {
+                double abs = Math.abs(v);
+                if (!ASCII_SYMBOLS || !(abs < MAX_FIXED)) {
+                    return false;
+                }
+                double scaled = abs * 1e7;
+                double frac = scaled - Math.floor(scaled);
+                if (Math.abs(frac - 0.5) < TIE_EPSILON) {
+                    return false;
+                }
+                long units = (long) Math.rint(scaled);
+                if (v < 0 || (v == 0.0 && 1.0 / v < 0)) {
+                    buffer.put((byte) '-');
+                }
+                putDigits(units / 10000000L, 1);
+                buffer.put((byte) '.');
+                putDigits(units % 10000000L, 7);
+                return true;
             }
         }
     }
@@ -0,0 +1,294 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store of waveform and numeric values as raw float32 blocks.
+ * <p>
+ * Every stream (device, metric and instance) gets a directory of segment files named by the
+ * time of their first block. A segment is a fixed size file written through a
+ * MappedByteBuffer and laid out as
+ * <pre>
+ *   header       HEADER_SIZE bytes, see the offsets below
+ *   time index   indexCapacity entries of (long time, long offset)
+ *   blocks       long time, int count, count x float32, repeated
+ * </pre>
+ * The block time is the device time of the event that delivered the block, so for sample
+ * arrays it follows the last sample by one sample period. An index entry is recorded for the
+ * first block that starts beyond each INDEX_STRIDE bytes of data, which lets
+ * {@link WaveformArchiveReader} find a time by binary search and a short scan.
+ * <p>
+ * A closed segment is truncated to its committed data end.
+ * <p>
+ * A new segment is started when the current one is full and whenever the patient, the
+ * frequency or the direction of time changes, so the header describes every block in it.
+ * The committed data end and block count are updated after each block so that a reader
+ * (or a recovery after a crash) never sees a partial block.
+ */
+public class WaveformArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(WaveformArchive.class);
+
+    private static final String PROPERTY_PREFIX = WaveformArchive.class.getName() + ".";
+
+    public static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger(PROPERTY_PREFIX + "segmentSize", 8 * 1024 * 1024);
+
+    static final String SUFFIX = ".wfa";
+
+    static final int MAGIC = 0x49434557; // "ICEW"
+    static final short VERSION = 1;
+
+    static final byte KIND_SAMPLE_ARRAY = 0;
+    static final byte KIND_NUMERIC = 1;
+
+    static final int HEADER_SIZE = 256;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int INDEX_STRIDE = 4096;
+    static final int BLOCK_HEADER_SIZE = 12;
+
+    // header offsets
+    static final int OFF_MAGIC = 0;
+    static final int OFF_VERSION = 4;
+    static final int OFF_KIND = 6;
+    static final int OFF_START_TIME = 8;
+    static final int OFF_LAST_TIME = 16;
+    static final int OFF_FREQUENCY = 24;
+    static final int OFF_BLOCK_COUNT = 28;
+    static final int OFF_DATA_END = 32;
+    static final int OFF_INDEX_COUNT = 40;
+    static final int OFF_INDEX_CAPACITY = 44;
+    static final int OFF_INSTANCE_ID = 48;
+    static final int OFF_MRN = 64;
+    static final int OFF_UDI = 128;
+    static final int OFF_METRIC = 192;
+    static final int STRING_FIELD_SIZE = 64;
+
+    private final File baseDir;
+    private final int segmentSize;
+    private final Map<String, Segment> segments = new HashMap<>();
+
+    public WaveformArchive(File baseDir) {
+        this(baseDir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public WaveformArchive(File baseDir, int segmentSize) {
+        if (segmentSize < HEADER_SIZE + 2 * INDEX_ENTRY_SIZE + BLOCK_HEADER_SIZE + 4 * 1024) {
+            throw new IllegalArgumentException("segmentSize too small " + segmentSize);
+        }
+        this.baseDir = baseDir;
+        this.segmentSize = segmentSize;
+    }
+
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    static String key(String udi, String metric, int instance) {
+        return udi + "-" + metric + "-" + instance;
+    }
+
+    /**
+     * Appends one block of samples.
+     *
+     * @param frequency in Hz, 0 for numerics
+     * @param time device time of the block in ms
+     */
+    public synchronized void append(String udi, String metric, int instance, String mrn, float frequency, long time, float[] values, int offset, int length)
+            throws IOException {
+        appendBlock(KIND_SAMPLE_ARRAY, udi, metric, instance, mrn, frequency, time, values, offset, length, 0f);
+    }
+
+    public synchronized void append(String udi, String metric, int instance, String mrn, long time, float value) throws IOException {
+        appendBlock(KIND_NUMERIC, udi, metric, instance, mrn, 0f, time, null, 0, 1, value);
+    }
+
+    private void appendBlock(byte kind, String udi, String metric, int instance, String mrn, float frequency, long time, float[] values, int offset,
+            int length, float value) throws IOException {
+        final int blockSize = BLOCK_HEADER_SIZE + 4 * length;
+        final String key = key(udi, metric, instance);
+        Segment segment = segments.get(key);
+        if (null != segment && !segment.accepts(kind, mrn, frequency, time, blockSize)) {
+            segment.close();
+            segments.remove(key);
+            segment = null;
+        }
+        if (null == segment) {
+            if (blockSize > segmentSize - HEADER_SIZE - INDEX_ENTRY_SIZE * indexCapacity(segmentSize)) {
+                log.warn("Dropping block of " + length + " samples, larger than a segment, for " + key);
+                return;
+            }
+            segment = new Segment(newSegmentFile(key, time), segmentSize, kind, udi, metric, instance, mrn, frequency, time);
+            segments.put(key, segment);
+        }
+        if (null == values) {
+            segment.append(time, value);
+        } else {
+            segment.append(time, values, offset, length);
+        }
+    }
+
+    private File newSegmentFile(String key, long time) {
+        File dir = new File(baseDir, key);
+        File file = new File(dir, time + SUFFIX);
+        // A segment may end and the next begin at the same time, e.g. when the patient changes
+        for (int n = 1; file.exists(); n++) {
+            file = new File(dir, time + "-" + n + SUFFIX);
+        }
+        return file;
+    }
+
+    /**
+     * Forces the committed data of all open segments to the storage device.
+     */
+    public synchronized void force() {
+        for (Segment s : segments.values()) {
+            s.force();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        for (Segment s : segments.values()) {
+            s.close();
+        }
+        segments.clear();
+    }
+
+    static int indexCapacity(int segmentSize) {
+        return segmentSize / INDEX_STRIDE + 1;
+    }
+
+    static void putString(MappedByteBuffer buffer, int offset, String s) {
+        byte[] bytes = null == s ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        // Long identifiers are truncated; the directory name carries the full key
+        int length = Math.min(bytes.length, STRING_FIELD_SIZE - 2);
+        buffer.putShort(offset, (short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + 2 + i, bytes[i]);
+        }
+    }
+
+    static final class Segment {
+        private final File file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final byte kind;
+        private final String mrn;
+        private final float frequency;
+        private final int indexCapacity;
+        private final int dataStart;
+
+        private int position;
+        private int blockCount;
+        private int indexCount;
+        private int nextIndexOffset;
+        private long lastTime;
+
+        Segment(File file, int size, byte kind, String udi, String metric, int instance, String mrn, float frequency, long time) throws IOException {
+            file.getParentFile().mkdirs();
+            this.file = file;
+            this.kind = kind;
+            this.mrn = mrn;
+            this.frequency = frequency;
+            this.indexCapacity = indexCapacity(size);
+            this.dataStart = HEADER_SIZE + indexCapacity * INDEX_ENTRY_SIZE;
+            log.info("Opening segment " + file.getAbsolutePath());
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(OFF_MAGIC, MAGIC);
+            buffer.putShort(OFF_VERSION, VERSION);
+            buffer.put(OFF_KIND, kind);
+            buffer.putLong(OFF_START_TIME, time);
+            buffer.putLong(OFF_LAST_TIME, time);
+            buffer.putFloat(OFF_FREQUENCY, frequency);
+            buffer.putInt(OFF_BLOCK_COUNT, 0);
+            buffer.putLong(OFF_DATA_END, dataStart);
+            buffer.putInt(OFF_INDEX_COUNT, 0);
+            buffer.putInt(OFF_INDEX_CAPACITY, indexCapacity);
+            buffer.putInt(OFF_INSTANCE_ID, instance);
+            putString(buffer, OFF_MRN, mrn);
+            putString(buffer, OFF_UDI, udi);
+            putString(buffer, OFF_METRIC, metric);
+
+            position = dataStart;
+            nextIndexOffset = dataStart;
+            lastTime = time;
+        }
+
+        boolean accepts(byte kind, String mrn, float frequency, long time, int blockSize) {
+            return this.kind == kind && (null == mrn ? null == this.mrn : mrn.equals(this.mrn))
+                    && Float.floatToIntBits(frequency) == Float.floatToIntBits(this.frequency) && time >= lastTime
+                    && position + blockSize <= buffer.capacity() && indexCount < indexCapacity;
+        }
+
+        private void beginBlock(long time, int count) {
+            if (position >= nextIndexOffset) {
+                int entry = HEADER_SIZE + indexCount * INDEX_ENTRY_SIZE;
+                buffer.putLong(entry, time);
+                buffer.putLong(entry + 8, position);
+                indexCount++;
+                nextIndexOffset = position + INDEX_STRIDE;
+            }
+            buffer.putLong(position, time);
+            buffer.putInt(position + 8, count);
+            position += BLOCK_HEADER_SIZE;
+        }
+
+        private void commit(long time) {
+            lastTime = time;
+            blockCount++;
+            buffer.putLong(OFF_LAST_TIME, time);
+            buffer.putInt(OFF_INDEX_COUNT, indexCount);
+            buffer.putInt(OFF_BLOCK_COUNT, blockCount);
+            buffer.putLong(OFF_DATA_END, position);
+        }
+
+        void append(long time, float[] values, int offset, int length) {
+            beginBlock(time, length);
+            for (int i = 0; i < length; i++) {
+                buffer.putFloat(position, values[offset + i]);
+                position += 4;
+            }
+            commit(time);
+        }
+
+        void append(long time, float value) {
+            beginBlock(time, 1);
+            buffer.putFloat(position, value);
+            position += 4;
+            commit(time);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() throws IOException {
+            log.info("Closing segment " + file.getAbsolutePath() + " with " + blockCount + " blocks");
+            try {
+                buffer.force();
+                // Mapped at the full segment size; readers go by the committed data end so the
+                // unused tail is given back. Some platforms refuse while the mapping is live.
+                try {
+                    channel.truncate(position);
+                } catch (IOException e) {
+                    log.debug("Unable to truncate " + file.getAbsolutePath() + " to " + position + " bytes", e);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.google.common.eventbus.Subscribe;
+import javafx.fxml.FXML;
+import javafx.scene.control.TextField;
+
+/**
+ * Records numerics and full-disclosure waveforms into a {@link WaveformArchive} of memory
+ * mapped float32 segments, read back with {@link WaveformArchiveReader}.
+ */
+public class WaveformArchivePersister extends DataCollectorAppFactory.PersisterUIController {
+
+    static ThreadLocal<SimpleDateFormat> dateFormats = new ThreadLocal<SimpleDateFormat>()
+    {
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy.MMddHH.mmss");
+        }
+    };
+
+    WaveformArchive archive = null;
+    @FXML TextField filePathLabel, segmentSizeLabel;
+
+    public WaveformArchivePersister() {
+
+    }
+
+    public void setup() {
+        String f = "<" + dateFormats.get().toPattern() + ">";
+        String p = (new File(f)).getAbsolutePath();
+        filePathLabel.setText(p);
+        segmentSizeLabel.setText((WaveformArchive.DEFAULT_SEGMENT_SIZE / (1024 * 1024)) + "MB");
+    }
+
+    @Subscribe
+    public void handleDataSampleEvent(NumericsDataCollector.NumericSampleEvent evt) throws Exception {
+        WaveformArchive a = archive;
+        if(a != null) {
+            a.append(evt.getUniqueDeviceIdentifier(), evt.getMetricId(), evt.getInstanceId(), evt.getPatientId(),
+                     evt.getDevTime(), (float) evt.getValue());
+        }
+    }
+
+    @Subscribe
+    public void handleDataSampleEvent(SampleArrayDataCollector.SampleArrayEvent evt) throws Exception {
+        WaveformArchive a = archive;
+        if(a != null) {
+            float[] values = evt.getValues();
+            a.append(evt.getUniqueDeviceIdentifier(), evt.getMetricId(), evt.getInstanceId(), evt.getPatientId(),
+                     evt.getFrequency(), evt.getDevTime(), values, 0, values.length);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "waveform archive";
+    }
+
+    @Override
+    public void stop() throws Exception {
+        WaveformArchive a = archive;
+        archive = null;
+        if(a != null)
+            a.close();
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        String now = dateFormats.get().format(new Date());
+        File f = new File(now + ".wfa");
+        f.mkdirs();
+        filePathLabel.setText(f.getAbsolutePath());
+
+        archive = new WaveformArchive(f);
+        return true;
+    }
+}
@@ -0,0 +1,314 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Range queries over the segments written by {@link WaveformArchive}. Segments still being
+ * written may be read; only blocks committed at the time of the query are returned.
+ */
+public class WaveformArchiveReader {
+
+    public interface BlockHandler {
+        /**
+         * @param values valid up to count and reused for the next block
+         */
+        void block(SegmentInfo segment, long time, float[] values, int count) throws IOException;
+    }
+
+    /**
+     * The header of one segment file.
+     */
+    public static final class SegmentInfo {
+        private final File file;
+        private final boolean numeric;
+        private final String udi;
+        private final String metricId;
+        private final int instanceId;
+        private final String mrn;
+        private final float frequency;
+        private final long startTime;
+        private final long lastTime;
+        private final int blockCount;
+
+        SegmentInfo(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.numeric = WaveformArchive.KIND_NUMERIC == buffer.get(WaveformArchive.OFF_KIND);
+            this.udi = getString(buffer, WaveformArchive.OFF_UDI);
+            this.metricId = getString(buffer, WaveformArchive.OFF_METRIC);
+            this.instanceId = buffer.getInt(WaveformArchive.OFF_INSTANCE_ID);
+            this.mrn = getString(buffer, WaveformArchive.OFF_MRN);
+            this.frequency = buffer.getFloat(WaveformArchive.OFF_FREQUENCY);
+            this.startTime = buffer.getLong(WaveformArchive.OFF_START_TIME);
+            this.lastTime = buffer.getLong(WaveformArchive.OFF_LAST_TIME);
+            this.blockCount = buffer.getInt(WaveformArchive.OFF_BLOCK_COUNT);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isNumeric() {
+            return numeric;
+        }
+
+        public String getUniqueDeviceIdentifier() {
+            return udi;
+        }
+
+        public String getMetricId() {
+            return metricId;
+        }
+
+        public int getInstanceId() {
+            return instanceId;
+        }
+
+        public String getPatientId() {
+            return mrn;
+        }
+
+        /**
+         * @return samples per second, 0 for numerics
+         */
+        public float getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * @return time of the first block
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return time of the last committed block
+         */
+        public long getLastTime() {
+            return lastTime;
+        }
+
+        public int getBlockCount() {
+            return blockCount;
+        }
+
+        /**
+         * @return ms from the sample with the given index back from the end of a block to the
+         *         block time; samples are one period apart and the last precedes the block time by
+         *         one period, numerics are taken at the block time
+         */
+        double before(int samples) {
+            return frequency > 0f ? samples * 1000.0 / frequency : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + " " + udi + " " + metricId + " " + instanceId + " mrn=" + mrn + " " + frequency + "Hz " + startTime + "-" + lastTime
+                    + " blocks=" + blockCount;
+        }
+    }
+
+    private final File baseDir;
+
+    public WaveformArchiveReader(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * @return names of the recorded streams, which are {@link #read(String, long, long, BlockHandler)} keys
+     */
+    public List<String> getStreams() {
+        String[] names = baseDir.list((dir, name) -> new File(dir, name).isDirectory());
+        if (null == names) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    public static String stream(String udi, String metric, int instance) {
+        return WaveformArchive.key(udi, metric, instance);
+    }
+
+    /**
+     * @return segments of the stream ordered by the time of their first block
+     */
+    public List<SegmentInfo> getSegments(String stream) throws IOException {
+        File[] files = new File(baseDir, stream).listFiles((dir, name) -> name.endsWith(WaveformArchive.SUFFIX));
+        List<SegmentInfo> segments = new ArrayList<SegmentInfo>();
+        if (null != files) {
+            for (File f : files) {
+                try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                    segments.add(new SegmentInfo(f, map(f, channel, WaveformArchive.HEADER_SIZE)));
+                }
+            }
+        }
+        Collections.sort(segments, Comparator.comparingLong(SegmentInfo::getStartTime));
+        return segments;
+    }
+
+    /**
+     * Delivers, in order, the blocks of a stream with at least one sample taken between from
+     * and to (inclusive, ms of device time).
+     *
+     * @return the number of blocks delivered
+     */
+    public int read(String stream, long from, long to, BlockHandler handler) throws IOException {
+        int blocks = 0;
+        try (Cursor cursor = open(stream, from)) {
+            while (cursor.next()) {
+                if (cursor.getTime() - cursor.getSegment().before(cursor.getCount()) > to) {
+                    break;
+                }
+                handler.block(cursor.getSegment(), cursor.getTime(), cursor.getValues(), cursor.getCount());
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @return a cursor over the blocks of a stream with samples taken at or after from, in order
+     */
+    public Cursor open(String stream, long from) throws IOException {
+        return new Cursor(getSegments(stream), from);
+    }
+
+    /**
+     * Walks the blocks of one stream segment by segment, mapping one segment at a time.
+     */
+    public static final class Cursor implements Closeable {
+        private final Iterator<SegmentInfo> segments;
+        private final long from;
+        private SegmentInfo segment;
+        private MappedByteBuffer buffer;
+        private long dataEnd;
+        private int position;
+
+        private long time;
+        private int count;
+        private float[] values = new float[1];
+
+        Cursor(List<SegmentInfo> segments, long from) {
+            this.segments = segments.iterator();
+            this.from = from;
+        }
+
+        /**
+         * @return false after the last committed block
+         */
+        public boolean next() throws IOException {
+            while (true) {
+                if (null == buffer) {
+                    if (!segments.hasNext()) {
+                        return false;
+                    }
+                    segment = segments.next();
+                    if (segment.getLastTime() < from) {
+                        continue;
+                    }
+                    try (FileChannel channel = FileChannel.open(segment.getFile().toPath(), StandardOpenOption.READ)) {
+                        buffer = map(segment.getFile(), channel, (int) channel.size());
+                    }
+                    dataEnd = buffer.getLong(WaveformArchive.OFF_DATA_END);
+                    position = seek(buffer, from);
+                }
+                if (position >= dataEnd) {
+                    buffer = null;
+                    continue;
+                }
+                time = buffer.getLong(position);
+                count = buffer.getInt(position + 8);
+                final int data = position + WaveformArchive.BLOCK_HEADER_SIZE;
+                position = data + 4 * count;
+                if (time - segment.before(1) >= from) {
+                    if (values.length < count) {
+                        values = new float[count];
+                    }
+                    for (int i = 0; i < count; i++) {
+                        values[i] = buffer.getFloat(data + 4 * i);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        public SegmentInfo getSegment() {
+            return segment;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the samples of the current block, valid up to count and reused for the next block
+         */
+        public float[] getValues() {
+            return values;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // the mapping is released with the buffer
+            buffer = null;
+        }
+    }
+
+    /**
+     * @return offset of the last indexed block before from, or of the first block
+     */
+    static int seek(MappedByteBuffer buffer, long from) {
+        int indexCount = buffer.getInt(WaveformArchive.OFF_INDEX_COUNT);
+        int capacity = buffer.getInt(WaveformArchive.OFF_INDEX_CAPACITY);
+        int low = 0, high = indexCount - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getLong(WaveformArchive.HEADER_SIZE + mid * WaveformArchive.INDEX_ENTRY_SIZE) < from) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? WaveformArchive.HEADER_SIZE + capacity * WaveformArchive.INDEX_ENTRY_SIZE : (int) buffer.getLong(WaveformArchive.HEADER_SIZE + found * WaveformArchive.INDEX_ENTRY_SIZE + 8);
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel channel, int size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (WaveformArchive.MAGIC != buffer.getInt(WaveformArchive.OFF_MAGIC)) {
+            throw new IOException(file + " is not a waveform archive segment");
+        }
+        if (WaveformArchive.VERSION != buffer.getShort(WaveformArchive.OFF_VERSION)) {
+            throw new IOException(file + " has unsupported version " + buffer.getShort(WaveformArchive.OFF_VERSION));
+        }
+        return buffer;
+    }
+
+    static String getString(MappedByteBuffer buffer, int offset) {
+        int length = Math.max(0, Math.min(buffer.getShort(offset), WaveformArchive.STRING_FIELD_SIZE - 2));
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.mdpnp.devices.simulation.replay.CSVRecording;
+import org.mdpnp.devices.simulation.replay.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the streams of one device from a {@link WaveformArchive} directory, merging them
+ * in the order of their block times.
+ */
+public class WaveformArchiveRecording implements Recording {
+
+    private static final Logger log = LoggerFactory.getLogger(WaveformArchiveRecording.class);
+
+    private final PriorityQueue<WaveformArchiveReader.Cursor> cursors = new PriorityQueue<WaveformArchiveReader.Cursor>(
+            Comparator.comparingLong(WaveformArchiveReader.Cursor::getTime));
+    private final String udi;
+
+    /**
+     * @param udi the device to replay or null for the first one in the archive
+     */
+    public WaveformArchiveRecording(File baseDir, String udi) throws IOException {
+        WaveformArchiveReader reader = new WaveformArchiveReader(baseDir);
+        for (String stream : reader.getStreams()) {
+            if (null != udi && !stream.startsWith(udi + "-")) {
+                continue;
+            }
+            List<WaveformArchiveReader.SegmentInfo> segments = reader.getSegments(stream);
+            if (segments.isEmpty()) {
+                continue;
+            }
+            if (null == udi) {
+                udi = segments.get(0).getUniqueDeviceIdentifier();
+                if (!stream.startsWith(udi + "-")) {
+                    continue;
+                }
+                log.info("Replaying device " + udi + " from " + baseDir);
+            }
+            WaveformArchiveReader.Cursor cursor = reader.open(stream, Long.MIN_VALUE);
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        this.udi = udi;
+        if (cursors.isEmpty()) {
+            log.warn("Nothing to replay for " + udi + " in " + baseDir);
+        }
+    }
+
+    /**
+     * Opens an archive directory as such and anything else as a CSV export.
+     */
+    public static Recording open(File file, String udi) throws IOException {
+        return file.isDirectory() ? new WaveformArchiveRecording(file, udi) : new CSVRecording(file, udi);
+    }
+
+    @Override
+    public String getUniqueDeviceIdentifier() {
+        return udi;
+    }
+
+    @Override
+    public boolean next(Block block) throws IOException {
+        WaveformArchiveReader.Cursor cursor = cursors.poll();
+        if (null == cursor) {
+            return false;
+        }
+        WaveformArchiveReader.SegmentInfo segment = cursor.getSegment();
+        if (segment.isNumeric()) {
+            block.setNumeric(segment.getMetricId(), segment.getInstanceId(), cursor.getTime(), cursor.getValues()[0]);
+        } else {
+            float[] values = block.setSampleArray(segment.getMetricId(), segment.getInstanceId(), Math.round(segment.getFrequency()), cursor.getTime(),
+                    cursor.getCount());
+            System.arraycopy(cursor.getValues(), 0, values, 0, cursor.getCount());
+        }
+        if (cursor.next()) {
+            cursors.add(cursor);
+        } else {
+            cursor.close();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (WaveformArchiveReader.Cursor c : cursors) {
+            c.close();
+        }
+        cursors.clear();
+    }
+}
@@ -0,0 +1,251 @@
+package org.mdpnp.apps.testapp.hl7;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IResource;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.client.IGenericClient;
+
+/**
+ * Turns batches of items into FHIR resources and posts them as transactions of a bounded
+ * size on a few sender threads, so that the caller only waits when too many transactions
+ * are already outstanding.
+ * <p>
+ * Each sender thread keeps its own JSON parser and encoding buffer for the display lines
+ * rather than creating a parser for every resource.
+ *
+ * @param <T> the items to export, converted with the supplied builder on a sender thread
+ */
+public class FhirExporter<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(FhirExporter.class);
+
+    private static final String PROPERTY_PREFIX = FhirExporter.class.getName() + ".";
+
+    /**
+     * Resources in one transaction bundle
+     */
+    public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger(PROPERTY_PREFIX + "chunkSize", 100);
+
+    /**
+     * Transactions posted concurrently
+     */
+    public static final int DEFAULT_SENDERS = Integer.getInteger(PROPERTY_PREFIX + "senders", 2);
+
+    /**
+     * Transactions that may be queued or in progress before export() blocks
+     */
+    public static final int DEFAULT_MAX_PENDING = Integer.getInteger(PROPERTY_PREFIX + "maxPending", 8);
+
+    private final FhirContext fhirContext;
+    private final IGenericClient client;
+    private final Function<T, ? extends IResource> builder;
+    private final Consumer<List<String>> lineSink;
+    private final int chunkSize;
+    private final int maxPending;
+    private final Semaphore pending;
+    private final ExecutorService senders;
+    private final Statistics statistics = new Statistics();
+
+    private final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder(fhirContext.newJsonParser().setPrettyPrint(true));
+        }
+    };
+
+    /**
+     * @param client where transactions are posted, or null to only build and encode resources
+     * @param builder returns the resource for an item or null to skip it
+     * @param lineSink receives the pretty printed JSON of each chunk, or null if nobody is interested
+     */
+    public FhirExporter(final FhirContext fhirContext, final IGenericClient client, final Function<T, ? extends IResource> builder,
+            final Consumer<List<String>> lineSink) {
+        this(fhirContext, client, builder, lineSink, DEFAULT_CHUNK_SIZE, DEFAULT_SENDERS, DEFAULT_MAX_PENDING);
+    }
+
+    public FhirExporter(final FhirContext fhirContext, final IGenericClient client, final Function<T, ? extends IResource> builder,
+            final Consumer<List<String>> lineSink, final int chunkSize, final int senders, final int maxPending) {
+        if (chunkSize < 1 || senders < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("chunkSize, senders and maxPending must be positive");
+        }
+        this.fhirContext = fhirContext;
+        this.client = client;
+        this.builder = builder;
+        this.lineSink = lineSink;
+        this.chunkSize = chunkSize;
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+        this.senders = Executors.newFixedThreadPool(senders, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FHIR Export " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Splits the items into transactions and queues them, blocking while maxPending
+     * transactions are outstanding.
+     */
+    public void export(List<T> items) throws InterruptedException {
+        for (int i = 0; i < items.size(); i += chunkSize) {
+            final List<T> chunk = new ArrayList<T>(items.subList(i, Math.min(items.size(), i + chunkSize)));
+            if (!pending.tryAcquire()) {
+                statistics.stalls.incrementAndGet();
+                pending.acquire();
+            }
+            try {
+                senders.execute(() -> {
+                    try {
+                        send(chunk);
+                    } finally {
+                        pending.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                pending.release();
+                throw e;
+            }
+        }
+    }
+
+    private void send(List<T> chunk) {
+        List<IResource> resources = new ArrayList<IResource>(chunk.size());
+        List<String> lines = null == lineSink ? null : new ArrayList<String>(chunk.size());
+        Encoder encoder = null == lines ? null : encoders.get();
+
+        for (T item : chunk) {
+            IResource resource;
+            try {
+                resource = builder.apply(item);
+            } catch (RuntimeException e) {
+                log.error("unable to create FHIR resource", e);
+                continue;
+            }
+            if (null != resource) {
+                resources.add(resource);
+                if (null != encoder) {
+                    lines.add(encoder.encode(resource));
+                }
+            }
+        }
+
+        if (null != lines && !lines.isEmpty()) {
+            lineSink.accept(lines);
+        }
+
+        if (null != client && !resources.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                client.transaction().withResources(resources).encodedJson().execute();
+                statistics.transactionTime.record(System.nanoTime() - start);
+                statistics.resources.addAndGet(resources.size());
+            } catch (RuntimeException e) {
+                log.error("FHIR transaction of " + resources.size() + " resources failed", e);
+                statistics.failed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Waits until every queued transaction completed.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (pending.tryAcquire(maxPending, timeout, unit)) {
+            pending.release(maxPending);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    private static final class Encoder {
+        private final IParser parser;
+        private final StringWriter buffer = new StringWriter(2048);
+
+        Encoder(IParser parser) {
+            this.parser = parser;
+        }
+
+        String encode(IResource resource) {
+            buffer.getBuffer().setLength(0);
+            try {
+                parser.encodeResourceToWriter(resource, buffer);
+            } catch (IOException e) {
+                // StringWriter does not throw
+                throw new IllegalStateException(e);
+            }
+            return buffer.append('\n').toString();
+        }
+    }
+
+    public static final class Statistics {
+        private final AtomicLong resources = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong stalls = new AtomicLong();
+        private final EventLoop.LatencyHistogram transactionTime = new EventLoop.LatencyHistogram();
+
+        /**
+         * @return resources in successful transactions
+         */
+        public long getResources() {
+            return resources.get();
+        }
+
+        public long getTransactions() {
+            return transactionTime.getCount();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return times export() had to wait for an outstanding transaction
+         */
+        public long getStalls() {
+            return stalls.get();
+        }
+
+        public EventLoop.LatencyHistogram getTransactionTime() {
+            return transactionTime;
+        }
+
+        @Override
+        public String toString() {
+            return "resources=" + getResources() + " failed=" + getFailed() + " stalls=" + getStalls() + " transaction time " + transactionTime;
+        }
+    }
+}
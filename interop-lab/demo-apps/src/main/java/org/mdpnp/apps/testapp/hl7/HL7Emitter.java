@@ -9,15 +9,17 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
@@ -39,7 +41,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import ca.uhn.fhir.model.dstu2.composite.IdentifierDt;
 import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
@@ -56,8 +57,6 @@ import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.app.Connection;
-import ca.uhn.hl7v2.app.Initiator;
-import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.model.v26.datatype.NM;
 import ca.uhn.hl7v2.model.v26.group.ORU_R01_OBSERVATION;
 import ca.uhn.hl7v2.model.v26.group.ORU_R01_ORDER_OBSERVATION;
@@ -68,6 +67,8 @@ import ca.uhn.hl7v2.model.v26.segment.OBX;
 import ca.uhn.hl7v2.model.v26.segment.PID;
 import ca.uhn.hl7v2.parser.Parser;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.rti.dds.subscription.Subscriber;
 
 public class HL7Emitter implements MDSListener, Runnable {
@@ -78,20 +79,42 @@ public class HL7Emitter implements MDSListener, Runnable {
 
     protected static final Logger log = LoggerFactory.getLogger(HL7Emitter.class);
 
+    private static final String PROPERTY_PREFIX = HL7Emitter.class.getName() + ".";
+
+    /**
+     * Observations of one patient that are combined into a single ORU^R01 as repeated OBX
+     * segments; 1 sends every observation in a message of its own.
+     */
+    static final int MAX_OBSERVATIONS_PER_MESSAGE = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "maxObservationsPerMessage", 16));
+
+    /**
+     * Patient and Device resource ids remembered for the FHIR server; the least recently used
+     * are looked up again once this is exceeded.
+     */
+    static final int MAX_CACHED_RESOURCE_IDS = Integer.getInteger(PROPERTY_PREFIX + "maxCachedResourceIds", 1024);
+
     private final HapiContext hl7Context;
     protected final FhirContext fhirContext;
     protected final MDSHandler mdsHandler;
 
     protected Connection hl7Connection;
+    protected HL7TransmitPipeline hl7Pipeline;
     protected IGenericClient fhirClient;
+    protected FhirExporter<NumericSnapshot> fhirExporter;
     protected final ScheduledExecutorService executor;
     
     private final Map<String, String> deviceUdiToPatientMRN = Collections.synchronizedMap(new HashMap<String, String>());
-    private final Map<String, IdDt> patientMRNtoResourceId = Collections.synchronizedMap(new HashMap<String, IdDt>());
-    private final Map<String, IdDt> deviceUDItoResourceId = Collections.synchronizedMap(new HashMap<String, IdDt>());
+    private final Cache<String, IdDt> patientMRNtoResourceId = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RESOURCE_IDS).build();
+    private final Cache<String, IdDt> deviceUDItoResourceId = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RESOURCE_IDS).build();
     
     private final Set<Validation> recentUpdates = Collections.synchronizedSet(new HashSet<>());
 
+    // Latest values of the observed numerics, captured on the FX thread for the HL7 sender
+    private final Map<Validation, NumericSnapshot> latestNumerics = new ConcurrentHashMap<>();
+
+    private final String controlIdPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong controlIds = new AtomicLong();
+
     private final ListenerList<LineEmitterListener> listeners = new ListenerList<LineEmitterListener>(LineEmitterListener.class);
     private final ListenerList<StartStopListener> ssListeners = new ListenerList<StartStopListener>(StartStopListener.class);
 
@@ -137,6 +160,7 @@ public class HL7Emitter implements MDSListener, Runnable {
                         Date dt = param.getNumeric().getPresentation_time();
                         if(null == lastPresentationTime || !lastPresentationTime.equals(dt)) {
                             recentUpdates.add(param);
+                            latestNumerics.put(param, new NumericSnapshot(param));
                             lastPresentationTime = dt;
                         } else {
                             log.trace("Ignoring a redundant " + param.getNumeric().getMetric_id());
@@ -164,6 +188,7 @@ public class HL7Emitter implements MDSListener, Runnable {
                 try {
 
                     hl7Connection = hl7Context.newClient(host, port, false);
+                    hl7Pipeline = new HL7TransmitPipeline(hl7Connection.getInitiator());
                     ssListeners.fire(started);
 
                 } catch (HL7Exception e) {
@@ -182,6 +207,10 @@ public class HL7Emitter implements MDSListener, Runnable {
             // just to demo the ability to compose HL7 messages
             ssListeners.fire(started);
         }
+        if (Type.FHIR_DSTU2.equals(type) && null == fhirExporter) {
+            fhirExporter = new FhirExporter<NumericSnapshot>(fhirContext, fhirClient, this::fhirObservation,
+                    (lines) -> Platform.runLater(() -> lines.forEach((t) -> listeners.fire(new DispatchLine(t)))));
+        }
         if(null == emit) {
             emit = executor.scheduleAtFixedRate(this, 0L, interval, TimeUnit.MILLISECONDS);
         }
@@ -193,10 +222,20 @@ public class HL7Emitter implements MDSListener, Runnable {
             emit = null;
         }
         ssListeners.fire(stopped);
+        if (hl7Pipeline != null) {
+            log.info("HL7 transmission " + hl7Pipeline.getStatistics());
+            hl7Pipeline.shutdown();
+            hl7Pipeline = null;
+        }
         if (hl7Connection != null) {
             hl7Connection.close();
             hl7Connection = null;
         }
+        if (fhirExporter != null) {
+            log.info("FHIR export " + fhirExporter.getStatistics());
+            fhirExporter.shutdown();
+            fhirExporter = null;
+        }
         if (fhirClient != null) {
             // TODO is there an active connection to disconnect?
             fhirClient = null;
@@ -264,52 +303,47 @@ public class HL7Emitter implements MDSListener, Runnable {
     }
 
     protected void sendHL7v26() throws InterruptedException {
-        List<ORU_R01> bundle = new ArrayList<ORU_R01>();
-        CountDownLatch latch = new CountDownLatch(1);
-        Platform.runLater(()-> {
-            try {
-                validationOracle.forEach((fx)-> {
-                    if(fx.getNumeric().getMetric_id().startsWith("MDC_")) {
-                        ORU_R01 obs;
-                        try {
-                            obs = hl7Observation(fx.getNumeric());
-                            if(null != obs) {
-                                bundle.add(obs);
-                            }
-                        } catch (Exception e) {
-                            log.error("unable to create HL7 observation", e);
-                        }
-
-                    }
-                });
-            } finally {
-                latch.countDown();
+        // Group the current values by patient without a round trip to the FX thread
+        Map<String, List<NumericSnapshot>> byPatient = new LinkedHashMap<String, List<NumericSnapshot>>();
+        latestNumerics.values().forEach((x) -> {
+            if (x.metricId.startsWith(METRIC_PREFIX)) {
+                byPatient.computeIfAbsent(deviceUdiToPatientMRN.get(x.udi), (mrn) -> new ArrayList<NumericSnapshot>()).add(x);
             }
         });
-        latch.await();
 
         Parser parser = hl7Context.getPipeParser();
-     // Now, let's encode the message and look at the output
-        Connection hapiConnection = HL7Emitter.this.hl7Connection;
-        
-        bundle.forEach((x)->{
-            try {
-                String encodedMessage = parser.encode(x);
-                listeners.fire(new DispatchLine(encodedMessage));
-                if (null != hapiConnection) {
-                    Initiator initiator = hapiConnection.getInitiator();
-                    Message response = initiator.sendAndReceive(x);
-                    String responseString = parser.encode(response);
-                    log.debug("Received Response:" + responseString);
+        HL7TransmitPipeline pipeline = HL7Emitter.this.hl7Pipeline;
+
+        for (Map.Entry<String, List<NumericSnapshot>> patient : byPatient.entrySet()) {
+            List<NumericSnapshot> numerics = patient.getValue();
+            for (int i = 0; i < numerics.size(); i += MAX_OBSERVATIONS_PER_MESSAGE) {
+                try {
+                    ORU_R01 x = hl7Observation(patient.getKey(), numerics.subList(i, Math.min(numerics.size(), i + MAX_OBSERVATIONS_PER_MESSAGE)));
+                    String encodedMessage = parser.encode(x);
+                    listeners.fire(new DispatchLine(encodedMessage));
+                    if (null != pipeline) {
+                        pipeline.submit(x);
+                    }
+                } catch (HL7Exception | IOException e) {
+                    log.error("unable to send HL7 message", e);
                 }
-            } catch(Exception e) {
-                log.error("unable to send HL7 message", e);
             }
-        });
+        }
+        if (null != pipeline) {
+            log.debug("HL7 transmission {}", pipeline.getStatistics());
+        }
     }
-    
+
+    /**
+     * @return counts and ACK latency of the current HL7 connection, or null if there is none
+     */
+    public HL7TransmitPipeline.Statistics getHL7Statistics() {
+        HL7TransmitPipeline pipeline = hl7Pipeline;
+        return null == pipeline ? null : pipeline.getStatistics();
+    }
+
     public IdDt getDeviceResource(String udi) {
-        IdDt resourceId = deviceUDItoResourceId.get(udi);
+        IdDt resourceId = deviceUDItoResourceId.getIfPresent(udi);
         if(null == resourceId && fhirClient != null) {
             Device device = new Device();
             device.setIdentifier(Arrays.asList(new IdentifierDt[] {new IdentifierDt(PTID_SYSTEM, udi)}));
@@ -327,7 +361,7 @@ public class HL7Emitter implements MDSListener, Runnable {
     }
     
     public IdDt getPatientResource(String mrn) {
-        IdDt resourceId = patientMRNtoResourceId.get(mrn);
+        IdDt resourceId = patientMRNtoResourceId.getIfPresent(mrn);
         if(null == resourceId && fhirClient != null) {
             ca.uhn.fhir.model.api.Bundle bundle = fhirClient
                     .search()
@@ -351,6 +385,11 @@ public class HL7Emitter implements MDSListener, Runnable {
     }
     
     public ORU_R01 hl7Observation(NumericFx data) throws HL7Exception, IOException {
+        NumericSnapshot snapshot = new NumericSnapshot(data, false);
+        return hl7Observation(deviceUdiToPatientMRN.get(snapshot.udi), Collections.singletonList(snapshot));
+    }
+
+    ORU_R01 hl7Observation(String mrn, List<NumericSnapshot> numerics) throws HL7Exception, IOException {
         ORU_R01 r01 = new ORU_R01();
         // ORU is an observation
         // Event R01 is an unsolicited observation message
@@ -361,52 +400,59 @@ public class HL7Emitter implements MDSListener, Runnable {
         MSH mshSegment = r01.getMSH();
         mshSegment.getSendingApplication().getNamespaceID().setValue("ICE");
         mshSegment.getSequenceNumber().setValue("123");
+        // Unique per message so that pipelined ACKs can be told apart
+        mshSegment.getMessageControlID().setValue(controlIdPrefix + controlIds.incrementAndGet());
 
         // Populate the PID Segment
         ORU_R01_PATIENT patient = r01.getPATIENT_RESULT().getPATIENT();
         PID pid = patient.getPID();
         pid.getPatientName(0).getFamilyName().getSurname().setValue("Doe");
         pid.getPatientName(0).getGivenName().setValue("John");
-        pid.getPatientIdentifierList(0).getIDNumber().setValue("123456");
+        pid.getPatientIdentifierList(0).getIDNumber().setValue(null == mrn ? "123456" : mrn);
 
         ORU_R01_ORDER_OBSERVATION orderObservation = r01.getPATIENT_RESULT().getORDER_OBSERVATION();
 
         orderObservation.getOBR().getObr7_ObservationDateTime().setValueToSecond(new Date());
 
-        ORU_R01_OBSERVATION observation = orderObservation.getOBSERVATION(0);
-
-        // Populate the first OBX
-        OBX obx = observation.getOBX();
-        // obx.getSetIDOBX().setValue("1");
-        obx.getObservationIdentifier().getIdentifier().setValue("0002-4182");
-        obx.getObservationIdentifier().getText().setValue("HR");
-        obx.getObservationIdentifier().getCwe3_NameOfCodingSystem().setValue("MDIL");
-        obx.getObservationSubID().setValue("0");
-        obx.getUnits().getIdentifier().setValue("0004-0aa0");
-        obx.getUnits().getText().setValue("bpm");
-        obx.getUnits().getCwe3_NameOfCodingSystem().setValue("MDIL");
-        obx.getObservationResultStatus().setValue("F");
-
-        // The first OBX has a value type of CE. So first, we populate OBX-2
-        // with "CE"...
-        obx.getValueType().setValue("NM");
-
-        // "NM" is Numeric
-        NM nm = new NM(r01);
-        nm.setValue(Float.toString(data.getValue()));
-
-        obx.getObservationValue(0).setData(nm);
+        for (int i = 0; i < numerics.size(); i++) {
+            NumericSnapshot data = numerics.get(i);
+            ORU_R01_OBSERVATION observation = orderObservation.getOBSERVATION(i);
+
+            OBX obx = observation.getOBX();
+            obx.getSetIDOBX().setValue(Integer.toString(i + 1));
+            // coded as in the FHIR observations so that a batch of different metrics can be told apart
+            obx.getObservationIdentifier().getIdentifier().setValue(data.metricId);
+            obx.getObservationIdentifier().getText().setValue(data.metricId);
+            obx.getObservationIdentifier().getCwe3_NameOfCodingSystem().setValue("OpenICE");
+            obx.getObservationSubID().setValue(Integer.toString(i));
+            obx.getUnits().getIdentifier().setValue(data.unitId);
+            obx.getUnits().getText().setValue(data.unitId);
+            obx.getUnits().getCwe3_NameOfCodingSystem().setValue("OpenICE");
+            obx.getObservationResultStatus().setValue("F");
+            if (null != data.presentationTime) {
+                obx.getObx14_DateTimeOfTheObservation().setValueToSecond(data.presentationTime);
+            }
+
+            // "NM" is Numeric
+            obx.getValueType().setValue("NM");
+            NM nm = new NM(r01);
+            nm.setValue(Float.toString(data.value));
+
+            obx.getObservationValue(0).setData(nm);
+        }
         return r01;
     }
     
     
     Observation fhirObservation(Validation validation) {
-        NumericFx data = validation.getNumeric();
-        
+        return fhirObservation(new NumericSnapshot(validation));
+    }
+
+    Observation fhirObservation(NumericSnapshot data) {
         Observation obs = new Observation();
-        final String mrn = deviceUdiToPatientMRN.get(data.getUnique_device_identifier());
+        final String mrn = deviceUdiToPatientMRN.get(data.udi);
         if(null == mrn) {
-            log.debug("No known mrn for udi="+data.getUnique_device_identifier());
+            log.debug("No known mrn for udi="+data.udi);
         }
         
         
@@ -418,17 +464,17 @@ public class HL7Emitter implements MDSListener, Runnable {
             obs.setSubject(new ResourceReferenceDt(resourceId));
         }
         
-        IdDt deviceResourceId = getDeviceResource(data.getUnique_device_identifier());
+        IdDt deviceResourceId = getDeviceResource(data.udi);
         if(null == deviceResourceId) {
-            log.debug("No known device resource id for udi="+data.getUnique_device_identifier());
+            log.debug("No known device resource id for udi="+data.udi);
         } else {
             obs.setDevice(new ResourceReferenceDt(deviceResourceId));
         }
         
-        obs.setValue(new QuantityDt(data.getValue()).setUnits(data.getUnit_id()).setCode(data.getMetric_id()).setSystem("OpenICE"));
+        obs.setValue(new QuantityDt(data.value).setUnits(data.unitId).setCode(data.metricId).setSystem("OpenICE"));
 //        obs.addIdentifier().setSystem("urn:info.openice").setValue(uuidFromSequence(sampleInfo.publication_sequence_number).toString());
-        obs.setApplies(new DateTimeDt(data.getPresentation_time(), TemporalPrecisionEnum.SECOND, TimeZone.getTimeZone("UTC")));
-        obs.setStatus(validation.isValidated()?ObservationStatusEnum.FINAL:ObservationStatusEnum.PRELIMINARY);
+        obs.setApplies(new DateTimeDt(data.presentationTime, TemporalPrecisionEnum.SECOND, TimeZone.getTimeZone("UTC")));
+        obs.setStatus(data.validated?ObservationStatusEnum.FINAL:ObservationStatusEnum.PRELIMINARY);
 
         
         return obs;
@@ -439,31 +485,35 @@ public class HL7Emitter implements MDSListener, Runnable {
     
     
     public void sendFHIR() throws InterruptedException {
-        List<IResource> bundle = new ArrayList<IResource>();
-        List<String> jsonStrings = new ArrayList<String>();
+        List<NumericSnapshot> updates;
         synchronized(recentUpdates) {
+            updates = new ArrayList<NumericSnapshot>(recentUpdates.size());
+            // Values as captured on the FX thread when the update was observed
             recentUpdates.forEach((x) -> {
-                Observation obs = fhirObservation(x);
-                if(null != obs) {
-                    bundle.add(obs);
-                    String jsonEncoded = fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(obs);
-                    jsonStrings.add(jsonEncoded + "\n");
+                NumericSnapshot snapshot = latestNumerics.get(x);
+                if (null != snapshot) {
+                    updates.add(snapshot);
                 }
             });
             log.debug("flushing {} FHIR observations", recentUpdates.size());
             recentUpdates.clear();
         }
-        
-        Platform.runLater(() ->
-        jsonStrings.forEach((t)->listeners.fire(new DispatchLine(t))));
-        
-        IGenericClient client = fhirClient;
-        
-        if (null != client) {
-            client.transaction().withResources(bundle).encodedJson().execute();
+
+        FhirExporter<NumericSnapshot> exporter = fhirExporter;
+        if (null != exporter) {
+            // Blocks only while the exporter is saturated with outstanding transactions
+            exporter.export(updates);
         }
     }
 
+    /**
+     * @return counts and transaction times of the FHIR export, or null if there is none
+     */
+    public FhirExporter.Statistics getFhirStatistics() {
+        FhirExporter<NumericSnapshot> exporter = fhirExporter;
+        return null == exporter ? null : exporter.getStatistics();
+    }
+
     Set<Validation> getRecentUpdates() {
         return recentUpdates;
     }
@@ -492,12 +542,41 @@ public class HL7Emitter implements MDSListener, Runnable {
     private void add(Validation validation) {
         if(validation.getNumeric().getMetric_id().startsWith(METRIC_PREFIX)) {
             validationObserver.attachListener(validation);
+            latestNumerics.put(validation, new NumericSnapshot(validation));
         }
     }
     private void remove(Validation validation) {
         // Must not detach what we did not attach
         if(validation.getNumeric().getMetric_id().startsWith(METRIC_PREFIX)) {
             validationObserver.detachListener(validation);
+            latestNumerics.remove(validation);
+        }
+    }
+
+    /**
+     * Immutable copy of the NumericFx fields that go into an OBX so that messages can be
+     * built away from the FX thread.
+     */
+    static final class NumericSnapshot {
+        final String udi;
+        final String metricId;
+        final String unitId;
+        final float value;
+        final Date presentationTime;
+        final boolean validated;
+
+        NumericSnapshot(Validation validation) {
+            this(validation.getNumeric(), validation.isValidated());
+        }
+
+        NumericSnapshot(NumericFx numeric, boolean validated) {
+            this.udi = numeric.getUnique_device_identifier();
+            this.metricId = numeric.getMetric_id();
+            this.unitId = numeric.getUnit_id();
+            this.value = numeric.getValue();
+            Date dt = numeric.getPresentation_time();
+            this.presentationTime = null == dt ? null : new Date(dt.getTime());
+            this.validated = validated;
         }
     }
 
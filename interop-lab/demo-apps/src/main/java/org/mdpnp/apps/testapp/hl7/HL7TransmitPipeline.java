@@ -0,0 +1,232 @@
+package org.mdpnp.apps.testapp.hl7;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.app.Initiator;
+import ca.uhn.hl7v2.llp.LLPException;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.util.Terser;
+
+/**
+ * Keeps up to a fixed window of HL7 messages in flight on one MLLP connection instead of
+ * waiting for each ACK before sending the next message.
+ * <p>
+ * The HAPI initiator may be shared between threads; it correlates every ACK with the
+ * outstanding request by message control id (MSH-10 / MSA-2). Each sender thread here
+ * additionally checks that correlation and the acknowledgment code, and retransmits
+ * (with the same control id) messages that were rejected or not acknowledged.
+ */
+public class HL7TransmitPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(HL7TransmitPipeline.class);
+
+    private static final String PROPERTY_PREFIX = HL7TransmitPipeline.class.getName() + ".";
+
+    /**
+     * Messages that may await an ACK at the same time
+     */
+    public static final int DEFAULT_WINDOW = Integer.getInteger(PROPERTY_PREFIX + "window", 8);
+
+    /**
+     * Retransmissions of a message that was rejected or not acknowledged before it is dropped
+     */
+    public static final int DEFAULT_MAX_RETRIES = Integer.getInteger(PROPERTY_PREFIX + "maxRetries", 2);
+
+    private final Initiator initiator;
+    private final int window;
+    private final int maxRetries;
+    private final Semaphore inFlight;
+    private final ExecutorService senders;
+    private final Statistics statistics = new Statistics();
+
+    public HL7TransmitPipeline(final Initiator initiator) {
+        this(initiator, DEFAULT_WINDOW, DEFAULT_MAX_RETRIES);
+    }
+
+    public HL7TransmitPipeline(final Initiator initiator, final int window, final int maxRetries) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1, not " + window);
+        }
+        this.initiator = initiator;
+        this.window = window;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.inFlight = new Semaphore(window);
+        this.senders = Executors.newFixedThreadPool(window, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "HL7 Transmit " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queues a message for transmission, blocking while the window is full.
+     *
+     * @param message must carry a message control id (MSH-10) unique among messages in flight
+     */
+    public void submit(final Message message) throws InterruptedException, HL7Exception {
+        final String controlId = new Terser(message).get("/MSH-10");
+        if (null == controlId || controlId.isEmpty()) {
+            throw new HL7Exception("Message has no control id (MSH-10)");
+        }
+        inFlight.acquire();
+        try {
+            senders.execute(() -> {
+                try {
+                    transmit(message, controlId);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void transmit(Message message, String controlId) {
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                statistics.retries.incrementAndGet();
+            }
+            statistics.sent.incrementAndGet();
+            final long start = System.nanoTime();
+            try {
+                Message response = initiator.sendAndReceive(message);
+                Terser terser = new Terser(response);
+                String ackCode = terser.get("/MSA-1");
+                String acknowledgedId = terser.get("/MSA-2");
+                if (!controlId.equals(acknowledgedId)) {
+                    log.warn("Expected ACK for " + controlId + " but received one for " + acknowledgedId);
+                    statistics.rejected.incrementAndGet();
+                } else if ("AA".equals(ackCode) || "CA".equals(ackCode)) {
+                    statistics.ackLatency.record(System.nanoTime() - start);
+                    statistics.acknowledged.incrementAndGet();
+                    return;
+                } else {
+                    log.debug("Message " + controlId + " acknowledged with " + ackCode);
+                    statistics.rejected.incrementAndGet();
+                }
+            } catch (HL7Exception | LLPException | IOException e) {
+                log.warn("Unable to send HL7 message " + controlId, e);
+                statistics.errors.incrementAndGet();
+            }
+        }
+        log.error("Giving up on HL7 message " + controlId + " after " + (1 + maxRetries) + " attempts");
+        statistics.failed.incrementAndGet();
+    }
+
+    /**
+     * Waits until every submitted message was acknowledged or given up on.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (inFlight.tryAcquire(window, timeout, unit)) {
+            inFlight.release(window);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getInFlight() {
+        return window - inFlight.availablePermits();
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    public static final class Statistics {
+        private final long startedAt = System.nanoTime();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong acknowledged = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final EventLoop.LatencyHistogram ackLatency = new EventLoop.LatencyHistogram();
+
+        /**
+         * @return transmissions including retransmissions
+         */
+        public long getSent() {
+            return sent.get();
+        }
+
+        public long getAcknowledged() {
+            return acknowledged.get();
+        }
+
+        /**
+         * @return negative or mismatched acknowledgments
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * @return transmissions that failed without any acknowledgment
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * @return messages given up on after the last retry
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return acknowledged messages per second since the pipeline was created
+         */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - startedAt;
+            return elapsed <= 0L ? 0.0 : acknowledged.get() * 1E9 / elapsed;
+        }
+
+        /**
+         * @return time from sending a message to receiving its positive ACK
+         */
+        public EventLoop.LatencyHistogram getAckLatency() {
+            return ackLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent=%d acked=%d rejected=%d errors=%d retries=%d failed=%d throughput=%.1f/s ack latency %s",
+                    getSent(), getAcknowledged(), getRejected(), getErrors(), getRetries(), getFailed(), getThroughput(), ackLatency);
+        }
+    }
+}
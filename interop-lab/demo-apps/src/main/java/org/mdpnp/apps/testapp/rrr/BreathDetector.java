@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.apps.testapp.rrr;
+
+/**
+ * Incremental respiratory rate estimation from a respiratory waveform (capnogram or
+ * thoracic impedance).
+ * <p>
+ * Samples are fed in time order through {@link #sample(long, float)}. The minimum and
+ * maximum over the trailing window are maintained with monotonic deques so each sample
+ * costs amortized constant time regardless of window length or sample rate. A breath is
+ * counted when the signal rises through the threshold (placed {@code thresholdFraction}
+ * of the way down from the window maximum toward the minimum); it must fall back below the
+ * threshold by the hysteresis band before another breath can be counted. The rate is
+ * derived from the mean of the most recent breath intervals.
+ * <p>
+ * Instances are not thread safe.
+ *
+ */
+public class BreathDetector {
+    private final long windowMs;
+    private final float hysteresisFraction;
+    private volatile float thresholdFraction;
+
+    // monotonic deques of (time, value); maxima non-increasing, minima non-decreasing
+    private long[] maxTimes = new long[64], minTimes = new long[64];
+    private float[] maxValues = new float[64], minValues = new float[64];
+    private int maxHead, maxSize, minHead, minSize;
+
+    private boolean above;
+    private long lastCrossing = Long.MIN_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+
+    private final long[] intervals;
+    private int intervalCount, intervalNext;
+    private long intervalSum;
+
+    /**
+     * @param windowMs span of the trailing window over which minimum and maximum are tracked
+     * @param thresholdFraction position of the threshold below the maximum as a fraction of the range
+     * @param hysteresisFraction width of the hysteresis band as a fraction of the range
+     * @param intervalsToAverage number of recent breath intervals averaged into the rate
+     */
+    public BreathDetector(long windowMs, float thresholdFraction, float hysteresisFraction, int intervalsToAverage) {
+        if (windowMs <= 0 || intervalsToAverage < 1) {
+            throw new IllegalArgumentException("windowMs=" + windowMs + " intervalsToAverage=" + intervalsToAverage);
+        }
+        this.windowMs = windowMs;
+        this.thresholdFraction = thresholdFraction;
+        this.hysteresisFraction = hysteresisFraction;
+        this.intervals = new long[intervalsToAverage];
+    }
+
+    public void setThresholdFraction(float thresholdFraction) {
+        this.thresholdFraction = thresholdFraction;
+    }
+
+    public float getThresholdFraction() {
+        return thresholdFraction;
+    }
+
+    /**
+     * @return time of the most recent sample consumed, or Long.MIN_VALUE if none
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public void reset() {
+        maxHead = maxSize = minHead = minSize = 0;
+        above = false;
+        lastCrossing = Long.MIN_VALUE;
+        lastTime = Long.MIN_VALUE;
+        intervalCount = intervalNext = 0;
+        intervalSum = 0L;
+    }
+
+    public void sample(long time, float value) {
+        if (time < lastTime) {
+            // out of order; the deques rely upon increasing time
+            return;
+        }
+        lastTime = time;
+        pushMax(time, value);
+        pushMin(time, value);
+        final long expired = time - windowMs;
+        while (maxTimes[maxHead] <= expired && maxSize > 1) {
+            maxHead = (maxHead + 1) & (maxTimes.length - 1);
+            maxSize--;
+        }
+        while (minTimes[minHead] <= expired && minSize > 1) {
+            minHead = (minHead + 1) & (minTimes.length - 1);
+            minSize--;
+        }
+        final float max = maxValues[maxHead], min = minValues[minHead];
+        final float range = max - min;
+        if (!(range > 0f)) {
+            return;
+        }
+        final float threshold = max - thresholdFraction * range;
+        final float band = 0.5f * hysteresisFraction * range;
+        if (above) {
+            if (value < threshold - band) {
+                above = false;
+            }
+        } else if (value >= threshold + band) {
+            above = true;
+            if (lastCrossing != Long.MIN_VALUE) {
+                addInterval(time - lastCrossing);
+            }
+            lastCrossing = time;
+        }
+    }
+
+    private void addInterval(long interval) {
+        if (intervalCount == intervals.length) {
+            intervalSum -= intervals[intervalNext];
+        } else {
+            intervalCount++;
+        }
+        intervals[intervalNext] = interval;
+        intervalSum += interval;
+        intervalNext = (intervalNext + 1) % intervals.length;
+    }
+
+    /**
+     * @return breaths per minute, or 0 if fewer than two breaths have been detected
+     */
+    public double getRate() {
+        if (intervalCount == 0 || intervalSum <= 0L) {
+            return 0.0;
+        }
+        return 60000.0 * intervalCount / intervalSum;
+    }
+
+    private void pushMax(long time, float value) {
+        int mask = maxTimes.length - 1;
+        while (maxSize > 0 && maxValues[(maxHead + maxSize - 1) & mask] <= value) {
+            maxSize--;
+        }
+        if (maxSize == maxTimes.length) {
+            growMax();
+            mask = maxTimes.length - 1;
+        }
+        int tail = (maxHead + maxSize++) & mask;
+        maxTimes[tail] = time;
+        maxValues[tail] = value;
+    }
+
+    private void pushMin(long time, float value) {
+        int mask = minTimes.length - 1;
+        while (minSize > 0 && minValues[(minHead + minSize - 1) & mask] >= value) {
+            minSize--;
+        }
+        if (minSize == minTimes.length) {
+            growMin();
+            mask = minTimes.length - 1;
+        }
+        int tail = (minHead + minSize++) & mask;
+        minTimes[tail] = time;
+        minValues[tail] = value;
+    }
+
+    private void growMax() {
+        long[] t = new long[maxTimes.length << 1];
+        float[] v = new float[t.length];
+        for (int i = 0; i < maxSize; i++) {
+            int j = (maxHead + i) & (maxTimes.length - 1);
+            t[i] = maxTimes[j];
+            v[i] = maxValues[j];
+        }
+        maxTimes = t;
+        maxValues = v;
+        maxHead = 0;
+    }
+
+    private void growMin() {
+        long[] t = new long[minTimes.length << 1];
+        float[] v = new float[t.length];
+        for (int i = 0; i < minSize; i++) {
+            int j = (minHead + i) & (minTimes.length - 1);
+            t[i] = minTimes[j];
+            v[i] = minValues[j];
+        }
+        minTimes = t;
+        minValues = v;
+        minHead = 0;
+    }
+}
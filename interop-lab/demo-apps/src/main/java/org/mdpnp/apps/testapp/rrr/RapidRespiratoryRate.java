@@ -47,7 +47,6 @@ import org.mdpnp.devices.simulation.AbstractSimulatedDevice;
 import org.mdpnp.guis.waveform.SampleArrayWaveformSource;
 import org.mdpnp.guis.waveform.WaveformCanvas;
 import org.mdpnp.guis.waveform.WaveformRenderer;
-import org.mdpnp.guis.waveform.WaveformSource.WaveformIterator;
 import org.mdpnp.guis.waveform.javafx.JavaFXWaveformCanvas;
 import org.mdpnp.guis.waveform.javafx.JavaFXWaveformPane;
 import org.mdpnp.rtiapi.data.EventLoop;
@@ -195,6 +194,8 @@ public class RapidRespiratoryRate implements Runnable {
                     ice.SampleArray keyHolder = new ice.SampleArray();
                     model.getReader().get_key_value(keyHolder, newValue.getHandle());
                     source = new SampleArrayWaveformSource(model.getReader(), keyHolder);
+                    estimator = new RespiratoryRateEstimator(source, new BreathDetector(WINDOW_MS,
+                            (float) (thresholdSlider.getValue() / 100.0), HYSTERESIS, INTERVALS_TO_AVERAGE));
                 }
 //                wavePanel.getData().clear();
 //                Series<Number,Number> series = data.getSeries(newValue.getHandle());
@@ -220,6 +221,7 @@ public class RapidRespiratoryRate implements Runnable {
     private ObservableList<SampleArrayFx> filteredModel;
     
     private SampleArrayWaveformSource source;
+    private RespiratoryRateEstimator estimator;
     private final WaveformRenderer renderer = new WaveformRenderer();
     private WaveformCanvas canvas;
     private Timeline waveformRender;
@@ -238,74 +240,18 @@ public class RapidRespiratoryRate implements Runnable {
     
 
 
+    private static final long WINDOW_MS = 10000L;
+    private static final float HYSTERESIS = 0.1f;
+    private static final int INTERVALS_TO_AVERAGE = 4;
+
     private double rr;
     
-    protected float min, max;
-    protected Long lastCrossing, lastInterval;
-    protected Float lastValue = null;
-    
     @Override
     public void run() {
-        SampleArrayWaveformSource source = this.source;
-        if(source != null) {
-            source.iterate(new WaveformIterator() {
-
-                @Override
-                public void begin() {
-                    min = Float.MAX_VALUE;
-                    max = Float.MIN_VALUE;
-                }
-
-                @Override
-                public void sample(long time, float value) {
-                    if(value > max) {
-                        max = value;
-                    } else if(value < min) {
-                        min = value;
-                    }
-                }
-
-                @Override
-                public void end() {
-                    
-                }
-                
-            });
-            final double threshold = max - 1f * thresholdSlider.getValue() / 100f * (max - min);
-            source.iterate(new WaveformIterator() {
-
-                @Override
-                public void begin() {
-                    lastCrossing = null;
-                    lastInterval = null;
-                    lastValue = null;
-                }
-
-                @Override
-                public void sample(long time, float value) {
-                    if(null != lastValue) {
-                        if(value >= threshold && lastValue < threshold) {
-                            if(lastCrossing != null) {
-                                lastInterval = time - lastCrossing;
-                            }
-                            lastCrossing = time;
-                        }
-                        
-                    }
-                    lastValue = value;
-                }
-
-                @Override
-                public void end() {
-                    // ms per breath to breaths/ms
-                    if(null != lastInterval) {
-                        rr = Math.round(1.0 / (lastInterval / 60000.0));
-                    }
-//                    System.err.println("lastInterval="+lastInterval+ " lastCrossing="+lastCrossing+ " rr="+rr);
-                    
-                }
-                
-            });
+        RespiratoryRateEstimator estimator = this.estimator;
+        if(estimator != null) {
+            estimator.getDetector().setThresholdFraction((float) (thresholdSlider.getValue() / 100.0));
+            rr = Math.round(estimator.update());
         } else {
             rr = 0;
         }
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.apps.testapp.rrr;
+
+import org.mdpnp.guis.waveform.WaveformSource;
+
+/**
+ * Feeds a {@link BreathDetector} from a waveform source, consuming on each
+ * {@link #update()} only those samples newer than any already consumed. Holds no GUI
+ * state so that one process may run an estimator per SampleArray instance.
+ *
+ */
+public class RespiratoryRateEstimator implements WaveformSource.WaveformIterator {
+    private final WaveformSource source;
+    private final BreathDetector detector;
+    private long consumed = Long.MIN_VALUE;
+
+    public RespiratoryRateEstimator(WaveformSource source, BreathDetector detector) {
+        this.source = source;
+        this.detector = detector;
+    }
+
+    public WaveformSource getSource() {
+        return source;
+    }
+
+    public BreathDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * Consumes newly arrived samples.
+     * @return the current estimate in breaths per minute
+     */
+    public synchronized double update() {
+        source.iterate(this, consumed == Long.MIN_VALUE ? Long.MIN_VALUE : consumed + 1L, Long.MAX_VALUE);
+        return detector.getRate();
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void sample(long time, float value) {
+        // sources that cannot iterate a window replay samples already consumed
+        if (time > consumed) {
+            consumed = time;
+            detector.sample(time, value);
+        }
+    }
+
+    @Override
+    public void end() {
+    }
+}
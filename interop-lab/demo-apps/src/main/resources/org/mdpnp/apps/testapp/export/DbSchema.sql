@@ -18,4 +18,19 @@ CREATE TABLE OBSERVATION_VALUES (
         OBSERVATION VARCHAR(255)
         );
 
+CREATE TABLE WAVEFORM_VALUES (
+        DEVICE_ID VARCHAR(25),
+        METRIC_ID VARCHAR(25),
+        INSTANCE_ID INTEGER,
+        START_TICK TIMESTAMP,
+        PATIENT_ID VARCHAR(25),
+        FREQUENCY INTEGER,
+        SAMPLES DOUBLE ARRAY
+        );
+
+CREATE VIEW WAVEFORM_SAMPLES AS
+        SELECT W.DEVICE_ID, W.METRIC_ID, W.INSTANCE_ID, W.START_TICK, W.PATIENT_ID, W.FREQUENCY,
+        S.SAMPLE_INDEX, (S.SAMPLE_INDEX - 1) * 1000.0 / W.FREQUENCY AS OFFSET_MS, S.SAMPLE_VALUE
+        FROM WAVEFORM_VALUES W, UNNEST(W.SAMPLES) WITH ORDINALITY AS S(SAMPLE_VALUE, SAMPLE_INDEX);
+
 
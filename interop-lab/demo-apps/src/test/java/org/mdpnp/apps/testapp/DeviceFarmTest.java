@@ -0,0 +1,62 @@
+package org.mdpnp.apps.testapp;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeviceFarmTest {
+
+    @Test
+    public void testParse() throws Exception {
+        List<DeviceFarm.Entry> entries = DeviceFarm.parse(new StringReader(
+                "# count alias [address]\n" +
+                "\n" +
+                "200 Multiparameter\n" +
+                "  50\tECG_Simulator  \n" +
+                "10 Replay /data/bed 12.csv,4\n"));
+        Assert.assertEquals(3, entries.size());
+
+        Assert.assertEquals(200, entries.get(0).getCount());
+        Assert.assertEquals("Multiparameter", entries.get(0).getAlias());
+        Assert.assertNull(entries.get(0).getAddress());
+
+        Assert.assertEquals(50, entries.get(1).getCount());
+        Assert.assertEquals("ECG_Simulator", entries.get(1).getAlias());
+
+        Assert.assertEquals("Replay", entries.get(2).getAlias());
+        Assert.assertEquals("/data/bed 12.csv,4", entries.get(2).getAddress());
+    }
+
+    @Test
+    public void testParseErrors() throws Exception {
+        for (String spec : new String[] { "Multiparameter", "x Multiparameter", "0 Multiparameter" }) {
+            try {
+                DeviceFarm.parse(new StringReader("# comment\n" + spec + "\n"));
+                Assert.fail(spec);
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("line 2:"));
+            }
+        }
+    }
+
+    @Test
+    public void testPhasesAreSpread() {
+        // any number of devices leaves no gap much wider than the average
+        for (int n : new int[] { 7, 100, 500 }) {
+            double[] phases = new double[n];
+            for (int i = 0; i < n; i++) {
+                phases[i] = DeviceFarm.phase(i);
+                Assert.assertTrue(phases[i] >= 0.0 && phases[i] < 1.0);
+            }
+            Arrays.sort(phases);
+            double maxGap = 1.0 - phases[n - 1] + phases[0];
+            for (int i = 1; i < n; i++) {
+                maxGap = Math.max(maxGap, phases[i] - phases[i - 1]);
+            }
+            Assert.assertTrue(n + " devices gap " + maxGap, maxGap < 3.0 / n);
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package org.mdpnp.apps.testapp;
 
 import ice.DeviceConnectivity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.rti.dds.infrastructure.Duration_t;
+
 /**
  *
  */
@@ -36,6 +44,85 @@ public class DeviceListModelImplTest {
     }
 
 
+    @Test
+    public void testSynchronizationIsBatched() throws Exception {
+
+        final AtomicInteger runLaters = new AtomicInteger();
+        final AtomicLong now = new AtomicLong(1426017249228L);
+        final List<Runnable> later = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        DeviceListModelImpl dlm = new DeviceListModelImpl(null, null, null) {
+
+            @Override
+            protected void runLaterOnPlatform(Runnable r) {
+                runLaters.incrementAndGet();
+                r.run();
+            }
+
+            @Override
+            protected long currentTimeMillis() {
+                return now.get();
+            }
+
+            @Override
+            protected void runLater(Runnable r, long delayMs) {
+                later.add(r);
+                delays.add(delayMs);
+            }
+
+            @Override
+            protected void assertPlatformThread() {
+            }
+        };
+
+        dlm.aliveHeartbeat("12345", "Device", "localhost");
+        Assert.assertEquals(1, runLaters.get());
+
+        // only the first result of a burst gets through within the refresh interval
+        for(int i = 1; i <= 100; i++) {
+            dlm.synchronization("12345", new Duration_t(0, 1000000 * i), new Duration_t(0, 2000000 * i));
+            dlm.synchronization("67890", new Duration_t(0, 1000000 * i), new Duration_t(0, 2000000 * i));
+        }
+        Assert.assertEquals(2, runLaters.get());
+        Device d = dlm.findDevice("12345");
+        Assert.assertEquals(2L, d.getClockDifference());
+        Assert.assertEquals(1L, d.getRoundtripLatency());
+
+        // the rest wait for the end of the interval
+        Assert.assertEquals(1, later.size());
+        Assert.assertEquals(DeviceListModelImpl.SYNCHRONIZATION_REFRESH, (long) delays.get(0));
+        now.addAndGet(DeviceListModelImpl.SYNCHRONIZATION_REFRESH - 1L);
+        dlm.synchronization("12345", new Duration_t(0, 3000000), new Duration_t(0, 4000000));
+        Assert.assertEquals(2, runLaters.get());
+        Assert.assertEquals(1, later.size());
+
+        // and go out together carrying the latest of each device
+        now.incrementAndGet();
+        later.remove(0).run();
+        Assert.assertEquals(3, runLaters.get());
+        Assert.assertEquals(4L, d.getClockDifference());
+        Assert.assertEquals(3L, d.getRoundtripLatency());
+
+        // a lone result within the interval is still applied when it ends
+        now.addAndGet(10L);
+        dlm.synchronization("12345", new Duration_t(0, 5000000), new Duration_t(0, 6000000));
+        Assert.assertEquals(3, runLaters.get());
+        Assert.assertEquals(1, later.size());
+        Assert.assertEquals(DeviceListModelImpl.SYNCHRONIZATION_REFRESH - 10L, (long) delays.get(1));
+        now.addAndGet(DeviceListModelImpl.SYNCHRONIZATION_REFRESH - 10L);
+        later.remove(0).run();
+        Assert.assertEquals(4, runLaters.get());
+        Assert.assertEquals(6L, d.getClockDifference());
+        Assert.assertEquals(5L, d.getRoundtripLatency());
+
+        // after a quiet interval a result is applied at once
+        now.addAndGet(DeviceListModelImpl.SYNCHRONIZATION_REFRESH);
+        dlm.synchronization("12345", new Duration_t(0, 7000000), new Duration_t(0, 8000000));
+        Assert.assertEquals(5, runLaters.get());
+        Assert.assertTrue(later.isEmpty());
+        Assert.assertEquals(8L, d.getClockDifference());
+    }
+
     DeviceListModelImpl createDeviceListModelImpl() {
 
         DeviceListModelImpl v = new DeviceListModelImpl(null, null, null) {
@@ -0,0 +1,113 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CSVFileSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLinesAreWrittenOnClose() throws Exception {
+        File f = new File(folder.getRoot(), "export.csv");
+        CSVFileSink sink = new CSVFileSink(f, 1024 * 1024, 1, CSVFileSink.Fsync.Never, 60000L, 64);
+        sink.open();
+        CSVLine line = new CSVLine();
+        for (int i = 0; i < 100; i++) {
+            line.reset().append('1').append(',').append("DEVICEé").append(',').append(i);
+            sink.writeLine(line.buffer(), line.length());
+        }
+        sink.close();
+
+        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(100, lines.size());
+        Assert.assertEquals("1,DEVICEé,0", lines.get(0));
+        Assert.assertEquals("1,DEVICEé,99", lines.get(99));
+    }
+
+    @Test
+    public void testIdleBufferIsFlushed() throws Exception {
+        File f = new File(folder.getRoot(), "export.csv");
+        CSVFileSink sink = new CSVFileSink(f, 1024 * 1024, 1, CSVFileSink.Fsync.Never, 50L, 1024);
+        sink.open();
+        CSVLine line = new CSVLine();
+        line.reset().append("RECORD");
+        sink.writeLine(line.buffer(), line.length());
+        Assert.assertEquals(0L, f.length());
+        // written by the timer although no further record arrives
+        long giveUp = System.currentTimeMillis() + 5000L;
+        while (f.length() == 0L && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(7L, f.length());
+        sink.close();
+    }
+
+    @Test
+    public void testIdleBufferIsFlushedAfterRoll() throws Exception {
+        File f = new File(folder.getRoot(), "export.csv");
+        CSVFileSink sink = new CSVFileSink(f, 100, 1, CSVFileSink.Fsync.Never, 50L, 1024);
+        sink.open();
+        CSVLine line = new CSVLine();
+        for (int i = 0; i < 11; i++) {
+            line.reset().append("RECORD").append(100 + i);
+            sink.writeLine(line.buffer(), line.length());
+        }
+        Assert.assertTrue(new File(f.getPath() + ".1").exists());
+        line.reset().append("RECORD");
+        sink.writeLine(line.buffer(), line.length());
+        long giveUp = System.currentTimeMillis() + 5000L;
+        while (f.length() == 0L && System.currentTimeMillis() < giveUp) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(7L, f.length());
+        sink.close();
+    }
+
+    @Test
+    public void testRollsBySize() throws Exception {
+        File f = new File(folder.getRoot(), "export.csv");
+        CSVFileSink sink = new CSVFileSink(f, 100, 2, CSVFileSink.Fsync.OnRoll, 60000L, 1024);
+        sink.open();
+        CSVLine line = new CSVLine();
+        for (int i = 0; i < 30; i++) {
+            // 10 bytes per record including the line separator
+            line.reset().append("RECORD").append(100 + i);
+            sink.writeLine(line.buffer(), line.length());
+        }
+        sink.close();
+
+        Assert.assertTrue(new File(f.getPath() + ".1").exists());
+        Assert.assertTrue(new File(f.getPath() + ".2").exists());
+        Assert.assertFalse(new File(f.getPath() + ".3").exists());
+        List<String> newest = Files.readAllLines(f.toPath(), StandardCharsets.US_ASCII);
+        Assert.assertEquals("RECORD129", newest.get(newest.size() - 1));
+        Assert.assertTrue(new File(f.getPath() + ".1").length() <= 110);
+    }
+
+    @Test
+    public void testOpenRollsExistingFile() throws Exception {
+        File f = new File(folder.getRoot(), "export.csv");
+        Files.write(f.toPath(), "previous\n".getBytes(StandardCharsets.US_ASCII));
+        CSVFileSink sink = new CSVFileSink(f, 1024, 1);
+        sink.open();
+        sink.close();
+        Assert.assertEquals(0L, f.length());
+        Assert.assertEquals(9L, new File(f.getPath() + ".1").length());
+    }
+
+    @Test
+    public void testFileSize() {
+        Assert.assertEquals(1024L * 1024L, CSVPersister.toFileSize("1MB"));
+        Assert.assertEquals(5L * 1024L * 1024L * 1024L, CSVPersister.toFileSize("5GB"));
+        Assert.assertEquals(123L, CSVPersister.toFileSize("123"));
+    }
+}
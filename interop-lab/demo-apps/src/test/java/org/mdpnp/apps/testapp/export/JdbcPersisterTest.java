@@ -31,6 +31,7 @@ public class JdbcPersisterTest {
 
             calendar.add(Calendar.MINUTE, 1);
         }
+        p.flush();
 
 
         Connection conn = p.getConnection();
@@ -84,6 +85,7 @@ public class JdbcPersisterTest {
 
             calendar.add(Calendar.MINUTE, 1);
         }
+        p.flush();
 
         Connection conn = p.getConnection();
 
@@ -112,13 +114,78 @@ public class JdbcPersisterTest {
         }
     }
 
+    @Test
+    public void testWaveformRowsAreBatched() throws Exception {
+
+        JdbcPersister p = new JdbcPersisterExt(JdbcPersister.WaveformStorage.Rows);
+        p.start();
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            SampleArrayDataCollector.SampleArrayEvent evt = SampleArrayDataCollector.toEvent("DEVICE", "METRIC", 0, now + 1000 * i,
+                    new Double[] { 1.0, 2.0, 3.0, 4.0 });
+            p.handleDataSampleEvent(evt);
+        }
+        p.flush();
+
+        try {
+            ResultSet rs = p.getConnection().createStatement().executeQuery("select count(*) from VITAL_VALUES");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(40, rs.getInt(1));
+            Assert.assertEquals(40L, p.getRowsWritten());
+        } finally {
+            p.stop();
+        }
+    }
+
+    @Test
+    public void testWaveformArray() throws Exception {
+
+        JdbcPersister p = new JdbcPersisterExt(JdbcPersister.WaveformStorage.Array);
+        p.start();
+
+        long now = System.currentTimeMillis();
+        SampleArrayDataCollector.SampleArrayEvent evt = SampleArrayDataCollector.toEvent("DEVICE", "METRIC", 0, now,
+                new Double[] { 1.0, 2.0, 3.0, 4.0 });
+        p.handleDataSampleEvent(evt);
+        p.flush();
+
+        Connection conn = p.getConnection();
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("select START_TICK,FREQUENCY,SAMPLES from WAVEFORM_VALUES");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(new Timestamp(now - 1000), rs.getTimestamp(1));
+            Assert.assertEquals(4, rs.getInt(2));
+            Object[] samples = (Object[]) rs.getArray(3).getArray();
+            Assert.assertEquals(4, samples.length);
+            Assert.assertEquals(3.0, ((Number) samples[2]).doubleValue(), 0.0001);
+            Assert.assertFalse(rs.next());
+
+            rs = conn.createStatement().executeQuery("select SAMPLE_INDEX,OFFSET_MS,SAMPLE_VALUE from WAVEFORM_SAMPLES order by SAMPLE_INDEX asc");
+            int n = 0;
+            while(rs.next()) {
+                n++;
+                Assert.assertEquals(n, rs.getInt(1));
+                Assert.assertEquals(250.0 * (n - 1), rs.getDouble(2), 0.0001);
+                Assert.assertEquals((double) n, rs.getDouble(3), 0.0001);
+            }
+            Assert.assertEquals(4, n);
+        } finally {
+            p.stop();
+        }
+    }
+
     class JdbcPersisterExt extends JdbcPersister {
 
         final EmbeddedDB db = new EmbeddedDB("jdbc:hsqldb:mem:test");
         final DataSource ds;
 
         JdbcPersisterExt() throws Exception {
-            super();
+            this(JdbcPersister.WaveformStorage.Rows);
+        }
+
+        JdbcPersisterExt(JdbcPersister.WaveformStorage waveformStorage) throws Exception {
+            super(JdbcPersister.DEFAULT_BATCH_SIZE, JdbcPersister.DEFAULT_COMMIT_INTERVAL_MS, JdbcPersister.DEFAULT_CAPACITY, waveformStorage);
             db.setSchemaDef("/org/mdpnp/apps/testapp/export/DbSchema.sql");
             ds = db.getDataSource();
         }
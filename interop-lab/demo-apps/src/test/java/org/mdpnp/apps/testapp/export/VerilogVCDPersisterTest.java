@@ -7,8 +7,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class VerilogVCDPersisterTest {
 
@@ -23,9 +27,10 @@ public class VerilogVCDPersisterTest {
 
         VerilogVCDPersister.OneWavePerVCD p = new VerilogVCDPersister.OneWavePerVCD(null, VerilogVCDPersister.FZ_1MB) {
             @Override
-            protected OutputStream makeStream(String key) {
-                Assert.assertEquals("Invalid file name", "DEVICE0-METRIC0-0", key);
-                return fos;
+            protected WritableByteChannel openChannel(String name, boolean append) {
+                Assert.assertEquals("Invalid file name", "DEVICE0-METRIC0-0", name);
+                Assert.assertFalse(append);
+                return Channels.newChannel(fos);
             }
         };
 
@@ -74,15 +79,16 @@ public class VerilogVCDPersisterTest {
     @Test
     public void testFileSizeEnforcement() throws Exception {
 
-        File f = File.createTempFile("VerilogVCDPersisterTest-", ".vcd");
-        f.deleteOnExit();
-        final OutputStream fos = new FileOutputStream(f);
+        final Map<String, ByteArrayOutputStream> parts = new LinkedHashMap<>();
 
         long sizeLimit=10000;
         VerilogVCDPersister.OneWavePerVCD p = new VerilogVCDPersister.OneWavePerVCD(null, sizeLimit) {
             @Override
-            protected OutputStream makeStream(String key) {
-                return fos;
+            protected WritableByteChannel openChannel(String name, boolean append) {
+                Assert.assertFalse("Nothing should have been closed while idle", append);
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                Assert.assertNull("Part opened twice", parts.put(name, os));
+                return Channels.newChannel(os);
             }
         };
 
@@ -98,9 +104,76 @@ public class VerilogVCDPersisterTest {
 
         p.stop();
 
-        long fileSize = f.length();
-        // allow 1K rounding for the 'last' append
-        Assert.assertTrue("Invalid file size - limit exceeded", Math.abs(sizeLimit-fileSize)<1000);
+        Assert.assertTrue("Data beyond the limit should roll over to another file", parts.size() > 1);
+        Assert.assertTrue(parts.containsKey("DEVICE0-METRIC0-0"));
+        Assert.assertTrue(parts.containsKey("DEVICE0-METRIC0-0.1"));
+
+        int samples = 0;
+        for (ByteArrayOutputStream part : parts.values()) {
+            String text = part.toString();
+            // allow 1K rounding for the 'last' append
+            Assert.assertTrue("Invalid file size - limit exceeded", text.length() < sizeLimit + 1000);
+            Assert.assertTrue("Every part starts with a header", text.startsWith("$date"));
+            for (String line : text.split("\n")) {
+                if (line.startsWith("#")) {
+                    samples++;
+                }
+            }
+        }
+        Assert.assertEquals("No samples should be dropped", 1000, samples);
+    }
+
+    @Test
+    public void testIdleFilesAreReopenedForAppend() throws Exception {
+
+        File root = File.createTempFile("VCD-", "-TEST");
+        root.delete();
+        root.mkdirs();
+
+        try {
+            VerilogVCDPersister.OneWavePerVCD p = new VerilogVCDPersister.OneWavePerVCD(root, VerilogVCDPersister.FZ_1MB, 2);
+            p.start();
+
+            long now = System.currentTimeMillis();
+
+            // Three waves through two open files forces each one to be closed and reopened
+            for (int n = 0; n < 100; n++) {
+                for (int m = 0; m < 3; m++) {
+                    NumericsDataCollector.NumericSampleEvent evt = NumericsDataCollector.toEvent("DEVICE0", "METRIC" + m, 0, now + n * 1000L, mockData(n));
+                    p.persist(evt);
+                }
+            }
+
+            p.stop();
+
+            for (int m = 0; m < 3; m++) {
+                File f = new File(root, "DEVICE0-METRIC" + m + "-0.vcd");
+                Assert.assertTrue(f.exists());
+                int headers = 0, samples = 0;
+                BufferedReader r = new BufferedReader(new FileReader(f));
+                try {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        if (line.startsWith("$date")) {
+                            headers++;
+                        } else if (line.startsWith("#")) {
+                            samples++;
+                        }
+                    }
+                } finally {
+                    r.close();
+                }
+                Assert.assertEquals(1, headers);
+                Assert.assertEquals(100, samples);
+            }
+        }
+        finally {
+            File files[] = root.listFiles();
+            for (File f : files) {
+                f.delete();
+            }
+            root.delete();
+        }
     }
 
     @Test
@@ -0,0 +1,199 @@
+package org.mdpnp.apps.testapp.export;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mdpnp.devices.simulation.replay.Recording;
+
+public class WaveformArchiveTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("WFA-", "-TEST");
+        root.delete();
+        root.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (null != files) {
+            for (File c : files) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    private static float sample(int n) {
+        return (float) Math.sin(n / 20.0);
+    }
+
+    // a 250Hz wave in blocks of 50 samples, one block every 200ms
+    private static void record(WaveformArchive archive, String mrn, long start, int blocks) throws Exception {
+        float[] block = new float[50];
+        for (int b = 0; b < blocks; b++) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = sample(b * block.length + i);
+            }
+            archive.append("DEVICE0", "METRIC0", 0, mrn, 250f, start + (b + 1) * 200L, block, 0, block.length);
+        }
+    }
+
+    @Test
+    public void testRangeQueryAcrossSegments() throws Exception {
+        // small segments so that an hour of data spans several of them
+        WaveformArchive archive = new WaveformArchive(root, 64 * 1024);
+        long start = 1400000000000L;
+        record(archive, "MRN0", start, 18000);
+        archive.close();
+
+        WaveformArchiveReader reader = new WaveformArchiveReader(root);
+        String stream = WaveformArchiveReader.stream("DEVICE0", "METRIC0", 0);
+        Assert.assertEquals(1, reader.getStreams().size());
+        Assert.assertEquals(stream, reader.getStreams().get(0));
+
+        List<WaveformArchiveReader.SegmentInfo> segments = reader.getSegments(stream);
+        Assert.assertTrue(segments.size() > 1);
+        int blocks = 0;
+        for (WaveformArchiveReader.SegmentInfo s : segments) {
+            Assert.assertEquals("MRN0", s.getPatientId());
+            Assert.assertEquals(250f, s.getFrequency(), 0f);
+            Assert.assertFalse(s.isNumeric());
+            blocks += s.getBlockCount();
+        }
+        Assert.assertEquals(18000, blocks);
+
+        // ten seconds in the middle of the recording
+        final long from = start + 1800000L, to = from + 10000L;
+        final List<Long> times = new ArrayList<Long>();
+        int n = reader.read(stream, from, to, (segment, time, values, count) -> {
+            Assert.assertEquals(50, count);
+            int b = (int) ((time - start) / 200L) - 1;
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(sample(b * 50 + i), values[i], 0f);
+            }
+            times.add(time);
+        });
+        // a block's samples precede its time, so the first overlapping block is the one after 'from'
+        Assert.assertEquals(51, n);
+        Assert.assertEquals(from + 200L, (long) times.get(0));
+        Assert.assertEquals(to + 200L, (long) times.get(times.size() - 1));
+        for (int i = 1; i < times.size(); i++) {
+            Assert.assertEquals(times.get(i - 1) + 200L, (long) times.get(i));
+        }
+    }
+
+    @Test
+    public void testNumericsAndPatientChange() throws Exception {
+        WaveformArchive archive = new WaveformArchive(root, 64 * 1024);
+        long start = 1400000000000L;
+        for (int i = 0; i < 100; i++) {
+            archive.append("DEVICE1", "HR", 0, i < 50 ? "MRN0" : "MRN1", start + i * 1000L, 60f + i);
+        }
+        archive.close();
+
+        WaveformArchiveReader reader = new WaveformArchiveReader(root);
+        String stream = WaveformArchiveReader.stream("DEVICE1", "HR", 0);
+        List<WaveformArchiveReader.SegmentInfo> segments = reader.getSegments(stream);
+        Assert.assertEquals(2, segments.size());
+        Assert.assertEquals("MRN0", segments.get(0).getPatientId());
+        Assert.assertEquals("MRN1", segments.get(1).getPatientId());
+        Assert.assertTrue(segments.get(0).isNumeric());
+        Assert.assertEquals(start + 50000L, segments.get(1).getStartTime());
+
+        final List<Float> values = new ArrayList<Float>();
+        reader.read(stream, start + 45000L, start + 54000L, (segment, time, v, count) -> {
+            Assert.assertEquals(1, count);
+            values.add(v[0]);
+        });
+        Assert.assertEquals(10, values.size());
+        Assert.assertEquals(105f, values.get(0), 0f);
+        Assert.assertEquals(114f, values.get(9), 0f);
+    }
+
+    @Test
+    public void testClosedSegmentIsTruncated() throws Exception {
+        WaveformArchive archive = new WaveformArchive(root, 64 * 1024);
+        long start = 1400000000000L;
+        for (int i = 0; i < 3; i++) {
+            archive.append("DEVICE0", "HR", 0, "MRN0", start + i * 1000L, 60f + i);
+        }
+        File[] files = new File(root, WaveformArchive.key("DEVICE0", "HR", 0)).listFiles();
+        Assert.assertEquals(1, files.length);
+        Assert.assertEquals(64 * 1024, files[0].length());
+        archive.close();
+
+        int dataStart = WaveformArchive.HEADER_SIZE + WaveformArchive.indexCapacity(64 * 1024) * WaveformArchive.INDEX_ENTRY_SIZE;
+        Assert.assertEquals(dataStart + 3 * (WaveformArchive.BLOCK_HEADER_SIZE + 4), files[0].length());
+
+        final List<Float> values = new ArrayList<Float>();
+        WaveformArchiveReader reader = new WaveformArchiveReader(root);
+        int n = reader.read(WaveformArchiveReader.stream("DEVICE0", "HR", 0), start, start + 3000L, (segment, time, v, count) -> {
+            values.add(v[0]);
+        });
+        Assert.assertEquals(3, n);
+        Assert.assertEquals(62f, values.get(2), 0f);
+    }
+
+    @Test
+    public void testOpenSegmentIsReadable() throws Exception {
+        WaveformArchive archive = new WaveformArchive(root, 64 * 1024);
+        long start = 1400000000000L;
+        record(archive, null, start, 10);
+        try {
+            WaveformArchiveReader reader = new WaveformArchiveReader(root);
+            int n = reader.read(WaveformArchiveReader.stream("DEVICE0", "METRIC0", 0), start, start + 2000L, (segment, time, values, count) -> {
+            });
+            Assert.assertEquals(10, n);
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testRecordingMergesStreamsOfOneDevice() throws Exception {
+        WaveformArchive archive = new WaveformArchive(root, 64 * 1024);
+        long start = 1400000000000L;
+        record(archive, "MRN0", start, 20);
+        for (int i = 0; i < 4; i++) {
+            archive.append("DEVICE0", "HR", 0, "MRN0", start + 100L + i * 1000L, 60f + i);
+            archive.append("DEVICE1", "HR", 0, "MRN1", start + i * 1000L, 80f + i);
+        }
+        archive.close();
+
+        WaveformArchiveRecording recording = new WaveformArchiveRecording(root, "DEVICE0");
+        Recording.Block block = new Recording.Block();
+        long last = Long.MIN_VALUE;
+        int numerics = 0, arrays = 0;
+        while (recording.next(block)) {
+            Assert.assertTrue(block.getTime() >= last);
+            last = block.getTime();
+            if (block.isNumeric()) {
+                Assert.assertEquals("HR", block.getMetricId());
+                Assert.assertEquals(60f + numerics, block.getValues()[0], 0f);
+                numerics++;
+            } else {
+                Assert.assertEquals("METRIC0", block.getMetricId());
+                Assert.assertEquals(250, block.getFrequency());
+                Assert.assertEquals(50, block.getCount());
+                Assert.assertEquals(sample(arrays * 50), block.getValues()[0], 0f);
+                arrays++;
+            }
+        }
+        recording.close();
+        Assert.assertEquals(4, numerics);
+        Assert.assertEquals(20, arrays);
+    }
+}
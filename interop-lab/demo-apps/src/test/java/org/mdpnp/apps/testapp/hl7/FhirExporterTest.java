@@ -0,0 +1,89 @@
+package org.mdpnp.apps.testapp.hl7;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+
+public class FhirExporterTest {
+
+    private static final FhirContext fhirContext = FhirContext.forDstu2();
+
+    private static Observation observation(Integer value) {
+        Observation obs = new Observation();
+        obs.setValue(new QuantityDt(value.doubleValue()).setCode("MDC_TEST").setSystem("OpenICE"));
+        return obs;
+    }
+
+    private static List<Integer> items(int n) {
+        List<Integer> items = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void testChunksAreEncodedWithoutClient() throws Exception {
+        List<List<String>> chunks = Collections.synchronizedList(new ArrayList<List<String>>());
+        FhirExporter<Integer> exporter = new FhirExporter<Integer>(fhirContext, null, FhirExporterTest::observation, chunks::add, 100, 2, 4);
+        try {
+            exporter.export(items(250));
+            Assert.assertTrue(exporter.awaitIdle(10L, TimeUnit.SECONDS));
+
+            Assert.assertEquals(3, chunks.size());
+            int lines = 0;
+            for (List<String> chunk : chunks) {
+                lines += chunk.size();
+                for (String line : chunk) {
+                    Assert.assertTrue(line.contains("MDC_TEST"));
+                    Assert.assertTrue(line.endsWith("\n"));
+                }
+            }
+            Assert.assertEquals(250, lines);
+        } finally {
+            exporter.shutdown();
+        }
+    }
+
+    @Test
+    public void testExportBlocksWhileSaturated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        FhirExporter<Integer> exporter = new FhirExporter<Integer>(fhirContext, null, (i) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return observation(i);
+        }, null, 1, 1, 1);
+        try {
+            Thread producer = new Thread(() -> {
+                try {
+                    exporter.export(items(2));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            producer.join(200L);
+            Assert.assertTrue("export should wait for the outstanding transaction", producer.isAlive());
+
+            release.countDown();
+            producer.join(10000L);
+            Assert.assertFalse(producer.isAlive());
+            Assert.assertTrue(exporter.awaitIdle(10L, TimeUnit.SECONDS));
+            Assert.assertEquals(1L, exporter.getStatistics().getStalls());
+        } finally {
+            exporter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.mdpnp.apps.testapp.hl7;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.hl7v2.AcknowledgmentCode;
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.app.Connection;
+import ca.uhn.hl7v2.app.HL7Service;
+import ca.uhn.hl7v2.app.Initiator;
+import ca.uhn.hl7v2.llp.LLPException;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v26.message.ORU_R01;
+import ca.uhn.hl7v2.protocol.ReceivingApplication;
+import ca.uhn.hl7v2.protocol.ReceivingApplicationException;
+
+public class HL7TransmitPipelineTest {
+
+    private HapiContext context;
+    private HL7Service server;
+    private Connection connection;
+    private final Set<String> received = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> rejectFirst = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("rawtypes")
+    private final ReceivingApplication acknowledger = new ReceivingApplication() {
+        @Override
+        public Message processMessage(Message message, Map<String, Object> metadata) throws ReceivingApplicationException, HL7Exception {
+            try {
+                String controlId = ((ORU_R01) message).getMSH().getMessageControlID().getValue();
+                Integer rejections = rejectFirst.get(controlId);
+                if (null != rejections && rejections > 0) {
+                    rejectFirst.put(controlId, rejections - 1);
+                    return message.generateACK(AcknowledgmentCode.AE, new HL7Exception("busy"));
+                }
+                received.add(controlId);
+                return message.generateACK();
+            } catch (IOException e) {
+                throw new ReceivingApplicationException(e);
+            }
+        }
+
+        @Override
+        public boolean canProcess(Message message) {
+            return true;
+        }
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        context = new DefaultHapiContext();
+        server = context.newServer(port, false);
+        server.registerApplication("ORU", "R01", acknowledger);
+        server.startAndWait();
+        connection = context.newClient("localhost", port, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != connection) {
+            connection.close();
+        }
+        if (null != server) {
+            server.stopAndWait();
+        }
+        if (null != context) {
+            context.close();
+        }
+    }
+
+    private static ORU_R01 message(String controlId) throws HL7Exception, IOException {
+        ORU_R01 r01 = new ORU_R01();
+        r01.initQuickstart("ORU", "R01", "T");
+        r01.getMSH().getMessageControlID().setValue(controlId);
+        r01.getPATIENT_RESULT().getPATIENT().getPID().getPatientIdentifierList(0).getIDNumber().setValue("123456");
+        return r01;
+    }
+
+    @Test
+    public void testPipelinedMessagesAreAllAcknowledged() throws Exception {
+        HL7TransmitPipeline pipeline = new HL7TransmitPipeline(connection.getInitiator(), 4, 0);
+        try {
+            for (int i = 0; i < 40; i++) {
+                pipeline.submit(message("MSG" + i));
+            }
+            Assert.assertTrue(pipeline.awaitIdle(30L, TimeUnit.SECONDS));
+
+            HL7TransmitPipeline.Statistics statistics = pipeline.getStatistics();
+            Assert.assertEquals(40L, statistics.getAcknowledged());
+            Assert.assertEquals(0L, statistics.getFailed());
+            Assert.assertEquals(40, received.size());
+            Assert.assertEquals(40L, statistics.getAckLatency().getCount());
+            Assert.assertTrue(statistics.getThroughput() > 0.0);
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void testWindowIsFilled() throws Exception {
+        // Whether the server handles messages concurrently is up to HAPI, so count on the sending side
+        final int window = 4;
+        final CountDownLatch allInFlight = new CountDownLatch(window);
+        final AtomicInteger overlapped = new AtomicInteger();
+        Initiator initiator = new Initiator() {
+            @Override
+            public Message sendAndReceive(Message message) throws HL7Exception, LLPException, IOException {
+                allInFlight.countDown();
+                try {
+                    if (allInFlight.await(10L, TimeUnit.SECONDS)) {
+                        overlapped.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return message.generateACK();
+            }
+
+            @Override
+            public void setTimeout(long timeout, TimeUnit unit) {
+            }
+
+            @Override
+            public void setTimeoutMillis(int timeout) {
+            }
+        };
+        HL7TransmitPipeline pipeline = new HL7TransmitPipeline(initiator, window, 0);
+        try {
+            for (int i = 0; i < window; i++) {
+                pipeline.submit(message("MSG" + i));
+            }
+            Assert.assertTrue(pipeline.awaitIdle(30L, TimeUnit.SECONDS));
+            Assert.assertEquals(window, overlapped.get());
+            Assert.assertEquals(window, pipeline.getStatistics().getAcknowledged());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedMessageIsRetried() throws Exception {
+        rejectFirst.put("RETRY", 1);
+        rejectFirst.put("DROP", 5);
+        HL7TransmitPipeline pipeline = new HL7TransmitPipeline(connection.getInitiator(), 2, 2);
+        try {
+            pipeline.submit(message("RETRY"));
+            pipeline.submit(message("DROP"));
+            Assert.assertTrue(pipeline.awaitIdle(30L, TimeUnit.SECONDS));
+
+            HL7TransmitPipeline.Statistics statistics = pipeline.getStatistics();
+            Assert.assertEquals(1L, statistics.getAcknowledged());
+            Assert.assertEquals(1L, statistics.getFailed());
+            Assert.assertEquals(3L, statistics.getRetries());
+            Assert.assertEquals(4L, statistics.getRejected());
+            Assert.assertTrue(received.contains("RETRY"));
+            Assert.assertFalse(received.contains("DROP"));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test(expected = HL7Exception.class)
+    public void testMessageWithoutControlIdIsRefused() throws Exception {
+        HL7TransmitPipeline pipeline = new HL7TransmitPipeline(connection.getInitiator(), 1, 0);
+        try {
+            pipeline.submit(message(""));
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+}
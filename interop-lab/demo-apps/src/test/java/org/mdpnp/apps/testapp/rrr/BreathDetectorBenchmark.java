@@ -0,0 +1,48 @@
+package org.mdpnp.apps.testapp.rrr;
+
+import java.util.Random;
+
+/**
+ * Measures the per-sample cost of {@link BreathDetector} across sample rates and window
+ * lengths. The cost should not grow with either; the full-history rescans it replaced
+ * grew with both. Run with
+ * <code>java -cp ... org.mdpnp.apps.testapp.rrr.BreathDetectorBenchmark</code>
+ */
+public class BreathDetectorBenchmark {
+
+    private static final int SAMPLES = 5000000;
+
+    static double nanosPerSample(int hz, long windowMs, float[] signal) {
+        BreathDetector d = new BreathDetector(windowMs, 0.5f, 0.1f, 4);
+        long period = Math.max(1L, 1000L / hz);
+        long start = System.nanoTime();
+        for (int i = 0; i < SAMPLES; i++) {
+            d.sample(i * period, signal[i % signal.length]);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (d.getRate() < 0) {
+            throw new IllegalStateException();
+        }
+        return 1.0 * elapsed / SAMPLES;
+    }
+
+    public static void main(String[] args) {
+        Random noise = new Random(0);
+        int[] rates = new int[] { 25, 125, 500 };
+        long[] windows = new long[] { 5000L, 10000L, 60000L };
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int hz : rates) {
+                float[] signal = new float[hz * 60];
+                for (int i = 0; i < signal.length; i++) {
+                    signal[i] = BreathDetectorTest.capnogram(i * 1000L / hz, 15.0, noise);
+                }
+                for (long window : windows) {
+                    double ns = nanosPerSample(hz, window, signal);
+                    if (warmup > 0) {
+                        System.out.println(String.format("%4d Hz %6d ms window %8.2f ns/sample", hz, window, ns));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.mdpnp.apps.testapp.rrr;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BreathDetectorTest {
+
+    /**
+     * Capnogram-like square wave with noise; 'bpm' breaths per minute sampled at 'hz'
+     */
+    static float capnogram(long t, double bpm, Random noise) {
+        double phase = (t * bpm / 60000.0) % 1.0;
+        return (phase < 0.4 ? 38f : 0f) + (float) noise.nextGaussian() * 1.5f;
+    }
+
+    @Test
+    public void testSteadyRate() {
+        BreathDetector d = new BreathDetector(10000L, 0.5f, 0.1f, 4);
+        Random noise = new Random(0);
+        for (long t = 0; t < 60000L; t += 40L) {
+            d.sample(t, capnogram(t, 15.0, noise));
+        }
+        Assert.assertEquals(15.0, d.getRate(), 0.5);
+    }
+
+    @Test
+    public void testRateChange() {
+        BreathDetector d = new BreathDetector(10000L, 0.5f, 0.1f, 4);
+        Random noise = new Random(1);
+        long t = 0;
+        for (; t < 60000L; t += 40L) {
+            d.sample(t, capnogram(t, 12.0, noise));
+        }
+        Assert.assertEquals(12.0, d.getRate(), 0.5);
+        for (; t < 120000L; t += 40L) {
+            d.sample(t, capnogram(t, 30.0, noise));
+        }
+        Assert.assertEquals(30.0, d.getRate(), 1.0);
+    }
+
+    @Test
+    public void testFlatSignal() {
+        BreathDetector d = new BreathDetector(10000L, 0.5f, 0.1f, 4);
+        for (long t = 0; t < 60000L; t += 40L) {
+            d.sample(t, 5f);
+        }
+        Assert.assertEquals(0.0, d.getRate(), 0.0);
+    }
+
+    @Test
+    public void testIncrementalConsumption() {
+        final float[] values = new float[1500];
+        final Random noise = new Random(2);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = capnogram(i * 40L, 20.0, noise);
+        }
+        final int[] available = new int[1];
+        org.mdpnp.guis.waveform.WaveformSource source = new org.mdpnp.guis.waveform.WaveformSource() {
+            @Override
+            public void iterate(WaveformIterator itr) {
+                itr.begin();
+                for (int i = 0; i < available[0]; i++) {
+                    itr.sample(i * 40L, values[i]);
+                }
+                itr.end();
+            }
+
+            @Override
+            public String getIdentifier() {
+                return "test";
+            }
+
+            @Override
+            public boolean loadingHistoricalData() {
+                return false;
+            }
+        };
+        RespiratoryRateEstimator e = new RespiratoryRateEstimator(source, new BreathDetector(10000L, 0.5f, 0.1f, 4));
+        double rate = 0.0;
+        for (available[0] = 100; available[0] <= values.length; available[0] += 100) {
+            rate = e.update();
+        }
+        Assert.assertEquals(20.0, rate, 0.5);
+        // a source without windowed iteration replays history but each sample is consumed once
+        Assert.assertEquals(values.length - 1, e.getDetector().getLastTime() / 40L);
+    }
+}
@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 import org.mdpnp.rtiapi.data.EventLoop;
@@ -86,6 +87,7 @@ public abstract class AbstractDevice {
     protected Connection dbconn;
     protected PreparedStatement numericStatement;
     protected PreparedStatement sampleStatement;
+    protected JdbcWriteBehind writeBehind;
 
     protected final EventLoop eventLoop;
     protected ScheduledExecutorService executor;
@@ -132,6 +134,9 @@ public abstract class AbstractDevice {
     
     protected InstanceHolder<ice.DeviceAlertCondition> deviceAlertConditionInstance;
 
+    private final LongAdder numericsWritten = new LongAdder();
+    private final LongAdder samplesWritten = new LongAdder();
+
 
     public Subscriber getSubscriber() {
         return subscriber;
@@ -342,19 +347,9 @@ public abstract class AbstractDevice {
         holder.data.presentation_time.nanosec = t.nanosec;
         
         numericDataWriter.write(holder.data, holder.handle);
-        if(numericStatement!=null) {
-	        try {
-				numericStatement.setInt(1, t.sec);
-				numericStatement.setInt(2, t.nanosec);
-				numericStatement.setString(3, deviceIdentity.unique_device_identifier);
-				numericStatement.setString(4, holder.data.metric_id);
-				numericStatement.setFloat(5, newValue);
-				boolean resType=numericStatement.execute();
-			} catch (SQLException e) {
-				//Because this is executing once per second, including the stack trace would
-				//cause a very large log file.
-				log.warn("Failed to execute numeric statement - "+e.getMessage());
-			}
+        numericsWritten.increment();
+        if(writeBehind!=null) {
+            writeBehind.numeric(t.sec, t.nanosec, deviceIdentity.unique_device_identifier, holder.data.metric_id, newValue);
         }
     }
 
@@ -564,6 +559,57 @@ public abstract class AbstractDevice {
         return sampleArraySample(holder, new CollectionContainer<>(newValues), metric_id, vendor_metric_id, instance_id, unit_id, frequency, timestamp);
     }
 
+    protected InstanceHolder<ice.SampleArray> sampleArraySample(InstanceHolder<ice.SampleArray> holder,
+                                                                float[] newValues,
+                                                                String metric_id, String vendor_metric_id, int instance_id, String unit_id, int frequency,
+                                                                DeviceClock.Reading timestamp) {
+        return sampleArraySample(holder, newValues, 0, null == newValues ? 0 : newValues.length, metric_id, vendor_metric_id, instance_id, unit_id, frequency, timestamp);
+    }
+
+    /**
+     * Primitive counterpart of the Number[] variants; samples newValues[offset, offset+length) are
+     * copied straight into the DDS sample without boxing.  A null array unregisters the instance.
+     */
+    protected InstanceHolder<ice.SampleArray> sampleArraySample(InstanceHolder<ice.SampleArray> holder,
+                                                                float[] newValues, int offset, int length,
+                                                                String metric_id, String vendor_metric_id, int instance_id, String unit_id, int frequency,
+                                                                DeviceClock.Reading timestamp) {
+
+        holder = ensureHolderConsistency(holder, metric_id, vendor_metric_id, instance_id, unit_id, frequency);
+
+        if (null != newValues) {
+            timestamp = timestamp.refineResolutionForFrequency(frequency, length);
+            if (null == holder) {
+                holder = createSampleArrayInstance(metric_id, vendor_metric_id, instance_id, unit_id, frequency);
+            }
+            sampleArraySample(holder, newValues, offset, length, timestamp);
+        } else if (holder != null) {
+            unregisterSampleArrayInstance(holder);
+            holder = null;
+        }
+        return holder;
+    }
+
+    protected InstanceHolder<ice.SampleArray> sampleArraySample(InstanceHolder<ice.SampleArray> holder,
+                                                                int[] newValues, int offset, int length,
+                                                                String metric_id, String vendor_metric_id, int instance_id, String unit_id, int frequency,
+                                                                DeviceClock.Reading timestamp) {
+
+        holder = ensureHolderConsistency(holder, metric_id, vendor_metric_id, instance_id, unit_id, frequency);
+
+        if (null != newValues) {
+            timestamp = timestamp.refineResolutionForFrequency(frequency, length);
+            if (null == holder) {
+                holder = createSampleArrayInstance(metric_id, vendor_metric_id, instance_id, unit_id, frequency);
+            }
+            sampleArraySample(holder, newValues, offset, length, timestamp);
+        } else if (holder != null) {
+            unregisterSampleArrayInstance(holder);
+            holder = null;
+        }
+        return holder;
+    }
+
     private InstanceHolder<SampleArray> sampleArraySample(InstanceHolder<SampleArray> holder,
                                                           NullSaveContainer<Number> newValues,
                                                           String metric_id, String vendor_metric_id, int instance_id, String unit_id, int frequency,
@@ -596,18 +642,36 @@ public abstract class AbstractDevice {
         sampleArraySample(holder, new CollectionContainer<>(newValues), timestamp);
     }
 
+    protected void sampleArraySample(InstanceHolder<SampleArray> holder, float[] newValues, int offset, int length, DeviceClock.Reading timestamp) {
+        fill(holder.data, newValues, offset, length);
+        publish(holder, timestamp);
+    }
+
+    protected void sampleArraySample(InstanceHolder<SampleArray> holder, int[] newValues, int offset, int length, DeviceClock.Reading timestamp) {
+        holder.data.values.userData.clear();
+        for (int i = offset; i < offset + length; i++) {
+            holder.data.values.userData.addFloat(newValues[i]);
+        }
+        publish(holder, timestamp);
+    }
+
     private void sampleArraySample(InstanceHolder<ice.SampleArray> holder, NullSaveContainer<Number> newValues, DeviceClock.Reading deviceTimestamp) {
-        fill(holder, newValues);
+        fill(holder.data, newValues);
         publish(holder, deviceTimestamp);
     }
 
-    private void fill(InstanceHolder<SampleArray> holder, NullSaveContainer<Number> newValues) {
-        holder.data.values.userData.clear();
+    static void fill(SampleArray data, float[] newValues, int offset, int length) {
+        data.values.userData.clear();
+        data.values.userData.addAllFloat(newValues, offset, length);
+    }
+
+    static void fill(SampleArray data, NullSaveContainer<Number> newValues) {
+        data.values.userData.clear();
         if(!newValues.isNull()) {
             Iterator<Number> iter = newValues.iterator();
             while (iter.hasNext()) {
                 Number n = iter.next();
-                holder.data.values.userData.addFloat(n.floatValue());
+                data.values.userData.addFloat(n.floatValue());
             }
         }
     }
@@ -631,21 +695,12 @@ public abstract class AbstractDevice {
 
         sampleArrayDataWriter.write(holder.data,
                                                 holder.handle==null?InstanceHandle_t.HANDLE_NIL:holder.handle);
-        //If we look at fill() we can see that it adds floats to the array.
-        float[] floatsForDb=holder.data.values.userData.toArrayFloat(new float[0]);
-        if(sampleStatement!=null) {
-	        try {
-				sampleStatement.setInt(1, holder.data.presentation_time.sec);
-				sampleStatement.setInt(2, holder.data.presentation_time.nanosec);
-				sampleStatement.setString(3, deviceIdentity.unique_device_identifier);
-				sampleStatement.setString(4, holder.data.metric_id);
-				sampleStatement.setObject(5, floatsForDb);
-				boolean resType=sampleStatement.execute();
-			} catch (SQLException e) {
-				//Because this is executing once per second, including the stack trace would
-				//cause a very large log file.
-				log.warn("Failed to execute sample statement - "+e.getMessage());
-			}
+        samplesWritten.add(holder.data.values.userData.size());
+        if(writeBehind!=null) {
+            //If we look at fill() we can see that it adds floats to the array.
+            float[] floatsForDb=holder.data.values.userData.toArrayFloat(new float[holder.data.values.userData.size()]);
+            writeBehind.sample(holder.data.presentation_time.sec, holder.data.presentation_time.nanosec,
+                               deviceIdentity.unique_device_identifier, holder.data.metric_id, floatsForDb);
         }
     }
 
@@ -723,6 +778,19 @@ public abstract class AbstractDevice {
         // TODO Where a participant is shared it is not safe to unregister types
 //        ice.AlertTypeSupport.unregister_type(domainParticipant, ice.AlertTypeSupport.get_type_name());
 
+        if (null != writeBehind) {
+            writeBehind.stop();
+            writeBehind = null;
+        }
+        if (null != dbconn) {
+            try {
+                dbconn.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close database connection - " + e.getMessage());
+            }
+            dbconn = null;
+        }
+
         log.info("AbstractDevice shutdown complete");
     }
 
@@ -806,6 +874,9 @@ public abstract class AbstractDevice {
 			sampleStatement=dbconn.prepareStatement("INSERT INTO allsamples(t_sec, t_nanosec, udi, metric_id, floats) VALUES (?,?,?,?,?)");
 			//CREATE TABLE allnumerics(t_sec bigint, t_nanosec bigint, udi varchar(256), metric_id varchar(256), val float)
 			//CREATE TABLE allsamples(t_sec bigint, t_nanosec bigint, udi varchar(256), metric_id varchar(256), floats other)
+			// Rows are written in batches off the publishing thread so a slow database never delays DDS writes
+			writeBehind=new JdbcWriteBehind(dbconn, numericStatement, sampleStatement);
+			writeBehind.start(threadGroup);
 		} catch (SQLException e) {
 			log.warn("Could not connect to database - server probably not running",e);
 		}
@@ -942,6 +1013,41 @@ public abstract class AbstractDevice {
         return null == deviceIdentity ? null : deviceIdentity.unique_device_identifier;
     }
 
+    @ManagedAttribute(description="Numeric samples written since the device was created.")
+    public long getNumericsWritten() {
+        return numericsWritten.sum();
+    }
+
+    @ManagedAttribute(description="Waveform values written in sample arrays since the device was created.")
+    public long getSamplesWritten() {
+        return samplesWritten.sum();
+    }
+
+    @ManagedAttribute(description="Rows waiting to be written to the database.")
+    public int getDatabaseQueueDepth() {
+        return null == writeBehind ? 0 : writeBehind.getQueueDepth();
+    }
+
+    @ManagedAttribute(description="Rows per second written to the database.")
+    public double getDatabaseRowsPerSecond() {
+        return null == writeBehind ? 0.0 : writeBehind.getRowsPerSecond();
+    }
+
+    @ManagedAttribute(description="Duration of the most recent database batch in milliseconds.")
+    public long getDatabaseFlushLatency() {
+        return null == writeBehind ? 0L : writeBehind.getLastFlushLatencyMs();
+    }
+
+    @ManagedAttribute(description="Longest database batch in milliseconds.")
+    public long getDatabaseMaxFlushLatency() {
+        return null == writeBehind ? 0L : writeBehind.getMaxFlushLatencyMs();
+    }
+
+    @ManagedAttribute(description="Rows discarded because the database queue was full.")
+    public long getDatabaseRowsDropped() {
+        return null == writeBehind ? 0L : writeBehind.getRowsDropped();
+    }
+
     public ScheduledExecutorService getExecutor() {
         return executor;
     }
@@ -0,0 +1,316 @@
+package org.mdpnp.devices;
+
+import org.mdpnp.rtiapi.data.EventLoop;
+
+/**
+ * Estimates the offset and drift of a remote clock from TimeSync round trips, in the manner of
+ * NTP. Each round trip gives an offset good to within half its delay, so of the last
+ * {@link #FILTER} round trips only the one with the shortest delay is kept. Kept offsets that
+ * stray too far from the current fit are rejected as outliers, unless enough of them in a row
+ * show that the remote clock was stepped. The rest are fitted with a line over local time,
+ * whose slope is the skew of the remote clock.
+ * <p>
+ * Round trips are submitted from the event loop and folded in by {@link #update()} on
+ * another thread. {@link #toLocal(long, Conversion)} may be called from any thread and
+ * does not allocate.
+ * <p>
+ * All times are nanoseconds since the epoch; offsets are remote minus local.
+ */
+public class ClockEstimator {
+
+    private static final String PROPERTY_PREFIX = ClockEstimator.class.getName() + ".";
+
+    /**
+     * Round trips from which the one with the shortest delay is kept
+     */
+    public static final int FILTER = Integer.getInteger(PROPERTY_PREFIX + "filter", 8);
+
+    /**
+     * Kept round trips the line is fitted to
+     */
+    public static final int HISTORY = Integer.getInteger(PROPERTY_PREFIX + "history", 32);
+
+    /**
+     * Multiple of the RMS residual beyond which an offset is an outlier
+     */
+    public static final double OUTLIER_FACTOR = 4.0;
+
+    /**
+     * Outliers in a row taken as a step of the remote clock
+     */
+    public static final int MAX_OUTLIERS = 3;
+
+    // Round trips waiting for update()
+    private static final int PENDING = 64;
+
+    // Residuals below a millisecond are never outliers
+    private static final long MIN_OUTLIER_NANOS = 1000000L;
+
+    // Points needed before the slope means anything
+    private static final int MIN_POINTS_FOR_SKEW = 4;
+
+    /**
+     * Result of {@link ClockEstimator#toLocal(long, Conversion)}, reusable across calls.
+     */
+    public static final class Conversion {
+        private long localTime;
+        private long errorBound;
+
+        public long getLocalTime() {
+            return localTime;
+        }
+
+        /**
+         * @return nanoseconds either side of the local time within which the true time lies
+         */
+        public long getErrorBound() {
+            return errorBound;
+        }
+    }
+
+    private static final class Model {
+        final long reference;
+        final long offset;
+        final double skew;
+        final long errorBound;
+        final long delay;
+
+        Model(long reference, long offset, double skew, long errorBound, long delay) {
+            this.reference = reference;
+            this.offset = offset;
+            this.skew = skew;
+            this.errorBound = errorBound;
+            this.delay = delay;
+        }
+
+        long offsetAt(long localTime) {
+            return offset + Math.round(skew * (localTime - reference));
+        }
+    }
+
+    private final String uniqueDeviceIdentifier;
+
+    // Filled by submit() and drained by update(); guarded by itself
+    private final long[] pending = new long[4 * PENDING];
+    private int pendingCount;
+    private long dropped;
+    private final long[] draining = new long[4 * PENDING];
+
+    // Only touched by update()
+    private final long[] filterTime = new long[FILTER], filterOffset = new long[FILTER], filterDelay = new long[FILTER];
+    private int filterSize, filterNext;
+    private long lastSelected = Long.MIN_VALUE;
+
+    private final long[] pointTime = new long[HISTORY], pointOffset = new long[HISTORY];
+    private int points, pointNext;
+    private int outliersInARow;
+    private double rmsResidual;
+
+    private final EventLoop.LatencyHistogram latency = new EventLoop.LatencyHistogram();
+    private volatile long roundTrips, rejected;
+    private volatile Model model;
+
+    public ClockEstimator(String uniqueDeviceIdentifier) {
+        this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+    }
+
+    public String getUniqueDeviceIdentifier() {
+        return uniqueDeviceIdentifier;
+    }
+
+    /**
+     * Queues one round trip.
+     *
+     * @param t1 local time the request was sent
+     * @param t2 remote time the request was received
+     * @param t3 remote time the reply was sent
+     * @param t4 local time the reply was received
+     * @return true if nothing else was queued, so an {@link #update()} should be scheduled
+     */
+    public boolean submit(long t1, long t2, long t3, long t4) {
+        synchronized (pending) {
+            if (pendingCount == PENDING) {
+                dropped++;
+                return false;
+            }
+            int i = 4 * pendingCount++;
+            pending[i] = t1;
+            pending[i + 1] = t2;
+            pending[i + 2] = t3;
+            pending[i + 3] = t4;
+            return 1 == pendingCount;
+        }
+    }
+
+    /**
+     * Folds the queued round trips into the estimate.
+     *
+     * @return true if the estimate changed
+     */
+    public synchronized boolean update() {
+        int count;
+        synchronized (pending) {
+            count = pendingCount;
+            System.arraycopy(pending, 0, draining, 0, 4 * count);
+            pendingCount = 0;
+        }
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            changed |= add(draining[4 * i], draining[4 * i + 1], draining[4 * i + 2], draining[4 * i + 3]);
+        }
+        return changed;
+    }
+
+    private boolean add(long t1, long t2, long t3, long t4) {
+        long delay = Math.max(0L, (t4 - t1) - (t3 - t2));
+        long offset = ((t2 - t1) + (t3 - t4)) / 2L;
+        long time = t1 + (t4 - t1) / 2L;
+        roundTrips++;
+        latency.record(delay / 2L);
+
+        filterTime[filterNext] = time;
+        filterOffset[filterNext] = offset;
+        filterDelay[filterNext] = delay;
+        filterNext = (filterNext + 1) % FILTER;
+        filterSize = Math.min(filterSize + 1, FILTER);
+
+        int best = 0;
+        for (int i = 1; i < filterSize; i++) {
+            if (filterDelay[i] < filterDelay[best]) {
+                best = i;
+            }
+        }
+        // Only a round trip not kept before is news
+        if (filterTime[best] <= lastSelected) {
+            return false;
+        }
+        lastSelected = filterTime[best];
+        time = filterTime[best];
+        offset = filterOffset[best];
+        delay = filterDelay[best];
+
+        Model m = model;
+        if (null != m && points >= MIN_POINTS_FOR_SKEW) {
+            long residual = Math.abs(offset - m.offsetAt(time));
+            if (residual > Math.max(OUTLIER_FACTOR * rmsResidual, MIN_OUTLIER_NANOS) + delay / 2L) {
+                if (++outliersInARow <= MAX_OUTLIERS) {
+                    rejected++;
+                    return false;
+                }
+                // the remote clock was stepped so start over from here
+                points = 0;
+                pointNext = 0;
+            }
+        }
+        outliersInARow = 0;
+
+        pointTime[pointNext] = time;
+        pointOffset[pointNext] = offset;
+        pointNext = (pointNext + 1) % HISTORY;
+        points = Math.min(points + 1, HISTORY);
+
+        fit(time, offset, delay);
+        return true;
+    }
+
+    // least squares over the points relative to the latest one
+    private void fit(long reference, long latestOffset, long latestDelay) {
+        double skew = 0.0, intercept = latestOffset;
+        if (points >= MIN_POINTS_FOR_SKEW) {
+            double sx = 0.0, sy = 0.0, sxx = 0.0, sxy = 0.0;
+            for (int i = 0; i < points; i++) {
+                double x = pointTime[i] - reference;
+                double y = pointOffset[i] - latestOffset;
+                sx += x;
+                sy += y;
+                sxx += x * x;
+                sxy += x * y;
+            }
+            double d = points * sxx - sx * sx;
+            if (d > 0.0) {
+                skew = (points * sxy - sx * sy) / d;
+                intercept = latestOffset + (sy - skew * sx) / points;
+            }
+        }
+        double sumSquares = 0.0;
+        for (int i = 0; i < points; i++) {
+            double r = pointOffset[i] - (intercept + skew * (pointTime[i] - reference));
+            sumSquares += r * r;
+        }
+        rmsResidual = Math.sqrt(sumSquares / points);
+        long errorBound = latestDelay / 2L + Math.round(2.0 * rmsResidual);
+        model = new Model(reference, Math.round(intercept), skew, errorBound, latestDelay);
+    }
+
+    /**
+     * Converts a timestamp of the remote clock to local time.
+     *
+     * @return false if there is no estimate yet
+     */
+    public boolean toLocal(long remoteTime, Conversion conversion) {
+        Model m = model;
+        if (null == m) {
+            return false;
+        }
+        // remote = local + offset + skew * (local - reference)
+        conversion.localTime = m.reference + Math.round((remoteTime - m.reference - m.offset) / (1.0 + m.skew));
+        conversion.errorBound = m.errorBound;
+        return true;
+    }
+
+    /**
+     * @return remote minus local time at the latest kept round trip, or 0 with no estimate
+     */
+    public long getOffset() {
+        Model m = model;
+        return null == m ? 0L : m.offset;
+    }
+
+    /**
+     * @return rate of the remote clock relative to the local one, less one
+     */
+    public double getSkew() {
+        Model m = model;
+        return null == m ? 0.0 : m.skew;
+    }
+
+    public long getErrorBound() {
+        Model m = model;
+        return null == m ? Long.MAX_VALUE : m.errorBound;
+    }
+
+    /**
+     * @return delay of the latest kept round trip
+     */
+    public long getDelay() {
+        Model m = model;
+        return null == m ? 0L : m.delay;
+    }
+
+    /**
+     * @return one way latencies, half the delay of every round trip
+     */
+    public EventLoop.LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getDropped() {
+        synchronized (pending) {
+            return dropped;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("offset=%dus skew=%.2fppm error=%dus roundTrips=%d rejected=%d latency[%s]", getOffset() / 1000L, getSkew() * 1e6,
+                getErrorBound() / 1000L, getRoundTrips(), getRejected(), latency);
+    }
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014, MD PnP Program
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.mdpnp.devices;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind stage for the numeric and sample rows that {@link AbstractDevice}
+ * mirrors into the icedb database. Rows are queued from the publishing thread
+ * into a bounded buffer and written with JDBC batches on a background thread so
+ * that a slow database never stalls DDS publication.
+ *
+ * Defaults may be overridden with the system properties
+ * <code>org.mdpnp.devices.JdbcWriteBehind.batchSize</code>,
+ * <code>.flushIntervalMs</code>, <code>.capacity</code> and <code>.overflowPolicy</code>.
+ *
+ */
+public class JdbcWriteBehind {
+
+    public enum OverflowPolicy {
+        /** discard the row being offered */
+        DropNewest,
+        /** discard the oldest queued row to make room */
+        DropOldest,
+        /** block the publishing thread until there is room */
+        Block
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcWriteBehind.class);
+
+    private static final String PROPERTY_PREFIX = JdbcWriteBehind.class.getName() + ".";
+
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger(PROPERTY_PREFIX + "batchSize", 256);
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = Long.getLong(PROPERTY_PREFIX + "flushIntervalMs", 1000L);
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(PROPERTY_PREFIX + "capacity", 8192);
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.valueOf(System.getProperty(PROPERTY_PREFIX + "overflowPolicy", OverflowPolicy.DropOldest.name()));
+
+    private static final class Row {
+        final PreparedStatement statement;
+        final int sec, nanosec;
+        final String udi, metric_id;
+        final float value;
+        final float[] values;
+
+        Row(PreparedStatement statement, int sec, int nanosec, String udi, String metric_id, float value, float[] values) {
+            this.statement = statement;
+            this.sec = sec;
+            this.nanosec = nanosec;
+            this.udi = udi;
+            this.metric_id = metric_id;
+            this.value = value;
+            this.values = values;
+        }
+    }
+
+    private final Connection conn;
+    private final PreparedStatement numericStatement;
+    private final PreparedStatement sampleStatement;
+    private final BlockingQueue<Row> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsDropped = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private volatile double rowsPerSecond;
+    private volatile long lastFlushLatencyMs, maxFlushLatencyMs;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public JdbcWriteBehind(Connection conn, PreparedStatement numericStatement, PreparedStatement sampleStatement) {
+        this(conn, numericStatement, sampleStatement, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_OVERFLOW_POLICY);
+    }
+
+    public JdbcWriteBehind(Connection conn, PreparedStatement numericStatement, PreparedStatement sampleStatement,
+                           int capacity, int batchSize, long flushIntervalMs, OverflowPolicy overflowPolicy) {
+        if (capacity < 1 || batchSize < 1 || flushIntervalMs < 1) {
+            throw new IllegalArgumentException("capacity, batchSize and flushIntervalMs must be positive");
+        }
+        this.conn = conn;
+        this.numericStatement = numericStatement;
+        this.sampleStatement = sampleStatement;
+        this.queue = new ArrayBlockingQueue<Row>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.overflowPolicy = null == overflowPolicy ? OverflowPolicy.DropOldest : overflowPolicy;
+    }
+
+    public synchronized void start(ThreadGroup threadGroup) {
+        if (null != thread) {
+            throw new IllegalStateException("already started");
+        }
+        running = true;
+        thread = new Thread(threadGroup, new Runnable() {
+            @Override
+            public void run() {
+                JdbcWriteBehind.this.run();
+            }
+        }, "JdbcWriteBehind");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread after it has written whatever remains queued.
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+        }
+        if (null == t) {
+            return;
+        }
+        running = false;
+        t.interrupt();
+        try {
+            t.join(flushIntervalMs * 5L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void numeric(int sec, int nanosec, String udi, String metric_id, float value) {
+        offer(new Row(numericStatement, sec, nanosec, udi, metric_id, value, null));
+    }
+
+    public void sample(int sec, int nanosec, String udi, String metric_id, float[] values) {
+        offer(new Row(sampleStatement, sec, nanosec, udi, metric_id, 0f, values));
+    }
+
+    private void offer(Row row) {
+        switch (overflowPolicy) {
+        case Block:
+            try {
+                queue.put(row);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rowsDropped.incrementAndGet();
+            }
+            break;
+        case DropOldest:
+            while (!queue.offer(row)) {
+                if (null != queue.poll()) {
+                    rowsDropped.incrementAndGet();
+                }
+            }
+            break;
+        case DropNewest:
+        default:
+            if (!queue.offer(row)) {
+                rowsDropped.incrementAndGet();
+            }
+            break;
+        }
+    }
+
+    private void run() {
+        final List<Row> pending = new ArrayList<Row>(batchSize);
+        long lastFlush = System.currentTimeMillis();
+        long windowStart = lastFlush, windowRows = 0L;
+        try {
+            conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            log.warn("Unable to disable autocommit; batches will commit per statement - " + e.getMessage());
+        }
+        while (running || !queue.isEmpty()) {
+            try {
+                Row row = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (null != row) {
+                    pending.add(row);
+                    queue.drainTo(pending, batchSize - pending.size());
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts us; drain whatever is left before exiting
+                queue.drainTo(pending);
+            }
+            long now = System.currentTimeMillis();
+            if (!pending.isEmpty() && (pending.size() >= batchSize || now - lastFlush >= flushIntervalMs || !running)) {
+                windowRows += flush(pending);
+                pending.clear();
+                lastFlush = now = System.currentTimeMillis();
+            }
+            if (now - windowStart >= 1000L) {
+                rowsPerSecond = 1000.0 * windowRows / (now - windowStart);
+                windowStart = now;
+                windowRows = 0L;
+            }
+        }
+    }
+
+    private int flush(List<Row> rows) {
+        long start = System.currentTimeMillis();
+        boolean numerics = false, samples = false;
+        try {
+            for (Row row : rows) {
+                PreparedStatement s = row.statement;
+                s.setInt(1, row.sec);
+                s.setInt(2, row.nanosec);
+                s.setString(3, row.udi);
+                s.setString(4, row.metric_id);
+                if (null == row.values) {
+                    s.setFloat(5, row.value);
+                    numerics = true;
+                } else {
+                    s.setObject(5, row.values);
+                    samples = true;
+                }
+                s.addBatch();
+            }
+            if (numerics) {
+                numericStatement.executeBatch();
+            }
+            if (samples) {
+                sampleStatement.executeBatch();
+            }
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+            rowsWritten.addAndGet(rows.size());
+        } catch (SQLException e) {
+            // As with the synchronous path the stack trace is omitted; a dead server would otherwise flood the log
+            log.warn("Failed to write batch of " + rows.size() + " rows - " + e.getMessage());
+            rowsFailed.addAndGet(rows.size());
+            try {
+                numericStatement.clearBatch();
+                sampleStatement.clearBatch();
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+            } catch (SQLException e1) {
+                log.debug("rollback failed", e1);
+            }
+            return 0;
+        } finally {
+            long latency = System.currentTimeMillis() - start;
+            lastFlushLatencyMs = latency;
+            if (latency > maxFlushLatencyMs) {
+                maxFlushLatencyMs = latency;
+            }
+        }
+        return rows.size();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public long getLastFlushLatencyMs() {
+        return lastFlushLatencyMs;
+    }
+
+    public long getMaxFlushLatencyMs() {
+        return maxFlushLatencyMs;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getRowsDropped() {
+        return rowsDropped.get();
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed.get();
+    }
+}
@@ -0,0 +1,200 @@
+package org.mdpnp.devices;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Follows the heartbeats of remote participants and reports only the changes in their state,
+ * so that a steady heartbeat costs a map lookup and a timestamp instead of a notification.
+ * A participant is ALIVE when first heard from or heard from again, STALE when nothing has
+ * been heard for the stale deadline and GONE when DDS declares its heartbeat not alive or,
+ * if a gone deadline is set, nothing has been heard for that long. Deadlines are checked for
+ * all participants by one periodic task.
+ */
+public class LivenessTracker {
+
+    private static final String PROPERTY_PREFIX = LivenessTracker.class.getName() + ".";
+
+    /**
+     * ms without a heartbeat after which a participant is stale
+     */
+    public static final long STALE_AFTER = Long.getLong(PROPERTY_PREFIX + "staleAfter", 5000L);
+
+    /**
+     * ms without a heartbeat after which a participant is gone, or 0 to leave it to DDS liveliness
+     */
+    public static final long GONE_AFTER = Long.getLong(PROPERTY_PREFIX + "goneAfter", 0L);
+
+    public enum State {
+        ALIVE, STALE, GONE
+    }
+
+    public interface Listener {
+        /**
+         * @param previous the earlier state, or null for a participant not seen before
+         * @param current the state entered; the participant may have moved on by the time
+         *            this is called from another thread, so act on this rather than its state
+         */
+        void stateChanged(Participant participant, State previous, State current);
+    }
+
+    public static final class Participant {
+        private final String uniqueDeviceIdentifier;
+        private final String type;
+        private volatile String hostName;
+        private volatile long lastHeard;
+        private State state = State.ALIVE;
+
+        Participant(String uniqueDeviceIdentifier, String type, String hostName, long lastHeard) {
+            this.uniqueDeviceIdentifier = uniqueDeviceIdentifier;
+            this.type = type;
+            this.hostName = hostName;
+            this.lastHeard = lastHeard;
+        }
+
+        public String getUniqueDeviceIdentifier() {
+            return uniqueDeviceIdentifier;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getHostName() {
+            return hostName;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return uniqueDeviceIdentifier + " " + type + " " + getState();
+        }
+    }
+
+    private final Map<String, Participant> participants = new ConcurrentHashMap<String, Participant>();
+    private final long staleAfter, goneAfter;
+    private final Listener listener;
+    private final LongSupplier clock;
+    private ScheduledFuture<?> checkTask;
+
+    public LivenessTracker(Listener listener) {
+        this(listener, STALE_AFTER, GONE_AFTER, System::nanoTime);
+    }
+
+    /**
+     * @param clock nanoseconds from an arbitrary origin
+     */
+    public LivenessTracker(Listener listener, long staleAfter, long goneAfter, LongSupplier clock) {
+        this.listener = listener;
+        this.staleAfter = TimeUnit.MILLISECONDS.toNanos(staleAfter);
+        this.goneAfter = TimeUnit.MILLISECONDS.toNanos(goneAfter);
+        this.clock = clock;
+    }
+
+    /**
+     * Checks deadlines on the timer from now on.
+     */
+    public synchronized void start(ScheduledExecutorService timer) {
+        if (null == checkTask) {
+            long period = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(staleAfter) / 4L);
+            checkTask = timer.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops checking deadlines and reports every participant as gone.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (null != checkTask) {
+                checkTask.cancel(false);
+                checkTask = null;
+            }
+        }
+        for (Participant p : participants.values()) {
+            gone(p.uniqueDeviceIdentifier);
+        }
+    }
+
+    public void heartbeat(String uniqueDeviceIdentifier, String type, String hostName) {
+        long now = clock.getAsLong();
+        Participant p = participants.get(uniqueDeviceIdentifier);
+        if (null == p) {
+            p = new Participant(uniqueDeviceIdentifier, type, hostName, now);
+            Participant existing = participants.putIfAbsent(uniqueDeviceIdentifier, p);
+            if (null == existing) {
+                listener.stateChanged(p, null, State.ALIVE);
+                return;
+            }
+            p = existing;
+        }
+        p.lastHeard = now;
+        if (null != hostName) {
+            p.hostName = hostName;
+        }
+        State previous;
+        synchronized (p) {
+            previous = p.state;
+            if (State.ALIVE == previous) {
+                return;
+            }
+            if (State.GONE != previous) {
+                p.state = State.ALIVE;
+            }
+        }
+        if (State.GONE == previous) {
+            // declared gone while we looked it up, so it comes back as a new participant
+            heartbeat(uniqueDeviceIdentifier, type, hostName);
+        } else {
+            listener.stateChanged(p, previous, State.ALIVE);
+        }
+    }
+
+    public void gone(String uniqueDeviceIdentifier) {
+        Participant p = participants.remove(uniqueDeviceIdentifier);
+        if (null != p) {
+            State previous;
+            synchronized (p) {
+                previous = p.state;
+                p.state = State.GONE;
+            }
+            listener.stateChanged(p, previous, State.GONE);
+        }
+    }
+
+    /**
+     * Applies the deadlines; called periodically once started.
+     */
+    public void check() {
+        long now = clock.getAsLong();
+        for (Participant p : participants.values()) {
+            long silent = now - p.lastHeard;
+            if (goneAfter > 0L && silent > goneAfter) {
+                gone(p.uniqueDeviceIdentifier);
+            } else if (silent > staleAfter) {
+                synchronized (p) {
+                    if (State.ALIVE != p.state) {
+                        continue;
+                    }
+                    p.state = State.STALE;
+                }
+                listener.stateChanged(p, State.ALIVE, State.STALE);
+            }
+        }
+    }
+
+    public Participant getParticipant(String uniqueDeviceIdentifier) {
+        return participants.get(uniqueDeviceIdentifier);
+    }
+
+    public int size() {
+        return participants.size();
+    }
+}
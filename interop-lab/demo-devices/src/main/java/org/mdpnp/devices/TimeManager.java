@@ -9,11 +9,10 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -49,6 +48,7 @@ import com.rti.dds.subscription.ViewStateKind;
 import com.rti.dds.topic.ContentFilteredTopic;
 import com.rti.dds.topic.Topic;
 
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
 @ManagedResource(description="TimeManager Controller")
@@ -76,6 +76,21 @@ public class TimeManager {
 
     private Map<InstanceHandle_t, ice.HeartBeat> heartbeats = new java.util.concurrent.ConcurrentHashMap<>();
 
+    // Listeners hear of changes in liveness rather than of every heartbeat
+    private final LivenessTracker liveness = new LivenessTracker((participant, previous, current) -> {
+        switch(current) {
+        case ALIVE:
+            processAliveHeartbeat(participant.getUniqueDeviceIdentifier(), participant.getType(), participant.getHostName());
+            break;
+        case STALE:
+            processStaleHeartbeat(participant.getUniqueDeviceIdentifier(), participant.getType());
+            break;
+        case GONE:
+            processNotAliveHeartbeat(participant.getUniqueDeviceIdentifier(), participant.getType());
+            break;
+        }
+    });
+
 
     public void addListener(TimeManagerListener listener) {
         this.listeners.add(listener);
@@ -160,6 +175,7 @@ public class TimeManager {
                         0L, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
             }
             
+            liveness.start(executor);
             hbReader.enable();
             
             
@@ -171,12 +187,8 @@ public class TimeManager {
     
     public void stop() {
         eventLoop.doNow( () -> {
-            Iterator<Entry<InstanceHandle_t, HeartBeat>> itr = heartbeats.entrySet().iterator();
-            while(itr.hasNext()) {
-                Entry<InstanceHandle_t, HeartBeat> hb = itr.next();
-                processNotAliveHeartbeat(hb.getValue().unique_device_identifier, hb.getValue().type);
-                itr.remove();
-            }
+            heartbeats.clear();
+            liveness.stop();
             
             if(null != heartbeatTask) {
                 heartbeatTask.cancel(true);
@@ -242,42 +254,68 @@ public class TimeManager {
         });
     }
     
-    private static final void normalize(Duration_t d) {
-     // Normalize to a positive nanoseconds
-        while(d.nanosec<0) {
-            d.nanosec+=1000000000;
-            d.sec-=1;
-        }
+    private static long toNanoseconds(ice.Time_t t) {
+        return 1000000000L * t.sec + t.nanosec;
     }
-    
-    private static final void elapsedTime(ice.Time_t t1, Time_t t2, Duration_t elapsed) {
-        elapsed.sec = t2.sec - t1.sec;
-        elapsed.nanosec = t2.nanosec - t1.nanosec;
-        
-        normalize(elapsed);
+
+    private static long toNanoseconds(Time_t t) {
+        return 1000000000L * t.sec + t.nanosec;
     }
-    
-    private static final void elapsedTime(ice.Time_t t1, ice.Time_t t2, Duration_t elapsed) {
-        elapsed.sec = t2.sec - t1.sec;
-        elapsed.nanosec = t2.nanosec - t1.nanosec;
-        
-        normalize(elapsed);
+
+    private static void toDuration(long nanoseconds, Duration_t d) {
+        d.sec = (int) Math.floorDiv(nanoseconds, 1000000000L);
+        d.nanosec = (int) Math.floorMod(nanoseconds, 1000000000L);
     }
-    
-    private static final void divide(Duration_t d, int x) {
-        int remain = d.sec % x;
-        d.sec /= x;
-        d.nanosec /= x;
-        d.nanosec += (int)(remain / (double) x * 1000000000.0);
-        normalize(d);
+
+    /**
+     * Folds TimeSync round trips with one remote device into its {@link ClockEstimator} off the
+     * event loop, and passes any new estimate on to the listeners.
+     */
+    private final class Synchronizer implements Runnable {
+        private final ClockEstimator estimator;
+        private final Duration_t latency = new Duration_t();
+        private final Duration_t clockDifference = new Duration_t();
+
+        Synchronizer(String remote_udi) {
+            this.estimator = new ClockEstimator(remote_udi);
+        }
+
+        @Override
+        public void run() {
+            if(estimator.update()) {
+                toDuration(estimator.getDelay() / 2L, latency);
+                toDuration(estimator.getOffset(), clockDifference);
+                processSynchronization(estimator.getUniqueDeviceIdentifier(), latency, clockDifference);
+            }
+        }
     }
-    
-    private static final void subtract(Duration_t d1, Duration_t d2) {
-        d1.sec -= d2.sec;
-        d1.nanosec -= d2.nanosec;
-        normalize(d1);
+
+    private final Map<String, Synchronizer> synchronizers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the executor that heartbeats and synchronization run on
+     */
+    public ScheduledExecutorService getExecutor() {
+        return executor;
     }
-    
+
+    /**
+     * @return the estimate of the clock of a device answering our heartbeats, or null
+     */
+    public ClockEstimator getClockEstimator(String remote_udi) {
+        Synchronizer synchronizer = synchronizers.get(remote_udi);
+        return null == synchronizer ? null : synchronizer.estimator;
+    }
+
+    @ManagedAttribute(description="Clock estimates by remote UDI")
+    public Map<String, String> getClockEstimates() {
+        Map<String, String> estimates = new java.util.TreeMap<>();
+        for(Synchronizer synchronizer : synchronizers.values()) {
+            estimates.put(synchronizer.estimator.getUniqueDeviceIdentifier(), synchronizer.estimator.toString());
+        }
+        return estimates;
+    }
+
     private final List<TimeManagerListener> listeners = new java.util.concurrent.CopyOnWriteArrayList<>();
     
     private static final long HEARTBEAT_INTERVAL = 2000L;
@@ -292,11 +330,23 @@ public class TimeManager {
     
     protected void processNotAliveHeartbeat(final String unique_device_identifier, final String type) {
         log.trace("NOT ALIVE:{}",unique_device_identifier);
+        synchronizers.remove(unique_device_identifier);
         for(TimeManagerListener listener : listeners) {
             listener.notAliveHeartbeat(unique_device_identifier, type);
         }
     }
     
+    protected void processStaleHeartbeat(final String unique_device_identifier, final String type) {
+        log.debug("STALE:{}",unique_device_identifier);
+        for(TimeManagerListener listener : listeners) {
+            listener.staleHeartbeat(unique_device_identifier, type);
+        }
+    }
+
+    public LivenessTracker getLiveness() {
+        return liveness;
+    }
+
     protected void processSynchronization(String remote_udi, Duration_t latency, Duration_t clockDifference) {
         for(TimeManagerListener listener : listeners) {
             listener.synchronization(remote_udi, latency, clockDifference);
@@ -342,7 +392,7 @@ public class TimeManager {
                         }
 
 						if(0!=(InstanceStateKind.NOT_ALIVE_INSTANCE_STATE&sampleInfo.instance_state)) {
-                            processNotAliveHeartbeat(heartbeat.unique_device_identifier, heartbeat.type);
+                            liveness.gone(heartbeat.unique_device_identifier);
 							if(timeSyncHandler != null)
 								timeSyncHandler.processNotAliveHeartbeat(heartbeat.unique_device_identifier);
                         }
@@ -375,7 +425,7 @@ public class TimeManager {
                             }
                             
                             
-                            processAliveHeartbeat(heartbeat.unique_device_identifier, heartbeat.type, host_name);
+                            liveness.heartbeat(heartbeat.unique_device_identifier, heartbeat.type, host_name);
 							if(timeSyncHandler != null)
 								timeSyncHandler.handleTimeSync(sampleInfo, heartbeat);
 						}
@@ -395,11 +445,7 @@ public class TimeManager {
         private final ice.TimeSyncSeq ts_seq = new ice.TimeSyncSeq();
         private final SampleInfoSeq sa_seq = new SampleInfoSeq();
         
-        private final Duration_t remoteProcessingTime = new Duration_t();
-        private final Duration_t totalRoundtripTime = new Duration_t();
-        private final Duration_t latencyTime = new Duration_t();
-        private final Duration_t clockDifference = new Duration_t();
-        
+
         @Override
         public void conditionChanged(Condition condition) {
             for(;;) {
@@ -411,17 +457,18 @@ public class TimeManager {
                         ice.TimeSync timeSync = (TimeSync) ts_seq.get(j);
                         
                         if(sampleInfo.valid_data) {
-                            elapsedTime(timeSync.recipient_receipt_timestamp, sampleInfo.source_timestamp, remoteProcessingTime);
-                            elapsedTime(timeSync.source_source_timestamp, sampleInfo.reception_timestamp, totalRoundtripTime);
-                            latencyTime.sec = totalRoundtripTime.sec;
-                            latencyTime.nanosec = totalRoundtripTime.nanosec;
-                            subtract(latencyTime, remoteProcessingTime);
-                            divide(latencyTime, 2);
-                            
-                            elapsedTime(timeSync.source_source_timestamp, timeSync.recipient_receipt_timestamp, clockDifference);
-                            subtract(clockDifference, latencyTime);
-                            
-                            processSynchronization(timeSync.heartbeat_recipient, latencyTime, clockDifference);
+                            Synchronizer synchronizer = synchronizers.get(timeSync.heartbeat_recipient);
+                            if(null == synchronizer) {
+                                synchronizer = new Synchronizer(timeSync.heartbeat_recipient);
+                                synchronizers.put(timeSync.heartbeat_recipient, synchronizer);
+                            }
+                            // the estimate is worked out on the executor rather than here
+                            if(synchronizer.estimator.submit(toNanoseconds(timeSync.source_source_timestamp), 
+                                    toNanoseconds(timeSync.recipient_receipt_timestamp),
+                                    toNanoseconds(sampleInfo.source_timestamp), 
+                                    toNanoseconds(sampleInfo.reception_timestamp))) {
+                                executor.execute(synchronizer);
+                            }
                         }
                     }
                 } catch (RETCODE_NO_DATA noData) {
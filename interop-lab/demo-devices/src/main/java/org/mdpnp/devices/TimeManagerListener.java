@@ -6,6 +6,12 @@ public interface TimeManagerListener {
     void aliveHeartbeat(String unique_device_identifier, String type, String host_name);
     
     void notAliveHeartbeat(String unique_device_identifier, String type);
+
+    /**
+     * Nothing has been heard from the participant for a while; aliveHeartbeat follows if it recovers.
+     */
+    default void staleHeartbeat(String unique_device_identifier, String type) {
+    }
     
     void synchronization(String remote_udi, Duration_t latency, Duration_t clockDifference);
 }
@@ -23,23 +23,23 @@ import java.net.*;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.text.Normalizer;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.mdpnp.devices.AbstractDevice;
 import org.mdpnp.devices.DeviceClock;
 import org.mdpnp.devices.connected.AbstractConnectedDevice;
+import org.mdpnp.devices.io.SampleJitterBuffer;
 import org.mdpnp.devices.io.util.StateMachine;
 import org.mdpnp.devices.net.NetworkLoop;
+import org.mdpnp.devices.net.NetworkLoopGroup;
 import org.mdpnp.devices.net.TaskQueue;
 import org.mdpnp.devices.philips.intellivue.action.ExtendedPollDataResult;
 import org.mdpnp.devices.philips.intellivue.action.ObservationPoll;
@@ -100,6 +100,7 @@ import org.mdpnp.devices.simulation.AbstractSimulatedDevice;
 import org.mdpnp.rtiapi.data.EventLoop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 
 import com.rti.dds.infrastructure.Time_t;
 import com.rti.dds.publication.Publisher;
@@ -177,6 +178,20 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
             DisconnectState.Initial, "");
     
     private static final long PERIOD = 2000L;
+    // Samples held back beyond each emitted window to absorb arrival jitter
+    private static final long JITTER_BUFFER_MS = Long.getLong("org.mdpnp.devices.philips.intellivue.jitterBufferMs", PERIOD / 2);
+
+    // When above zero, monitors created without a NetworkLoop share this many loops instead of one each
+    private static final int SHARED_NETWORK_LOOPS = Integer.getInteger("org.mdpnp.devices.philips.intellivue.sharedNetworkLoops", 0);
+    private static NetworkLoopGroup sharedNetworkLoopGroup;
+
+    private static synchronized NetworkLoopGroup sharedNetworkLoopGroup() throws IOException {
+        if (null == sharedNetworkLoopGroup) {
+            sharedNetworkLoopGroup = new NetworkLoopGroup("Intellivue Network Loop", SHARED_NETWORK_LOOPS);
+            sharedNetworkLoopGroup.start(AbstractDevice.threadGroup);
+        }
+        return sharedNetworkLoopGroup;
+    }
     private ScheduledFuture<?> emitFastData;
 
     private synchronized void startEmitFastData() {
@@ -696,9 +711,20 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
                         log.warn("No SampleArraySpecification or RelativeTime for handle=" + handle + " rt=" + rt + " sas=" + sas + " sar="+sar+ " unitCode="+unitCode);
                     } else {
                         int cnt = sas.getArraySize();
-                        // TODO these were once cached, no?
-                        MySampleArray w = new MySampleArray();
-                        
+
+                        Map<Integer, SampleCache> handleToSampleCache = sampleArrayCache.get(ov);
+                        if(null == handleToSampleCache) {
+                            handleToSampleCache = new ConcurrentHashMap<Integer, SampleCache>();
+                            sampleArrayCache.put(ov, handleToSampleCache);
+                        }
+                        int windowSize = (int) (PERIOD / rt.toMilliseconds());
+                        SampleCache sampleCache = handleToSampleCache.get(handle);
+                        if(null == sampleCache || sampleCache.window.length != windowSize) {
+                            sampleCache = new SampleCache(windowSize, (int) (JITTER_BUFFER_MS / rt.toMilliseconds()));
+                            handleToSampleCache.put(handle, sampleCache);
+                        }
+                        MySampleArray w = sampleCache.decoder;
+
                         w.setSampleArraySpecification(sas);
                         w.setScaleAndRangeSpecification(sar);
                         
@@ -723,19 +749,8 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
                             for (int i = 0; i < cnt; i++) {
                                 w.applyValue(i, bytes);
                             }
-                            
-                            Map<Integer, SampleCache> handleToSampleCache = sampleArrayCache.get(ov);
-                            if(null == handleToSampleCache) {
-                                handleToSampleCache = Collections.synchronizedMap( new HashMap<Integer, SampleCache>() );
-                                sampleArrayCache.put(ov, handleToSampleCache);
-                            }
-                            SampleCache sampleCache = handleToSampleCache.get(handle);
-                            if(null == sampleCache) {
-                                sampleCache = new SampleCache();
-                                handleToSampleCache.put(handle, sampleCache);
-                            }
-                            
-                            sampleCache.addNewSamples(w.getNumbers());
+
+                            sampleCache.buffer.write(w.getNumbers(), 0, w.getArraySize());
                         }
                     }
                 }
@@ -806,26 +821,27 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
                         }
                         int samples = (int) (PERIOD / rt.toMilliseconds());
 
+                        if(samples != sampleCache.window.length) {
+                            // the period changed; the producer will replace this cache on its next update
+                            continue;
+                        }
+                        float[] window = sampleCache.emitSamples(null == sa ? sampleArrayMetricIds.get(ov)+" "+handle : sa.data.metric_id+" "+sa.data.instance_id);
+
                         if(null != sa) {
-                            synchronized(sampleCache) {
-                                Collection<Number> c = sampleCache.emitSamples(samples, sa.data.metric_id+" "+sa.data.instance_id);
-                                if(null == c) {
-                                    putSampleArrayUpdate(ov, handle, null);
-                                } else {
-                                    sampleArraySample(sa, c, fakeSampleTime);
-                                }
+                            if(null == window) {
+                                putSampleArrayUpdate(ov, handle, null);
+                            } else {
+                                sampleArraySample(sa, window, 0, window.length, fakeSampleTime);
                             }
                         } else {
                             String metric_id = sampleArrayMetricIds.get(ov);
                             UnitCode unitCode = handleToUnitCode.get(handle);
-                            synchronized(sampleCache) {
-                                putSampleArrayUpdate(
-                                        ov, handle,
-                                        sampleArraySample(getSampleArrayUpdate(ov, handle), sampleCache.emitSamples(samples, metric_id+" "+handle),
-                                        metric_id, ov.toString(), handle, 
-                                        RosettaUnits.units(unitCode),
-                                        (int)(1000L / rt.toMilliseconds()), fakeSampleTime));
-                            }
+                            putSampleArrayUpdate(
+                                    ov, handle,
+                                    sampleArraySample(getSampleArrayUpdate(ov, handle), window,
+                                    metric_id, ov.toString(), handle, 
+                                    RosettaUnits.units(unitCode),
+                                    (int)(1000L / rt.toMilliseconds()), fakeSampleTime));
                         }
                     }
                 }
@@ -850,57 +866,100 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
     }
 
 
-    protected final Map<ObservedValue, String> numericMetricIds = new HashMap<ObservedValue, String>();
-    protected final Map<ObservedValue, String> sampleArrayMetricIds = new HashMap<ObservedValue, String>();
+    protected final Map<ObservedValue, String> numericMetricIds = new EnumMap<ObservedValue, String>(ObservedValue.class);
+    protected final Map<ObservedValue, String> sampleArrayMetricIds = new EnumMap<ObservedValue, String>(ObservedValue.class);
 
-    protected final Map<ObservedValue, Label> numericLabels = new HashMap<ObservedValue, Label>();
-    protected final Map<ObservedValue, Label> sampleArrayLabels = new HashMap<ObservedValue, Label>();
+    protected final Map<ObservedValue, Label> numericLabels = new EnumMap<ObservedValue, Label>(ObservedValue.class);
+    protected final Map<ObservedValue, Label> sampleArrayLabels = new EnumMap<ObservedValue, Label>(ObservedValue.class);
 
     
+    /**
+     * Samples for one (ObservedValue, handle) pair.  The network thread decodes into
+     * {@link #decoder} and writes to {@link #buffer}; EmitFastData copies fixed windows
+     * out of the buffer.  Neither side locks.
+     */
     private static final class SampleCache {
-        private final List<Number> newSamples = Collections.synchronizedList(new ArrayList<Number>());
-        private final List<Number> oldSamples = Collections.synchronizedList(new ArrayList<Number>());
-        
-        public void addNewSamples(Collection<Number> coll) {
-            newSamples.addAll(coll);
+        private final MySampleArray decoder = new MySampleArray();
+        private final SampleJitterBuffer buffer;
+        private final float[] window;
+        private long reportedUnderruns, reportedOverruns;
+
+        SampleCache(int windowSize, int targetDepth) {
+            this.window = new float[windowSize];
+            this.buffer = new SampleJitterBuffer(4 * (windowSize + targetDepth), targetDepth);
+        }
+
+        /**
+         * @return the next emission window or null if nothing arrived since the last one
+         */
+        float[] emitSamples(String s) {
+            if(!buffer.emit(window)) {
+                log.warn(s+" no new samples to emit");
+                return null;
+            }
+            long underruns = buffer.getUnderruns(), overruns = buffer.getOverruns();
+            if(underruns != reportedUnderruns) {
+                log.warn(s+" repeated " + (underruns - reportedUnderruns) + " old samples to make up a shortfall");
+                reportedUnderruns = underruns;
+            }
+            if(overruns != reportedOverruns) {
+                log.warn(s+" dropped " + (overruns - reportedOverruns) + " samples beyond the jitter buffer depth");
+                reportedOverruns = overruns;
+            }
+            return window;
         }
-        
-        public Collection<Number> emitSamples(int n, String s) {
-            synchronized(newSamples) {
-                if(newSamples.isEmpty()) {
-                    log.warn(s+" no new samples to emit");
-                    return null;
-                }
-                
-                if(newSamples.size() < n) {
-                    log.warn(s+" will repeat " + (n - newSamples.size()) + " old samples to make up a shortfall");
-                }
-                // Move up to n samples from the old list to the new
-                List<Number> oldestNewSamples = newSamples.subList(0, n > newSamples.size() ? newSamples.size() : n);
-                
-                oldSamples.addAll(oldestNewSamples);
-                oldestNewSamples.clear();
+    }
+
+    @ManagedAttribute(description="Waveform samples repeated to cover a shortfall.")
+    public long getSampleArrayUnderruns() {
+        long n = 0L;
+        for(Map<Integer, SampleCache> m : sampleArrayCache.values()) {
+            for(SampleCache c : m.values()) {
+                n += c.buffer.getUnderruns();
             }
-            synchronized(oldSamples) {
-                // If we have insufficient oldSamples (shouldn't happen except maybe at initialization) fill in values
-                if(oldSamples.size() < n) {
-                    log.warn(s+" filling in " + (n - oldSamples.size()) + " zeros; this should not continue happening");
-                    while(oldSamples.size() < n) {
-                        oldSamples.add(0, 0);
-                    }
-                }
-                // If we have extra oldSamples then remove them
-                if(oldSamples.size() > n) {
-                    oldSamples.subList(0, oldSamples.size()-n).clear();
-                }
+        }
+        return n;
+    }
+
+    @ManagedAttribute(description="Waveform samples dropped beyond the jitter buffer depth.")
+    public long getSampleArrayOverruns() {
+        long n = 0L;
+        for(Map<Integer, SampleCache> m : sampleArrayCache.values()) {
+            for(SampleCache c : m.values()) {
+                n += c.buffer.getOverruns();
             }
-            return oldSamples;
         }
+        return n;
+    }
+
+    @ManagedAttribute(description="Timer tasks run per second on the network loop.")
+    public double getNetworkLoopTasksPerSecond() {
+        return networkLoop.getTasksPerSecond();
+    }
+
+    @ManagedAttribute(description="Longest timer task execution on the network loop, in microseconds.")
+    public long getNetworkLoopMaxTaskExecution() {
+        return networkLoop.getMaxTaskExecutionNanos() / 1000L;
+    }
+
+    @ManagedAttribute(description="Share of the last second the network loop was busy, as a percentage.")
+    public double getNetworkLoopUtilization() {
+        return 100.0 * networkLoop.getUtilization();
+    }
+
+    @ManagedAttribute(description="Longest time between selects on the network loop, in microseconds.")
+    public long getNetworkLoopMaxSelectLatency() {
+        return networkLoop.getMaxSelectLatencyNanos() / 1000L;
+    }
+
+    @ManagedAttribute(description="Ready channels and registrations waiting on the network loop.")
+    public int getNetworkLoopBacklog() {
+        return networkLoop.getBacklog();
     }
-    
-    protected final Map<ObservedValue, Map<Integer, InstanceHolder<ice.Numeric>>> numericUpdates = new HashMap<ObservedValue, Map<Integer, InstanceHolder<ice.Numeric>>>();
-    protected final Map<ObservedValue, Map<Integer, InstanceHolder<ice.SampleArray>>> sampleArrayUpdates = new HashMap<ObservedValue, Map<Integer, InstanceHolder<ice.SampleArray>>>();
-    protected final Map<ObservedValue, Map<Integer, SampleCache>> sampleArrayCache = Collections.synchronizedMap(new HashMap<ObservedValue, Map<Integer, SampleCache>>());
+
+    protected final Map<ObservedValue, Map<Integer, InstanceHolder<ice.Numeric>>> numericUpdates = new EnumMap<ObservedValue, Map<Integer, InstanceHolder<ice.Numeric>>>(ObservedValue.class);
+    protected final Map<ObservedValue, Map<Integer, InstanceHolder<ice.SampleArray>>> sampleArrayUpdates = new EnumMap<ObservedValue, Map<Integer, InstanceHolder<ice.SampleArray>>>(ObservedValue.class);
+    protected final Map<ObservedValue, Map<Integer, SampleCache>> sampleArrayCache = new ConcurrentHashMap<ObservedValue, Map<Integer, SampleCache>>();
 
     static void loadMap(Map<ObservedValue, String> numericMetricIds,
                         Map<ObservedValue, Label> numericLabels,
@@ -966,6 +1025,7 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
 
     protected final NetworkLoop networkLoop;
     private final Thread networkLoopThread;
+    private final boolean sharedNetworkLoop;
     private final TaskQueue.Task<?> watchdogTask; // ,    serviceSampleArrays;
 
     public AbstractDemoIntellivue(final Subscriber subscriber, final Publisher publisher, EventLoop eventLoop) throws IOException {
@@ -981,7 +1041,11 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         AbstractSimulatedDevice.randomUDI(deviceIdentity);
         writeDeviceIdentity();
 
-        if (null == loop) {
+        sharedNetworkLoop = null == loop && SHARED_NETWORK_LOOPS > 0;
+        if (sharedNetworkLoop) {
+            networkLoop = sharedNetworkLoopGroup().next();
+            networkLoopThread = null;
+        } else if (null == loop) {
             networkLoop = new NetworkLoop();
             networkLoopThread = new Thread(AbstractDevice.threadGroup, new Runnable() {
                 @Override
@@ -1005,7 +1069,10 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         watchdogTask = new TaskQueue.TaskImpl<Object>() {
             @Override
             public Object doExecute(TaskQueue queue) {
-                watchdog();
+                // a shared loop outlives this device, which stops the watchdog on shutdown
+                if (isRecurrent()) {
+                    watchdog();
+                }
                 return null;
             };
         };
@@ -1028,13 +1095,17 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         private short sampleSize, significantBits;
         private double lowerAbsoluteValue, upperAbsoluteValue;
         private int lowerScaledValue, upperScaledValue;
-        private final List<Number> numbers = new ArrayList<Number>();
+        private float[] numbers = new float[0];
+        private int size;
 
         public MySampleArray() {
 
         }
 
-        public List<Number> getNumbers() {
+        /**
+         * @return scaled samples; only the first {@link #getArraySize()} are valid
+         */
+        public float[] getNumbers() {
             return numbers;
         }
 
@@ -1060,8 +1131,8 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
                     }
                 }
             }
-            if (sampleNumber >= numbers.size()) {
-                log.warn("Received sampleNumber=" + sampleNumber + " where expected size was " + numbers.size());
+            if (sampleNumber >= size) {
+                log.warn("Received sampleNumber=" + sampleNumber + " where expected size was " + size);
             } else {
                 // Scale and range the value
                 
@@ -1074,11 +1145,11 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
                             log.error("Not scaling " + value + " (proportionally " + prop+ ") between " + lowerAbsoluteValue + " and " + upperScaledValue);
                         } else {
                             prop = lowerAbsoluteValue + prop * (upperAbsoluteValue - lowerAbsoluteValue);
-                            numbers.set(sampleNumber, prop);
+                            numbers[sampleNumber] = (float) prop;
                         }
                     } 
                 } else {
-                    numbers.set(sampleNumber, value);
+                    numbers[sampleNumber] = value;
                 }
             }
         }
@@ -1133,18 +1204,14 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
         }
 
         public int getArraySize() {
-            return numbers.size();
+            return size;
         }
 
         public void setArraySize(int size) {
-            if (size != numbers.size()) {
-                while (numbers.size() < size) {
-                    numbers.add(0);
-                }
-                while (numbers.size() > size) {
-                    numbers.remove(0);
-                }
+            if (size > numbers.length) {
+                numbers = Arrays.copyOf(numbers, size);
             }
+            this.size = size;
         }
 
         public void setSampleArraySpecification(SampleArraySpecification sas) {
@@ -1304,6 +1371,12 @@ public abstract class AbstractDemoIntellivue extends AbstractConnectedDevice {
 
     @Override
     public void shutdown() {
+        if (sharedNetworkLoop) {
+            unregisterAll();
+            watchdogTask.setInterval(0L);
+            super.shutdown();
+            return;
+        }
         networkLoop.clearTasks();
         networkLoop.cancelThread();
         if (null != networkLoopThread) {
@@ -34,6 +34,8 @@ public abstract class AbstractSimulatedConnectedDevice extends AbstractConnected
     protected Throwable t;
 
     protected final GlobalSimulationObjectiveMonitor monitor;
+
+    private double phase;
     
     private static final Logger log = LoggerFactory.getLogger(AbstractSimulatedConnectedDevice.class);
 
@@ -50,6 +52,25 @@ public abstract class AbstractSimulatedConnectedDevice extends AbstractConnected
         return t;
     }
 
+    /**
+     * @return fraction (0 to 1) of their waveforms and update period by which the simulators of
+     *         this device are shifted when connected
+     */
+    public double getPhase() {
+        return phase;
+    }
+
+    /**
+     * Shifts the simulated waveforms and their publication so that many devices started together
+     * do not send identical data at the same instant; takes effect on the next connect.
+     */
+    public void setPhase(double phase) {
+        if (phase < 0.0 || phase >= 1.0) {
+            throw new IllegalArgumentException("phase must be in [0,1) " + phase);
+        }
+        this.phase = phase;
+    }
+
     @Override
     public boolean connect(String str) {
         monitor.register(subscriber, eventLoop);
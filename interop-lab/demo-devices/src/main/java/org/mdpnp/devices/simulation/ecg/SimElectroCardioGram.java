@@ -54,7 +54,7 @@ public class SimElectroCardioGram extends AbstractSimulatedConnectedDevice {
         }
 
         @Override
-        protected void receiveECG(DeviceClock.Reading sampleTime, Number[] iValues, Number[] iiValues, Number[] iiiValues,
+        protected void receiveECG(DeviceClock.Reading sampleTime, float[] iValues, float[] iiValues, float[] iiiValues,
                                   int heartRateValue, int respiratoryRateValue, int frequency) {
             // ecgCache[0][ecgCount] = copy(iValues, ecgCache[0][ecgCount]);
             // ecgCache[1][ecgCount] = copy(iiValues, ecgCache[1][ecgCount]);
@@ -95,7 +95,7 @@ public class SimElectroCardioGram extends AbstractSimulatedConnectedDevice {
 
     @Override
     public boolean connect(String str) {
-        ecg.connect(executor);
+        ecg.connect(executor, getPhase());
         return super.connect(str);
     }
 
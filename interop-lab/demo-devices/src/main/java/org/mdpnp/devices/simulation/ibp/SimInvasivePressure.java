@@ -41,7 +41,7 @@ public class SimInvasivePressure extends AbstractSimulatedConnectedDevice {
         }
 
         @Override
-        protected void receivePressure(DeviceClock.Reading sampleTime, int systolic, int diastolic, Number[] waveValues, int frequency) {
+        protected void receivePressure(DeviceClock.Reading sampleTime, int systolic, int diastolic, float[] waveValues, int frequency) {
             numericSample(SimInvasivePressure.this.systolic, systolic, sampleTime);
             numericSample(SimInvasivePressure.this.diastolic, diastolic, sampleTime);
             wave = sampleArraySample(wave, waveValues, rosetta.MDC_PRESS_BLD.VALUE, "", 0, 
@@ -51,7 +51,7 @@ public class SimInvasivePressure extends AbstractSimulatedConnectedDevice {
 
     @Override
     public boolean connect(String str) {
-        pressure.connect(executor);
+        pressure.connect(executor, getPhase());
         return super.connect(str);
     }
 
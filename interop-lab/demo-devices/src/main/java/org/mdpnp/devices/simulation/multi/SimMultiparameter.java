@@ -47,7 +47,7 @@ public class SimMultiparameter extends AbstractSimulatedConnectedDevice {
         }
 
         @Override
-        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, float[] plethValues, int frequency) {
 
             numericSample(pulse, heartRate, sampleTime);
             numericSample(SimMultiparameter.this.SpO2, SpO2, sampleTime);
@@ -62,7 +62,7 @@ public class SimMultiparameter extends AbstractSimulatedConnectedDevice {
         }
         
         @Override
-        protected void receivePressure(Reading sampleTime, int systolic, int diastolic, Number[] waveValues, int frequency) {
+        protected void receivePressure(Reading sampleTime, int systolic, int diastolic, float[] waveValues, int frequency) {
             numericSample(SimMultiparameter.this.systolic, systolic, sampleTime);
             numericSample(SimMultiparameter.this.diastolic, diastolic, sampleTime);
             pressure = sampleArraySample(pressure, waveValues, rosetta.MDC_PRESS_BLD_ART_ABP.VALUE, "", 0,
@@ -78,7 +78,7 @@ public class SimMultiparameter extends AbstractSimulatedConnectedDevice {
         }
 
         @Override
-        protected void receiveCO2(DeviceClock.Reading sampleTime, Number[] co2Values, int respiratoryRateValue, int etCO2Value, int frequency) {
+        protected void receiveCO2(DeviceClock.Reading sampleTime, float[] co2Values, int respiratoryRateValue, int etCO2Value, int frequency) {
 
             co2 = sampleArraySample(co2, co2Values, rosetta.MDC_AWAY_CO2.VALUE, "", 0, 
                     rosetta.MDC_DIM_MMHG.VALUE, frequency, sampleTime);
@@ -95,7 +95,7 @@ public class SimMultiparameter extends AbstractSimulatedConnectedDevice {
         }
 
         @Override
-        protected void receiveECG(DeviceClock.Reading sampleTime, Number[] iValues, Number[] iiValues, Number[] iiiValues,
+        protected void receiveECG(DeviceClock.Reading sampleTime, float[] iValues, float[] iiValues, float[] iiiValues,
                                   int heartRateValue, int respiratoryRateValue, int frequency) {
 
             try {
@@ -122,10 +122,10 @@ public class SimMultiparameter extends AbstractSimulatedConnectedDevice {
 
     @Override
     public boolean connect(String str) {
-        pulseox.connect(executor);
-        capnometer.connect(executor);
-        ecg.connect(executor);
-        ibp.connect(executor);
+        pulseox.connect(executor, getPhase());
+        capnometer.connect(executor, getPhase());
+        ecg.connect(executor, getPhase());
+        ibp.connect(executor, getPhase());
         return super.connect(str);
     }
 
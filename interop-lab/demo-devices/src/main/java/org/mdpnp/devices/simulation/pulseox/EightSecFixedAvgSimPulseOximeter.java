@@ -53,7 +53,7 @@ public class EightSecFixedAvgSimPulseOximeter extends AbstractSimulatedConnected
         }
 
         @Override
-        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, float[] plethValues, int frequency) {
             numericSample(pulse, heartRate, sampleTime);
             numericSample(EightSecFixedAvgSimPulseOximeter.this.SpO2, SpO2, sampleTime);
             numericSample(operCanSetAveragingTime, 0, sampleTime);
@@ -74,7 +74,7 @@ public class EightSecFixedAvgSimPulseOximeter extends AbstractSimulatedConnected
 
     @Override
     public boolean connect(String str) {
-        pulseox.connect(executor);
+        pulseox.connect(executor, getPhase());
         return super.connect(str);
     }
 
@@ -52,7 +52,7 @@ public class FourSecFixedAvgSimPulseOximeter extends AbstractSimulatedConnectedD
         }
 
         @Override
-        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, float[] plethValues, int frequency) {
             numericSample(pulse, heartRate, sampleTime);
             numericSample(FourSecFixedAvgSimPulseOximeter.this.SpO2, SpO2, sampleTime);
             //Indicate that we cannot supply the averaging time.
@@ -73,7 +73,7 @@ public class FourSecFixedAvgSimPulseOximeter extends AbstractSimulatedConnectedD
 
     @Override
     public boolean connect(String str) {
-        pulseox.connect(executor);
+        pulseox.connect(executor, getPhase());
         return super.connect(str);
     }
 
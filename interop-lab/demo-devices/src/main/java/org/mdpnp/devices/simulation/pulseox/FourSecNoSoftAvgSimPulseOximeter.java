@@ -53,7 +53,7 @@ public class FourSecNoSoftAvgSimPulseOximeter extends AbstractSimulatedConnected
         }
 
         @Override
-        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, float[] plethValues, int frequency) {
             numericSample(pulse, heartRate, sampleTime);
             numericSample(FourSecNoSoftAvgSimPulseOximeter.this.SpO2, SpO2, sampleTime);
             //Indicate that we cannot supply the averaging time.
@@ -75,7 +75,7 @@ public class FourSecNoSoftAvgSimPulseOximeter extends AbstractSimulatedConnected
 
     @Override
     public boolean connect(String str) {
-        pulseox.connect(executor);
+        pulseox.connect(executor, getPhase());
         return super.connect(str);
     }
 
@@ -79,7 +79,7 @@ public class InitialEightSecOperSettableAvgSimPulseOximeter extends AbstractSimu
         }
 
         @Override
-        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, Number[] plethValues, int frequency) {
+        protected void receivePulseOx(DeviceClock.Reading sampleTime, int heartRate, int SpO2, float[] plethValues, int frequency) {
             numericSample(pulse, heartRate, sampleTime);
             numericSample(InitialEightSecOperSettableAvgSimPulseOximeter.this.SpO2, SpO2, sampleTime);
             //Indicate that we cannot supply the averaging time.
@@ -101,7 +101,7 @@ public class InitialEightSecOperSettableAvgSimPulseOximeter extends AbstractSimu
 
     @Override
     public boolean connect(String str) {
-        pulseox.connect(executor);
+        pulseox.connect(executor, getPhase());
         return super.connect(str);
     }
 
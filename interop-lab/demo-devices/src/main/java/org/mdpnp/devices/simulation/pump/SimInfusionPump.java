@@ -69,7 +69,7 @@ public class SimInfusionPump extends AbstractSimulatedConnectedDevice {
 
     @Override
     public boolean connect(String str) {
-        pump.connect(executor);
+        pump.connect(executor, getPhase());
         return super.connect(str);
     }
 
@@ -0,0 +1,218 @@
+package org.mdpnp.devices.simulation.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the lines written by the data collector's CSV persister
+ * <pre>
+ *   1,UDI,METRIC,INSTANCE,TIME,MRN,1,VALUE           numeric
+ *   2,UDI,METRIC,INSTANCE,TIME,MRN,N,V1,...,VN       sample array
+ * </pre>
+ * where TIME is either ms since the epoch (the raw date format) or yyyyMMddHHmmssZ. Other
+ * lines, such as patient assessments, are skipped.
+ * <p>
+ * The file does not carry the frequency of sample arrays so it is estimated from the number
+ * of samples recorded over time for each stream. Timestamps to the second make that estimate
+ * settle slowly and replay the blocks of a second together; recordings made with the raw
+ * date format replay with their original resolution.
+ */
+public class CSVRecording implements Recording {
+
+    private static final Logger log = LoggerFactory.getLogger(CSVRecording.class);
+
+    private static final String PROPERTY_PREFIX = CSVRecording.class.getName() + ".";
+
+    /**
+     * Assumed for a sample array until its recording has spanned some time
+     */
+    public static final int DEFAULT_FREQUENCY = Integer.getInteger(PROPERTY_PREFIX + "defaultFrequency", 250);
+
+    private static final int MAX_FIELDS = 8;
+
+    private final BufferedReader reader;
+    private final String source;
+    private String udi;
+    private final Map<String, Stream> streams = new HashMap<String, Stream>();
+
+    // fields of the current line, as offsets into it
+    private final int[] start = new int[MAX_FIELDS];
+    private final int[] end = new int[MAX_FIELDS];
+
+    // the minute of the last parsed timestamp, yyyyMMddHHmm followed by the zone
+    private String minuteKey;
+    private long minuteStart;
+
+    private int lineNumber;
+
+    public CSVRecording(File file, String udi) throws IOException {
+        this(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), file.getPath(), udi);
+    }
+
+    public CSVRecording(Reader reader, String source, String udi) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+        this.source = source;
+        this.udi = udi;
+    }
+
+    @Override
+    public String getUniqueDeviceIdentifier() {
+        return udi;
+    }
+
+    @Override
+    public boolean next(Block block) throws IOException {
+        String line;
+        while (null != (line = reader.readLine())) {
+            lineNumber++;
+            try {
+                if (parse(line, block)) {
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Skipping line " + lineNumber + " of " + source + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private boolean parse(String line, Block block) {
+        if (line.length() < 2 || line.charAt(1) != ',') {
+            return false;
+        }
+        final char type = line.charAt(0);
+        if ('1' != type && '2' != type) {
+            return false;
+        }
+        // TYPE,UDI,METRIC,INSTANCE,TIME,MRN,N then the values
+        int position = 0;
+        for (int i = 0; i < 7; i++) {
+            start[i] = position;
+            int comma = line.indexOf(',', position);
+            if (comma < 0) {
+                throw new IllegalArgumentException("expected at least 8 fields");
+            }
+            end[i] = comma;
+            position = comma + 1;
+        }
+        String lineUdi = line.substring(start[1], end[1]);
+        if (null == udi) {
+            udi = lineUdi;
+            log.info("Replaying device " + udi + " from " + source);
+        } else if (!udi.equals(lineUdi)) {
+            return false;
+        }
+        String metricId = line.substring(start[2], end[2]);
+        int instanceId = Integer.parseInt(line.substring(start[3], end[3]));
+        long time = parseTime(line, start[4], end[4]);
+        int count = Integer.parseInt(line.substring(start[6], end[6]));
+
+        if ('1' == type) {
+            block.setNumeric(metricId, instanceId, time, parseValue(line, position, valueEnd(line, position)));
+        } else {
+            String key = metricId + "-" + instanceId;
+            Stream stream = streams.get(key);
+            if (null == stream) {
+                stream = new Stream(time);
+                streams.put(key, stream);
+            } else {
+                stream.update(time, count);
+            }
+            float[] values = block.setSampleArray(metricId, instanceId, stream.frequency, time, count);
+            for (int i = 0; i < count; i++) {
+                if (position > line.length()) {
+                    throw new IllegalArgumentException("expected " + count + " samples, found " + i);
+                }
+                int e = valueEnd(line, position);
+                values[i] = parseValue(line, position, e);
+                position = e + 1;
+            }
+        }
+        return true;
+    }
+
+    private static int valueEnd(String line, int position) {
+        int comma = line.indexOf(',', position);
+        return comma < 0 ? line.length() : comma;
+    }
+
+    private static float parseValue(String line, int from, int to) {
+        try {
+            return Float.parseFloat(line.substring(from, to));
+        } catch (NumberFormatException e) {
+            // NaN and infinity are written by a locale specific formatter
+            return Float.NaN;
+        }
+    }
+
+    long parseTime(String line, int from, int to) {
+        final int length = to - from;
+        // yyyyMMddHHmmss+HHMM
+        if (19 == length && ('+' == line.charAt(from + 14) || '-' == line.charAt(from + 14))) {
+            String key = line.substring(from, from + 12) + line.substring(from + 14, to);
+            if (!key.equals(minuteKey)) {
+                int sign = '-' == line.charAt(from + 14) ? -1 : 1;
+                ZoneOffset zone = ZoneOffset.ofHoursMinutes(sign * digits(line, from + 15, 2), sign * digits(line, from + 17, 2));
+                minuteStart = LocalDateTime.of(digits(line, from, 4), digits(line, from + 4, 2), digits(line, from + 6, 2), digits(line, from + 8, 2),
+                        digits(line, from + 10, 2)).toInstant(zone).toEpochMilli();
+                minuteKey = key;
+            }
+            return minuteStart + 1000L * digits(line, from + 12, 2);
+        } else {
+            return Long.parseLong(line.substring(from, to));
+        }
+    }
+
+    private static int digits(String s, int from, int width) {
+        int v = 0;
+        for (int i = from; i < from + width; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("bad timestamp " + s.substring(from, from + width));
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Estimates the frequency of a sample array from the samples recorded after its first block.
+     */
+    private static final class Stream {
+        private final long firstTime;
+        private long samples;
+        int frequency = DEFAULT_FREQUENCY;
+
+        Stream(long firstTime) {
+            this.firstTime = firstTime;
+        }
+
+        void update(long time, int count) {
+            samples += count;
+            if (time > firstTime) {
+                int estimate = (int) Math.round(samples * 1000.0 / (time - firstTime));
+                // small corrections would register the instance again for nothing
+                if (estimate > 0 && Math.abs(estimate - frequency) > frequency / 20) {
+                    frequency = estimate;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.mdpnp.devices.simulation.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The recorded numerics and sample arrays of one device, delivered in the order they were
+ * recorded.
+ */
+public interface Recording {
+
+    /**
+     * Fills in the next recorded block.
+     *
+     * @return false at the end of the recording
+     */
+    boolean next(Block block) throws IOException;
+
+    void close() throws IOException;
+
+    /**
+     * @return the identifier of the recorded device or null if not yet known
+     */
+    String getUniqueDeviceIdentifier();
+
+    interface Opener {
+        /**
+         * @param udi the recorded device to replay, or null for the first one found
+         */
+        Recording open(File file, String udi) throws IOException;
+    }
+
+    /**
+     * One numeric value or one sample array. Instances are reused from block to block.
+     */
+    final class Block {
+        boolean numeric;
+        String metricId;
+        int instanceId;
+        /**
+         * samples per second, 0 for numerics
+         */
+        int frequency;
+        /**
+         * recorded device time in ms
+         */
+        long time;
+        float[] values = new float[1];
+        int count;
+
+        public boolean isNumeric() {
+            return numeric;
+        }
+
+        public String getMetricId() {
+            return metricId;
+        }
+
+        public int getInstanceId() {
+            return instanceId;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public float[] getValues() {
+            return values;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setNumeric(String metricId, int instanceId, long time, float value) {
+            this.numeric = true;
+            this.metricId = metricId;
+            this.instanceId = instanceId;
+            this.frequency = 0;
+            this.time = time;
+            this.values[0] = value;
+            this.count = 1;
+        }
+
+        /**
+         * @return the array to fill in with count samples
+         */
+        public float[] setSampleArray(String metricId, int instanceId, int frequency, long time, int count) {
+            this.numeric = false;
+            this.metricId = metricId;
+            this.instanceId = instanceId;
+            this.frequency = frequency;
+            this.time = time;
+            this.count = count;
+            if (values.length < count) {
+                values = new float[count];
+            }
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return (numeric ? "numeric " : "samples ") + metricId + " " + instanceId + " " + time + " count=" + count + (numeric ? "" : " " + frequency + "Hz");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.mdpnp.devices.simulation.replay;
+
+import ice.Numeric;
+import ice.SampleArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mdpnp.devices.DeviceClock;
+import org.mdpnp.devices.simulation.AbstractSimulatedConnectedDevice;
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rti.dds.publication.Publisher;
+import com.rti.dds.subscription.Subscriber;
+
+/**
+ * Publishes a recorded session as if the recorded device were connected. The address is
+ * <pre>
+ *   file[,speed[,udi]]
+ * </pre>
+ * where speed is a multiple of the original pace (1 by default) and udi picks one device out
+ * of a recording of several (the first one found by default). Without an address the
+ * recording property is used, so the adapter can be started from the simulated device list.
+ * <p>
+ * Samples are stamped with the current time and carry the recorded time as the device time.
+ * All replay devices in a JVM share one {@link ReplayScheduler}.
+ */
+public class ReplayDevice extends AbstractSimulatedConnectedDevice implements ReplayScheduler.Sink {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayDevice.class);
+
+    private static final String PROPERTY_PREFIX = ReplayDevice.class.getName() + ".";
+
+    /**
+     * Address used when none is given
+     */
+    public static final String RECORDING = System.getProperty(PROPERTY_PREFIX + "recording");
+
+    /**
+     * Start again from the beginning at the end of the recording
+     */
+    public static final boolean LOOP = Boolean.getBoolean(PROPERTY_PREFIX + "loop");
+
+    private final ReplayScheduler scheduler;
+    private final Recording.Opener opener;
+
+    private final Map<String, InstanceHolder<Numeric>> numerics = new HashMap<String, InstanceHolder<Numeric>>();
+    private final Map<String, InstanceHolder<SampleArray>> sampleArrays = new HashMap<String, InstanceHolder<SampleArray>>();
+
+    private File file;
+    private double speed = 1.0;
+    private String udi;
+    private volatile ReplayScheduler.Player player;
+
+    public ReplayDevice(final Subscriber subscriber, final Publisher publisher, EventLoop eventLoop) {
+        this(subscriber, publisher, eventLoop, ReplayScheduler.getShared(), CSVRecording::new);
+    }
+
+    /**
+     * @param opener turns the file named by the address into a recording
+     */
+    public ReplayDevice(final Subscriber subscriber, final Publisher publisher, EventLoop eventLoop, ReplayScheduler scheduler, Recording.Opener opener) {
+        super(subscriber, publisher, eventLoop);
+        this.scheduler = scheduler;
+        this.opener = opener;
+        deviceIdentity.model = "Replay";
+        writeDeviceIdentity();
+    }
+
+    @Override
+    public boolean connect(String str) {
+        if (null == str || str.trim().isEmpty()) {
+            str = RECORDING;
+        }
+        if (null == str) {
+            throw new IllegalArgumentException("No recording to replay, specify file[,speed[,udi]] or " + PROPERTY_PREFIX + "recording");
+        }
+        String[] parts = str.split(",");
+        file = new File(parts[0].trim());
+        speed = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1.0;
+        udi = parts.length > 2 ? parts[2].trim() : null;
+
+        try {
+            start();
+        } catch (IOException e) {
+            log.error("Unable to open recording " + file, e);
+            return false;
+        }
+        return super.connect(str);
+    }
+
+    private void start() throws IOException {
+        Recording recording = opener.open(file, udi);
+        player = scheduler.play(recording, speed, this);
+    }
+
+    @Override
+    public void disconnect() {
+        ReplayScheduler.Player player = this.player;
+        this.player = null;
+        if (null != player) {
+            player.cancel();
+        }
+        super.disconnect();
+    }
+
+    /**
+     * @return statistics of the current pass through the recording, or null when not replaying
+     */
+    public ReplayScheduler.Statistics getReplayStatistics() {
+        ReplayScheduler.Player player = this.player;
+        return null == player ? null : player.getStatistics();
+    }
+
+    @Override
+    public void publish(Recording.Block block) {
+        String key = block.metricId + "-" + block.instanceId;
+        DeviceClock.Reading time = new DeviceClock.CombinedReading(getClockProvider().instant(), new DeviceClock.ReadingImpl(block.time));
+        if (block.numeric) {
+            numerics.put(key, numericSample(numerics.get(key), (Float) block.values[0], block.metricId, "", block.instanceId,
+                    rosetta.MDC_DIM_DIMLESS.VALUE, time));
+        } else {
+            sampleArrays.put(key, sampleArraySample(sampleArrays.get(key), block.values, 0, block.count, block.metricId, "", block.instanceId,
+                    rosetta.MDC_DIM_DIMLESS.VALUE, block.frequency, time));
+        }
+    }
+
+    @Override
+    public void finished(ReplayScheduler.Player finished) {
+        if (LOOP && finished == player) {
+            try {
+                start();
+            } catch (IOException e) {
+                log.error("Unable to reopen recording " + file, e);
+            }
+        }
+    }
+
+    @Override
+    protected String iconResourceName() {
+        return "multi.png";
+    }
+}
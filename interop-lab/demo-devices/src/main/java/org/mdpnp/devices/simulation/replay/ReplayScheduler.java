@@ -0,0 +1,314 @@
+package org.mdpnp.devices.simulation.replay;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mdpnp.rtiapi.data.EventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays any number of recordings on a small shared pool of threads. Each recording is a task
+ * that publishes the blocks that have fallen due and schedules itself again for the time of
+ * the next one, so an idle recording costs nothing but a queued task.
+ * <p>
+ * A recorded time t is due at start + (t - first) / speed. How late each block is published
+ * (the drift) and the rate achieved against the rate the recording asks for are kept for
+ * every recording and logged periodically; a growing drift with an achieved rate below the
+ * target means the publisher, not the recording, is the limit.
+ */
+public class ReplayScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplayScheduler.class);
+
+    private static final String PROPERTY_PREFIX = ReplayScheduler.class.getName() + ".";
+
+    public static final int DEFAULT_THREADS = Integer.getInteger(PROPERTY_PREFIX + "threads", 2);
+
+    /**
+     * ms between statistics reports in the log, 0 for none
+     */
+    public static final long REPORT_INTERVAL = Long.getLong(PROPERTY_PREFIX + "reportInterval", 10000L);
+
+    /**
+     * Blocks published by one recording before it yields to the others
+     */
+    public static final int MAX_BURST = Integer.getInteger(PROPERTY_PREFIX + "maxBurst", 256);
+
+    public interface Sink {
+        void publish(Recording.Block block);
+
+        /**
+         * Called once, on a scheduler thread, after the last block or a failure to read one.
+         */
+        void finished(Player player);
+    }
+
+    private static final class SharedHolder {
+        private static final ReplayScheduler shared = new ReplayScheduler(DEFAULT_THREADS, REPORT_INTERVAL);
+    }
+
+    /**
+     * @return the scheduler shared by all replay devices in this JVM
+     */
+    public static ReplayScheduler getShared() {
+        return SharedHolder.shared;
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Set<Player> players = ConcurrentHashMap.newKeySet();
+
+    public ReplayScheduler(int threads, long reportInterval) {
+        executor = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Replay " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if (reportInterval > 0L) {
+            executor.scheduleWithFixedDelay(this::report, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts replaying a recording at the given multiple of its original speed.
+     */
+    public Player play(Recording recording, double speed, Sink sink) {
+        if (!(speed > 0.0)) {
+            throw new IllegalArgumentException("speed must be positive " + speed);
+        }
+        Player player = new Player(recording, speed, sink);
+        players.add(player);
+        player.schedule(0L);
+        return player;
+    }
+
+    public List<Player> getPlayers() {
+        return new ArrayList<Player>(players);
+    }
+
+    public void shutdown() {
+        for (Player p : getPlayers()) {
+            p.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    private void report() {
+        if (players.isEmpty()) {
+            return;
+        }
+        double achieved = 0.0, target = 0.0;
+        long maxDrift = 0L;
+        for (Player p : players) {
+            Statistics s = p.getStatistics();
+            achieved += s.getAchievedRate();
+            target += s.getTargetRate();
+            maxDrift = Math.max(maxDrift, s.getDriftMillis());
+            log.debug(p.toString());
+        }
+        log.info(String.format("%d recordings achieved %.1f of %.1f blocks/s, max drift %dms", players.size(), achieved, target, maxDrift));
+    }
+
+    public final class Player implements Runnable {
+        private final Recording recording;
+        private final double speed;
+        private final Sink sink;
+        private final Recording.Block block = new Recording.Block();
+        private final Statistics statistics = new Statistics();
+
+        private boolean started;
+        private boolean pending;
+        private long firstTime;
+        private long startNanos;
+        private long lastTime;
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> future;
+
+        Player(Recording recording, double speed, Sink sink) {
+            this.recording = recording;
+            this.speed = speed;
+            this.sink = sink;
+        }
+
+        public Recording getRecording() {
+            return recording;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        public Statistics getStatistics() {
+            return statistics;
+        }
+
+        private void schedule(long delayNanos) {
+            if (!cancelled) {
+                future = executor.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private long dueNanos(long time) {
+            return startNanos + (long) ((time - firstTime) * 1000000.0 / speed);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!started) {
+                    started = true;
+                    if (!(pending = recording.next(block))) {
+                        finish();
+                        return;
+                    }
+                    startNanos = System.nanoTime();
+                    statistics.startNanos = startNanos;
+                    firstTime = lastTime = block.time;
+                }
+                for (int n = 0; n < MAX_BURST && !cancelled; n++) {
+                    if (block.time < lastTime) {
+                        // time went backwards, carry on from the current position
+                        startNanos = dueNanos(lastTime);
+                        firstTime = block.time;
+                    }
+                    final long due = dueNanos(block.time);
+                    final long now = System.nanoTime();
+                    if (due > now) {
+                        schedule(due - now);
+                        return;
+                    }
+                    sink.publish(block);
+                    statistics.published(block, now - due, (block.time - firstTime) / speed + (startNanos - statistics.startNanos) / 1000000.0);
+                    lastTime = block.time;
+                    if (!(pending = recording.next(block))) {
+                        finish();
+                        return;
+                    }
+                }
+                schedule(0L);
+            } catch (IOException | RuntimeException e) {
+                if (!cancelled) {
+                    log.error("Stopping replay of " + recording.getUniqueDeviceIdentifier(), e);
+                    finish();
+                }
+            }
+        }
+
+        private void finish() {
+            if (players.remove(this)) {
+                log.info("Finished replay of " + recording.getUniqueDeviceIdentifier() + " " + statistics);
+                try {
+                    recording.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close recording", e);
+                }
+                sink.finished(this);
+            }
+        }
+
+        /**
+         * Stops the replay; the sink is not told.
+         */
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (null != f) {
+                f.cancel(false);
+            }
+            if (players.remove(this)) {
+                try {
+                    recording.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close recording", e);
+                }
+            }
+        }
+
+        public boolean isFinished() {
+            return !players.contains(this);
+        }
+
+        @Override
+        public String toString() {
+            return recording.getUniqueDeviceIdentifier() + " x" + speed + (pending ? "" : " (ended)") + " " + statistics;
+        }
+    }
+
+    public static final class Statistics {
+        private final AtomicLong blocks = new AtomicLong();
+        private final AtomicLong samples = new AtomicLong();
+        private final EventLoop.LatencyHistogram drift = new EventLoop.LatencyHistogram();
+        private volatile long startNanos;
+        private volatile long driftNanos;
+        // replay time of the last block, ms since the start at the requested speed
+        private volatile double scheduledMillis;
+
+        void published(Recording.Block block, long lateNanos, double scheduledMillis) {
+            blocks.incrementAndGet();
+            samples.addAndGet(block.count);
+            drift.record(lateNanos);
+            driftNanos = lateNanos;
+            this.scheduledMillis = scheduledMillis;
+        }
+
+        public long getBlocks() {
+            return blocks.get();
+        }
+
+        public long getSamples() {
+            return samples.get();
+        }
+
+        /**
+         * @return blocks per second published since the start
+         */
+        public double getAchievedRate() {
+            long start = startNanos;
+            if (0L == start) {
+                return 0.0;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return seconds > 0.0 ? blocks.get() / seconds : 0.0;
+        }
+
+        /**
+         * @return blocks per second the recording asks for at the requested speed
+         */
+        public double getTargetRate() {
+            double seconds = scheduledMillis / 1000.0;
+            return seconds > 0.0 ? blocks.get() / seconds : 0.0;
+        }
+
+        /**
+         * @return how late the most recent block was published
+         */
+        public long getDriftMillis() {
+            return driftNanos / 1000000L;
+        }
+
+        public EventLoop.LatencyHistogram getDrift() {
+            return drift;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("blocks=%d samples=%d rate %.1f of %.1f/s drift %dms drift histogram %s", getBlocks(), getSamples(), getAchievedRate(),
+                    getTargetRate(), getDriftMillis(), drift);
+        }
+    }
+}
@@ -49,7 +49,7 @@ public class SimThermometer extends AbstractSimulatedConnectedDevice {
 
     @Override
     public boolean connect(String str) {
-        thermometer.connect(executor);
+        thermometer.connect(executor, getPhase());
         return super.connect(str);
     }
 
@@ -0,0 +1,117 @@
+package org.mdpnp.devices;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClockEstimatorTest {
+
+    private static final long START = 1426017249228000000L;
+    private static final long HEARTBEAT = 2000000000L;
+
+    private ClockEstimator estimator;
+    private Random random;
+
+    // remote clock = local clock * (1 + skew) + offset, relative to START
+    private long offset = 5000000L;
+    private double skew = 50e-6;
+    private long local = START;
+
+    @Before
+    public void setUp() {
+        estimator = new ClockEstimator("remote");
+        random = new Random(42L);
+    }
+
+    private long remote(long local) {
+        return local + offset + Math.round(skew * (local - START));
+    }
+
+    /**
+     * One round trip with the given network delays each way and 100us of remote processing
+     */
+    private void roundTrip(long out, long back) {
+        long t1 = local;
+        long t2 = remote(t1 + out);
+        long t3 = remote(t1 + out + 100000L);
+        long t4 = t1 + out + 100000L + back;
+        Assert.assertTrue(estimator.submit(t1, t2, t3, t4));
+        estimator.update();
+        local += HEARTBEAT;
+    }
+
+    // 0.5 to 2.5ms each way with an occasional slow path
+    private void noisyRoundTrip() {
+        long out = 500000L + random.nextInt(2000000);
+        long back = 500000L + random.nextInt(2000000);
+        if (0 == random.nextInt(5)) {
+            out += 20000000L;
+        }
+        roundTrip(out, back);
+    }
+
+    @Test
+    public void testOffsetAndSkew() {
+        ClockEstimator.Conversion conversion = new ClockEstimator.Conversion();
+        Assert.assertFalse(estimator.toLocal(START, conversion));
+
+        for (int i = 0; i < 200; i++) {
+            noisyRoundTrip();
+        }
+        Assert.assertEquals(200L, estimator.getRoundTrips());
+        Assert.assertEquals(skew, estimator.getSkew(), 5e-6);
+
+        // remote timestamps map back to local time within the bound, which is a few ms at most
+        for (long t = local - 60 * HEARTBEAT; t < local; t += HEARTBEAT / 3) {
+            Assert.assertTrue(estimator.toLocal(remote(t), conversion));
+            Assert.assertTrue(conversion.getErrorBound() < 3000000L);
+            Assert.assertTrue(Math.abs(conversion.getLocalTime() - t) <= conversion.getErrorBound());
+        }
+        Assert.assertEquals(200L, estimator.getLatency().getCount());
+    }
+
+    @Test
+    public void testShortestDelayIsKept() {
+        for (int i = 0; i < 8; i++) {
+            roundTrip(1000000L, 1000000L);
+        }
+        long offsetBefore = estimator.getOffset();
+        // asymmetric paths alone never displace the symmetric round trips
+        for (int i = 0; i < 4; i++) {
+            roundTrip(30000000L, 1000000L);
+        }
+        Assert.assertEquals(offsetBefore, estimator.getOffset(), 2000000.0);
+    }
+
+    @Test
+    public void testOutliersThenStep() {
+        for (int i = 0; i < 50; i++) {
+            roundTrip(1000000L, 1000000L);
+        }
+        long offsetBefore = estimator.getOffset();
+
+        // a few fast but wrong round trips are rejected
+        offset += 100000000L;
+        roundTrip(900000L, 900000L);
+        offset -= 100000000L;
+        Assert.assertEquals(1L, estimator.getRejected());
+        Assert.assertEquals(offsetBefore, estimator.getOffset(), 1000000.0);
+
+        // a lasting step of the remote clock is followed
+        offset += 1000000000L;
+        for (int i = 0; i < 10; i++) {
+            roundTrip(800000L - i, 800000L);
+        }
+        Assert.assertEquals(offset + Math.round(skew * (local - HEARTBEAT - START)), estimator.getOffset(), 1000000.0);
+    }
+
+    @Test
+    public void testSubmitSchedulesOnce() {
+        Assert.assertTrue(estimator.submit(0L, 1L, 2L, 3L));
+        Assert.assertFalse(estimator.submit(0L, 1L, 2L, 3L));
+        Assert.assertTrue(estimator.update());
+        Assert.assertTrue(estimator.submit(10L, 11L, 12L, 13L));
+    }
+}
@@ -0,0 +1,105 @@
+package org.mdpnp.devices;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JdbcWriteBehindTest {
+
+    static class Counts {
+        final AtomicInteger addBatch = new AtomicInteger();
+        final AtomicInteger executeBatch = new AtomicInteger();
+        final AtomicInteger execute = new AtomicInteger();
+        final AtomicInteger commit = new AtomicInteger();
+    }
+
+    private static PreparedStatement statement(final Counts counts) {
+        return (PreparedStatement) Proxy.newProxyInstance(JdbcWriteBehindTest.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("addBatch".equals(method.getName())) {
+                    counts.addBatch.incrementAndGet();
+                } else if ("executeBatch".equals(method.getName())) {
+                    counts.executeBatch.incrementAndGet();
+                    return new int[0];
+                } else if ("execute".equals(method.getName())) {
+                    counts.execute.incrementAndGet();
+                    return Boolean.FALSE;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Connection connection(final Counts counts) {
+        return (Connection) Proxy.newProxyInstance(JdbcWriteBehindTest.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+            boolean autoCommit = true;
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("setAutoCommit".equals(method.getName())) {
+                    autoCommit = (Boolean) args[0];
+                } else if ("getAutoCommit".equals(method.getName())) {
+                    return autoCommit;
+                } else if ("commit".equals(method.getName())) {
+                    counts.commit.incrementAndGet();
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testRowsAreBatched() throws Exception {
+        Counts numerics = new Counts(), samples = new Counts(), conn = new Counts();
+        JdbcWriteBehind wb = new JdbcWriteBehind(connection(conn), statement(numerics), statement(samples),
+                1024, 100, 50L, JdbcWriteBehind.OverflowPolicy.Block);
+        for (int i = 0; i < 250; i++) {
+            wb.numeric(i, 0, "udi", "metric", i);
+        }
+        for (int i = 0; i < 10; i++) {
+            wb.sample(i, 0, "udi", "metric", new float[] { 1f, 2f, 3f });
+        }
+        wb.start(Thread.currentThread().getThreadGroup());
+        wb.stop();
+
+        Assert.assertEquals(260L, wb.getRowsWritten());
+        Assert.assertEquals(250, numerics.addBatch.get());
+        Assert.assertEquals(10, samples.addBatch.get());
+        Assert.assertEquals(0, numerics.execute.get());
+        Assert.assertTrue(numerics.executeBatch.get() <= 3);
+        Assert.assertTrue(conn.commit.get() >= 1);
+        Assert.assertEquals(0, wb.getQueueDepth());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        Counts c = new Counts();
+        JdbcWriteBehind wb = new JdbcWriteBehind(connection(c), statement(c), statement(c),
+                10, 10, 50L, JdbcWriteBehind.OverflowPolicy.DropOldest);
+        for (int i = 0; i < 25; i++) {
+            wb.numeric(i, 0, "udi", "metric", i);
+        }
+        Assert.assertEquals(10, wb.getQueueDepth());
+        Assert.assertEquals(15L, wb.getRowsDropped());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        Counts c = new Counts();
+        JdbcWriteBehind wb = new JdbcWriteBehind(connection(c), statement(c), statement(c),
+                10, 10, 50L, JdbcWriteBehind.OverflowPolicy.DropNewest);
+        for (int i = 0; i < 25; i++) {
+            wb.numeric(i, 0, "udi", "metric", i);
+        }
+        Assert.assertEquals(10, wb.getQueueDepth());
+        Assert.assertEquals(15L, wb.getRowsDropped());
+    }
+}
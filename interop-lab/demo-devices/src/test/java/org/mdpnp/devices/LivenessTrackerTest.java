@@ -0,0 +1,77 @@
+package org.mdpnp.devices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LivenessTrackerTest {
+
+    private final List<String> transitions = new ArrayList<String>();
+    private long now;
+    private LivenessTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new LivenessTracker((p, previous, current) -> transitions.add(p.getUniqueDeviceIdentifier() + " " + previous + "->" + current),
+                5000L, 30000L, () -> now);
+    }
+
+    private void advance(long ms) {
+        now += ms * 1000000L;
+        tracker.check();
+    }
+
+    @Test
+    public void testSteadyHeartbeatsAreSilent() {
+        for (int i = 0; i < 100; i++) {
+            for (int udi = 0; udi < 20; udi++) {
+                tracker.heartbeat("DEV" + udi, "Device", "host");
+            }
+            advance(2000L);
+        }
+        Assert.assertEquals(20, transitions.size());
+        Assert.assertEquals("DEV0 null->ALIVE", transitions.get(0));
+        Assert.assertEquals(20, tracker.size());
+    }
+
+    @Test
+    public void testStaleRecoveredGone() {
+        tracker.heartbeat("DEV0", "Device", "host");
+        advance(4000L);
+        Assert.assertEquals(1, transitions.size());
+        advance(2000L);
+        Assert.assertEquals("DEV0 ALIVE->STALE", transitions.get(1));
+        advance(2000L);
+        Assert.assertEquals(2, transitions.size());
+
+        tracker.heartbeat("DEV0", "Device", null);
+        Assert.assertEquals("DEV0 STALE->ALIVE", transitions.get(2));
+        Assert.assertEquals("host", tracker.getParticipant("DEV0").getHostName());
+
+        // silent past the gone deadline
+        advance(20000L);
+        advance(20000L);
+        Assert.assertEquals("DEV0 ALIVE->STALE", transitions.get(3));
+        Assert.assertEquals("DEV0 STALE->GONE", transitions.get(4));
+        Assert.assertEquals(0, tracker.size());
+
+        tracker.heartbeat("DEV0", "Device", "host");
+        Assert.assertEquals("DEV0 null->ALIVE", transitions.get(5));
+    }
+
+    @Test
+    public void testGoneAndStop() {
+        tracker.heartbeat("DEV0", "Device", "host");
+        tracker.heartbeat("DEV1", "Device", "host");
+        tracker.gone("DEV0");
+        tracker.gone("DEV0");
+        Assert.assertEquals("DEV0 ALIVE->GONE", transitions.get(2));
+        Assert.assertEquals(3, transitions.size());
+        tracker.stop();
+        Assert.assertEquals("DEV1 ALIVE->GONE", transitions.get(3));
+        Assert.assertEquals(0, tracker.size());
+    }
+}
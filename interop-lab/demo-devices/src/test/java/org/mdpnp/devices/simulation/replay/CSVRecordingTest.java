@@ -0,0 +1,83 @@
+package org.mdpnp.devices.simulation.replay;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CSVRecordingTest {
+
+    private static CSVRecording recording(String udi, String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return new CSVRecording(new StringReader(sb.toString()), "test", udi);
+    }
+
+    @Test
+    public void testNumericsAndSampleArrays() throws Exception {
+        CSVRecording recording = recording(null,
+                "1,DEV0,MDC_PULS_OXIM_PULS_RATE,0,1400000000000,MRN0,1,72.00",
+                "3,DEV0,1400000000000,MRN0,1,key,value",
+                "2,DEV0,MDC_PULS_OXIM_PLETH,0,1400000000200,MRN0,4,1.000E0,2.500E-1,-3.000E2,NaN",
+                "1,DEV1,MDC_PULS_OXIM_PULS_RATE,0,1400000000300,MRN1,1,80.00",
+                "2,DEV0,MDC_PULS_OXIM_PLETH,0,1400000000400,MRN0,4,1.0,2.0,3.0,4.0",
+                "this is not a record",
+                "1,DEV0,MDC_PULS_OXIM_SAT_O2,1,1400000000500,,1,98.5");
+        Recording.Block block = new Recording.Block();
+
+        Assert.assertTrue(recording.next(block));
+        Assert.assertEquals("DEV0", recording.getUniqueDeviceIdentifier());
+        Assert.assertTrue(block.isNumeric());
+        Assert.assertEquals("MDC_PULS_OXIM_PULS_RATE", block.getMetricId());
+        Assert.assertEquals(1400000000000L, block.getTime());
+        Assert.assertEquals(72f, block.getValues()[0], 0f);
+
+        Assert.assertTrue(recording.next(block));
+        Assert.assertFalse(block.isNumeric());
+        Assert.assertEquals(4, block.getCount());
+        Assert.assertEquals(CSVRecording.DEFAULT_FREQUENCY, block.getFrequency());
+        Assert.assertArrayEquals(new float[] { 1f, 0.25f, -300f, Float.NaN }, Arrays.copyOf(block.getValues(), 4), 0f);
+
+        // the other device is skipped and 4 samples over 200ms make 20Hz
+        Assert.assertTrue(recording.next(block));
+        Assert.assertEquals(1400000000400L, block.getTime());
+        Assert.assertEquals(20, block.getFrequency());
+
+        Assert.assertTrue(recording.next(block));
+        Assert.assertEquals("MDC_PULS_OXIM_SAT_O2", block.getMetricId());
+        Assert.assertEquals(1, block.getInstanceId());
+        Assert.assertEquals(98.5f, block.getValues()[0], 0f);
+
+        Assert.assertFalse(recording.next(block));
+        recording.close();
+    }
+
+    @Test
+    public void testSelectDevice() throws Exception {
+        CSVRecording recording = recording("DEV1",
+                "1,DEV0,HR,0,1000,MRN0,1,72.00",
+                "1,DEV1,HR,0,2000,MRN1,1,80.00");
+        Recording.Block block = new Recording.Block();
+        Assert.assertTrue(recording.next(block));
+        Assert.assertEquals(2000L, block.getTime());
+        Assert.assertFalse(recording.next(block));
+    }
+
+    @Test
+    public void testFormattedTimestamp() throws Exception {
+        CSVRecording recording = recording(null);
+        String line = "x20140513174523-0400";
+        long expected = LocalDateTime.of(2014, 5, 13, 17, 45, 23).toInstant(ZoneOffset.ofHours(-4)).toEpochMilli();
+        Assert.assertEquals(expected, recording.parseTime(line, 1, line.length()));
+        line = "x20140513174559-0400";
+        Assert.assertEquals(expected + 36000L, recording.parseTime(line, 1, line.length()));
+        line = "x20140513174600+0530";
+        Assert.assertEquals(LocalDateTime.of(2014, 5, 13, 17, 46, 0).toInstant(ZoneOffset.ofHoursMinutes(5, 30)).toEpochMilli(),
+                recording.parseTime(line, 1, line.length()));
+    }
+}
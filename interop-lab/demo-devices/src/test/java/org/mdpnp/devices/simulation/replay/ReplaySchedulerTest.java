@@ -0,0 +1,131 @@
+package org.mdpnp.devices.simulation.replay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplaySchedulerTest {
+
+    /**
+     * A numeric every period ms of recorded time
+     */
+    private static class TestRecording implements Recording {
+        private final String udi;
+        private final int blocks;
+        private final long period;
+        private int n;
+
+        TestRecording(String udi, int blocks, long period) {
+            this.udi = udi;
+            this.blocks = blocks;
+            this.period = period;
+        }
+
+        @Override
+        public boolean next(Block block) {
+            if (n >= blocks) {
+                return false;
+            }
+            block.setNumeric("HR", 0, 1400000000000L + n * period, n);
+            n++;
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getUniqueDeviceIdentifier() {
+            return udi;
+        }
+    }
+
+    private static class TestSink implements ReplayScheduler.Sink {
+        final List<Long> wallTimes = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Float> values = Collections.synchronizedList(new ArrayList<Float>());
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void publish(Recording.Block block) {
+            wallTimes.add(System.nanoTime());
+            values.add(block.getValues()[0]);
+        }
+
+        @Override
+        public void finished(ReplayScheduler.Player player) {
+            finished.countDown();
+        }
+    }
+
+    private ReplayScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ReplayScheduler(1, 0L);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        // 2 seconds of recording at 4x
+        TestSink sink = new TestSink();
+        ReplayScheduler.Player player = scheduler.play(new TestRecording("DEV0", 21, 100L), 4.0, sink);
+        Assert.assertTrue(sink.finished.await(5L, TimeUnit.SECONDS));
+        Assert.assertTrue(player.isFinished());
+
+        Assert.assertEquals(21, sink.values.size());
+        for (int i = 0; i < sink.values.size(); i++) {
+            Assert.assertEquals(i, sink.values.get(i), 0f);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(sink.wallTimes.get(20) - sink.wallTimes.get(0));
+        Assert.assertTrue("elapsed " + elapsed, elapsed >= 495L && elapsed < 1000L);
+
+        ReplayScheduler.Statistics stats = player.getStatistics();
+        Assert.assertEquals(21L, stats.getBlocks());
+        // 20 blocks after the first over 500ms
+        Assert.assertEquals(42.0, stats.getTargetRate(), 0.01);
+        Assert.assertEquals(21L, stats.getDrift().getCount());
+    }
+
+    @Test
+    public void testManyRecordingsShareOneThread() throws Exception {
+        List<TestSink> sinks = new ArrayList<TestSink>();
+        for (int i = 0; i < 50; i++) {
+            TestSink sink = new TestSink();
+            scheduler.play(new TestRecording("DEV" + i, 11, 50L), 1.0, sink);
+            sinks.add(sink);
+        }
+        Assert.assertEquals(50, scheduler.getPlayers().size());
+        for (TestSink sink : sinks) {
+            Assert.assertTrue(sink.finished.await(5L, TimeUnit.SECONDS));
+            Assert.assertEquals(11, sink.values.size());
+        }
+        Assert.assertTrue(scheduler.getPlayers().isEmpty());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TestSink sink = new TestSink();
+        ReplayScheduler.Player player = scheduler.play(new TestRecording("DEV0", 1000, 100L), 1.0, sink);
+        Thread.sleep(250L);
+        player.cancel();
+        int published = sink.values.size();
+        Thread.sleep(300L);
+        Assert.assertEquals(published, sink.values.size());
+        Assert.assertTrue(published >= 2 && published <= 4);
+        Assert.assertTrue(player.isFinished());
+        Assert.assertEquals(1L, sink.finished.getCount());
+    }
+}
@@ -1,5 +1,7 @@
 package org.mdpnp.guis.waveform.javafx;
 
+import java.util.Arrays;
+
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.shape.Rectangle;
 
@@ -49,6 +51,20 @@ public class JavaFXWaveformCanvas implements WaveformCanvas {
         currentContext.strokeLine(x0, height - y0, x1, height - y1);
     }
 
+    private double[] flippedY = new double[0];
+
+    @Override
+    public void drawPolyline(double[] x, double[] y, int n) {
+        if(flippedY.length < n) {
+            flippedY = Arrays.copyOf(flippedY, n);
+        }
+        double height = extent.getMaxY() - extent.getMinY();
+        for(int i = 0; i < n; i++) {
+            flippedY[i] = height - y[i];
+        }
+        currentContext.strokePolyline(x, flippedY, n);
+    }
+
     @Override
     public void clearRect(double x, double y, double width, double height) {
         // TODO Reorient?
@@ -1,5 +1,7 @@
 package org.mdpnp.guis.waveform.swing;
 
+import java.util.Arrays;
+
 import org.mdpnp.guis.waveform.WaveformPanel;
 
 public class SwingVectorWaveformCanvas extends SwingWaveformCanvas {
@@ -12,6 +14,22 @@ public class SwingVectorWaveformCanvas extends SwingWaveformCanvas {
         double height = extent.getMaxY() - extent.getMinY();
         currentGraphics.drawLine((int)x0, (int)(height - y0), (int)x1, (int)(height - y1));
     }
+
+    private int[] xPoints = new int[0], yPoints = new int[0];
+
+    @Override
+    public void drawPolyline(double[] x, double[] y, int n) {
+        if(xPoints.length < n) {
+            xPoints = Arrays.copyOf(xPoints, n);
+            yPoints = Arrays.copyOf(yPoints, n);
+        }
+        double height = extent.getMaxY() - extent.getMinY();
+        for(int i = 0; i < n; i++) {
+            xPoints[i] = (int) x[i];
+            yPoints[i] = (int) (height - y[i]);
+        }
+        currentGraphics.drawPolyline(xPoints, yPoints, n);
+    }
     
     @Override
     public void drawString(String str, double x, double y) {
@@ -15,21 +15,113 @@ import com.rti.dds.subscription.SampleInfoSeq;
 import com.rti.dds.subscription.SampleStateKind;
 import com.rti.dds.subscription.ViewStateKind;
 
+/**
+ * Waveform source for one SampleArray instance.
+ *
+ * Rather than expanding the entire DDS history on every iteration, samples are copied
+ * once into a per-instance ring of primitive time/value pairs and iteration walks the
+ * ring. Each iteration appends only those arrays that follow the last one appended, which
+ * is found again by its presentation time; the sample state cannot be used for this since
+ * the reader is shared with other consumers which mark samples READ. Should the device
+ * clock step back the samples already held are dropped so that the ring stays in time
+ * order. The ring holds
+ * <code>org.mdpnp.guis.waveform.SampleArrayWaveformSource.capacity</code> samples.
+ */
 public class SampleArrayWaveformSource extends AbstractDdsWaveformSource<ice.SampleArrayDataReader, ice.SampleArray, ice.SampleArraySeq> implements WaveformSource {
     private static final Logger log = LoggerFactory.getLogger(SampleArrayWaveformSource.class);
 
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(SampleArrayWaveformSource.class.getName() + ".capacity", 16384);
+
+    // guarded by this
+    private final long[] times;
+    private final float[] values;
+    private final int mask;
+    private long count, oldest;
+    // presentation time of the last array appended
+    private long lastPresentation = Long.MIN_VALUE;
+
     public SampleArrayWaveformSource(final ice.SampleArrayDataReader reader, InstanceHandle_t instanceHandle) {
         super(reader, instanceHandle, ice.SampleArray.class, ice.SampleArraySeq.class);
+        int size = Integer.highestOneBit(Math.max(1, DEFAULT_CAPACITY - 1)) << 1;
+        times = new long[size];
+        values = new float[size];
+        mask = size - 1;
     }
     
     public SampleArrayWaveformSource(final ice.SampleArrayDataReader reader, ice.SampleArray keyHolder) {
         super(reader, keyHolder, ice.SampleArray.class, ice.SampleArraySeq.class);
+        int size = Integer.highestOneBit(Math.max(1, DEFAULT_CAPACITY - 1)) << 1;
+        times = new long[size];
+        values = new float[size];
+        mask = size - 1;
         log.debug("Created a SampleArrayWaveformSource for " + keyHolder.unique_device_identifier + " " + keyHolder.metric_id + " " + keyHolder.instance_id);
     }
-    
+
+    private void append(long time, float value) {
+        int i = (int) (count++ & mask);
+        times[i] = time;
+        values[i] = value;
+    }
+
+    /**
+     * Copies arrays received since the last one appended. The caller holds the monitor.
+     */
+    private void update() {
+        SampleInfoSeq sample_info_seq = this.sample_info_seq.get();
+        ice.SampleArraySeq sample_array_seq = this.data_seq.get();
+        try {
+            reader.read_instance(sample_array_seq, sample_info_seq, ResourceLimitsQosPolicy.LENGTH_UNLIMITED, instanceHandle, SampleStateKind.ANY_SAMPLE_STATE, ViewStateKind.ANY_VIEW_STATE, InstanceStateKind.ANY_INSTANCE_STATE);
+            // walk back from the newest to the first array not yet appended
+            int first = sample_info_seq.size();
+            while(first > 0) {
+                SampleInfo si = (SampleInfo) sample_info_seq.get(first - 1);
+                if(si.valid_data) {
+                    ice.Time_t t = ((SampleArray) sample_array_seq.get(first - 1)).presentation_time;
+                    if(t.sec * 1000L + t.nanosec / 1000000L == lastPresentation) {
+                        break;
+                    }
+                }
+                first--;
+            }
+            for(int i = first; i < sample_info_seq.size(); i++) {
+                SampleInfo si = (SampleInfo) sample_info_seq.get(i);
+                if(!si.valid_data) {
+                    // instance lifecycle event with no attached data.
+                    continue;
+                }
+                ice.SampleArray sampleArray = (SampleArray) sample_array_seq.get(i);
+                ice.Time_t t = sampleArray.presentation_time;
+                long baseTime = t.sec * 1000L + t.nanosec / 1000000L;
+                if(baseTime < lastPresentation) {
+                    log.debug("Presentation time stepped back " + (lastPresentation - baseTime) + "ms for " + getIdentifier());
+                    oldest = count;
+                }
+                lastPresentation = baseTime;
+
+                final int sz = sampleArray.values.userData.size();
+                if(0 < sampleArray.frequency) {
+                    int msPerSample = 1000 / sampleArray.frequency;
+                    for(int j = 0; j < sz; j++) {
+                        append(baseTime - (sz-j) * msPerSample, sampleArray.values.userData.getFloat(j));
+                    }
+                } else {
+                    log.warn("Invalid frequency " + sampleArray.frequency + " for " + sampleArray.unique_device_identifier + " " + sampleArray.metric_id + " " + sampleArray.instance_id);
+                }
+            }
+        } catch(RETCODE_NO_DATA noData) {
+            
+        } finally {
+            reader.return_loan(sample_array_seq, sample_info_seq);
+        }
+    }
 
     @Override
     public void iterate(final WaveformIterator itr) {
+        iterate(itr, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void iterate(final WaveformIterator itr, long t1, long t2) {
         try {
             itr.begin();
 
@@ -37,39 +129,18 @@ public class SampleArrayWaveformSource extends AbstractDdsWaveformSource<ice.Sam
                 log.warn("Tried to iterate a null or nil instance ");
                 return;
             }
-            
-            SampleInfoSeq sample_info_seq = this.sample_info_seq.get();
-            ice.SampleArraySeq sample_array_seq = this.data_seq.get();
-            try {
-                reader.read_instance(sample_array_seq, sample_info_seq, ResourceLimitsQosPolicy.LENGTH_UNLIMITED, instanceHandle, SampleStateKind.ANY_SAMPLE_STATE, ViewStateKind.ANY_VIEW_STATE, InstanceStateKind.ANY_INSTANCE_STATE);
-                for(int i = 0; i < sample_info_seq.size(); i++) {
-                    SampleInfo si = (SampleInfo) sample_info_seq.get(i);
-                    
-                    ice.SampleArray sampleArray = (SampleArray) sample_array_seq.get(i);
-                    ice.Time_t t = sampleArray.presentation_time;
-                    long baseTime = t.sec * 1000L + t.nanosec / 1000000L;
-                    
-                    final int sz = sampleArray.values.userData.size();
-//                    log.debug(sz + " samples " + keyHolder.unique_device_identifier + " " + keyHolder.metric_id + " " + keyHolder.instance_id);
-                    if(si.valid_data) {
-                        if(0 < sampleArray.frequency) {
-                            int msPerSample = 1000 / sampleArray.frequency;
-                            for(int j = 0; j < sz; j++) {
-                                long tm = baseTime - (sz-j) * msPerSample;
-                                float value = sampleArray.values.userData.getFloat(j);
-                                itr.sample(tm, value);
-                            }
-                        } else {
-                            log.warn("Invalid frequency " + sampleArray.frequency + " for " + sampleArray.unique_device_identifier + " " + sampleArray.metric_id + " " + sampleArray.instance_id);
-                        }
-                    } else {
-                        // instance lifecycle event with no attached data.
-                    }
+
+            synchronized(this) {
+                update();
+                long oldest = Math.max(this.oldest, count - times.length);
+                long start = count;
+                while(start > oldest && times[(int) ((start - 1) & mask)] >= t1) {
+                    start--;
+                }
+                for(long i = start; i < count; i++) {
+                    int idx = (int) (i & mask);
+                    itr.sample(times[idx], values[idx]);
                 }
-            } catch(RETCODE_NO_DATA noData) {
-                
-            } finally {
-                reader.return_loan(sample_array_seq, sample_info_seq);
             }
         } finally {
             itr.end();
@@ -25,6 +25,15 @@ public interface WaveformCanvas {
 
     void drawLine(double x0, double y0, double x1, double y1);
 
+    /**
+     * Connects the first n points of x and y with line segments.
+     */
+    default void drawPolyline(double[] x, double[] y, int n) {
+        for (int i = 1; i < n; i++) {
+            drawLine(x[i - 1], y[i - 1], x[i], y[i]);
+        }
+    }
+
     void clearRect(double x, double y, double width, double height);
     
     void drawString(String str, double x, double y);
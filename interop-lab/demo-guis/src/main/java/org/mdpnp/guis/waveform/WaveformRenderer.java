@@ -12,18 +12,44 @@
  ******************************************************************************/
 package org.mdpnp.guis.waveform;
 
-
-
+import java.util.Arrays;
 
 /**
- * @author Jeff Plourde
+ * Samples are not drawn individually. Each contiguous run of visible samples is
+ * collected into a reusable polyline buffer which is decimated before drawing so
+ * that the number of segments drawn depends upon the width of the canvas and not
+ * upon the sample rate and time domain.
  *
+ * @author Jeff Plourde
  */
 public class WaveformRenderer implements WaveformSource.WaveformIterator {
 
+    public enum Decimation {
+        /** every visible sample becomes a vertex */
+        None,
+        /** the first, minimum, maximum and last sample of each pixel column */
+        MinMax,
+        /** largest triangle three buckets, two vertices per pixel column */
+        LTTB
+    }
+
     public WaveformRenderer() {
     }
 
+    private Decimation decimation = Decimation.MinMax;
+
+    // polyline under construction; only grown, never shrunk
+    private double[] polyX = new double[1024], polyY = new double[1024];
+    private int polyCount;
+    // LTTB output
+    private double[] lttbX = new double[0], lttbY = new double[0];
+    private int columns;
+
+    // accumulation for the pixel column currently being collected (MinMax)
+    private int column = Integer.MIN_VALUE;
+    private int columnCount, columnMinIndex, columnMaxIndex;
+    private double firstX, firstY, colMinX, colMinY, colMaxX, colMaxY, lastX, lastY;
+
     private WaveformCanvas.Extent extent;
     
     private double minY = Double.MAX_VALUE, maxY = Double.MIN_VALUE;
@@ -36,6 +62,14 @@ public class WaveformRenderer implements WaveformSource.WaveformIterator {
     boolean aged_segment = true;
     boolean rendering = false;
 
+    public void setDecimation(Decimation decimation) {
+        this.decimation = null == decimation ? Decimation.None : decimation;
+    }
+
+    public Decimation getDecimation() {
+        return decimation;
+    }
+
     public void setOverwrite(boolean overwrite) {
         this.overwrite = overwrite;
     }
@@ -85,6 +119,7 @@ public class WaveformRenderer implements WaveformSource.WaveformIterator {
                     last_x = -1;
                     last_y = -1;
                     aged_segment = false;
+                    flushPolyline();
                 }
                 x_prop = 1.0 * (time - t0) / (t2-t0);
                 x_prop *= split_prop;
@@ -110,11 +145,7 @@ public class WaveformRenderer implements WaveformSource.WaveformIterator {
         double y = extent.getMinY() + y_prop * (extent.getMaxY()-extent.getMinY());
         
         if(x_prop>=0.0&&x_prop<1.0&&y_prop>=0.0&&y_prop<1.0) {
-            if(last_x>=0.0||last_y>=0.0&&x>last_x) {
-                count++;
-                canvas.drawLine(last_x, last_y, x, y);
-//                System.err.println(last_x+","+last_y+" "+x+","+y);
-            }
+            vertex(x, y);
             last_x = x;
             last_y = y;
 //            System.err.println("in " + x_prop + ", " + y_prop + " " + new Date(time));
@@ -162,7 +193,8 @@ public class WaveformRenderer implements WaveformSource.WaveformIterator {
             this.last_x = -1;
             this.last_y = -1;
             
-            source.iterate(this);
+            this.columns = Math.max(1, (int) (extent.getMaxX() - extent.getMinX()));
+            source.iterate(this, t1, t2);
         } finally {
             synchronized(this) {
                 rendering = false;
@@ -181,17 +213,154 @@ public class WaveformRenderer implements WaveformSource.WaveformIterator {
         }
     }
     
+    private void vertex(double x, double y) {
+        if(Decimation.MinMax.equals(decimation)) {
+            int c = (int) Math.floor(x);
+            if(c != column) {
+                flushColumn();
+                column = c;
+                columnCount = 0;
+            }
+            if(0 == columnCount) {
+                firstX = colMinX = colMaxX = x;
+                firstY = colMinY = colMaxY = y;
+                columnMinIndex = columnMaxIndex = 0;
+            } else if(y < colMinY) {
+                colMinX = x;
+                colMinY = y;
+                columnMinIndex = columnCount;
+            } else if(y > colMaxY) {
+                colMaxX = x;
+                colMaxY = y;
+                columnMaxIndex = columnCount;
+            }
+            lastX = x;
+            lastY = y;
+            columnCount++;
+        } else {
+            append(x, y);
+        }
+    }
+
+    private void flushColumn() {
+        if(columnCount > 0) {
+            append(firstX, firstY);
+            final int last = columnCount - 1;
+            boolean minInterior = columnMinIndex > 0 && columnMinIndex < last;
+            boolean maxInterior = columnMaxIndex > 0 && columnMaxIndex < last;
+            if(columnMinIndex < columnMaxIndex) {
+                if(minInterior) append(colMinX, colMinY);
+                if(maxInterior) append(colMaxX, colMaxY);
+            } else {
+                if(maxInterior) append(colMaxX, colMaxY);
+                if(minInterior) append(colMinX, colMinY);
+            }
+            if(last > 0) {
+                append(lastX, lastY);
+            }
+        }
+        columnCount = 0;
+        column = Integer.MIN_VALUE;
+    }
+
+    private void append(double x, double y) {
+        if(polyCount == polyX.length) {
+            polyX = Arrays.copyOf(polyX, polyCount << 1);
+            polyY = Arrays.copyOf(polyY, polyCount << 1);
+        }
+        polyX[polyCount] = x;
+        polyY[polyCount] = y;
+        polyCount++;
+    }
+
+    private void flushPolyline() {
+        flushColumn();
+        if(polyCount > 1 && null != canvas) {
+            if(Decimation.LTTB.equals(decimation) && polyCount > 2 * columns) {
+                int threshold = Math.max(3, 2 * columns);
+                if(lttbX.length < threshold) {
+                    lttbX = new double[threshold];
+                    lttbY = new double[threshold];
+                }
+                int n = lttb(polyX, polyY, polyCount, threshold, lttbX, lttbY);
+                canvas.drawPolyline(lttbX, lttbY, n);
+                count += n;
+            } else {
+                canvas.drawPolyline(polyX, polyY, polyCount);
+                count += polyCount;
+            }
+        }
+        polyCount = 0;
+    }
+
+    /**
+     * Largest triangle three buckets downsampling (S. Steinarsson, 2013) of the first n
+     * points of x,y to at most threshold points written into outX,outY.
+     * @return the number of points written
+     */
+    static int lttb(double[] x, double[] y, int n, int threshold, double[] outX, double[] outY) {
+        if(threshold >= n || threshold < 3) {
+            System.arraycopy(x, 0, outX, 0, n);
+            System.arraycopy(y, 0, outY, 0, n);
+            return n;
+        }
+        final double every = (double) (n - 2) / (threshold - 2);
+        int a = 0, out = 0;
+        outX[out] = x[0];
+        outY[out++] = y[0];
+        for(int i = 0; i < threshold - 2; i++) {
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+            for(int j = avgStart; j < avgEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+            for(int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+                if(area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            outX[out] = x[next];
+            outY[out++] = y[next];
+            a = next;
+        }
+        outX[out] = x[n - 1];
+        outY[out++] = y[n - 1];
+        return out;
+    }
+
     private int count = 0;
+
+    /**
+     * @return the number of vertices drawn by the most recent render
+     */
+    public int getVertexCount() {
+        return count;
+    }
+
     @Override
     public void begin() {
         count = 0;
+        polyCount = 0;
+        columnCount = 0;
+        column = Integer.MIN_VALUE;
         aged_segment = true;
         
     }
 
     @Override
     public void end() {
-//        System.err.println(count + " points");
-//        System.err.println(count + " points rendered most recent " + new Date(mostRecent));
+        flushPolyline();
     }
 }
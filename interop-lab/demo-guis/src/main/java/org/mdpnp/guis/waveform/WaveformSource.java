@@ -23,6 +23,13 @@ public interface WaveformSource {
         void end();
     }
     void iterate(WaveformIterator itr);
+    /**
+     * Iterate at least the samples falling between t1 and t2; sources able to do so
+     * cheaply may skip samples outside of that window.
+     */
+    default void iterate(WaveformIterator itr, long t1, long t2) {
+        iterate(itr);
+    }
     String getIdentifier();
     boolean loadingHistoricalData();
 }
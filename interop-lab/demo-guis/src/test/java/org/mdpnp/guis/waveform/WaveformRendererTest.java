@@ -0,0 +1,141 @@
+package org.mdpnp.guis.waveform;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WaveformRendererTest {
+
+    private static class CountingCanvas implements WaveformCanvas, WaveformCanvas.Extent {
+        final double width;
+        int lines, polylines;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+        CountingCanvas(double width) {
+            this.width = width;
+        }
+
+        @Override
+        public void drawLine(double x0, double y0, double x1, double y1) {
+            lines++;
+        }
+
+        @Override
+        public void drawPolyline(double[] x, double[] y, int n) {
+            polylines++;
+            lines += n - 1;
+            for (int i = 0; i < n; i++) {
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+        }
+
+        @Override
+        public void clearRect(double x, double y, double width, double height) {
+        }
+
+        @Override
+        public void drawString(String str, double x, double y) {
+        }
+
+        @Override
+        public Extent getExtent() {
+            return this;
+        }
+
+        @Override
+        public double getMinX() {
+            return 0;
+        }
+
+        @Override
+        public double getMaxX() {
+            return width;
+        }
+
+        @Override
+        public double getMinY() {
+            return 0;
+        }
+
+        @Override
+        public double getMaxY() {
+            return 100;
+        }
+    }
+
+    /**
+     * 10 seconds at 1kHz of a square wave with a single 1ms spike
+     */
+    private static class DenseSource implements WaveformSource {
+        @Override
+        public void iterate(WaveformIterator itr) {
+            itr.begin();
+            for (int i = 0; i < 10000; i++) {
+                float v = (i / 50) % 2 == 0 ? 0f : 1f;
+                if (i == 5001) {
+                    v = 5f;
+                }
+                itr.sample(i, v);
+            }
+            itr.end();
+        }
+
+        @Override
+        public String getIdentifier() {
+            return "dense";
+        }
+
+        @Override
+        public boolean loadingHistoricalData() {
+            return false;
+        }
+    }
+
+    private static CountingCanvas render(WaveformRenderer.Decimation decimation) {
+        WaveformRenderer renderer = new WaveformRenderer();
+        renderer.setOverwrite(false);
+        renderer.setDecimation(decimation);
+        CountingCanvas canvas = new CountingCanvas(200);
+        WaveformSource source = new DenseSource();
+        // first pass establishes the vertical scale
+        renderer.render(source, canvas, 0L, 10000L);
+        canvas = new CountingCanvas(200);
+        renderer.render(source, canvas, 0L, 10000L);
+        return canvas;
+    }
+
+    @Test
+    public void testMinMaxScalesWithWidth() {
+        CountingCanvas none = render(WaveformRenderer.Decimation.None);
+        CountingCanvas minMax = render(WaveformRenderer.Decimation.MinMax);
+        Assert.assertTrue(none.lines > 9000);
+        Assert.assertTrue("" + minMax.lines, minMax.lines <= 4 * 200);
+        // the spike survives decimation
+        Assert.assertEquals(none.maxY, minMax.maxY, 0.0);
+        Assert.assertEquals(none.minY, minMax.minY, 0.0);
+    }
+
+    @Test
+    public void testLttb() {
+        CountingCanvas lttb = render(WaveformRenderer.Decimation.LTTB);
+        Assert.assertTrue("" + lttb.lines, lttb.lines < 2 * 200);
+        CountingCanvas none = render(WaveformRenderer.Decimation.None);
+        Assert.assertEquals(none.maxY, lttb.maxY, 0.0);
+    }
+
+    @Test
+    public void testLttbEndpoints() {
+        double[] x = new double[100], y = new double[100];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 10.0);
+        }
+        double[] ox = new double[10], oy = new double[10];
+        Assert.assertEquals(10, WaveformRenderer.lttb(x, y, 100, 10, ox, oy));
+        Assert.assertEquals(0.0, ox[0], 0.0);
+        Assert.assertEquals(99.0, ox[9], 0.0);
+        for (int i = 1; i < 10; i++) {
+            Assert.assertTrue(ox[i] > ox[i - 1]);
+        }
+    }
+}